@@ -0,0 +1,461 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A buffer which is a memory-mapped region of a file.  It is recommended to
+ * use {@link ChannelBuffers#mappedBuffer(FileChannel, long, int)} and
+ * {@link ChannelBuffers#mappedBuffers(FileChannel, long, long)} instead of
+ * calling the constructor explicitly.
+ * <p>
+ * The region is mapped as consecutive {@link MappedByteBuffer} segments of
+ * up to {@link #DEFAULT_SEGMENT_SIZE} bytes each, so that the content of a
+ * file larger than a single {@link ByteBuffer} can address is accessed
+ * through several buffers, and a large region does not have to be mapped
+ * into one contiguous range of the address space.  Like all composite
+ * buffers, a mapped buffer is sent to an NIO channel with a gathering write
+ * of its segments, without being copied.
+ *
+ * <h3>Unmapping</h3>
+ *
+ * A {@link MappedByteBuffer} is unmapped only when it is garbage-collected,
+ * which may never happen for a long-living buffer in a large heap.  Call
+ * {@link #release()} to unmap the segments as soon as the buffer has been
+ * written, that is when the future of the write has completed.  Once the
+ * buffer is released, accessing it or its slices and duplicates raises an
+ * {@link IllegalStateException} instead of touching the unmapped memory.
+ * The NIO buffers returned by {@link #toByteBuffers()} cannot be guarded,
+ * so {@link #release()} fails while a transport is writing them, between
+ * {@link #writeStarted()} and {@link #writeFinished()}.  The buffer must not
+ * be released while another thread is accessing it.
+ */
+public class MappedFileChannelBuffer extends CompositeChannelBuffer {
+
+    /**
+     * The maximum number of bytes mapped by a segment unless specified
+     * otherwise
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private static final Method CLEANER;
+    private static final Method CLEAN;
+
+    static {
+        Method cleaner = null;
+        Method clean = null;
+        try {
+            ByteBuffer direct = ByteBuffer.allocateDirect(1);
+            cleaner = direct.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Object c = cleaner.invoke(direct);
+            clean = c.getClass().getMethod("clean");
+            clean.setAccessible(true);
+            clean.invoke(c);
+        } catch (Throwable t) {
+            // Not supported by this JVM - leave it to the garbage collector.
+            cleaner = null;
+            clean = null;
+        }
+        CLEANER = cleaner;
+        CLEAN = clean;
+    }
+
+    private final long position;
+    private final Mapping mapping;
+
+    /**
+     * Maps the specified region of the specified file read-only.
+     */
+    public MappedFileChannelBuffer(FileChannel file, long position, int length) throws IOException {
+        this(file, MapMode.READ_ONLY, position, length, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Maps the specified region of the specified file.
+     *
+     * @param mode        {@link MapMode#READ_WRITE} to make the buffer
+     *                    writable
+     * @param segmentSize the maximum number of bytes mapped by a segment
+     */
+    public MappedFileChannelBuffer(
+            FileChannel file, MapMode mode, long position, int length, int segmentSize) throws IOException {
+        this(new Mapping(map(file, mode, position, length, segmentSize)), position);
+    }
+
+    private MappedFileChannelBuffer(Mapping mapping, long position) {
+        super(ByteOrder.BIG_ENDIAN, wrap(mapping));
+        this.mapping = mapping;
+        this.position = position;
+    }
+
+    private static ByteBuffer[] map(
+            FileChannel file, MapMode mode, long position, int length, int segmentSize) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        if (mode == null) {
+            throw new NullPointerException("mode");
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException(
+                    "position: " + position + " (expected: 0 or greater)");
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException(
+                    "length: " + length + " (expected: 0 or greater)");
+        }
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException(
+                    "segmentSize: " + segmentSize + " (expected: a positive integer)");
+        }
+
+        int count = Math.max(1, (int) ((length + (long) segmentSize - 1) / segmentSize));
+        ByteBuffer[] segments = new ByteBuffer[count];
+        try {
+            for (int i = 0; i < count; i ++) {
+                long offset = (long) i * segmentSize;
+                segments[i] = file.map(mode, position + offset, Math.min(segmentSize, length - offset));
+            }
+        } catch (IOException e) {
+            unmap(segments);
+            throw e;
+        }
+        return segments;
+    }
+
+    private static List<ChannelBuffer> wrap(Mapping mapping) {
+        List<ChannelBuffer> components = new ArrayList<ChannelBuffer>(mapping.segments.length);
+        for (ByteBuffer segment: mapping.segments) {
+            components.add(new Segment(mapping, new ByteBufferBackedChannelBuffer(segment)));
+        }
+        return components;
+    }
+
+    /**
+     * Returns the position in the file where the mapped region begins.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Unmaps the segments of this buffer, or does nothing if they have been
+     * unmapped already.  This buffer and its slices and duplicates raise an
+     * {@link IllegalStateException} when they are accessed afterwards.
+     *
+     * @throws IllegalStateException if a write of this buffer is pending
+     */
+    public void release() {
+        synchronized (mapping) {
+            if (mapping.released) {
+                return;
+            }
+            if (mapping.pendingWrites != 0) {
+                throw new IllegalStateException("cannot release a buffer being written");
+            }
+            mapping.released = true;
+        }
+        unmap(mapping.segments);
+    }
+
+    /**
+     * Called by a transport before it writes the NIO buffers of this buffer,
+     * so that the segments are not unmapped until {@link #writeFinished()}
+     * is called.
+     *
+     * @throws IllegalStateException if this buffer has been released
+     */
+    public void writeStarted() {
+        synchronized (mapping) {
+            mapping.ensureMapped();
+            mapping.pendingWrites ++;
+        }
+    }
+
+    /**
+     * Called by a transport once it does not access the NIO buffers given
+     * by {@link #writeStarted()} anymore, whether the write succeeded or not.
+     */
+    public void writeFinished() {
+        synchronized (mapping) {
+            if (mapping.pendingWrites == 0) {
+                throw new IllegalStateException("no pending write");
+            }
+            mapping.pendingWrites --;
+        }
+    }
+
+    private static void unmap(ByteBuffer[] segments) {
+        if (CLEANER == null) {
+            return;
+        }
+        for (ByteBuffer segment: segments) {
+            if (segment == null) {
+                continue;
+            }
+            try {
+                Object cleaner = CLEANER.invoke(segment);
+                if (cleaner != null) {
+                    CLEAN.invoke(cleaner);
+                }
+            } catch (Throwable t) {
+                // Leave it to the garbage collector.
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} because all segments are direct buffers.
+     */
+    @Override
+    public boolean isDirect() {
+        return true;
+    }
+
+    @Override
+    public ChannelBufferFactory factory() {
+        return DirectChannelBufferFactory.getInstance(order());
+    }
+
+    /**
+     * The segments shared by a buffer and all the buffers derived from it
+     */
+    private static final class Mapping {
+        final ByteBuffer[] segments;
+        volatile boolean released;
+        int pendingWrites;
+
+        Mapping(ByteBuffer[] segments) {
+            this.segments = segments;
+        }
+
+        void ensureMapped() {
+            if (released) {
+                throw new IllegalStateException("released");
+            }
+        }
+    }
+
+    /**
+     * A segment which fails to be accessed once the mapping is released.  Its
+     * slices and duplicates forward to the segment, so they fail as well.
+     */
+    private static final class Segment extends AbstractChannelBuffer {
+
+        private final Mapping mapping;
+        private final ChannelBuffer buffer;
+
+        Segment(Mapping mapping, ChannelBuffer buffer) {
+            this.mapping = mapping;
+            this.buffer = buffer;
+            setIndex(buffer.readerIndex(), buffer.writerIndex());
+        }
+
+        @Override
+        public ChannelBufferFactory factory() {
+            return buffer.factory();
+        }
+
+        @Override
+        public ByteOrder order() {
+            return buffer.order();
+        }
+
+        @Override
+        public boolean isDirect() {
+            return true;
+        }
+
+        @Override
+        public int capacity() {
+            return buffer.capacity();
+        }
+
+        @Override
+        public boolean hasArray() {
+            return false;
+        }
+
+        @Override
+        public byte[] array() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int arrayOffset() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public byte getByte(int index) {
+            mapping.ensureMapped();
+            return buffer.getByte(index);
+        }
+
+        @Override
+        public short getShort(int index) {
+            mapping.ensureMapped();
+            return buffer.getShort(index);
+        }
+
+        @Override
+        public int getUnsignedMedium(int index) {
+            mapping.ensureMapped();
+            return buffer.getUnsignedMedium(index);
+        }
+
+        @Override
+        public int getInt(int index) {
+            mapping.ensureMapped();
+            return buffer.getInt(index);
+        }
+
+        @Override
+        public long getLong(int index) {
+            mapping.ensureMapped();
+            return buffer.getLong(index);
+        }
+
+        @Override
+        public ChannelBuffer duplicate() {
+            return new DuplicatedChannelBuffer(this);
+        }
+
+        @Override
+        public ChannelBuffer copy(int index, int length) {
+            mapping.ensureMapped();
+            return buffer.copy(index, length);
+        }
+
+        @Override
+        public ChannelBuffer slice(int index, int length) {
+            if (length == 0) {
+                return ChannelBuffers.EMPTY_BUFFER;
+            }
+            return new SlicedChannelBuffer(this, index, length);
+        }
+
+        @Override
+        public void getBytes(int index, ChannelBuffer dst, int dstIndex, int length) {
+            mapping.ensureMapped();
+            buffer.getBytes(index, dst, dstIndex, length);
+        }
+
+        @Override
+        public void getBytes(int index, byte[] dst, int dstIndex, int length) {
+            mapping.ensureMapped();
+            buffer.getBytes(index, dst, dstIndex, length);
+        }
+
+        @Override
+        public void getBytes(int index, ByteBuffer dst) {
+            mapping.ensureMapped();
+            buffer.getBytes(index, dst);
+        }
+
+        @Override
+        public void getBytes(int index, OutputStream out, int length) throws IOException {
+            mapping.ensureMapped();
+            buffer.getBytes(index, out, length);
+        }
+
+        @Override
+        public int getBytes(int index, GatheringByteChannel out, int length) throws IOException {
+            mapping.ensureMapped();
+            return buffer.getBytes(index, out, length);
+        }
+
+        @Override
+        public void setByte(int index, int value) {
+            mapping.ensureMapped();
+            buffer.setByte(index, value);
+        }
+
+        @Override
+        public void setShort(int index, int value) {
+            mapping.ensureMapped();
+            buffer.setShort(index, value);
+        }
+
+        @Override
+        public void setMedium(int index, int value) {
+            mapping.ensureMapped();
+            buffer.setMedium(index, value);
+        }
+
+        @Override
+        public void setInt(int index, int value) {
+            mapping.ensureMapped();
+            buffer.setInt(index, value);
+        }
+
+        @Override
+        public void setLong(int index, long value) {
+            mapping.ensureMapped();
+            buffer.setLong(index, value);
+        }
+
+        @Override
+        public void setBytes(int index, byte[] src, int srcIndex, int length) {
+            mapping.ensureMapped();
+            buffer.setBytes(index, src, srcIndex, length);
+        }
+
+        @Override
+        public void setBytes(int index, ChannelBuffer src, int srcIndex, int length) {
+            mapping.ensureMapped();
+            buffer.setBytes(index, src, srcIndex, length);
+        }
+
+        @Override
+        public void setBytes(int index, ByteBuffer src) {
+            mapping.ensureMapped();
+            buffer.setBytes(index, src);
+        }
+
+        @Override
+        public int setBytes(int index, InputStream in, int length) throws IOException {
+            mapping.ensureMapped();
+            return buffer.setBytes(index, in, length);
+        }
+
+        @Override
+        public int setBytes(int index, ScatteringByteChannel in, int length) throws IOException {
+            mapping.ensureMapped();
+            return buffer.setBytes(index, in, length);
+        }
+
+        @Override
+        public ByteBuffer toByteBuffer(int index, int length) {
+            mapping.ensureMapped();
+            return buffer.toByteBuffer(index, length);
+        }
+    }
+}
@@ -491,4 +491,36 @@ public class ChannelBuffersTest {
         assertEquals(0, ChannelBuffers.wrapBoolean(new boolean[0]).capacity());
 
     }
+
+    @Test
+    public void testIndexOfAny() {
+        for (int length = 0; length < 40; length ++) {
+            for (int pos = -1; pos < length; pos ++) {
+                byte[] array = new byte[length];
+                for (int i = 0; i < length; i ++) {
+                    // 0x0d + 1 and 0x0a + 0x80 would be false positives of a carrying comparison.
+                    array[i] = (byte) (i % 2 == 0? 0x0e : 0x8a);
+                }
+                if (pos >= 0) {
+                    array[pos] = (byte) (pos % 3 == 0? '\r' : '\n');
+                }
+                ChannelBuffer direct = directBuffer(LITTLE_ENDIAN, length);
+                direct.writeBytes(array);
+                for (ChannelBuffer buffer: new ChannelBuffer[] {
+                        wrappedBuffer(array), wrappedBuffer(LITTLE_ENDIAN, array), direct,
+                        wrappedBuffer(wrappedBuffer(array, 0, length / 2),
+                                wrappedBuffer(array, length / 2, length - length / 2)) }) {
+                    assertEquals(pos, indexOfAny(buffer, 0, length, (byte) '\r', (byte) '\n'));
+                    assertEquals(pos, buffer.indexOf(0, length, ChannelBufferIndexFinder.CRLF));
+                    int lf = pos >= 0 && pos % 3 != 0? pos : -1;
+                    assertEquals(lf, buffer.indexOf(0, length, (byte) '\n'));
+                    assertEquals(lf, buffer.indexOf(0, length, ChannelBufferIndexFinder.LF));
+                    if (pos >= 0) {
+                        assertEquals(-1, indexOfAny(buffer, pos + 1, length, (byte) '\r', (byte) '\n'));
+                        assertEquals(-1, indexOfAny(buffer, 0, pos, (byte) '\r', (byte) '\n'));
+                    }
+                }
+            }
+        }
+    }
 }
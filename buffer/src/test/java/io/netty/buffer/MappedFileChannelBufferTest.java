@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests buffers mapped from a file in several segments
+ */
+public class MappedFileChannelBufferTest extends AbstractChannelBufferTest {
+
+    private RandomAccessFile file;
+    private File path;
+    private MappedFileChannelBuffer buffer;
+
+    @Override
+    protected ChannelBuffer newBuffer(int length) {
+        try {
+            path = File.createTempFile("netty-", ".tmp");
+            path.deleteOnExit();
+            file = new RandomAccessFile(path, "rw");
+            file.setLength(length + 100);
+            buffer = new MappedFileChannelBuffer(file.getChannel(), MapMode.READ_WRITE, 100, length, 1000);
+        } catch (IOException e) {
+            throw new Error(e);
+        }
+        assertEquals(100, buffer.getPosition());
+        assertEquals(length, buffer.capacity());
+        assertTrue(buffer.isDirect());
+        buffer.writerIndex(0);
+        return buffer;
+    }
+
+    @Override
+    protected ChannelBuffer[] components() {
+        return new ChannelBuffer[] { buffer };
+    }
+
+    @Override
+    protected boolean discardReadBytesDoesNotMoveWritableBytes() {
+        return false;
+    }
+
+    @After
+    public void closeFile() throws IOException {
+        buffer.release();
+        file.close();
+        path.delete();
+    }
+
+    @Test
+    public void testSegments() throws IOException {
+        ByteBuffer[] segments = buffer.toByteBuffers(0, buffer.capacity());
+        assertEquals(5, segments.length);
+        for (ByteBuffer segment: segments) {
+            assertTrue(segment.isDirect());
+        }
+        assertEquals(2, buffer.toByteBuffers(999, 2).length);
+
+        // Writes go to the file.
+        buffer.setInt(998, 0x01020304);
+        file.seek(100 + 998);
+        assertEquals(0x01020304, file.readInt());
+    }
+
+    @Test
+    public void testMappedBuffers() throws IOException {
+        FileChannel channel = file.getChannel();
+        buffer.setBytes(0, new byte[] { 1, 2, 3, 4 });
+
+        MappedFileChannelBuffer mapped = ChannelBuffers.mappedBuffer(channel, 100, 4);
+        assertEquals(ChannelBuffers.wrappedBuffer(new byte[] { 1, 2, 3, 4 }), mapped);
+        mapped.release();
+        mapped.release();
+
+        MappedFileChannelBuffer[] buffers = ChannelBuffers.mappedBuffers(channel, 101, 3);
+        assertEquals(1, buffers.length);
+        assertEquals(ChannelBuffers.wrappedBuffer(new byte[] { 2, 3, 4 }), buffers[0]);
+        buffers[0].release();
+
+        buffers = ChannelBuffers.mappedBuffers(channel, 0, 0);
+        assertEquals(1, buffers.length);
+        assertEquals(0, buffers[0].capacity());
+    }
+
+    @Test
+    public void testAccessAfterRelease() {
+        buffer.writerIndex(buffer.capacity());
+        ChannelBuffer slice = buffer.slice(990, 20);
+        ChannelBuffer duplicate = buffer.duplicate();
+        ChannelBuffer sliceOfSegment = buffer.slice(10, 20).slice(5, 5);
+        buffer.release();
+
+        ChannelBuffer[] released = { buffer, slice, duplicate, sliceOfSegment };
+        for (ChannelBuffer b: released) {
+            try {
+                b.getByte(0);
+                fail();
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            try {
+                b.getBytes(0, new byte[b.capacity()]);
+                fail();
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            try {
+                b.toByteBuffers();
+                fail();
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testReleaseWhileWriting() {
+        buffer.writeStarted();
+        try {
+            buffer.release();
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        buffer.getByte(0);
+
+        buffer.writeFinished();
+        buffer.release();
+        try {
+            buffer.writeStarted();
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
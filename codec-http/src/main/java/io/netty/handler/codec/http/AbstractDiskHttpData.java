@@ -20,12 +20,16 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 
 import io.netty.buffer.ChannelBuffer;
 import io.netty.buffer.ChannelBuffers;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.handler.stream.ChunkedNioFile;
 
 /**
  * Abstract Disk HttpData implementation
@@ -34,7 +38,20 @@ public abstract class AbstractDiskHttpData extends AbstractHttpData {
 
     protected File file;
     private boolean isRenamed;
+    /**
+     * The channel appending the chunks of the content
+     */
     private FileChannel fileChannel;
+    /**
+     * The channel reading the chunks of the content, and the position of the next chunk
+     */
+    private FileChannel readChannel;
+    private long readPosition;
+    /**
+     * True while a mapping returned by {@link #getMappedChannelBuffer()} may still refer
+     * to the file
+     */
+    private boolean mapped;
 
     public AbstractDiskHttpData(String name, Charset charset, long size) {
         super(name, charset, size);
@@ -105,21 +122,20 @@ public abstract class AbstractDiskHttpData extends AbstractHttpData {
         if (file == null) {
             file = tempFile();
         }
+        closeReadChannel();
         if (buffer.readableBytes() == 0) {
             // empty file
             file.createNewFile();
             return;
         }
-        FileOutputStream outputStream = new FileOutputStream(file);
-        FileChannel localfileChannel = outputStream.getChannel();
-        ByteBuffer byteBuffer = buffer.toByteBuffer();
-        int written = 0;
-        while (written < size) {
-            written += localfileChannel.write(byteBuffer);
+        unlinkIfMapped();
+        FileChannel localfileChannel = new FileOutputStream(file).getChannel();
+        try {
+            write(localfileChannel, buffer);
             localfileChannel.force(false);
+        } finally {
+            localfileChannel.close();
         }
-        buffer.readerIndex(buffer.readerIndex() + written);
-        localfileChannel.close();
         completed = true;
     }
 
@@ -132,32 +148,33 @@ public abstract class AbstractDiskHttpData extends AbstractHttpData {
                 throw new IOException("Out of size: " + (size + localsize) +
                         " > " + definedSize);
             }
-            ByteBuffer byteBuffer = buffer.toByteBuffer();
-            int written = 0;
             if (file == null) {
                 file = tempFile();
             }
             if (fileChannel == null) {
+                // kept open to append all the chunks
+                unlinkIfMapped();
                 FileOutputStream outputStream = new FileOutputStream(file);
                 fileChannel = outputStream.getChannel();
             }
-            while (written < localsize) {
-                written += fileChannel.write(byteBuffer);
-                fileChannel.force(false);
-            }
+            write(fileChannel, buffer);
             size += localsize;
-            buffer.readerIndex(buffer.readerIndex() + written);
         }
         if (last) {
             if (file == null) {
                 file = tempFile();
             }
             if (fileChannel == null) {
+                unlinkIfMapped();
                 FileOutputStream outputStream = new FileOutputStream(file);
                 fileChannel = outputStream.getChannel();
             }
-            fileChannel.close();
-            fileChannel = null;
+            try {
+                fileChannel.force(false);
+            } finally {
+                fileChannel.close();
+                fileChannel = null;
+            }
             completed = true;
         } else {
             if (buffer == null) {
@@ -166,12 +183,38 @@ public abstract class AbstractDiskHttpData extends AbstractHttpData {
         }
     }
 
+    /**
+     * Write all the readable bytes of the buffer, component per component so that a
+     * composite buffer is not copied
+     */
+    private static void write(FileChannel channel, ChannelBuffer buffer) throws IOException {
+        for (ByteBuffer byteBuffer: buffer.toByteBuffers()) {
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+        }
+        buffer.readerIndex(buffer.writerIndex());
+    }
+
+    /**
+     * A file which is still mapped must not be truncated, otherwise any access to the
+     * mapping beyond the new end of file crashes the JVM. Unlinking it first lets the
+     * mapping keep the previous content while the content is written to a new file.
+     */
+    private void unlinkIfMapped() {
+        if (mapped) {
+            file.delete();
+            mapped = false;
+        }
+    }
+
     @Override
     public void setContent(File file) throws IOException {
         if (this.file != null) {
             delete();
         }
         this.file = file;
+        mapped = false;
         size = file.length();
         isRenamed = true;
         completed = true;
@@ -186,17 +229,25 @@ public abstract class AbstractDiskHttpData extends AbstractHttpData {
             delete();
         }
         file = tempFile();
+        mapped = false;
         FileOutputStream outputStream = new FileOutputStream(file);
         FileChannel localfileChannel = outputStream.getChannel();
         byte[] bytes = new byte[4096 * 4];
         ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
-        int read = inputStream.read(bytes);
         int written = 0;
-        while (read > 0) {
-            byteBuffer.position(read).flip();
-            written += localfileChannel.write(byteBuffer);
+        try {
+            int read = inputStream.read(bytes);
+            while (read > 0) {
+                byteBuffer.position(read).flip();
+                while (byteBuffer.hasRemaining()) {
+                    written += localfileChannel.write(byteBuffer);
+                }
+                byteBuffer.clear();
+                read = inputStream.read(bytes);
+            }
             localfileChannel.force(false);
-            read = inputStream.read(bytes);
+        } finally {
+            localfileChannel.close();
         }
         size = written;
         if (definedSize > 0 && definedSize < size) {
@@ -210,6 +261,15 @@ public abstract class AbstractDiskHttpData extends AbstractHttpData {
 
     @Override
     public void delete() {
+        closeReadChannel();
+        if (fileChannel != null) {
+            try {
+                fileChannel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            fileChannel = null;
+        }
         if (! isRenamed) {
             if (file != null) {
                 file.delete();
@@ -234,35 +294,128 @@ public abstract class AbstractDiskHttpData extends AbstractHttpData {
         return ChannelBuffers.wrappedBuffer(array);
     }
 
+    /**
+     * Memory-map the content rather than loading it into the heap, so that it can be
+     * forwarded without being copied.<br>
+     * The returned buffer is read-only and has no backing array. It keeps the content
+     * at the time of the call even if the content is changed afterwards, and the disk
+     * space of a deleted file is only released once the buffer is garbage collected.
+     * @return a buffer mapping the whole content
+     * @throws IOException
+     */
+    public ChannelBuffer getMappedChannelBuffer() throws IOException {
+        if (file == null) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        long srcsize = file.length();
+        if (srcsize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "File too big to be mapped in memory");
+        }
+        if (srcsize == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            // the mapping remains valid once the channel is closed
+            ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, srcsize));
+            mapped = true;
+            return buffer;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return a {@link FileRegion} of the whole content, which can be written to a
+     *         {@link io.netty.channel.Channel} without copying the content into the heap
+     *         when the transport supports it. The region opens its own file descriptor,
+     *         which is released once the region is written.
+     * @throws IOException
+     */
+    public FileRegion getFileRegion() throws IOException {
+        if (file == null) {
+            throw new IOException("No file defined");
+        }
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        return new DefaultFileRegion(channel, 0, channel.size(), true);
+    }
+
+    /**
+     * @param chunkSize the number of bytes to fetch per chunk
+     * @return a {@link ChunkedNioFile} of the whole content to be written through a
+     *         {@link io.netty.handler.stream.ChunkedWriteHandler}. It opens its own file
+     *         descriptor, so it does not interfere with {@link #getChunk(int)}.
+     * @throws IOException
+     */
+    public ChunkedNioFile getChunkedInput(int chunkSize) throws IOException {
+        if (file == null) {
+            throw new IOException("No file defined");
+        }
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        return new ChunkedNioFile(channel, 0, channel.size(), chunkSize);
+    }
+
     @Override
     public ChannelBuffer getChunk(int length) throws IOException {
         if (file == null || length == 0) {
             return ChannelBuffers.EMPTY_BUFFER;
         }
-        if (fileChannel == null) {
-            FileInputStream  inputStream = new FileInputStream(file);
-            fileChannel = inputStream.getChannel();
+        ChannelBuffer buffer = getChunk(readPosition, length);
+        if (buffer.readableBytes() < length) {
+            // end of file, so restart from the beginning the next time
+            closeReadChannel();
+        } else {
+            readPosition += buffer.readableBytes();
+        }
+        return buffer;
+    }
+
+    /**
+     * Read a chunk at the given position of the content, without changing the position
+     * used by {@link #getChunk(int)}
+     * @param position the position of the chunk in the content
+     * @param length the maximum length of the chunk
+     * @return the chunk, which is shorter than length at the end of the content
+     * @throws IOException
+     */
+    public ChannelBuffer getChunk(long position, int length) throws IOException {
+        if (position < 0) {
+            throw new IllegalArgumentException("position: " + position + " (expected: 0 or greater)");
+        }
+        if (file == null || length == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        if (readChannel == null) {
+            readChannel = new RandomAccessFile(file, "r").getChannel();
         }
         int read = 0;
         ByteBuffer byteBuffer = ByteBuffer.allocate(length);
         while (read < length) {
-            int readnow = fileChannel.read(byteBuffer);
+            int readnow = readChannel.read(byteBuffer, position + read);
             if (readnow == -1) {
-                fileChannel.close();
-                fileChannel = null;
                 break;
-            } else {
-                read += readnow;
             }
+            read += readnow;
         }
         if (read == 0) {
             return ChannelBuffers.EMPTY_BUFFER;
         }
         byteBuffer.flip();
-        ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(byteBuffer);
-        buffer.readerIndex(0);
-        buffer.writerIndex(read);
-        return buffer;
+        return ChannelBuffers.wrappedBuffer(byteBuffer);
+    }
+
+    private void closeReadChannel() {
+        readPosition = 0;
+        if (readChannel != null) {
+            try {
+                readChannel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            readChannel = null;
+        }
     }
 
     @Override
@@ -293,16 +446,28 @@ public abstract class AbstractDiskHttpData extends AbstractHttpData {
         if (dest == null) {
             throw new NullPointerException("dest");
         }
+        closeReadChannel();
         if (!file.renameTo(dest)) {
             // must copy
-            FileInputStream inputStream = new FileInputStream(file);
-            FileOutputStream outputStream = new FileOutputStream(dest);
-            FileChannel in = inputStream.getChannel();
-            FileChannel out = outputStream.getChannel();
-            long destsize = in.transferTo(0, size, out);
+            FileChannel in = new FileInputStream(file).getChannel();
+            FileChannel out = new FileOutputStream(dest).getChannel();
+            long destsize = 0;
+            try {
+                while (destsize < size) {
+                    long transferred = in.transferTo(destsize, size - destsize, out);
+                    if (transferred <= 0) {
+                        break;
+                    }
+                    destsize += transferred;
+                }
+            } finally {
+                in.close();
+                out.close();
+            }
             if (destsize == size) {
                 file.delete();
                 file = dest;
+                mapped = false;
                 isRenamed = true;
                 return true;
             } else {
@@ -321,22 +486,25 @@ public abstract class AbstractDiskHttpData extends AbstractHttpData {
      * @return the array of bytes
      * @throws IOException
      */
-    private byte[] readFrom(File src) throws IOException {
+    private static byte[] readFrom(File src) throws IOException {
         long srcsize = src.length();
         if (srcsize > Integer.MAX_VALUE) {
             throw new IllegalArgumentException(
                     "File too big to be loaded in memory");
         }
-        FileInputStream inputStream = new FileInputStream(src);
-        FileChannel fileChannel = inputStream.getChannel();
-        byte[] array = new byte[(int) srcsize];
-        ByteBuffer byteBuffer = ByteBuffer.wrap(array);
-        int read = 0;
-        while (read < srcsize) {
-            read += fileChannel.read(byteBuffer);
+        FileChannel fileChannel = new FileInputStream(src).getChannel();
+        try {
+            byte[] array = new byte[(int) srcsize];
+            ByteBuffer byteBuffer = ByteBuffer.wrap(array);
+            while (byteBuffer.hasRemaining()) {
+                if (fileChannel.read(byteBuffer) < 0) {
+                    throw new IOException("Unexpected end of file: " + src);
+                }
+            }
+            return array;
+        } finally {
+            fileChannel.close();
         }
-        fileChannel.close();
-        return array;
     }
 
     @Override
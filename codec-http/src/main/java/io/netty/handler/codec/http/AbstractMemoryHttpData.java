@@ -26,6 +26,7 @@ import java.nio.charset.Charset;
 
 import io.netty.buffer.ChannelBuffer;
 import io.netty.buffer.ChannelBuffers;
+import io.netty.buffer.DirectChannelBufferFactory;
 
 /**
  * Abstract Memory HttpData implementation
@@ -34,6 +35,10 @@ public abstract class AbstractMemoryHttpData extends AbstractHttpData {
 
     private ChannelBuffer channelBuffer;
     private int chunkPosition;
+    /**
+     * True if the content is held in a direct buffer, where the added content is copied
+     */
+    private boolean direct;
     protected boolean isRenamed;
 
     public AbstractMemoryHttpData(String name, Charset charset, long size) {
@@ -51,6 +56,7 @@ public abstract class AbstractMemoryHttpData extends AbstractHttpData {
                     definedSize);
         }
         channelBuffer = buffer;
+        direct = false;
         size = localsize;
         completed = true;
     }
@@ -65,7 +71,7 @@ public abstract class AbstractMemoryHttpData extends AbstractHttpData {
         int read = inputStream.read(bytes);
         int written = 0;
         while (read > 0) {
-            buffer.writeBytes(bytes);
+            buffer.writeBytes(bytes, 0, read);
             written += read;
             read = inputStream.read(bytes);
         }
@@ -74,6 +80,7 @@ public abstract class AbstractMemoryHttpData extends AbstractHttpData {
             throw new IOException("Out of size: " + size + " > " + definedSize);
         }
         channelBuffer = buffer;
+        direct = false;
         completed = true;
     }
 
@@ -87,7 +94,9 @@ public abstract class AbstractMemoryHttpData extends AbstractHttpData {
                         " > " + definedSize);
             }
             size += localsize;
-            if (channelBuffer == null) {
+            if (direct) {
+                channelBuffer.writeBytes(buffer, buffer.readerIndex(), buffer.readableBytes());
+            } else if (channelBuffer == null) {
                 channelBuffer = buffer;
             } else {
                 channelBuffer = ChannelBuffers.wrappedBuffer(
@@ -124,10 +133,36 @@ public abstract class AbstractMemoryHttpData extends AbstractHttpData {
         fileChannel.close();
         byteBuffer.flip();
         channelBuffer = ChannelBuffers.wrappedBuffer(byteBuffer);
+        direct = false;
         size = newsize;
         completed = true;
     }
 
+    /**
+     * @return True if the content is held off the heap
+     */
+    boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Copy the content into a direct buffer, where the next added content will be copied too,
+     * so that the buffers received from the network are not retained on the heap
+     */
+    void moveToDirectBuffer() {
+        if (direct) {
+            return;
+        }
+        int estimatedLength = (int) Math.min(Integer.MAX_VALUE, Math.max(definedSize, size << 1));
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(
+                Math.max(estimatedLength, 256), DirectChannelBufferFactory.getInstance());
+        if (channelBuffer != null) {
+            buffer.writeBytes(channelBuffer, channelBuffer.readerIndex(), channelBuffer.readableBytes());
+        }
+        channelBuffer = buffer;
+        direct = true;
+    }
+
     @Override
     public void delete() {
         // nothing to do
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http;
+
+import io.netty.buffer.ChannelBuffer;
+
+/**
+ * A {@link CharSequence} of single-byte (US-ASCII) characters, used to store
+ * HTTP header names and values.  An {@link AsciiString} can be created either
+ * from the raw bytes read by {@link HttpMessageDecoder} or from a
+ * {@link String}, and is converted into a {@link String} only when it is
+ * asked for, so that a header which is decoded and then encoded again never
+ * goes through a UTF-16 conversion.
+ * <p>
+ * The bytes of an {@link AsciiString} are final, so an instance can be shared
+ * between threads freely, like the header name constants are.
+ * <p>
+ * Please note that {@link #hashCode()} is case-insensitive while
+ * {@link #equals(Object)} is not, which is what the header table needs.
+ */
+public final class AsciiString implements CharSequence {
+
+    /**
+     * The empty {@link AsciiString}.
+     */
+    public static final AsciiString EMPTY = new AsciiString("");
+
+    /**
+     * Returns an {@link AsciiString} whose content is the specified
+     * {@link CharSequence}.  If the specified sequence is already an
+     * {@link AsciiString}, it is returned as it is.
+     */
+    public static AsciiString of(CharSequence value) {
+        if (value instanceof AsciiString) {
+            return (AsciiString) value;
+        }
+        return new AsciiString(value.toString());
+    }
+
+    /**
+     * Returns the case-insensitive hash code of the specified sequence.
+     * The returned value is equal to {@link #hashCode()} of the
+     * {@link AsciiString} with the same content.
+     */
+    public static int caseInsensitiveHashCode(CharSequence value) {
+        if (value instanceof AsciiString) {
+            return value.hashCode();
+        }
+
+        int h = 0;
+        final int length = value.length();
+        for (int i = 0; i < length; i ++) {
+            h = 31 * h + toLowerCase(encode(value.charAt(i)));
+        }
+        return h;
+    }
+
+    private static char toLowerCase(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            c += 32;
+        }
+        return c;
+    }
+
+    private static int toLowerCase(byte b) {
+        if (b >= 'A' && b <= 'Z') {
+            b += 32;
+        }
+        return b & 0xFF;
+    }
+
+    private final byte[] value;
+    private final int offset;
+    private final int length;
+    private String string;
+    private int hash;
+
+    /**
+     * Creates a new instance whose content is the specified {@link String}.
+     * The characters which are not US-ASCII are replaced with {@code '?'}
+     * when this string is encoded.
+     */
+    public AsciiString(String value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        string = value;
+        length = value.length();
+        this.value = encode(value);
+        offset = 0;
+    }
+
+    /**
+     * Creates a new instance whose content is the specified byte array.
+     * The array is not copied.
+     */
+    public AsciiString(byte[] value) {
+        this(value, 0, value.length, false);
+    }
+
+    /**
+     * Creates a new instance whose content is the specified region of the
+     * specified byte array.
+     *
+     * @param copy {@code true} to copy the region, {@code false} to share it
+     */
+    public AsciiString(byte[] value, int start, int length, boolean copy) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        if (start < 0 || length < 0 || start + length > value.length) {
+            throw new IndexOutOfBoundsException(
+                    "start: " + start + ", length: " + length +
+                    " (expected: 0 <= start <= start + length <= " + value.length + ')');
+        }
+
+        if (copy) {
+            byte[] v = new byte[length];
+            System.arraycopy(value, start, v, 0, length);
+            this.value = v;
+            offset = 0;
+        } else {
+            this.value = value;
+            offset = start;
+        }
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (string != null) {
+            return string.charAt(index);
+        }
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(
+                    "index: " + index + " (expected: 0 <= index < " + length + ')');
+        }
+        return (char) (value[offset + index] & 0xFF);
+    }
+
+    /**
+     * Returns the byte at the specified index.
+     */
+    public byte byteAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(
+                    "index: " + index + " (expected: 0 <= index < " + length + ')');
+        }
+        return value[offset + index];
+    }
+
+    @Override
+    public AsciiString subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "start: " + start + ", end: " + end +
+                    " (expected: 0 <= start <= end <= " + length + ')');
+        }
+        if (start == 0 && end == length) {
+            return this;
+        }
+        return new AsciiString(value, offset + start, end - start, false);
+    }
+
+    /**
+     * Writes the content of this string into the specified buffer.
+     */
+    public void writeTo(ChannelBuffer buffer) {
+        buffer.writeBytes(value, offset, length);
+    }
+
+    /**
+     * Returns {@code true} if and only if this string has the same content
+     * with the specified sequence, ignoring the case of US-ASCII letters.
+     */
+    public boolean contentEqualsIgnoreCase(CharSequence other) {
+        if (other == this) {
+            return true;
+        }
+        if (other == null || other.length() != length) {
+            return false;
+        }
+
+        if (other instanceof AsciiString) {
+            AsciiString o = (AsciiString) other;
+            final byte[] a = value;
+            final byte[] b = o.value;
+            for (int i = offset, j = o.offset, end = offset + length; i < end; i ++, j ++) {
+                byte c1 = a[i];
+                byte c2 = b[j];
+                if (c1 != c2 && toLowerCase(c1) != toLowerCase(c2)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        for (int i = 0; i < length; i ++) {
+            char c1 = charAt(i);
+            char c2 = other.charAt(i);
+            if (c1 != c2 && toLowerCase(c1) != toLowerCase(c2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the case-insensitive hash code of this string.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            final byte[] a = value;
+            for (int i = offset, end = offset + length; i < end; i ++) {
+                h = 31 * h + toLowerCase(a[i]);
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Returns {@code true} if and only if the specified object is an
+     * {@link AsciiString} with the same content.  The comparison is
+     * case-sensitive.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof AsciiString)) {
+            return false;
+        }
+
+        AsciiString that = (AsciiString) o;
+        if (length != that.length || hashCode() != that.hashCode()) {
+            return false;
+        }
+        for (int i = 0; i < length; i ++) {
+            if (charAt(i) != that.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        String s = string;
+        if (s == null) {
+            final byte[] a = value;
+            final char[] chars = new char[length];
+            for (int i = 0, j = offset; i < chars.length; i ++, j ++) {
+                chars[i] = (char) (a[j] & 0xFF);
+            }
+            string = s = new String(chars);
+        }
+        return s;
+    }
+
+    private static byte[] encode(String s) {
+        final byte[] a = new byte[s.length()];
+        for (int i = 0; i < a.length; i ++) {
+            a[i] = encode(s.charAt(i));
+        }
+        return a;
+    }
+
+    private static byte encode(char c) {
+        if (c > 127) {
+            return '?';
+        }
+        return (byte) c;
+    }
+}
@@ -15,14 +15,11 @@
  */
 package io.netty.handler.codec.http;
 
-import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Decodes an HTTP header value into {@link Cookie}s.  This decoder can decode
@@ -34,6 +31,9 @@ import java.util.regex.Pattern;
  * Set&lt;{@link Cookie}&gt; cookies = new {@link CookieDecoder}().decode(value);
  * </pre>
  *
+ * If you are interested in only one cookie, {@link #find(String, String)}
+ * decodes it without creating the other {@link Cookie}s.
+ *
  * @see CookieEncoder
  *
  * @apiviz.stereotype utility
@@ -41,9 +41,6 @@ import java.util.regex.Pattern;
  */
 public class CookieDecoder {
 
-    private static final Pattern PATTERN =
-        Pattern.compile("(?:\\s|[;,])*\\$*([^;=]+)(?:=(?:[\"']((?:\\\\.|[^\"])*)[\"']|([^;,]*)))?(\\s*(?:[;,]+\\s*|$))");
-
     private static final String COMMA = ",";
 
     private final boolean lenient;
@@ -70,51 +67,62 @@ public class CookieDecoder {
      * @return the decoded {@link Cookie}s
      */
     public Set<Cookie> decode(String header) {
-        List<String> names = new ArrayList<String>(8);
-        List<String> values = new ArrayList<String>(8);
-        extractKeyValuePairs(header, names, values);
-
-        if (names.isEmpty()) {
+        Set<Cookie> cookies = new TreeSet<Cookie>();
+        decode(header, null, cookies);
+        if (cookies.isEmpty()) {
             return Collections.emptySet();
         }
+        return cookies;
+    }
+
+    /**
+     * Decodes the first {@link Cookie} with the specified name from the
+     * specified HTTP header value.  The other cookies are skipped without
+     * being created.
+     *
+     * @return the decoded {@link Cookie}, or {@code null} if there's no
+     *         cookie with the specified name
+     */
+    public Cookie find(String header, String name) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        return decode(header, name, null);
+    }
+
+    private Cookie decode(String header, String wantedName, Set<Cookie> cookies) {
+        KeyValueParser parser = new KeyValueParser(header);
+        if (!parser.next()) {
+            return null;
+        }
 
-        int i;
         int version = 0;
+        boolean hasNext = true;
 
         // $Version is the only attribute that can appear before the actual
         // cookie name-value pair.
-        if (names.get(0).equalsIgnoreCase(CookieHeaderNames.VERSION)) {
+        if (parser.name.equalsIgnoreCase(CookieHeaderNames.VERSION)) {
             try {
-                version = Integer.parseInt(values.get(0));
+                version = Integer.parseInt(parser.value);
             } catch (NumberFormatException e) {
                 // Ignore.
             }
-            i = 1;
-        } else {
-            i = 0;
-        }
-
-        if (names.size() <= i) {
-            // There's a version attribute, but nothing more.
-            return Collections.emptySet();
+            hasNext = parser.next();
         }
 
-        Set<Cookie> cookies = new TreeSet<Cookie>();
-        for (; i < names.size(); i ++) {
-            String name = names.get(i);
+        while (hasNext) {
+            String cookieName = parser.name;
             // Not all user agents understand the HttpOnly attribute
-            if (lenient && CookieHeaderNames.HTTPONLY.equalsIgnoreCase(name)) {
+            if (lenient && CookieHeaderNames.HTTPONLY.equalsIgnoreCase(cookieName)) {
+                hasNext = parser.next();
                 continue;
             }
 
-            String value = values.get(i);
-            if (value == null) {
-                value = "";
+            String cookieValue = parser.value;
+            if (cookieValue == null) {
+                cookieValue = "";
             }
 
-            Cookie c = new DefaultCookie(name, value);
-            cookies.add(c);
-
             boolean discard = false;
             boolean secure = false;
             boolean httpOnly = false;
@@ -123,11 +131,16 @@ public class CookieDecoder {
             String domain = null;
             String path = null;
             int maxAge = -1;
-            List<Integer> ports = new ArrayList<Integer>(2);
+            List<Integer> ports = null;
+
+            for (;;) {
+                hasNext = parser.next();
+                if (!hasNext) {
+                    break;
+                }
 
-            for (int j = i + 1; j < names.size(); j++, i++) {
-                name = names.get(j);
-                value = values.get(j);
+                String name = parser.name;
+                String value = parser.value;
 
                 if (CookieHeaderNames.DISCARD.equalsIgnoreCase(name)) {
                     discard = true;
@@ -144,18 +157,15 @@ public class CookieDecoder {
                 } else if (CookieHeaderNames.PATH.equalsIgnoreCase(name)) {
                     path = value;
                 } else if (CookieHeaderNames.EXPIRES.equalsIgnoreCase(name)) {
-                    try {
-                        long maxAgeMillis =
-                            new HttpHeaderDateFormat().parse(value).getTime() -
-                            System.currentTimeMillis();
+                    long expires = HttpHeaderDates.parse(value);
+                    if (expires != HttpHeaderDates.INVALID) {
+                        long maxAgeMillis = expires - System.currentTimeMillis();
                         if (maxAgeMillis <= 0) {
                             maxAge = 0;
                         } else {
                             maxAge = (int) (maxAgeMillis / 1000) +
                                      (maxAgeMillis % 1000 != 0? 1 : 0);
                         }
-                    } catch (ParseException e) {
-                        // Ignore.
                     }
                 } else if (CookieHeaderNames.MAX_AGE.equalsIgnoreCase(name)) {
                     maxAge = Integer.parseInt(value);
@@ -165,6 +175,9 @@ public class CookieDecoder {
                     String[] portList = value.split(COMMA);
                     for (String s1: portList) {
                         try {
+                            if (ports == null) {
+                                ports = new ArrayList<Integer>(2);
+                            }
                             ports.add(Integer.valueOf(s1));
                         } catch (NumberFormatException e) {
                             // Ignore.
@@ -175,6 +188,11 @@ public class CookieDecoder {
                 }
             }
 
+            if (wantedName != null && !wantedName.equals(cookieName.trim())) {
+                continue;
+            }
+
+            Cookie c = new DefaultCookie(cookieName, cookieValue);
             c.setVersion(version);
             c.setMaxAge(maxAge);
             c.setPath(path);
@@ -186,67 +204,248 @@ public class CookieDecoder {
             }
             if (version > 1) {
                 c.setCommentUrl(commentURL);
-                c.setPorts(ports);
+                if (ports != null) {
+                    c.setPorts(ports);
+                }
                 c.setDiscard(discard);
             }
+
+            if (cookies == null) {
+                return c;
+            }
+            cookies.add(c);
         }
 
-        return cookies;
+        return null;
     }
 
-    private void extractKeyValuePairs(
-            String header, List<String> names, List<String> values) {
-        Matcher m = PATTERN.matcher(header);
-        int pos = 0;
-        String name = null;
-        String value = null;
-        String separator = null;
-        while (m.find(pos)) {
-            pos = m.end();
-
-            // Extract name and value pair from the match.
-            String newName = m.group(1);
-            String newValue = m.group(3);
-            if (newValue == null) {
-                newValue = decodeValue(m.group(2));
-            }
-            String newSeparator = m.group(4);
-
-            if (name == null) {
-                name = newName;
-                value = newValue == null? "" : newValue;
-                separator = newSeparator;
-                continue;
+    /**
+     * Splits an HTTP header value into name-value pairs in a single pass.  A
+     * name without a value which is not a known attribute is appended to the
+     * previous value together with the separator before it, so that a value
+     * such as {@code a=b,c} is not broken.
+     */
+    private static final class KeyValueParser {
+
+        private final String header;
+        private int pos;
+
+        /**
+         * The current pair
+         */
+        String name;
+        String value;
+
+        /**
+         * The pair read ahead
+         */
+        private String nextName;
+        private String nextValue;
+        private String nextSeparator;
+        private boolean hasNext;
+        private boolean started;
+
+        /**
+         * The pair read by {@link #parse()}
+         */
+        private String parsedName;
+        private String parsedValue;
+        private String parsedSeparator;
+
+        KeyValueParser(String header) {
+            this.header = header;
+        }
+
+        /**
+         * Moves to the next pair.
+         *
+         * @return {@code false} if there are no more pairs
+         */
+        boolean next() {
+            if (!started) {
+                started = true;
+                if (parse()) {
+                    nextName = parsedName;
+                    nextValue = parsedValue == null? "" : parsedValue;
+                    nextSeparator = parsedSeparator;
+                    hasNext = true;
+                }
+            }
+            if (!hasNext) {
+                return false;
             }
 
-            if (newValue == null &&
-                !CookieHeaderNames.DISCARD.equalsIgnoreCase(newName) &&
-                !CookieHeaderNames.SECURE.equalsIgnoreCase(newName) &&
-                !CookieHeaderNames.HTTPONLY.equalsIgnoreCase(newName)) {
-                value = value + separator + newName;
-                separator = newSeparator;
-                continue;
+            name = nextName;
+            value = nextValue;
+            String separator = nextSeparator;
+            for (;;) {
+                if (!parse()) {
+                    hasNext = false;
+                    return true;
+                }
+
+                if (parsedValue == null &&
+                    !CookieHeaderNames.DISCARD.equalsIgnoreCase(parsedName) &&
+                    !CookieHeaderNames.SECURE.equalsIgnoreCase(parsedName) &&
+                    !CookieHeaderNames.HTTPONLY.equalsIgnoreCase(parsedName)) {
+                    value = value + separator + parsedName;
+                    separator = parsedSeparator;
+                    continue;
+                }
+
+                nextName = parsedName;
+                nextValue = parsedValue;
+                nextSeparator = parsedSeparator;
+                return true;
+            }
+        }
+
+        /**
+         * Reads a name, an optional value which may be quoted, and the
+         * separator which follows them.
+         */
+        private boolean parse() {
+            String header = this.header;
+            int length = header.length();
+            int i = pos;
+            int nameStart;
+            for (;;) {
+                // Skip the separators.
+                while (i < length) {
+                    char c = header.charAt(i);
+                    if (c != ';' && c != ',' && !isSpace(c)) {
+                        break;
+                    }
+                    i ++;
+                }
+                if (i == length) {
+                    pos = length;
+                    return false;
+                }
+
+                // Skip the '$' prefix of an attribute name.
+                nameStart = i;
+                while (i < length && header.charAt(i) == '$') {
+                    i ++;
+                }
+                if (i < length && header.charAt(i) != ';' && header.charAt(i) != '=') {
+                    break;
+                }
+                if (i > nameStart) {
+                    // The name consists of '$'s only.
+                    i --;
+                    break;
+                }
+                // No name before '=' - skip it.
+                i ++;
             }
 
-            names.add(name);
-            values.add(value);
+            nameStart = i;
+            while (i < length) {
+                char c = header.charAt(i);
+                if (c == ';' || c == '=') {
+                    break;
+                }
+                i ++;
+            }
+            parsedName = header.substring(nameStart, i);
+            parsedValue = null;
 
-            name = newName;
-            value = newValue;
-            separator = newSeparator;
+            if (i < length && header.charAt(i) == '=') {
+                i ++;
+                int end = -1;
+                if (i < length) {
+                    char c = header.charAt(i);
+                    if (c == '"' || c == '\'') {
+                        end = parseQuotedValue(i);
+                    }
+                }
+                if (end >= 0) {
+                    i = end;
+                } else {
+                    int valueStart = i;
+                    while (i < length) {
+                        char c = header.charAt(i);
+                        if (c == ';' || c == ',') {
+                            break;
+                        }
+                        i ++;
+                    }
+                    parsedValue = header.substring(valueStart, i);
+                }
+            }
+
+            int separatorStart = i;
+            while (i < length && isSpace(header.charAt(i))) {
+                i ++;
+            }
+            while (i < length && (header.charAt(i) == ';' || header.charAt(i) == ',')) {
+                i ++;
+            }
+            while (i < length && isSpace(header.charAt(i))) {
+                i ++;
+            }
+            parsedSeparator = header.substring(separatorStart, i);
+            pos = i;
+            return true;
         }
 
-        // The last entry
-        if (name != null) {
-            names.add(name);
-            values.add(value);
+        /**
+         * Reads the quoted value which begins at the specified index into
+         * {@link #parsedValue}.
+         *
+         * @return the index next to the closing quote, or {@code -1} if the
+         *         value is not closed by a quote followed by a separator
+         */
+        private int parseQuotedValue(int index) {
+            String header = this.header;
+            int length = header.length();
+            char quote = header.charAt(index);
+            StringBuilder buf = null;
+            int start = index + 1;
+            for (int i = start; i < length; i ++) {
+                char c = header.charAt(i);
+                if (c == '\\' && i + 1 < length) {
+                    if (buf == null) {
+                        buf = new StringBuilder(i - start + 16);
+                        buf.append(header, start, i);
+                    }
+                    char next = header.charAt(++ i);
+                    if (next != '"' && next != '\\') {
+                        buf.append(c);
+                    }
+                    buf.append(next);
+                    continue;
+                }
+
+                if (c == '"' || c == quote) {
+                    int j = i + 1;
+                    while (j < length && isSpace(header.charAt(j))) {
+                        j ++;
+                    }
+                    if (j == length || header.charAt(j) == ';' || header.charAt(j) == ',') {
+                        parsedValue = buf == null? header.substring(start, i) : buf.toString();
+                        return i + 1;
+                    }
+                    if (c == '"') {
+                        return -1;
+                    }
+                }
+
+                if (buf != null) {
+                    buf.append(c);
+                }
+            }
+            return -1;
         }
-    }
 
-    private String decodeValue(String value) {
-        if (value == null) {
-            return value;
+        private static boolean isSpace(char c) {
+            switch (c) {
+            case ' ': case '\t': case '\n': case 0x0b: case '\f': case '\r':
+                return true;
+            default:
+                return false;
+            }
         }
-        return value.replace("\\\"", "\"").replace("\\\\", "\\");
     }
 }
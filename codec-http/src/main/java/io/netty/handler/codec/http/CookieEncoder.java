@@ -15,10 +15,13 @@
  */
 package io.netty.handler.codec.http;
 
-import java.util.Date;
 import java.util.Set;
 import java.util.TreeSet;
 
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.util.CharsetUtil;
+
 /**
  * Encodes {@link Cookie}s into an HTTP header value.  This encoder can encode
  * the HTTP cookie version 0, 1, and 2.
@@ -84,136 +87,116 @@ public class CookieEncoder {
      * an empty string is returned.
      */
     public String encode() {
-        String answer;
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(cookies.size() * 64);
+        encode(buffer);
+        return buffer.toString(CharsetUtil.UTF_8);
+    }
+
+    /**
+     * Encodes the {@link Cookie}s which were added by {@link #addCookie(Cookie)}
+     * so far into an HTTP header value in UTF-8, and writes it to the
+     * specified buffer.  Nothing is written if no {@link Cookie}s were added.
+     */
+    public void encode(ChannelBuffer buffer) {
+        int start = buffer.writerIndex();
         if (server) {
-            answer = encodeServerSide();
+            encodeServerSide(buffer);
         } else {
-            answer = encodeClientSide();
+            encodeClientSide(buffer);
         }
         cookies.clear();
-        return answer;
-    }
 
-    private String encodeServerSide() {
-        StringBuilder sb = new StringBuilder();
+        if (buffer.writerIndex() > start) {
+            // Remove the last semicolon.
+            buffer.writerIndex(buffer.writerIndex() - 1);
+        }
+    }
 
+    private void encodeServerSide(ChannelBuffer buf) {
         for (Cookie cookie: cookies) {
-            add(sb, cookie.getName(), cookie.getValue());
+            add(buf, cookie.getName(), cookie.getValue());
 
             if (cookie.getMaxAge() >= 0) {
                 if (cookie.getVersion() == 0) {
-                    addUnquoted(sb, CookieHeaderNames.EXPIRES,
-                            new HttpHeaderDateFormat().format(
-                                    new Date(System.currentTimeMillis() +
-                                             cookie.getMaxAge() * 1000L)));
+                    addUnquoted(buf, CookieHeaderNames.EXPIRES,
+                            HttpHeaderDates.format(System.currentTimeMillis() + cookie.getMaxAge() * 1000L));
                 } else {
-                    add(sb, CookieHeaderNames.MAX_AGE, cookie.getMaxAge());
+                    add(buf, CookieHeaderNames.MAX_AGE, cookie.getMaxAge());
                 }
             }
 
             if (cookie.getPath() != null) {
                 if (cookie.getVersion() > 0) {
-                    add(sb, CookieHeaderNames.PATH, cookie.getPath());
+                    add(buf, CookieHeaderNames.PATH, cookie.getPath());
                 } else {
-                    addUnquoted(sb, CookieHeaderNames.PATH, cookie.getPath());
+                    addUnquoted(buf, CookieHeaderNames.PATH, cookie.getPath());
                 }
             }
 
             if (cookie.getDomain() != null) {
                 if (cookie.getVersion() > 0) {
-                    add(sb, CookieHeaderNames.DOMAIN, cookie.getDomain());
+                    add(buf, CookieHeaderNames.DOMAIN, cookie.getDomain());
                 } else {
-                    addUnquoted(sb, CookieHeaderNames.DOMAIN, cookie.getDomain());
+                    addUnquoted(buf, CookieHeaderNames.DOMAIN, cookie.getDomain());
                 }
             }
             if (cookie.isSecure()) {
-                sb.append(CookieHeaderNames.SECURE);
-                sb.append((char) HttpCodecUtil.SEMICOLON);
+                write(buf, CookieHeaderNames.SECURE);
+                buf.writeByte(HttpCodecUtil.SEMICOLON);
             }
             if (cookie.isHttpOnly()) {
-                sb.append(CookieHeaderNames.HTTPONLY);
-                sb.append((char) HttpCodecUtil.SEMICOLON);
+                write(buf, CookieHeaderNames.HTTPONLY);
+                buf.writeByte(HttpCodecUtil.SEMICOLON);
             }
             if (cookie.getVersion() >= 1) {
                 if (cookie.getComment() != null) {
-                    add(sb, CookieHeaderNames.COMMENT, cookie.getComment());
+                    add(buf, CookieHeaderNames.COMMENT, cookie.getComment());
                 }
 
-                add(sb, CookieHeaderNames.VERSION, 1);
+                add(buf, CookieHeaderNames.VERSION, 1);
 
                 if (cookie.getCommentUrl() != null) {
-                    addQuoted(sb, CookieHeaderNames.COMMENTURL, cookie.getCommentUrl());
+                    addQuoted(buf, CookieHeaderNames.COMMENTURL, cookie.getCommentUrl());
                 }
 
                 if (!cookie.getPorts().isEmpty()) {
-                    sb.append(CookieHeaderNames.PORT);
-                    sb.append((char) HttpCodecUtil.EQUALS);
-                    sb.append((char) HttpCodecUtil.DOUBLE_QUOTE);
-                    for (int port: cookie.getPorts()) {
-                        sb.append(port);
-                        sb.append((char) HttpCodecUtil.COMMA);
-                    }
-                    sb.setCharAt(sb.length() - 1, (char) HttpCodecUtil.DOUBLE_QUOTE);
-                    sb.append((char) HttpCodecUtil.SEMICOLON);
+                    addPorts(buf, CookieHeaderNames.PORT, cookie.getPorts());
                 }
                 if (cookie.isDiscard()) {
-                    sb.append(CookieHeaderNames.DISCARD);
-                    sb.append((char) HttpCodecUtil.SEMICOLON);
+                    write(buf, CookieHeaderNames.DISCARD);
+                    buf.writeByte(HttpCodecUtil.SEMICOLON);
                 }
             }
         }
-
-        if (sb.length() > 0) {
-            sb.setLength(sb.length() - 1);
-        }
-
-        return sb.toString();
     }
 
-    private String encodeClientSide() {
-        StringBuilder sb = new StringBuilder();
-
+    private void encodeClientSide(ChannelBuffer buf) {
         for (Cookie cookie: cookies) {
             if (cookie.getVersion() >= 1) {
-                add(sb, '$' + CookieHeaderNames.VERSION, 1);
+                add(buf, '$' + CookieHeaderNames.VERSION, 1);
             }
 
-            add(sb, cookie.getName(), cookie.getValue());
+            add(buf, cookie.getName(), cookie.getValue());
 
             if (cookie.getPath() != null) {
-                add(sb, '$' + CookieHeaderNames.PATH, cookie.getPath());
+                add(buf, '$' + CookieHeaderNames.PATH, cookie.getPath());
             }
 
             if (cookie.getDomain() != null) {
-                add(sb, '$' + CookieHeaderNames.DOMAIN, cookie.getDomain());
+                add(buf, '$' + CookieHeaderNames.DOMAIN, cookie.getDomain());
             }
 
             if (cookie.getVersion() >= 1) {
                 if (!cookie.getPorts().isEmpty()) {
-                    sb.append('$');
-                    sb.append(CookieHeaderNames.PORT);
-                    sb.append((char) HttpCodecUtil.EQUALS);
-                    sb.append((char) HttpCodecUtil.DOUBLE_QUOTE);
-                    for (int port: cookie.getPorts()) {
-                        sb.append(port);
-                        sb.append((char) HttpCodecUtil.COMMA);
-                    }
-                    sb.setCharAt(sb.length() - 1, (char) HttpCodecUtil.DOUBLE_QUOTE);
-                    sb.append((char) HttpCodecUtil.SEMICOLON);
+                    addPorts(buf, '$' + CookieHeaderNames.PORT, cookie.getPorts());
                 }
             }
         }
-
-        if (sb.length() > 0) {
-            sb.setLength(sb.length() - 1);
-        }
-
-        return sb.toString();
     }
 
-    private static void add(StringBuilder sb, String name, String val) {
+    private static void add(ChannelBuffer buf, String name, String val) {
         if (val == null) {
-            addQuoted(sb, name, "");
+            addQuoted(buf, name, "");
             return;
         }
 
@@ -224,38 +207,97 @@ public class CookieEncoder {
             case '/':  case ':': case ';': case '<':  case '=': case '>':
             case '?':  case '@': case '[': case '\\': case ']':
             case '{':  case '}':
-                addQuoted(sb, name, val);
+                addQuoted(buf, name, val);
                 return;
             }
         }
 
-        addUnquoted(sb, name, val);
+        addUnquoted(buf, name, val);
     }
 
-    private static void addUnquoted(StringBuilder sb, String name, String val) {
-        sb.append(name);
-        sb.append((char) HttpCodecUtil.EQUALS);
-        sb.append(val);
-        sb.append((char) HttpCodecUtil.SEMICOLON);
+    private static void addUnquoted(ChannelBuffer buf, String name, String val) {
+        write(buf, name);
+        buf.writeByte(HttpCodecUtil.EQUALS);
+        write(buf, val);
+        buf.writeByte(HttpCodecUtil.SEMICOLON);
     }
 
-    private static void addQuoted(StringBuilder sb, String name, String val) {
+    private static void addQuoted(ChannelBuffer buf, String name, String val) {
         if (val == null) {
             val = "";
         }
 
-        sb.append(name);
-        sb.append((char) HttpCodecUtil.EQUALS);
-        sb.append((char) HttpCodecUtil.DOUBLE_QUOTE);
-        sb.append(val.replace("\\", "\\\\").replace("\"", "\\\""));
-        sb.append((char) HttpCodecUtil.DOUBLE_QUOTE);
-        sb.append((char) HttpCodecUtil.SEMICOLON);
+        write(buf, name);
+        buf.writeByte(HttpCodecUtil.EQUALS);
+        buf.writeByte(HttpCodecUtil.DOUBLE_QUOTE);
+        if (isAscii(val)) {
+            for (int i = 0; i < val.length(); i ++) {
+                char c = val.charAt(i);
+                if (c == '\\' || c == '"') {
+                    buf.writeByte('\\');
+                }
+                buf.writeByte(c);
+            }
+        } else {
+            write(buf, val.replace("\\", "\\\\").replace("\"", "\\\""));
+        }
+        buf.writeByte(HttpCodecUtil.DOUBLE_QUOTE);
+        buf.writeByte(HttpCodecUtil.SEMICOLON);
     }
 
-    private static void add(StringBuilder sb, String name, int val) {
-        sb.append(name);
-        sb.append((char) HttpCodecUtil.EQUALS);
-        sb.append(val);
-        sb.append((char) HttpCodecUtil.SEMICOLON);
+    private static void add(ChannelBuffer buf, String name, int val) {
+        write(buf, name);
+        buf.writeByte(HttpCodecUtil.EQUALS);
+        writeInt(buf, val);
+        buf.writeByte(HttpCodecUtil.SEMICOLON);
+    }
+
+    private static void addPorts(ChannelBuffer buf, String name, Set<Integer> ports) {
+        write(buf, name);
+        buf.writeByte(HttpCodecUtil.EQUALS);
+        buf.writeByte(HttpCodecUtil.DOUBLE_QUOTE);
+        for (int port: ports) {
+            writeInt(buf, port);
+            buf.writeByte(HttpCodecUtil.COMMA);
+        }
+        buf.setByte(buf.writerIndex() - 1, HttpCodecUtil.DOUBLE_QUOTE);
+        buf.writeByte(HttpCodecUtil.SEMICOLON);
+    }
+
+    private static void write(ChannelBuffer buf, String s) {
+        if (!isAscii(s)) {
+            buf.writeBytes(s.getBytes(CharsetUtil.UTF_8));
+            return;
+        }
+        for (int i = 0; i < s.length(); i ++) {
+            buf.writeByte(s.charAt(i));
+        }
+    }
+
+    private static void writeInt(ChannelBuffer buf, int val) {
+        if (val < 0) {
+            if (val == Integer.MIN_VALUE) {
+                write(buf, String.valueOf(val));
+                return;
+            }
+            buf.writeByte('-');
+            val = -val;
+        }
+        int divisor = 1;
+        while (val / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buf.writeByte('0' + val / divisor % 10);
+        }
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i ++) {
+            if (s.charAt(i) > 127) {
+                return false;
+            }
+        }
+        return true;
     }
 }
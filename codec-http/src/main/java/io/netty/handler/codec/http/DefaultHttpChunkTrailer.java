@@ -29,11 +29,12 @@ public class DefaultHttpChunkTrailer implements HttpChunkTrailer {
 
     private final HttpHeaders headers = new HttpHeaders() {
         @Override
-        void validateHeaderName(String name) {
+        void validateHeaderName(CharSequence name) {
             super.validateHeaderName(name);
-            if (name.equalsIgnoreCase(HttpHeaders.Names.CONTENT_LENGTH) ||
-                name.equalsIgnoreCase(HttpHeaders.Names.TRANSFER_ENCODING) ||
-                name.equalsIgnoreCase(HttpHeaders.Names.TRAILER)) {
+            AsciiString asciiName = AsciiString.of(name);
+            if (asciiName.contentEqualsIgnoreCase(HttpHeaders.Names.CONTENT_LENGTH) ||
+                asciiName.contentEqualsIgnoreCase(HttpHeaders.Names.TRANSFER_ENCODING) ||
+                asciiName.contentEqualsIgnoreCase(HttpHeaders.Names.TRAILER)) {
                 throw new IllegalArgumentException(
                         "prohibited trailing header: " + name);
             }
@@ -45,6 +46,14 @@ public class DefaultHttpChunkTrailer implements HttpChunkTrailer {
         return true;
     }
 
+    /**
+     * Returns the header storage of this message, which is accessed directly
+     * by {@link HttpMessageDecoder} and {@link HttpMessageEncoder}.
+     */
+    HttpHeaders headers() {
+        return headers;
+    }
+
     @Override
     public void addHeader(final String name, final Object value) {
         headers.addHeader(name, value);
@@ -41,6 +41,10 @@ public class DefaultHttpDataFactory implements HttpDataFactory {
 
     private long minSize;
 
+    private long directSize;
+
+    private HttpDataMemoryBudget budget = HttpDataMemoryBudget.getDefault();
+
     /**
      * Keep all HttpDatas until cleanAllHttpDatas() is called.
      */
@@ -54,6 +58,7 @@ public class DefaultHttpDataFactory implements HttpDataFactory {
         useDisk = false;
         checkSize = true;
         this.minSize = MINSIZE;
+        directSize = minSize;
     }
 
     /**
@@ -74,6 +79,27 @@ public class DefaultHttpDataFactory implements HttpDataFactory {
         useDisk = false;
         checkSize = true;
         this.minSize = minSize;
+        directSize = minSize;
+    }
+
+    /**
+     * HttpData will be in heap memory if its size is not greater than minSize, in direct
+     * (off-heap) memory if its size is not greater than directSize, else on Disk. Whatever
+     * its size, it will be on Disk once the memory held by all the HttpDatas sharing the
+     * budget reaches the maximum of the budget. The type will be Mixed.
+     * @param minSize
+     * @param directSize
+     * @param budget the memory budget, for instance {@link HttpDataMemoryBudget#getDefault()}
+     */
+    public DefaultHttpDataFactory(long minSize, long directSize, HttpDataMemoryBudget budget) {
+        if (budget == null) {
+            throw new NullPointerException("budget");
+        }
+        useDisk = false;
+        checkSize = true;
+        this.minSize = minSize;
+        this.directSize = directSize;
+        this.budget = budget;
     }
 
     /**
@@ -98,7 +124,7 @@ public class DefaultHttpDataFactory implements HttpDataFactory {
             fileToDelete.add(attribute);
             return attribute;
         } else if (checkSize) {
-            Attribute attribute = new MixedAttribute(name, minSize);
+            Attribute attribute = new MixedAttribute(name, minSize, directSize, budget);
             List<HttpData> fileToDelete = getList(request);
             fileToDelete.add(attribute);
             return attribute;
@@ -114,13 +140,13 @@ public class DefaultHttpDataFactory implements HttpDataFactory {
                 attribute = new DiskAttribute(name, value);
             } catch (IOException e) {
                 // revert to Mixed mode
-                attribute = new MixedAttribute(name, value, minSize);
+                attribute = new MixedAttribute(name, value, minSize, directSize, budget);
             }
             List<HttpData> fileToDelete = getList(request);
             fileToDelete.add(attribute);
             return attribute;
         } else if (checkSize) {
-            Attribute attribute = new MixedAttribute(name, value, minSize);
+            Attribute attribute = new MixedAttribute(name, value, minSize, directSize, budget);
             List<HttpData> fileToDelete = getList(request);
             fileToDelete.add(attribute);
             return attribute;
@@ -144,7 +170,7 @@ public class DefaultHttpDataFactory implements HttpDataFactory {
             return fileUpload;
         } else if (checkSize) {
             FileUpload fileUpload = new MixedFileUpload(name, filename, contentType,
-                    contentTransferEncoding, charset, size, minSize);
+                    contentTransferEncoding, charset, size, minSize, directSize, budget);
             List<HttpData> fileToDelete = getList(request);
             fileToDelete.add(fileUpload);
             return fileUpload;
@@ -40,6 +40,14 @@ public class DefaultHttpMessage implements HttpMessage {
         setProtocolVersion(version);
     }
 
+    /**
+     * Returns the header storage of this message, which is accessed directly
+     * by {@link HttpMessageDecoder} and {@link HttpMessageEncoder}.
+     */
+    HttpHeaders headers() {
+        return headers;
+    }
+
     @Override
     public void addHeader(final String name, final Object value) {
         headers.addHeader(name, value);
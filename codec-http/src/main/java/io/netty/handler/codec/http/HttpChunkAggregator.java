@@ -18,10 +18,12 @@ package io.netty.handler.codec.http;
 import static io.netty.channel.Channels.*;
 import static io.netty.handler.codec.http.HttpHeaders.*;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
 
 import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBufferFactory;
 import io.netty.buffer.ChannelBuffers;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -47,6 +49,20 @@ import io.netty.util.CharsetUtil;
  * p.addLast("encoder", new {@link HttpResponseEncoder}());
  * p.addLast("handler", new HttpRequestHandler());
  * </pre>
+ *
+ * <h3>Aggregated content</h3>
+ *
+ * The contents of the chunks are not copied into a single buffer but
+ * assembled into a composite buffer.  Once the number of the components
+ * reaches {@link #setMaxCumulationBufferComponents(int) the limit}, they are
+ * consolidated into a single buffer so that a message with many small chunks
+ * does not yield an unwieldy composite buffer.
+ * <p>
+ * If the 'Content-Length' header of a chunked message already declares more
+ * than the maximum content length, the message is rejected before any of its
+ * chunks is buffered.  The remaining chunks of a rejected message are
+ * discarded.
+ *
  * @apiviz.landmark
  * @apiviz.has io.netty.handler.codec.http.HttpChunk oneway - - filters out
  */
@@ -55,8 +71,17 @@ public class HttpChunkAggregator extends SimpleChannelUpstreamHandler {
     private static final ChannelBuffer CONTINUE = ChannelBuffers.copiedBuffer(
             "HTTP/1.1 100 Continue\r\n\r\n", CharsetUtil.US_ASCII);
 
+    /**
+     * The default maximum number of the components of the aggregated content
+     */
+    public static final int DEFAULT_MAX_CUMULATION_BUFFER_COMPONENTS = 1024;
+
     private final int maxContentLength;
+    private int maxCumulationBufferComponents = DEFAULT_MAX_CUMULATION_BUFFER_COMPONENTS;
     private HttpMessage currentMessage;
+    private final List<ChannelBuffer> contentComponents = new ArrayList<ChannelBuffer>();
+    private int contentLength;
+    private boolean discarding;
 
     /**
      * Creates a new instance.
@@ -75,6 +100,31 @@ public class HttpChunkAggregator extends SimpleChannelUpstreamHandler {
         this.maxContentLength = maxContentLength;
     }
 
+    /**
+     * Returns the maximum number of components the aggregated content is
+     * assembled from before they are consolidated.
+     */
+    public final int getMaxCumulationBufferComponents() {
+        return maxCumulationBufferComponents;
+    }
+
+    /**
+     * Sets the maximum number of components the aggregated content is
+     * assembled from before they are consolidated.  The default is
+     * {@value #DEFAULT_MAX_CUMULATION_BUFFER_COMPONENTS}.  A smaller value
+     * bounds the cost of accessing the aggregated content at the cost of
+     * copying it more often.  This method must be called before the first
+     * message is received.
+     */
+    public final void setMaxCumulationBufferComponents(int maxCumulationBufferComponents) {
+        if (maxCumulationBufferComponents < 2) {
+            throw new IllegalArgumentException(
+                    "maxCumulationBufferComponents: " + maxCumulationBufferComponents +
+                    " (expected: >= 2)");
+        }
+        this.maxCumulationBufferComponents = maxCumulationBufferComponents;
+    }
+
     @Override
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
             throws Exception {
@@ -84,12 +134,18 @@ public class HttpChunkAggregator extends SimpleChannelUpstreamHandler {
 
         if (msg instanceof HttpMessage) {
             HttpMessage m = (HttpMessage) msg;
+            discarding = false;
+
+            // Reject a message which declares too long content before buffering anything.
+            if (m.isChunked() && getContentLength(m, -1) > maxContentLength) {
+                this.currentMessage = null;
+                discarding = true;
+                throw new TooLongFrameException(
+                        "HTTP content length exceeded " + maxContentLength +
+                        " bytes.");
+            }
 
             // Handle the 'Expect: 100-continue' header if necessary.
-            // TODO: Respond with 413 Request Entity Too Large
-            //   and discard the traffic or close the connection.
-            //       No need to notify the upstream handlers - just log.
-            //       If decoding a response, just throw an exception.
             if (is100ContinueExpected(m)) {
                 write(ctx, succeededFuture(ctx.getChannel()), CONTINUE.duplicate());
             }
@@ -103,7 +159,9 @@ public class HttpChunkAggregator extends SimpleChannelUpstreamHandler {
                     m.removeHeader(HttpHeaders.Names.TRANSFER_ENCODING);
                 }
                 m.setChunked(false);
-                m.setContent(ChannelBuffers.dynamicBuffer(e.getChannel().getConfig().getBufferFactory()));
+                m.setContent(ChannelBuffers.EMPTY_BUFFER);
+                contentComponents.clear();
+                contentLength = 0;
                 this.currentMessage = m;
             } else {
                 // Not a chunked message - pass through.
@@ -111,6 +169,15 @@ public class HttpChunkAggregator extends SimpleChannelUpstreamHandler {
                 ctx.sendUpstream(e);
             }
         } else if (msg instanceof HttpChunk) {
+            HttpChunk chunk = (HttpChunk) msg;
+            if (discarding) {
+                // The rest of a rejected message
+                if (chunk.isLast()) {
+                    discarding = false;
+                }
+                return;
+            }
+
             // Sanity check
             if (currentMessage == null) {
                 throw new IllegalStateException(
@@ -119,22 +186,29 @@ public class HttpChunkAggregator extends SimpleChannelUpstreamHandler {
             }
 
             // Merge the received chunk into the content of the current message.
-            HttpChunk chunk = (HttpChunk) msg;
-            ChannelBuffer content = currentMessage.getContent();
-
-            if (content.readableBytes() > maxContentLength - chunk.getContent().readableBytes()) {
+            ChannelBuffer chunkContent = chunk.getContent();
+            if (contentLength > maxContentLength - chunkContent.readableBytes()) {
                 // TODO: Respond with 413 Request Entity Too Large
                 //   and discard the traffic or close the connection.
                 //       No need to notify the upstream handlers - just log.
                 //       If decoding a response, just throw an exception.
+                this.currentMessage = null;
+                contentComponents.clear();
+                discarding = !chunk.isLast();
                 throw new TooLongFrameException(
                         "HTTP content length exceeded " + maxContentLength +
                         " bytes.");
             }
 
-            content.writeBytes(chunk.getContent());
+            if (chunkContent.readable()) {
+                appendToCumulation(chunkContent, e.getChannel().getConfig().getBufferFactory());
+            }
             if (chunk.isLast()) {
                 this.currentMessage = null;
+                ChannelBuffer content = ChannelBuffers.wrappedBuffer(
+                        contentComponents.toArray(new ChannelBuffer[contentComponents.size()]));
+                contentComponents.clear();
+                currentMessage.setContent(content);
 
                 // Merge trailing headers into the message.
                 if (chunk instanceof HttpChunkTrailer) {
@@ -157,4 +231,22 @@ public class HttpChunkAggregator extends SimpleChannelUpstreamHandler {
             ctx.sendUpstream(e);
         }
     }
+
+    private void appendToCumulation(ChannelBuffer input, ChannelBufferFactory factory) {
+        List<ChannelBuffer> components = contentComponents;
+        contentLength += input.readableBytes();
+        if (components.size() < maxCumulationBufferComponents) {
+            components.add(input);
+            return;
+        }
+
+        // Too many components - consolidate them into a single buffer.
+        ChannelBuffer consolidated = factory.getBuffer(input.order(), contentLength);
+        for (ChannelBuffer c: components) {
+            consolidated.writeBytes(c, c.readerIndex(), c.readableBytes());
+        }
+        consolidated.writeBytes(input, input.readerIndex(), input.readableBytes());
+        components.clear();
+        components.add(consolidated);
+    }
 }
@@ -69,7 +69,7 @@ final class HttpCodecUtil {
     private HttpCodecUtil() {
     }
 
-    static void validateHeaderName(String name) {
+    static void validateHeaderName(CharSequence name) {
         if (name == null) {
             throw new NullPointerException("name");
         }
@@ -91,7 +91,7 @@ final class HttpCodecUtil {
         }
     }
 
-    static void validateHeaderValue(String value) {
+    static void validateHeaderValue(CharSequence value) {
         if (value == null) {
             throw new NullPointerException("value");
         }
@@ -167,4 +167,21 @@ final class HttpCodecUtil {
         }
         return false;
     }
+
+    /**
+     * Returns the header storage of the specified message or trailer if it is
+     * one of the default implementations, which the codec may access directly.
+     * Returns {@code null} for any other class, including the subclasses of the
+     * default implementations which may override how the headers are accessed.
+     */
+    static HttpHeaders defaultHeaders(Object msg) {
+        Class<?> c = msg.getClass();
+        if (c == DefaultHttpRequest.class || c == DefaultHttpResponse.class || c == DefaultHttpMessage.class) {
+            return ((DefaultHttpMessage) msg).headers();
+        }
+        if (c == DefaultHttpChunkTrailer.class) {
+            return ((DefaultHttpChunkTrailer) msg).headers();
+        }
+        return null;
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.util.internal.StripedLongCounter;
+
+/**
+ * Limits the memory held by the Mixed HttpDatas (MixedAttribute and MixedFileUpload) of all
+ * the requests sharing this budget, and keeps count of the bytes held in each storage tier:
+ * heap, direct (off-heap) buffers and disk.<br>
+ *
+ * Once the limit is reached, the new HttpDatas and the HttpDatas which grow are stored on
+ * disk, whatever their size, so that an upload spike cannot exhaust the memory.<br>
+ *
+ * The {@link #getDefault() default} budget is shared by the whole process and is unlimited
+ * until {@link #setMaxMemorySize(long)} is called.
+ */
+public final class HttpDataMemoryBudget {
+
+    private static final HttpDataMemoryBudget DEFAULT = new HttpDataMemoryBudget(-1);
+
+    /**
+     * @return the budget shared by the whole process
+     */
+    public static HttpDataMemoryBudget getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * The bytes held in memory (heap and direct), reserved atomically against the limit
+     */
+    private final AtomicLong memorySize = new AtomicLong();
+    // The counters of each storage tier are only updated once the memory is reserved,
+    // and are only read to report the usage
+    private final StripedLongCounter heapMemorySize = new StripedLongCounter();
+    private final StripedLongCounter directMemorySize = new StripedLongCounter();
+    private final StripedLongCounter diskSize = new StripedLongCounter();
+    private volatile long maxMemorySize;
+
+    /**
+     * @param maxMemorySize the maximum number of bytes held in memory (heap and direct), or
+     *          a negative value for no limit
+     */
+    public HttpDataMemoryBudget(long maxMemorySize) {
+        this.maxMemorySize = maxMemorySize;
+    }
+
+    /**
+     * @return the maximum number of bytes held in memory (heap and direct), or a negative
+     *          value if there is no limit
+     */
+    public long getMaxMemorySize() {
+        return maxMemorySize;
+    }
+
+    /**
+     * Set the maximum number of bytes held in memory (heap and direct). The HttpDatas
+     * already held in memory are not moved to disk when the maximum is lowered.
+     * @param maxMemorySize a negative value for no limit
+     */
+    public void setMaxMemorySize(long maxMemorySize) {
+        this.maxMemorySize = maxMemorySize;
+    }
+
+    /**
+     * @return the number of bytes currently held in heap buffers
+     */
+    public long getHeapMemorySize() {
+        return heapMemorySize.sum();
+    }
+
+    /**
+     * @return the number of bytes currently held in direct buffers
+     */
+    public long getDirectMemorySize() {
+        return directMemorySize.sum();
+    }
+
+    /**
+     * @return the number of bytes currently held in temporary files
+     */
+    public long getDiskSize() {
+        return diskSize.sum();
+    }
+
+    /**
+     * Reserve the memory for the given number of bytes to be added to the given HttpData,
+     * moving the content of the HttpData off the heap first if direct is True.
+     * @return False if the budget is exhausted, in which case nothing is reserved
+     */
+    boolean reserve(AbstractMemoryHttpData data, long bytes, boolean direct) {
+        if (!direct || data.isDirect()) {
+            return reserve(data.isDirect()? directMemorySize : heapMemorySize, bytes);
+        }
+        long length = data.length();
+        if (!reserve(directMemorySize, length + bytes)) {
+            return false;
+        }
+        data.moveToDirectBuffer();
+        memorySize.addAndGet(-length);
+        heapMemorySize.add(-length);
+        return true;
+    }
+
+    private boolean reserve(StripedLongCounter counter, long bytes) {
+        for (;;) {
+            long maxMemorySize = this.maxMemorySize;
+            long size = memorySize.get();
+            long newSize = size + bytes;
+            if (maxMemorySize >= 0 && newSize > maxMemorySize) {
+                return false;
+            }
+            if (memorySize.compareAndSet(size, newSize)) {
+                counter.add(bytes);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release the memory reserved for the content of the given HttpData
+     */
+    void release(AbstractMemoryHttpData data) {
+        release(data, data.length());
+    }
+
+    /**
+     * Release the memory reserved for the given number of bytes of the given HttpData
+     */
+    void release(AbstractMemoryHttpData data, long bytes) {
+        memorySize.addAndGet(-bytes);
+        (data.isDirect()? directMemorySize : heapMemorySize).add(-bytes);
+    }
+
+    /**
+     * Count the given number of bytes, which may be negative, as added to a temporary file
+     */
+    void addDiskSize(long bytes) {
+        diskSize.add(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(heap: " + getHeapMemorySize() +
+                ", direct: " + getDirectMemorySize() + ", disk: " + getDiskSize() +
+                ", max memory: " + maxMemorySize + ')';
+    }
+}
@@ -30,10 +30,28 @@ import java.util.TimeZone;
  * <li>Sun, 06 Nov 1994 08:49:37 GMT: obsolete specification</li>
  * <li>Sun Nov 6 08:49:37 1994: obsolete specification</li>
  * </ul>
+ * Use {@link HttpHeaderDates}, which is thread-safe and much faster, unless
+ * a {@link java.text.DateFormat} is needed.
  */
 final class HttpHeaderDateFormat extends SimpleDateFormat {
     private static final long serialVersionUID = -925286159755905325L;
 
+    private static final ThreadLocal<HttpHeaderDateFormat> FORMATS =
+        new ThreadLocal<HttpHeaderDateFormat>() {
+            @Override
+            protected HttpHeaderDateFormat initialValue() {
+                return new HttpHeaderDateFormat();
+            }
+        };
+
+    /**
+     * Returns a cached thread-local instance, which {@link HttpHeaderDates}
+     * parses obsolete formats with.
+     */
+    static HttpHeaderDateFormat get() {
+        return FORMATS.get();
+    }
+
     private final SimpleDateFormat format1 = new HttpHeaderDateFormatObsolete1();
     private final SimpleDateFormat format2 = new HttpHeaderDateFormatObsolete2();
 
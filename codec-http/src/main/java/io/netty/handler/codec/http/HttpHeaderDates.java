@@ -0,0 +1,328 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http;
+
+import java.text.ParsePosition;
+import java.util.Date;
+
+/**
+ * Formats and parses the dates of HTTP headers without a {@link java.text.DateFormat}.
+ * All methods are thread-safe.
+ * <p>
+ * Dates are always formatted as defined in
+ * <a href="http://tools.ietf.org/html/rfc1123#page-55">RFC 1123</a>, e.g.
+ * {@code "Sun, 06 Nov 1994 08:49:37 GMT"}, by computing the calendar fields
+ * with integer arithmetic.  A date in this format is also parsed without a
+ * {@link java.text.DateFormat}, and the last parsed value is remembered
+ * because the same {@code "If-Modified-Since"} value tends to be received
+ * over and over again.  The obsolete formats accepted by
+ * {@link HttpHeaderDateFormat} are parsed by a thread-local instance of it.
+ */
+final class HttpHeaderDates {
+
+    /**
+     * The length of a formatted date
+     */
+    static final int LENGTH = 29;
+
+    /**
+     * The value {@link #parse(CharSequence)} returns for a value which is not
+     * a date
+     */
+    static final long INVALID = Long.MIN_VALUE;
+
+    private static final String DAYS = "SunMonTueWedThuFriSat";
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    /**
+     * 1970-01-01 relative to 0000-03-01, the origin of the eras below
+     */
+    private static final int EPOCH_DAY = 719468;
+    private static final int DAYS_PER_ERA = 146097;
+
+    private static volatile FormattedDate now = new FormattedDate(Long.MIN_VALUE, null);
+    private static volatile ParsedDate lastParsed = new ParsedDate("", INVALID);
+
+    /**
+     * Returns the current time formatted.  The same string is returned until
+     * the second changes, so that all messages sent within a second share it.
+     */
+    static String now() {
+        return currentDate().string;
+    }
+
+    /**
+     * Returns the current time formatted, like {@link #now()}, as an
+     * {@link AsciiString} which is written to a buffer without being
+     * encoded.
+     */
+    static AsciiString nowAscii() {
+        return currentDate().ascii;
+    }
+
+    private static FormattedDate currentDate() {
+        long second = floorDiv(System.currentTimeMillis(), 1000);
+        FormattedDate now = HttpHeaderDates.now;
+        if (now.second != second) {
+            // Racing threads format the same second, and either result will do.
+            byte[] bytes = new byte[LENGTH];
+            format(second * 1000, bytes, 0);
+            HttpHeaderDates.now = now = new FormattedDate(second, bytes);
+        }
+        return now;
+    }
+
+    /**
+     * Formats the specified date.
+     */
+    static String format(Date date) {
+        return format(date.getTime());
+    }
+
+    /**
+     * Formats the specified time in milliseconds.
+     */
+    static String format(long millis) {
+        char[] chars = new char[LENGTH];
+        if (!format(millis, chars, 0)) {
+            return HttpHeaderDateFormat.get().format(new Date(millis));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Formats the specified time in milliseconds into the {@link #LENGTH}
+     * characters of the specified array from the specified offset.
+     *
+     * @return {@code false} if the year has not 4 digits, in which case
+     *         nothing is written
+     */
+    static boolean format(long millis, char[] dst, int offset) {
+        int[] fields = fields(millis);
+        if (fields == null) {
+            return false;
+        }
+        int year = fields[0];
+        int month = fields[1];
+        int day = fields[2];
+        int secondOfDay = fields[3];
+        int dayOfWeek = fields[4];
+
+        DAYS.getChars(dayOfWeek * 3, dayOfWeek * 3 + 3, dst, offset);
+        dst[offset + 3] = ',';
+        dst[offset + 4] = ' ';
+        writeTwoDigits(day, dst, offset + 5);
+        dst[offset + 7] = ' ';
+        MONTHS.getChars(month * 3 - 3, month * 3, dst, offset + 8);
+        dst[offset + 11] = ' ';
+        writeTwoDigits(year / 100, dst, offset + 12);
+        writeTwoDigits(year % 100, dst, offset + 14);
+        dst[offset + 16] = ' ';
+        writeTwoDigits(secondOfDay / 3600, dst, offset + 17);
+        dst[offset + 19] = ':';
+        writeTwoDigits(secondOfDay / 60 % 60, dst, offset + 20);
+        dst[offset + 22] = ':';
+        writeTwoDigits(secondOfDay % 60, dst, offset + 23);
+        dst[offset + 25] = ' ';
+        dst[offset + 26] = 'G';
+        dst[offset + 27] = 'M';
+        dst[offset + 28] = 'T';
+        return true;
+    }
+
+    /**
+     * Formats the specified time in milliseconds into the {@link #LENGTH}
+     * bytes of the specified array from the specified offset.
+     *
+     * @return {@code false} if the year has not 4 digits, in which case
+     *         nothing is written
+     */
+    static boolean format(long millis, byte[] dst, int offset) {
+        char[] chars = new char[LENGTH];
+        if (!format(millis, chars, 0)) {
+            return false;
+        }
+        for (int i = 0; i < LENGTH; i ++) {
+            dst[offset + i] = (byte) chars[i];
+        }
+        return true;
+    }
+
+    /**
+     * Returns the year, month (1 - 12), day of month, second of day and day
+     * of week (0 for Sunday) of the specified time, or {@code null} if the
+     * year is not between 0 and 9999.
+     */
+    private static int[] fields(long millis) {
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        int secondOfDay = (int) ((millis - days * MILLIS_PER_DAY) / 1000);
+
+        // http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        long z = days + EPOCH_DAY;
+        long era = floorDiv(z, DAYS_PER_ERA);
+        int dayOfEra = (int) (z - era * DAYS_PER_ERA);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10? mp + 3 : mp - 9;
+        long year = era * 400 + yearOfEra + (month <= 2? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return null;
+        }
+
+        // 1970-01-01 was a Thursday.
+        int dayOfWeek = (int) (days - floorDiv(days + 4, 7) * 7 + 4);
+        return new int[] { (int) year, month, day, secondOfDay, dayOfWeek };
+    }
+
+    private static void writeTwoDigits(int value, char[] dst, int offset) {
+        dst[offset] = (char) ('0' + value / 10);
+        dst[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    /**
+     * Parses the specified date in any format {@link HttpHeaderDateFormat}
+     * accepts.
+     *
+     * @return the time in milliseconds, or {@link #INVALID} if the specified
+     *         value is not a date
+     */
+    static long parse(CharSequence text) {
+        ParsedDate lastParsed = HttpHeaderDates.lastParsed;
+        if (lastParsed.text.contentEquals(text)) {
+            return lastParsed.millis;
+        }
+
+        long millis = parseRfc1123(text);
+        if (millis == INVALID) {
+            Date date = HttpHeaderDateFormat.get().parse(text.toString(), new ParsePosition(0));
+            if (date == null) {
+                return INVALID;
+            }
+            millis = date.getTime();
+        }
+        HttpHeaderDates.lastParsed = new ParsedDate(text.toString(), millis);
+        return millis;
+    }
+
+    /**
+     * Parses the specified date if it is formatted exactly as
+     * {@link #format(long)} formats.
+     *
+     * @return the time in milliseconds, or {@link #INVALID} if the specified
+     *         value is formatted differently
+     */
+    static long parseRfc1123(CharSequence text) {
+        if (text.length() != LENGTH ||
+            text.charAt(3) != ',' || text.charAt(4) != ' ' || text.charAt(7) != ' ' ||
+            text.charAt(11) != ' ' || text.charAt(16) != ' ' || text.charAt(19) != ':' ||
+            text.charAt(22) != ':' || text.charAt(25) != ' ' ||
+            text.charAt(26) != 'G' || text.charAt(27) != 'M' || text.charAt(28) != 'T' ||
+            indexOfName(DAYS, text, 0) < 0) {
+            return INVALID;
+        }
+
+        int month = indexOfName(MONTHS, text, 8) + 1;
+        int day = parseTwoDigits(text, 5);
+        int century = parseTwoDigits(text, 12);
+        int yearOfCentury = parseTwoDigits(text, 14);
+        int hour = parseTwoDigits(text, 17);
+        int minute = parseTwoDigits(text, 20);
+        int second = parseTwoDigits(text, 23);
+        if (month == 0 || day < 1 || day > 31 || century < 0 || yearOfCentury < 0 ||
+            hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            // Leave the lenient interpretation of the odd ones to the DateFormat.
+            return INVALID;
+        }
+
+        // http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+        int year = century * 100 + yearOfCentury - (month <= 2? 1 : 0);
+        int era = year >= 0? year / 400 : (year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month > 2? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = (long) era * DAYS_PER_ERA + dayOfEra - EPOCH_DAY;
+        return days * MILLIS_PER_DAY + (hour * 3600 + minute * 60 + second) * 1000L;
+    }
+
+    /**
+     * Returns the index of the 3-letter name at the specified position of the
+     * specified text in the specified list of names, or {@code -1} if not
+     * found.
+     */
+    private static int indexOfName(String names, CharSequence text, int offset) {
+        char c0 = text.charAt(offset);
+        char c1 = text.charAt(offset + 1);
+        char c2 = text.charAt(offset + 2);
+        for (int i = 0; i < names.length(); i += 3) {
+            if (names.charAt(i) == c0 && names.charAt(i + 1) == c1 && names.charAt(i + 2) == c2) {
+                return i / 3;
+            }
+        }
+        return -1;
+    }
+
+    private static int parseTwoDigits(CharSequence text, int offset) {
+        int d1 = text.charAt(offset) - '0';
+        int d2 = text.charAt(offset + 1) - '0';
+        if (d1 < 0 || d1 > 9 || d2 < 0 || d2 > 9) {
+            return -1;
+        }
+        return d1 * 10 + d2;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x ^ y) < 0 && q * y != x) {
+            q --;
+        }
+        return q;
+    }
+
+    private HttpHeaderDates() {
+        // Unused
+    }
+
+    private static final class FormattedDate {
+        final long second;
+        final String string;
+        final AsciiString ascii;
+
+        FormattedDate(long second, byte[] bytes) {
+            this.second = second;
+            if (bytes == null) {
+                string = null;
+                ascii = null;
+            } else {
+                ascii = new AsciiString(bytes);
+                string = ascii.toString();
+            }
+        }
+    }
+
+    private static final class ParsedDate {
+        final String text;
+        final long millis;
+
+        ParsedDate(String text, long millis) {
+            this.text = text;
+            this.millis = millis;
+        }
+    }
+}
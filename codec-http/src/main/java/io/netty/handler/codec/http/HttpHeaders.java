@@ -15,9 +15,16 @@
  */
 package io.netty.handler.codec.http;
 
+import io.netty.buffer.ChannelBuffer;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -238,6 +245,10 @@ public class HttpHeaders {
          * {@code "Sec-WebSocket-Accept"}
          */
         public static final String SEC_WEBSOCKET_ACCEPT = "Sec-WebSocket-Accept";
+        /**
+         * {@code "Sec-WebSocket-Extensions"}
+         */
+        public static final String SEC_WEBSOCKET_EXTENSIONS = "Sec-WebSocket-Extensions";
         /**
          * {@code "Server"}
          */
@@ -654,7 +665,11 @@ public class HttpHeaders {
         if (value == null) {
             throw new ParseException("header not found: " + name, 0);
         }
-        return new HttpHeaderDateFormat().parse(value);
+        long millis = HttpHeaderDates.parse(value);
+        if (millis == HttpHeaderDates.INVALID) {
+            throw new ParseException("Unparseable date: \"" + value + '"', 0);
+        }
+        return new Date(millis);
     }
 
     /**
@@ -671,11 +686,11 @@ public class HttpHeaders {
             return defaultValue;
         }
 
-        try {
-            return new HttpHeaderDateFormat().parse(value);
-        } catch (ParseException e) {
+        long millis = HttpHeaderDates.parse(value);
+        if (millis == HttpHeaderDates.INVALID) {
             return defaultValue;
         }
+        return new Date(millis);
     }
 
     /**
@@ -686,7 +701,7 @@ public class HttpHeaders {
      */
     public static void setDateHeader(HttpMessage message, String name, Date value) {
         if (value != null) {
-            message.setHeader(name, new HttpHeaderDateFormat().format(value));
+            message.setHeader(name, HttpHeaderDates.format(value));
         } else {
             message.setHeader(name, null);
         }
@@ -846,12 +861,21 @@ public class HttpHeaders {
         return getDateHeader(message, Names.DATE, defaultValue);
     }
 
+    /**
+     * Sets the {@code "Date"} header to the current time.  The formatted
+     * value is shared by all messages whose header is set within the same
+     * second.
+     */
+    public static void setDate(HttpMessage message) {
+        message.setHeader(Names.DATE, HttpHeaderDates.nowAscii());
+    }
+
     /**
      * Sets the {@code "Date"} header.
      */
     public static void setDate(HttpMessage message, Date value) {
         if (value != null) {
-            message.setHeader(Names.DATE, new HttpHeaderDateFormat().format(value));
+            message.setHeader(Names.DATE, HttpHeaderDates.format(value));
         } else {
             message.setHeader(Names.DATE, null);
         }
@@ -914,139 +938,233 @@ public class HttpHeaders {
         }
     }
 
-    private static final int BUCKET_SIZE = 17;
+    /**
+     * The canonical {@link AsciiString}s of the well-known header names in
+     * {@link Names}, keyed by the identity of the {@link String} constants.
+     */
+    private static final Map<String, AsciiString> KNOWN_NAMES_BY_STRING =
+        new IdentityHashMap<String, AsciiString>();
+
+    /**
+     * The open-addressed table of the canonical {@link AsciiString}s of the
+     * well-known header names, used to look up the names decoded from bytes.
+     */
+    private static final AsciiString[] KNOWN_NAMES;
 
-    private static int hash(String name) {
-        int h = 0;
-        for (int i = name.length() - 1; i >= 0; i --) {
-            char c = name.charAt(i);
-            if (c >= 'A' && c <= 'Z') {
-                c += 32;
+    static {
+        List<AsciiString> names = new ArrayList<AsciiString>();
+        for (Field f: Names.class.getFields()) {
+            if (f.getType() != String.class || !Modifier.isStatic(f.getModifiers())) {
+                continue;
             }
-            h = 31 * h + c;
+            String name;
+            try {
+                name = (String) f.get(null);
+            } catch (IllegalAccessException e) {
+                throw new Error(e);
+            }
+            AsciiString asciiName = new AsciiString(name);
+            KNOWN_NAMES_BY_STRING.put(name, asciiName);
+            names.add(asciiName);
         }
 
-        if (h > 0) {
-            return h;
-        } else if (h == Integer.MIN_VALUE) {
-            return Integer.MAX_VALUE;
-        } else {
-            return -h;
+        AsciiString[] table = new AsciiString[tableSizeFor(names.size() * 2)];
+        int mask = table.length - 1;
+        for (AsciiString n: names) {
+            int i = spread(n.hashCode()) & mask;
+            while (table[i] != null) {
+                i = i + 1 & mask;
+            }
+            table[i] = n;
         }
+        KNOWN_NAMES = table;
     }
 
-    private static boolean eq(String name1, String name2) {
-        int nameLen = name1.length();
-        if (nameLen != name2.length()) {
-            return false;
+    /**
+     * Returns the canonical {@link AsciiString} of the specified header name
+     * if it is one of the well-known header names in {@link Names}.  A name
+     * decoded from bytes matches only when its case matches too, so that the
+     * original case of the name is retained.
+     */
+    static AsciiString toAsciiName(CharSequence name) {
+        if (name instanceof String) {
+            AsciiString known = KNOWN_NAMES_BY_STRING.get(name);
+            if (known != null) {
+                return known;
+            }
         }
 
-        for (int i = nameLen - 1; i >= 0; i --) {
-            char c1 = name1.charAt(i);
-            char c2 = name2.charAt(i);
-            if (c1 != c2) {
-                if (c1 >= 'A' && c1 <= 'Z') {
-                    c1 += 32;
-                }
-                if (c2 >= 'A' && c2 <= 'Z') {
-                    c2 += 32;
-                }
-                if (c1 != c2) {
-                    return false;
-                }
+        AsciiString asciiName = AsciiString.of(name);
+        final AsciiString[] table = KNOWN_NAMES;
+        final int mask = table.length - 1;
+        for (int i = spread(asciiName.hashCode()) & mask;; i = i + 1 & mask) {
+            AsciiString known = table[i];
+            if (known == null) {
+                return asciiName;
+            }
+            if (known.equals(asciiName)) {
+                return known;
             }
         }
-        return true;
     }
 
-    private static int index(int hash) {
-        return hash % BUCKET_SIZE;
+    private static int spread(int h) {
+        return h ^ h >>> 16;
     }
 
-    private final Entry[] entries = new Entry[BUCKET_SIZE];
+    private static int tableSizeFor(int capacity) {
+        int n = 1;
+        while (n < capacity) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    private static boolean eq(AsciiString name1, AsciiString name2) {
+        return name1 == name2 || name1.contentEqualsIgnoreCase(name2);
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The open-addressed (linear probing) table whose slots hold the first
+     * {@link Entry} of each distinct header name.  The other entries with the
+     * same name are linked from the first one via {@link Entry#next}.
+     */
+    private Entry[] table = new Entry[INITIAL_CAPACITY];
+    private int distinctNames;
     private final Entry head = new Entry(-1, null, null);
 
     HttpHeaders() {
         head.before = head.after = head;
     }
 
-    void validateHeaderName(String name) {
+    void validateHeaderName(CharSequence name) {
         HttpCodecUtil.validateHeaderName(name);
     }
 
     void addHeader(final String name, final Object value) {
         validateHeaderName(name);
-        String strVal = toString(value);
+        AsciiString strVal = toAsciiString(value);
         HttpCodecUtil.validateHeaderValue(strVal);
-        int h = hash(name);
-        int i = index(h);
-        addHeader0(h, i, name, strVal);
+        addHeader0(toAsciiName(name), strVal);
+    }
+
+    /**
+     * Adds the header whose name and value were decoded from bytes.
+     */
+    void addHeader(final AsciiString name, final AsciiString value) {
+        validateHeaderName(name);
+        HttpCodecUtil.validateHeaderValue(value);
+        addHeader0(toAsciiName(name), value);
     }
 
-    private void addHeader0(int h, int i, final String name, final String value) {
+    private void addHeader0(final AsciiString name, final AsciiString value) {
+        final int h = spread(name.hashCode());
+        Entry newEntry = new Entry(h, name, value);
+
         // Update the hash table.
-        Entry e = entries[i];
-        Entry newEntry;
-        entries[i] = newEntry = new Entry(h, name, value);
-        newEntry.next = e;
+        final Entry[] table = this.table;
+        final int mask = table.length - 1;
+        int i = h & mask;
+        for (;;) {
+            Entry e = table[i];
+            if (e == null) {
+                table[i] = newEntry;
+                newEntry.last = newEntry;
+                if (++ distinctNames << 1 > table.length) {
+                    resize();
+                }
+                break;
+            }
+            if (e.hash == h && eq(name, e.key)) {
+                e.last.next = newEntry;
+                e.last = newEntry;
+                break;
+            }
+            i = i + 1 & mask;
+        }
 
         // Update the linked list.
         newEntry.addBefore(head);
     }
 
+    private void resize() {
+        final Entry[] oldTable = table;
+        final Entry[] newTable = new Entry[oldTable.length << 1];
+        final int mask = newTable.length - 1;
+        for (Entry e: oldTable) {
+            if (e == null) {
+                continue;
+            }
+            int i = e.hash & mask;
+            while (newTable[i] != null) {
+                i = i + 1 & mask;
+            }
+            newTable[i] = e;
+        }
+        table = newTable;
+    }
+
+    private int indexOf(AsciiString name) {
+        final int h = spread(name.hashCode());
+        final Entry[] table = this.table;
+        final int mask = table.length - 1;
+        for (int i = h & mask;; i = i + 1 & mask) {
+            Entry e = table[i];
+            if (e == null) {
+                return -1;
+            }
+            if (e.hash == h && eq(name, e.key)) {
+                return i;
+            }
+        }
+    }
+
     void removeHeader(final String name) {
         if (name == null) {
             throw new NullPointerException("name");
         }
-        int h = hash(name);
-        int i = index(h);
-        removeHeader0(h, i, name);
+        removeHeader0(toAsciiName(name));
     }
 
-    private void removeHeader0(int h, int i, String name) {
-        Entry e = entries[i];
-        if (e == null) {
+    private void removeHeader0(AsciiString name) {
+        int i = indexOf(name);
+        if (i < 0) {
             return;
         }
 
-        for (;;) {
-            if (e.hash == h && eq(name, e.key)) {
-                e.remove();
-                Entry next = e.next;
-                if (next != null) {
-                    entries[i] = next;
-                    e = next;
-                } else {
-                    entries[i] = null;
-                    return;
-                }
-            } else {
-                break;
-            }
+        for (Entry e = table[i]; e != null; e = e.next) {
+            e.remove();
         }
 
+        // Shift the following entries back so that no tombstone is needed.
+        final Entry[] table = this.table;
+        final int mask = table.length - 1;
+        int j = i;
         for (;;) {
-            Entry next = e.next;
-            if (next == null) {
+            j = j + 1 & mask;
+            Entry e = table[j];
+            if (e == null) {
                 break;
             }
-            if (next.hash == h && eq(name, next.key)) {
-                e.next = next.next;
-                next.remove();
-            } else {
-                e = next;
+            int k = e.hash & mask;
+            if (i <= j? i >= k || k > j : i >= k && k > j) {
+                table[i] = e;
+                i = j;
             }
         }
+        table[i] = null;
+        distinctNames --;
     }
 
     void setHeader(final String name, final Object value) {
         validateHeaderName(name);
-        String strVal = toString(value);
+        AsciiString strVal = toAsciiString(value);
         HttpCodecUtil.validateHeaderValue(strVal);
-        int h = hash(name);
-        int i = index(h);
-        removeHeader0(h, i, name);
-        addHeader0(h, i, name, strVal);
+        AsciiString asciiName = toAsciiName(name);
+        removeHeader0(asciiName);
+        addHeader0(asciiName, strVal);
     }
 
     void setHeader(final String name, final Iterable<?> values) {
@@ -1056,24 +1174,21 @@ public class HttpHeaders {
 
         validateHeaderName(name);
 
-        int h = hash(name);
-        int i = index(h);
-
-        removeHeader0(h, i, name);
+        AsciiString asciiName = toAsciiName(name);
+        removeHeader0(asciiName);
         for (Object v: values) {
             if (v == null) {
                 break;
             }
-            String strVal = toString(v);
+            AsciiString strVal = toAsciiString(v);
             HttpCodecUtil.validateHeaderValue(strVal);
-            addHeader0(h, i, name, strVal);
+            addHeader0(asciiName, strVal);
         }
     }
 
     void clearHeaders() {
-        for (int i = 0; i < entries.length; i ++) {
-            entries[i] = null;
-        }
+        Arrays.fill(table, null);
+        distinctNames = 0;
         head.before = head.after = head;
     }
 
@@ -1082,17 +1197,11 @@ public class HttpHeaders {
             throw new NullPointerException("name");
         }
 
-        int h = hash(name);
-        int i = index(h);
-        Entry e = entries[i];
-        while (e != null) {
-            if (e.hash == h && eq(name, e.key)) {
-                return e.value;
-            }
-
-            e = e.next;
+        int i = indexOf(toAsciiName(name));
+        if (i < 0) {
+            return null;
         }
-        return null;
+        return table[i].value.toString();
     }
 
     List<String> getHeaders(final String name) {
@@ -1102,14 +1211,11 @@ public class HttpHeaders {
 
         LinkedList<String> values = new LinkedList<String>();
 
-        int h = hash(name);
-        int i = index(h);
-        Entry e = entries[i];
-        while (e != null) {
-            if (e.hash == h && eq(name, e.key)) {
-                values.addFirst(e.value);
+        int i = indexOf(toAsciiName(name));
+        if (i >= 0) {
+            for (Entry e = table[i]; e != null; e = e.next) {
+                values.add(e.value.toString());
             }
-            e = e.next;
         }
         return values;
     }
@@ -1127,7 +1233,10 @@ public class HttpHeaders {
     }
 
     boolean containsHeader(String name) {
-        return getHeader(name) != null;
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        return indexOf(toAsciiName(name)) >= 0;
     }
 
     Set<String> getHeaderNames() {
@@ -1136,39 +1245,62 @@ public class HttpHeaders {
 
         Entry e = head.after;
         while (e != head) {
-            names.add(e.key);
+            names.add(e.getKey());
             e = e.after;
         }
         return names;
     }
 
-    private static String toString(Object value) {
+    /**
+     * Writes all headers into the specified buffer in insertion order,
+     * as {@code "name: value\r\n"} lines.
+     */
+    void encode(ChannelBuffer buf) {
+        Entry e = head.after;
+        while (e != head) {
+            e.key.writeTo(buf);
+            buf.writeByte(HttpCodecUtil.COLON);
+            buf.writeByte(HttpCodecUtil.SP);
+            e.value.writeTo(buf);
+            buf.writeByte(HttpCodecUtil.CR);
+            buf.writeByte(HttpCodecUtil.LF);
+            e = e.after;
+        }
+    }
+
+    private static AsciiString toAsciiString(Object value) {
         if (value == null) {
             return null;
         }
+        if (value instanceof AsciiString) {
+            return (AsciiString) value;
+        }
         if (value instanceof String) {
-            return (String) value;
+            return new AsciiString((String) value);
         }
         if (value instanceof Number) {
-            return value.toString();
+            return new AsciiString(value.toString());
         }
         if (value instanceof Date) {
-            return new HttpHeaderDateFormat().format((Date) value);
+            return new AsciiString(HttpHeaderDates.format((Date) value));
         }
         if (value instanceof Calendar) {
-            return new HttpHeaderDateFormat().format(((Calendar) value).getTime());
+            return new AsciiString(HttpHeaderDates.format(((Calendar) value).getTimeInMillis()));
         }
-        return value.toString();
+        return new AsciiString(value.toString());
     }
 
     private static final class Entry implements Map.Entry<String, String> {
         final int hash;
-        final String key;
-        String value;
+        final AsciiString key;
+        AsciiString value;
+        /** the next entry with the same name */
         Entry next;
+        /** the last entry with the same name; valid only for the entry in the table */
+        Entry last;
         Entry before, after;
 
-        Entry(int hash, String key, String value) {
+        Entry(int hash, AsciiString key, AsciiString value) {
             this.hash = hash;
             this.key = key;
             this.value = value;
@@ -1188,12 +1320,12 @@ public class HttpHeaders {
 
         @Override
         public String getKey() {
-            return key;
+            return key.toString();
         }
 
         @Override
         public String getValue() {
-            return value;
+            return value.toString();
         }
 
         @Override
@@ -1202,8 +1334,8 @@ public class HttpHeaders {
                 throw new NullPointerException("value");
             }
             HttpCodecUtil.validateHeaderValue(value);
-            String oldValue = this.value;
-            this.value = value;
+            String oldValue = this.value.toString();
+            this.value = new AsciiString(value);
             return oldValue;
         }
 
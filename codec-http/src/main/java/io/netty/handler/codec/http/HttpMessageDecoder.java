@@ -107,6 +107,7 @@ public abstract class HttpMessageDecoder extends ReplayingDecoder<HttpMessageDec
     private ChannelBuffer content;
     private long chunkSize;
     private int headerSize;
+    private byte[] headerLine = new byte[64];
 
     /**
      * The internal state of {@link HttpMessageDecoder}.
@@ -429,30 +430,32 @@ public abstract class HttpMessageDecoder extends ReplayingDecoder<HttpMessageDec
     private State readHeaders(ChannelBuffer buffer) throws TooLongFrameException {
         headerSize = 0;
         final HttpMessage message = this.message;
-        String line = readHeader(buffer);
-        String name = null;
-        String value = null;
-        if (line.length() != 0) {
+        int lineLength = readHeader(buffer);
+        AsciiString name = null;
+        AsciiString value = null;
+        if (lineLength != 0) {
             message.clearHeaders();
             do {
-                char firstChar = line.charAt(0);
+                byte firstChar = headerLine[0];
                 if (name != null && (firstChar == ' ' || firstChar == '\t')) {
-                    value = value + ' ' + line.trim();
+                    value = new AsciiString(
+                            value.toString() + ' ' +
+                            new AsciiString(headerLine, 0, lineLength, false).toString().trim());
                 } else {
                     if (name != null) {
-                        message.addHeader(name, value);
+                        addHeader(message, name, value);
                     }
-                    String[] header = splitHeader(line);
+                    AsciiString[] header = splitHeader(headerLine, lineLength);
                     name = header[0];
                     value = header[1];
                 }
 
-                line = readHeader(buffer);
-            } while (line.length() != 0);
+                lineLength = readHeader(buffer);
+            } while (lineLength != 0);
 
             // Add the last header.
             if (name != null) {
-                message.addHeader(name, value);
+                addHeader(message, name, value);
             }
         }
 
@@ -478,34 +481,35 @@ public abstract class HttpMessageDecoder extends ReplayingDecoder<HttpMessageDec
 
     private HttpChunkTrailer readTrailingHeaders(ChannelBuffer buffer) throws TooLongFrameException {
         headerSize = 0;
-        String line = readHeader(buffer);
+        int lineLength = readHeader(buffer);
         String lastHeader = null;
-        if (line.length() != 0) {
-            HttpChunkTrailer trailer = new DefaultHttpChunkTrailer();
+        if (lineLength != 0) {
+            DefaultHttpChunkTrailer trailer = new DefaultHttpChunkTrailer();
             do {
-                char firstChar = line.charAt(0);
+                byte firstChar = headerLine[0];
                 if (lastHeader != null && (firstChar == ' ' || firstChar == '\t')) {
                     List<String> current = trailer.getHeaders(lastHeader);
                     if (current.size() != 0) {
                         int lastPos = current.size() - 1;
-                        String newString = current.get(lastPos) + line.trim();
+                        String newString = current.get(lastPos) +
+                                new AsciiString(headerLine, 0, lineLength, false).toString().trim();
                         current.set(lastPos, newString);
                     } else {
                         // Content-Length, Transfer-Encoding, or Trailer
                     }
                 } else {
-                    String[] header = splitHeader(line);
-                    String name = header[0];
-                    if (!name.equalsIgnoreCase(HttpHeaders.Names.CONTENT_LENGTH) &&
-                        !name.equalsIgnoreCase(HttpHeaders.Names.TRANSFER_ENCODING) &&
-                        !name.equalsIgnoreCase(HttpHeaders.Names.TRAILER)) {
-                        trailer.addHeader(name, header[1]);
+                    AsciiString[] header = splitHeader(headerLine, lineLength);
+                    AsciiString name = header[0];
+                    if (!name.contentEqualsIgnoreCase(HttpHeaders.Names.CONTENT_LENGTH) &&
+                        !name.contentEqualsIgnoreCase(HttpHeaders.Names.TRANSFER_ENCODING) &&
+                        !name.contentEqualsIgnoreCase(HttpHeaders.Names.TRAILER)) {
+                        trailer.headers().addHeader(name, header[1]);
                     }
-                    lastHeader = name;
+                    lastHeader = name.toString();
                 }
 
-                line = readHeader(buffer);
-            } while (line.length() != 0);
+                lineLength = readHeader(buffer);
+            } while (lineLength != 0);
 
             return trailer;
         }
@@ -513,18 +517,33 @@ public abstract class HttpMessageDecoder extends ReplayingDecoder<HttpMessageDec
         return HttpChunk.LAST_CHUNK;
     }
 
-    private String readHeader(ChannelBuffer buffer) throws TooLongFrameException {
-        StringBuilder sb = new StringBuilder(64);
+    private static void addHeader(HttpMessage message, AsciiString name, AsciiString value) {
+        HttpHeaders headers = HttpCodecUtil.defaultHeaders(message);
+        if (headers != null) {
+            headers.addHeader(name, value);
+        } else {
+            message.addHeader(name.toString(), value.toString());
+        }
+    }
+
+    /**
+     * Reads a header line into {@link #headerLine}.
+     *
+     * @return the length of the line, excluding the line delimiter
+     */
+    private int readHeader(ChannelBuffer buffer) throws TooLongFrameException {
+        byte[] line = headerLine;
+        int lineLength = 0;
         int headerSize = this.headerSize;
 
         loop:
         for (;;) {
-            char nextByte = (char) buffer.readByte();
+            byte nextByte = buffer.readByte();
             headerSize ++;
 
             switch (nextByte) {
             case HttpCodecUtil.CR:
-                nextByte = (char) buffer.readByte();
+                nextByte = buffer.readByte();
                 headerSize ++;
                 if (nextByte == HttpCodecUtil.LF) {
                     break loop;
@@ -546,11 +565,16 @@ public abstract class HttpMessageDecoder extends ReplayingDecoder<HttpMessageDec
 
             }
 
-            sb.append(nextByte);
+            if (lineLength == line.length) {
+                byte[] newLine = new byte[lineLength << 1];
+                System.arraycopy(line, 0, newLine, 0, lineLength);
+                headerLine = line = newLine;
+            }
+            line[lineLength ++] = nextByte;
         }
 
         this.headerSize = headerSize;
-        return sb.toString();
+        return lineLength;
     }
 
     protected abstract boolean isDecodingRequest();
@@ -620,44 +644,71 @@ public abstract class HttpMessageDecoder extends ReplayingDecoder<HttpMessageDec
                 cStart < cEnd? sb.substring(cStart, cEnd) : "" };
     }
 
-    private String[] splitHeader(String sb) {
-        final int length = sb.length();
+    /**
+     * Splits the specified header line into its name and value.  Well-known
+     * header names are resolved into their shared instances, and everything
+     * else is copied out of the specified array.
+     */
+    private static AsciiString[] splitHeader(byte[] line, int length) {
         int nameStart;
         int nameEnd;
         int colonEnd;
         int valueStart;
         int valueEnd;
 
-        nameStart = findNonWhitespace(sb, 0);
+        nameStart = findNonWhitespace(line, 0, length);
         for (nameEnd = nameStart; nameEnd < length; nameEnd ++) {
-            char ch = sb.charAt(nameEnd);
-            if (ch == ':' || Character.isWhitespace(ch)) {
+            byte ch = line[nameEnd];
+            if (ch == ':' || isWhitespace(ch)) {
                 break;
             }
         }
 
         for (colonEnd = nameEnd; colonEnd < length; colonEnd ++) {
-            if (sb.charAt(colonEnd) == ':') {
+            if (line[colonEnd] == ':') {
                 colonEnd ++;
                 break;
             }
         }
 
-        valueStart = findNonWhitespace(sb, colonEnd);
+        AsciiString name = new AsciiString(line, nameStart, nameEnd - nameStart, false);
+        AsciiString knownName = HttpHeaders.toAsciiName(name);
+        if (knownName == name) {
+            name = new AsciiString(line, nameStart, nameEnd - nameStart, true);
+        } else {
+            name = knownName;
+        }
+
+        valueStart = findNonWhitespace(line, colonEnd, length);
         if (valueStart == length) {
-            return new String[] {
-                    sb.substring(nameStart, nameEnd),
-                    ""
-            };
+            return new AsciiString[] { name, AsciiString.EMPTY };
         }
 
-        valueEnd = findEndOfString(sb);
-        return new String[] {
-                sb.substring(nameStart, nameEnd),
-                sb.substring(valueStart, valueEnd)
+        for (valueEnd = length; valueEnd > valueStart; valueEnd --) {
+            if (!isWhitespace(line[valueEnd - 1])) {
+                break;
+            }
+        }
+        return new AsciiString[] {
+                name,
+                new AsciiString(line, valueStart, valueEnd - valueStart, true)
         };
     }
 
+    private static int findNonWhitespace(byte[] line, int offset, int length) {
+        int result;
+        for (result = offset; result < length; result ++) {
+            if (!isWhitespace(line[result])) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return Character.isWhitespace((char) (b & 0xFF));
+    }
+
     private int findNonWhitespace(String sb, int offset) {
         int result;
         for (result = offset; result < sb.length(); result ++) {
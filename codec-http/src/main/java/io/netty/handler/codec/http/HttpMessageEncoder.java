@@ -136,6 +136,12 @@ public abstract class HttpMessageEncoder extends OneToOneEncoder {
     }
 
     private void encodeHeaders(ChannelBuffer buf, HttpMessage message) {
+        HttpHeaders headers = HttpCodecUtil.defaultHeaders(message);
+        if (headers != null) {
+            headers.encode(buf);
+            return;
+        }
+
         try {
             for (Map.Entry<String, String> h: message.getHeaders()) {
                 encodeHeader(buf, h.getKey(), h.getValue());
@@ -146,6 +152,12 @@ public abstract class HttpMessageEncoder extends OneToOneEncoder {
     }
 
     private void encodeTrailingHeaders(ChannelBuffer buf, HttpChunkTrailer trailer) {
+        HttpHeaders headers = HttpCodecUtil.defaultHeaders(trailer);
+        if (headers != null) {
+            headers.encode(buf);
+            return;
+        }
+
         try {
             for (Map.Entry<String, String> h: trailer.getHeaders()) {
                 encodeHeader(buf, h.getKey(), h.getValue());
@@ -113,6 +113,98 @@ final class HttpPostBodyUtil {
         }
     }
 
+    /**
+     * Searches a multipart delimiter preceded by a line feed using the Boyer-Moore-Horspool algorithm,
+     * so that most bytes of a part are not even looked at.
+     */
+    static final class DelimiterFinder {
+        private final String delimiter;
+        private final byte[] pattern;
+        private final int[] shifts = new int[256];
+
+        DelimiterFinder(String delimiter) {
+            this.delimiter = delimiter;
+            pattern = new byte[delimiter.length() + 1];
+            pattern[0] = HttpCodecUtil.LF;
+            for (int i = 0; i < delimiter.length(); i ++) {
+                pattern[i + 1] = (byte) delimiter.charAt(i);
+            }
+            int last = pattern.length - 1;
+            for (int i = 0; i < shifts.length; i ++) {
+                shifts[i] = pattern.length;
+            }
+            for (int i = 0; i < last; i ++) {
+                shifts[pattern[i] & 0xFF] = last - i;
+            }
+        }
+
+        String delimiter() {
+            return delimiter;
+        }
+
+        /**
+         * @return the length of the searched pattern, which is the length of the delimiter plus one
+         */
+        int length() {
+            return pattern.length;
+        }
+
+        /**
+         * @return the index of the line feed preceding the first delimiter found between fromIndex
+         *          (inclusive) and toIndex (exclusive), or -1 if not found
+         */
+        int indexOf(ChannelBuffer buffer, int fromIndex, int toIndex) {
+            if (buffer.hasArray()) {
+                int offset = buffer.arrayOffset();
+                int index = indexOf(buffer.array(), offset + fromIndex, offset + toIndex);
+                return index < 0? -1 : index - offset;
+            }
+            int last = pattern.length - 1;
+            int i = fromIndex;
+            while (i <= toIndex - pattern.length) {
+                int j = last;
+                while (buffer.getByte(i + j) == pattern[j]) {
+                    if (j == 0) {
+                        return i;
+                    }
+                    j --;
+                }
+                i += shifts[buffer.getByte(i + last) & 0xFF];
+            }
+            return -1;
+        }
+
+        private int indexOf(byte[] array, int fromIndex, int toIndex) {
+            int last = pattern.length - 1;
+            int i = fromIndex;
+            while (i <= toIndex - pattern.length) {
+                int j = last;
+                while (array[i + j] == pattern[j]) {
+                    if (j == 0) {
+                        return i;
+                    }
+                    j --;
+                }
+                i += shifts[array[i + last] & 0xFF];
+            }
+            return -1;
+        }
+
+        /**
+         * @return 1 if the buffer starts with the delimiter at the given index, 0 if the readable bytes
+         *          from the given index are a prefix of the delimiter, or -1 otherwise
+         */
+        int startsWith(ChannelBuffer buffer, int index) {
+            int length = Math.min(pattern.length - 1, buffer.writerIndex() - index);
+            for (int i = 0; i < length; i ++) {
+                if (buffer.getByte(index + i) != pattern[i + 1]) {
+                    return -1;
+                }
+            }
+            return length == pattern.length - 1? 1 : 0;
+        }
+    }
+
     private HttpPostBodyUtil() {
     }
 
@@ -122,7 +214,8 @@ final class HttpPostBodyUtil {
      * @param buffer
      */
     static void skipControlCharacters(ChannelBuffer buffer) {
-        for (;;) {
+        // stops at the end of the buffer as the next chunk may begin with control characters too
+        while (buffer.readable()) {
             char c = (char) buffer.readUnsignedByte();
             if (!Character.isISOControl(c) && !Character.isWhitespace(c)) {
                 buffer.readerIndex(buffer.readerIndex() - 1);
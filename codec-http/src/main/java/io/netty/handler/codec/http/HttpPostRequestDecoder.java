@@ -20,7 +20,9 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -63,10 +65,14 @@ public class HttpPostRequestDecoder {
     private final List<InterfaceHttpData> bodyListHttpData = new ArrayList<InterfaceHttpData>();
 
     /**
-     * HttpDatas as Map from Body
+     * HttpDatas as Map from Body, keyed by the name in lower case (Locale.ENGLISH)
      */
-    private final Map<String, List<InterfaceHttpData>> bodyMapHttpData = new TreeMap<String, List<InterfaceHttpData>>(
-            CaseIgnoringComparator.INSTANCE);
+    private final Map<String, List<InterfaceHttpData>> bodyMapHttpData = new HashMap<String, List<InterfaceHttpData>>();
+
+    /**
+     * Notified of every HttpData as soon as it is decoded, or null
+     */
+    private final HttpDataListener listener;
 
     /**
      * The current channelBuffer
@@ -114,6 +120,11 @@ public class HttpPostRequestDecoder {
      */
     private Attribute currentAttribute;
 
+    /**
+     * The finder of the last searched multipart delimiter
+     */
+    private HttpPostBodyUtil.DelimiterFinder delimiterFinder;
+
     /**
     *
     * @param request the request to decode
@@ -152,6 +163,24 @@ public class HttpPostRequestDecoder {
     public HttpPostRequestDecoder(HttpDataFactory factory, HttpRequest request,
             Charset charset) throws ErrorDataDecoderException,
             IncompatibleDataDecoderException {
+        this(factory, request, charset, null);
+    }
+
+    /**
+     *
+     * @param factory the factory used to create InterfaceHttpData
+     * @param request the request to decode
+     * @param charset the charset to use as default
+     * @param listener the listener notified of every InterfaceHttpData as soon as it is decoded
+     *          (may be null). Since a non chunked request is decoded by this constructor, the
+     *          listener can be notified before this constructor returns.
+     * @throws NullPointerException for request or charset or factory
+     * @throws IncompatibleDataDecoderException if the request has no body to decode
+     * @throws ErrorDataDecoderException if the default charset was wrong when decoding or other errors
+     */
+    public HttpPostRequestDecoder(HttpDataFactory factory, HttpRequest request,
+            Charset charset, HttpDataListener listener) throws ErrorDataDecoderException,
+            IncompatibleDataDecoderException {
         if (factory == null) {
             throw new NullPointerException("factory");
         }
@@ -168,6 +197,7 @@ public class HttpPostRequestDecoder {
         }
         this.charset = charset;
         this.factory = factory;
+        this.listener = listener;
         // Fill default values
         if (this.request.containsHeader(HttpHeaders.Names.CONTENT_TYPE)) {
             checkMultipart(this.request.getHeader(HttpHeaders.Names.CONTENT_TYPE));
@@ -303,7 +333,7 @@ public class HttpPostRequestDecoder {
         if (!isLastChunk) {
             throw new NotEnoughDataDecoderException();
         }
-        return bodyMapHttpData.get(name);
+        return bodyMapHttpData.get(name.toLowerCase(Locale.ENGLISH));
     }
 
     /**
@@ -321,7 +351,7 @@ public class HttpPostRequestDecoder {
         if (!isLastChunk) {
             throw new NotEnoughDataDecoderException();
         }
-        List<InterfaceHttpData> list = bodyMapHttpData.get(name);
+        List<InterfaceHttpData> list = bodyMapHttpData.get(name.toLowerCase(Locale.ENGLISH));
         if (list != null) {
             return list.get(0);
         }
@@ -336,13 +366,14 @@ public class HttpPostRequestDecoder {
      */
     public void offer(HttpChunk chunk) throws ErrorDataDecoderException {
         ChannelBuffer chunked = chunk.getContent();
-        if (undecodedChunk == null) {
+        if (undecodedChunk == null || !undecodedChunk.readable()) {
             undecodedChunk = chunked;
         } else {
-            //undecodedChunk = ChannelBuffers.wrappedBuffer(undecodedChunk, chunk.getContent());
-            // less memory usage
+            // Keep only the bytes not decoded yet, so that the consumed chunks are released
+            // and the buffer does not grow with the request body.
             undecodedChunk = ChannelBuffers.wrappedBuffer(
-                    undecodedChunk, chunked);
+                    undecodedChunk.slice(undecodedChunk.readerIndex(), undecodedChunk.readableBytes()),
+                    chunked);
         }
         if (chunk.isLast()) {
             isLastChunk = true;
@@ -411,13 +442,17 @@ public class HttpPostRequestDecoder {
         if (data == null) {
             return;
         }
-        List<InterfaceHttpData> datas = bodyMapHttpData.get(data.getName());
+        String name = data.getName().toLowerCase(Locale.ENGLISH);
+        List<InterfaceHttpData> datas = bodyMapHttpData.get(name);
         if (datas == null) {
             datas = new ArrayList<InterfaceHttpData>(1);
-            bodyMapHttpData.put(data.getName(), datas);
+            bodyMapHttpData.put(name, datas);
         }
         datas.add(data);
         bodyListHttpData.add(data);
+        if (listener != null) {
+            listener.httpDataDecoded(data);
+        }
     }
 
     /**
@@ -515,14 +550,15 @@ public class HttpPostRequestDecoder {
                 currentStatus = MultiPartStatus.EPILOGUE;
                 return;
             }
-            if (contRead && currentAttribute != null) {
+            if (contRead) {
                 // reset index except if to continue in case of FIELD status
-                if (currentStatus == MultiPartStatus.FIELD) {
+                if (currentAttribute != null && currentStatus == MultiPartStatus.FIELD) {
                     currentAttribute.addContent(
                             undecodedChunk.slice(firstpos, currentpos - firstpos),
                             false);
                     firstpos = currentpos;
                 }
+                // a partially received name is decoded again with the next chunk
                 undecodedChunk.readerIndex(firstpos);
             } else {
                 // end of line so keep index
@@ -1073,88 +1109,7 @@ public class HttpPostRequestDecoder {
      */
     private void readFileUploadByteMultipart(String delimiter)
             throws NotEnoughDataDecoderException, ErrorDataDecoderException {
-        int readerIndex = undecodedChunk.readerIndex();
-        // found the decoder limit
-        boolean newLine = true;
-        int index = 0;
-        int lastPosition = undecodedChunk.readerIndex();
-        boolean found = false;
-        while (undecodedChunk.readable()) {
-            byte nextByte = undecodedChunk.readByte();
-            if (newLine) {
-                // Check the delimiter
-                if (nextByte == delimiter.codePointAt(index)) {
-                    index ++;
-                    if (delimiter.length() == index) {
-                        found = true;
-                        break;
-                    }
-                    continue;
-                } else {
-                    newLine = false;
-                    index = 0;
-                    // continue until end of line
-                    if (nextByte == HttpCodecUtil.CR) {
-                        if (undecodedChunk.readable()) {
-                            nextByte = undecodedChunk.readByte();
-                            if (nextByte == HttpCodecUtil.LF) {
-                                newLine = true;
-                                index = 0;
-                                lastPosition = undecodedChunk.readerIndex() - 2;
-                            }
-                        }
-                    } else if (nextByte == HttpCodecUtil.LF) {
-                        newLine = true;
-                        index = 0;
-                        lastPosition = undecodedChunk.readerIndex() - 1;
-                    } else {
-                        // save last valid position
-                        lastPosition = undecodedChunk.readerIndex();
-                    }
-                }
-            } else {
-                // continue until end of line
-                if (nextByte == HttpCodecUtil.CR) {
-                    if (undecodedChunk.readable()) {
-                        nextByte = undecodedChunk.readByte();
-                        if (nextByte == HttpCodecUtil.LF) {
-                            newLine = true;
-                            index = 0;
-                            lastPosition = undecodedChunk.readerIndex() - 2;
-                        }
-                    }
-                } else if (nextByte == HttpCodecUtil.LF) {
-                    newLine = true;
-                    index = 0;
-                    lastPosition = undecodedChunk.readerIndex() - 1;
-                } else {
-                    // save last valid position
-                    lastPosition = undecodedChunk.readerIndex();
-                }
-            }
-        }
-        ChannelBuffer buffer = undecodedChunk.slice(readerIndex, lastPosition -
-                readerIndex);
-        if (found) {
-            // found so lastPosition is correct and final
-            try {
-                currentFileUpload.addContent(buffer, true);
-                // just before the CRLF and delimiter
-                undecodedChunk.readerIndex(lastPosition);
-            } catch (IOException e) {
-                throw new ErrorDataDecoderException(e);
-            }
-        } else {
-            // possibly the delimiter is partially found but still the last position is OK
-            try {
-                currentFileUpload.addContent(buffer, false);
-                // last valid char (not CR, not LF, not beginning of delimiter)
-                undecodedChunk.readerIndex(lastPosition);
-                throw new NotEnoughDataDecoderException();
-            } catch (IOException e) {
-                throw new ErrorDataDecoderException(e);
-            }
-        }
+        readDelimitedContent(delimiter, currentFileUpload);
     }
 
     /**
@@ -1164,91 +1119,60 @@ public class HttpPostRequestDecoder {
      */
     private void loadFieldMultipart(String delimiter)
             throws NotEnoughDataDecoderException, ErrorDataDecoderException {
+        readDelimitedContent(delimiter, currentAttribute);
+    }
+
+    /**
+     * Add the bytes up to the CRLF (or LF) preceding the delimiter to the given HttpData as slices of
+     * the undecoded buffer. If the delimiter is not found yet, all the bytes which cannot be part of
+     * the delimiter are added and consumed, so that the next search resumes where this one stopped.
+     * @throws NotEnoughDataDecoderException Need more chunks but
+     *   do not reset the readerInder since some values will be already added to the HttpData
+     * @throws ErrorDataDecoderException write IO error occurs with the HttpData
+     */
+    private void readDelimitedContent(String delimiter, HttpData data)
+            throws NotEnoughDataDecoderException, ErrorDataDecoderException {
+        HttpPostBodyUtil.DelimiterFinder finder = delimiterFinder;
+        if (finder == null || !finder.delimiter().equals(delimiter)) {
+            finder = delimiterFinder = new HttpPostBodyUtil.DelimiterFinder(delimiter);
+        }
         int readerIndex = undecodedChunk.readerIndex();
-        try {
-            // found the decoder limit
-            boolean newLine = true;
-            int index = 0;
-            int lastPosition = undecodedChunk.readerIndex();
-            boolean found = false;
-            while (undecodedChunk.readable()) {
-                byte nextByte = undecodedChunk.readByte();
-                if (newLine) {
-                    // Check the delimiter
-                    if (nextByte == delimiter.codePointAt(index)) {
-                        index ++;
-                        if (delimiter.length() == index) {
-                            found = true;
-                            break;
-                        }
-                        continue;
-                    } else {
-                        newLine = false;
-                        index = 0;
-                        // continue until end of line
-                        if (nextByte == HttpCodecUtil.CR) {
-                            if (undecodedChunk.readable()) {
-                                nextByte = undecodedChunk.readByte();
-                                if (nextByte == HttpCodecUtil.LF) {
-                                    newLine = true;
-                                    index = 0;
-                                    lastPosition = undecodedChunk.readerIndex() - 2;
-                                }
-                            }
-                        } else if (nextByte == HttpCodecUtil.LF) {
-                            newLine = true;
-                            index = 0;
-                            lastPosition = undecodedChunk.readerIndex() - 1;
-                        } else {
-                            lastPosition = undecodedChunk.readerIndex();
-                        }
-                    }
-                } else {
-                    // continue until end of line
-                    if (nextByte == HttpCodecUtil.CR) {
-                        if (undecodedChunk.readable()) {
-                            nextByte = undecodedChunk.readByte();
-                            if (nextByte == HttpCodecUtil.LF) {
-                                newLine = true;
-                                index = 0;
-                                lastPosition = undecodedChunk.readerIndex() - 2;
-                            }
-                        }
-                    } else if (nextByte == HttpCodecUtil.LF) {
-                        newLine = true;
-                        index = 0;
-                        lastPosition = undecodedChunk.readerIndex() - 1;
-                    } else {
-                        lastPosition = undecodedChunk.readerIndex();
-                    }
-                }
-            }
-            if (found) {
-                // found so lastPosition is correct
-                // but position is just after the delimiter (either close delimiter or simple one)
-                // so go back of delimiter size
-                try {
-                    currentAttribute.addContent(
-                            undecodedChunk.slice(readerIndex, lastPosition - readerIndex),
-                            true);
-                } catch (IOException e) {
-                    throw new ErrorDataDecoderException(e);
+        int writerIndex = undecodedChunk.writerIndex();
+        int contentEnd;
+        boolean found;
+        int start = data.length() == 0? finder.startsWith(undecodedChunk, readerIndex) : -1;
+        if (start > 0) {
+            // empty content: the delimiter immediately follows the headers
+            contentEnd = readerIndex;
+            found = true;
+        } else if (start == 0) {
+            // possibly an empty content but the delimiter is not complete yet
+            throw new NotEnoughDataDecoderException();
+        } else {
+            int index = finder.indexOf(undecodedChunk, readerIndex, writerIndex);
+            if (index >= 0) {
+                contentEnd = index;
+                if (index > readerIndex && undecodedChunk.getByte(index - 1) == HttpCodecUtil.CR) {
+                    contentEnd --;
                 }
-                undecodedChunk.readerIndex(lastPosition);
+                found = true;
             } else {
-                try {
-                    currentAttribute.addContent(
-                            undecodedChunk.slice(readerIndex, lastPosition - readerIndex),
-                            false);
-                } catch (IOException e) {
-                    throw new ErrorDataDecoderException(e);
-                }
-                undecodedChunk.readerIndex(lastPosition);
-                throw new NotEnoughDataDecoderException();
+                // keep the bytes which could be the CRLF and the beginning of the delimiter
+                contentEnd = Math.max(readerIndex, writerIndex - finder.length());
+                found = false;
             }
-        } catch (IndexOutOfBoundsException e) {
-            undecodedChunk.readerIndex(readerIndex);
-            throw new NotEnoughDataDecoderException(e);
+        }
+        if (found || contentEnd > readerIndex) {
+            try {
+                data.addContent(undecodedChunk.slice(readerIndex, contentEnd - readerIndex), found);
+            } catch (IOException e) {
+                throw new ErrorDataDecoderException(e);
+            }
+        }
+        // just before the CRLF and delimiter if found
+        undecodedChunk.readerIndex(contentEnd);
+        if (!found) {
+            throw new NotEnoughDataDecoderException();
         }
     }
 
@@ -1378,6 +1302,19 @@ public class HttpPostRequestDecoder {
         return array;
     }
 
+    /**
+     * Listener notified of every InterfaceHttpData as soon as it is completely decoded, in the
+     * order of the body, so that an application can process each part while the next chunks
+     * are still being received instead of polling with {@link HttpPostRequestDecoder#hasNext()}.
+     * The InterfaceHttpData is still available from the decoder afterwards.
+     */
+    public interface HttpDataListener {
+        /**
+         * Called by the thread which offered the chunk completing the given InterfaceHttpData
+         */
+        void httpDataDecoded(InterfaceHttpData data);
+    }
+
     /**
      * Exception when try reading data from request in chunked format, and not enough
      * data are available (need more chunks)
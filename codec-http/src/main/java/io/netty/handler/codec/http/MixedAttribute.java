@@ -21,6 +21,7 @@ import java.io.InputStream;
 import java.nio.charset.Charset;
 
 import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
 
 /**
  * Mixed implementation using both in Memory and in File with a limit of size
@@ -30,29 +31,84 @@ public class MixedAttribute implements Attribute {
 
     private long limitSize;
 
+    private long directLimitSize;
+
+    private final HttpDataMemoryBudget budget;
+
+    /**
+     * The number of bytes counted in the disk size of the budget
+     */
+    private long diskSize;
+
+    /**
+     * True once the memory counted for the content is released, so that it is not released twice
+     */
+    private boolean released;
+
     public MixedAttribute(String name, long limitSize) {
+        this(name, limitSize, limitSize, HttpDataMemoryBudget.getDefault());
+    }
+
+    /**
+     *
+     * @param limitSize the maximum size of a content held in heap buffers
+     * @param directLimitSize the maximum size of a content held in direct buffers, once it
+     *          is larger than limitSize. A larger content is held on disk.
+     * @param budget the budget limiting the memory held by all the Mixed HttpDatas
+     */
+    public MixedAttribute(String name, long limitSize, long directLimitSize,
+            HttpDataMemoryBudget budget) {
+        if (budget == null) {
+            throw new NullPointerException("budget");
+        }
         this.limitSize = limitSize;
+        this.directLimitSize = Math.max(limitSize, directLimitSize);
+        this.budget = budget;
         attribute = new MemoryAttribute(name);
     }
 
     public MixedAttribute(String name, String value, long limitSize) {
+        this(name, value, limitSize, limitSize, HttpDataMemoryBudget.getDefault());
+    }
+
+    /**
+     *
+     * @param limitSize the maximum size of a content held in heap buffers
+     * @param directLimitSize the maximum size of a content held in direct buffers, once it
+     *          is larger than limitSize. A larger content is held on disk.
+     * @param budget the budget limiting the memory held by all the Mixed HttpDatas
+     */
+    public MixedAttribute(String name, String value, long limitSize, long directLimitSize,
+            HttpDataMemoryBudget budget) {
+        if (budget == null) {
+            throw new NullPointerException("budget");
+        }
         this.limitSize = limitSize;
+        this.directLimitSize = Math.max(limitSize, directLimitSize);
+        this.budget = budget;
         if (value.length() > this.limitSize) {
             try {
                 attribute = new DiskAttribute(name, value);
+                addDiskSize(attribute.length());
+                return;
             } catch (IOException e) {
                 // revert to Memory mode
-                try {
-                    attribute = new MemoryAttribute(name, value);
-                } catch (IOException e1) {
-                    throw new IllegalArgumentException(e);
-                }
             }
-        } else {
+        }
+        MemoryAttribute memoryAttribute;
+        try {
+            memoryAttribute = new MemoryAttribute(name, value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        attribute = memoryAttribute;
+        if (!budget.reserve(memoryAttribute, memoryAttribute.length(), false)) {
             try {
-                attribute = new MemoryAttribute(name, value);
+                attribute = new DiskAttribute(name, value);
+                addDiskSize(attribute.length());
             } catch (IOException e) {
-                throw new IllegalArgumentException(e);
+                // keep it in memory without counting it
+                released = true;
             }
         }
     }
@@ -60,21 +116,56 @@ public class MixedAttribute implements Attribute {
     @Override
     public void addContent(ChannelBuffer buffer, boolean last) throws IOException {
         if (attribute instanceof MemoryAttribute) {
-            if (attribute.length() + buffer.readableBytes() > limitSize) {
-                DiskAttribute diskAttribute = new DiskAttribute(attribute
-                        .getName());
-                if (((MemoryAttribute) attribute).getChannelBuffer() != null) {
-                    diskAttribute.addContent(((MemoryAttribute) attribute)
-                        .getChannelBuffer(), last);
+            MemoryAttribute memoryAttribute = (MemoryAttribute) attribute;
+            int localsize = buffer == null? 0 : buffer.readableBytes();
+            long newsize = attribute.length() + localsize;
+            if (newsize <= directLimitSize &&
+                    budget.reserve(memoryAttribute, localsize, newsize > limitSize)) {
+                try {
+                    attribute.addContent(buffer, last);
+                } catch (IOException e) {
+                    budget.release(memoryAttribute, localsize);
+                    throw e;
                 }
-                attribute = diskAttribute;
+                return;
+            }
+            DiskAttribute diskAttribute = new DiskAttribute(attribute
+                    .getName());
+            if (memoryAttribute.getChannelBuffer() != null) {
+                // more content follows
+                diskAttribute.addContent(memoryAttribute.getChannelBuffer(), false);
             }
+            releaseBudget();
+            attribute = diskAttribute;
+            addDiskSize(diskAttribute.length());
         }
+        long oldsize = attribute.length();
         attribute.addContent(buffer, last);
+        addDiskSize(attribute.length() - oldsize);
+    }
+
+    /**
+     * Release the memory or disk size counted for the current content
+     */
+    private void releaseBudget() {
+        if (attribute instanceof MemoryAttribute) {
+            if (!released) {
+                budget.release((MemoryAttribute) attribute);
+                released = true;
+            }
+        } else {
+            addDiskSize(-diskSize);
+        }
+    }
+
+    private void addDiskSize(long bytes) {
+        diskSize += bytes;
+        budget.addDiskSize(bytes);
     }
 
     @Override
     public void delete() {
+        releaseBudget();
         attribute.delete();
     }
 
@@ -120,7 +211,14 @@ public class MixedAttribute implements Attribute {
 
     @Override
     public boolean renameTo(File dest) throws IOException {
-        return attribute.renameTo(dest);
+        if (attribute.renameTo(dest)) {
+            if (!(attribute instanceof MemoryAttribute)) {
+                // not a temporary file anymore
+                addDiskSize(-diskSize);
+            }
+            return true;
+        }
+        return false;
     }
 
     @Override
@@ -130,33 +228,70 @@ public class MixedAttribute implements Attribute {
 
     @Override
     public void setContent(ChannelBuffer buffer) throws IOException {
-        if (buffer.readableBytes() > limitSize) {
-            if (attribute instanceof MemoryAttribute) {
-                // change to Disk
-                attribute = new DiskAttribute(attribute.getName());
-            }
+        long newsize = buffer.readableBytes();
+        setContent(newsize);
+        try {
+            attribute.setContent(buffer);
+        } catch (IOException e) {
+            releaseNewContent(newsize);
+            throw e;
+        }
+        if (!(attribute instanceof MemoryAttribute)) {
+            addDiskSize(attribute.length());
         }
-        attribute.setContent(buffer);
     }
 
     @Override
     public void setContent(File file) throws IOException {
-        if (file.length() > limitSize) {
-            if (attribute instanceof MemoryAttribute) {
-                // change to Disk
-                attribute = new DiskAttribute(attribute.getName());
-            }
+        long newsize = file.length();
+        setContent(newsize);
+        try {
+            // not counted in the disk size if not loaded in memory since it is not a temporary file
+            attribute.setContent(file);
+        } catch (IOException e) {
+            releaseNewContent(newsize);
+            throw e;
         }
-        attribute.setContent(file);
     }
 
     @Override
     public void setContent(InputStream inputStream) throws IOException {
+        // change to Disk even if we don't know the size
+        releaseBudget();
         if (attribute instanceof MemoryAttribute) {
-            // change to Disk even if we don't know the size
             attribute = new DiskAttribute(attribute.getName());
         }
         attribute.setContent(inputStream);
+        addDiskSize(attribute.length());
+    }
+
+    /**
+     * Release the budget of the current content and choose the storage of a new content
+     * of the given size
+     */
+    private void setContent(long newsize) {
+        releaseBudget();
+        if (attribute instanceof MemoryAttribute) {
+            MemoryAttribute memoryAttribute = (MemoryAttribute) attribute;
+            // a new content replaces the current one, so there is nothing to move off the heap
+            if (newsize <= limitSize && !memoryAttribute.isDirect() &&
+                    budget.reserve(memoryAttribute, newsize, false)) {
+                released = false;
+                return;
+            }
+            // change to Disk
+            attribute = new DiskAttribute(attribute.getName());
+        }
+    }
+
+    /**
+     * Release the memory reserved for a new content which could not be set
+     */
+    private void releaseNewContent(long newsize) {
+        if (attribute instanceof MemoryAttribute && !released) {
+            budget.release((MemoryAttribute) attribute, newsize);
+            released = true;
+        }
     }
 
     @Override
@@ -186,7 +321,11 @@ public class MixedAttribute implements Attribute {
 
     @Override
     public void setValue(String value) throws IOException {
-        attribute.setValue(value);
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        // through setContent() to choose the storage and count the content in the budget
+        setContent(ChannelBuffers.wrappedBuffer(value.getBytes(attribute.getCharset())));
     }
 
     @Override
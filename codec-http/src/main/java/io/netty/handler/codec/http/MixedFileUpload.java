@@ -30,13 +30,46 @@ public class MixedFileUpload implements FileUpload {
 
     private long limitSize;
 
+    private long directLimitSize;
+
+    private final HttpDataMemoryBudget budget;
+
     private long definedSize;
 
+    /**
+     * The number of bytes counted in the disk size of the budget
+     */
+    private long diskSize;
+
+    /**
+     * True once the memory counted for the content is released, so that it is not released twice
+     */
+    private boolean released;
+
     public MixedFileUpload(String name, String filename, String contentType,
             String contentTransferEncoding, Charset charset, long size,
             long limitSize) {
+        this(name, filename, contentType, contentTransferEncoding, charset, size,
+                limitSize, limitSize, HttpDataMemoryBudget.getDefault());
+    }
+
+    /**
+     *
+     * @param limitSize the maximum size of a content held in heap buffers
+     * @param directLimitSize the maximum size of a content held in direct buffers, once it
+     *          is larger than limitSize. A larger content is held on disk.
+     * @param budget the budget limiting the memory held by all the Mixed HttpDatas
+     */
+    public MixedFileUpload(String name, String filename, String contentType,
+            String contentTransferEncoding, Charset charset, long size,
+            long limitSize, long directLimitSize, HttpDataMemoryBudget budget) {
+        if (budget == null) {
+            throw new NullPointerException("budget");
+        }
         this.limitSize = limitSize;
-        if (size > this.limitSize) {
+        this.directLimitSize = Math.max(limitSize, directLimitSize);
+        this.budget = budget;
+        if (size > this.directLimitSize) {
             fileUpload = new DiskFileUpload(name, filename, contentType,
                     contentTransferEncoding, charset, size);
         } else {
@@ -50,24 +83,63 @@ public class MixedFileUpload implements FileUpload {
     public void addContent(ChannelBuffer buffer, boolean last)
             throws IOException {
         if (fileUpload instanceof MemoryFileUpload) {
-            if (fileUpload.length() + buffer.readableBytes() > limitSize) {
-                DiskFileUpload diskFileUpload = new DiskFileUpload(fileUpload
-                        .getName(), fileUpload.getFilename(), fileUpload
-                        .getContentType(), fileUpload
-                        .getContentTransferEncoding(), fileUpload.getCharset(),
-                        definedSize);
-                if (((MemoryFileUpload) fileUpload).getChannelBuffer() != null) {
-                    diskFileUpload.addContent(((MemoryFileUpload) fileUpload)
-                        .getChannelBuffer(), last);
+            MemoryFileUpload memoryFileUpload = (MemoryFileUpload) fileUpload;
+            int localsize = buffer == null? 0 : buffer.readableBytes();
+            long newsize = fileUpload.length() + localsize;
+            if (newsize <= directLimitSize &&
+                    budget.reserve(memoryFileUpload, localsize, newsize > limitSize)) {
+                try {
+                    fileUpload.addContent(buffer, last);
+                } catch (IOException e) {
+                    budget.release(memoryFileUpload, localsize);
+                    throw e;
                 }
-                fileUpload = diskFileUpload;
+                return;
             }
+            DiskFileUpload diskFileUpload = newDiskFileUpload();
+            if (memoryFileUpload.getChannelBuffer() != null) {
+                // more content follows
+                diskFileUpload.addContent(memoryFileUpload.getChannelBuffer(), false);
+            }
+            releaseBudget();
+            fileUpload = diskFileUpload;
+            addDiskSize(diskFileUpload.length());
         }
+        long oldsize = fileUpload.length();
         fileUpload.addContent(buffer, last);
+        addDiskSize(fileUpload.length() - oldsize);
+    }
+
+    private DiskFileUpload newDiskFileUpload() {
+        return new DiskFileUpload(fileUpload
+                .getName(), fileUpload.getFilename(), fileUpload
+                .getContentType(), fileUpload
+                .getContentTransferEncoding(), fileUpload.getCharset(),
+                definedSize);
+    }
+
+    /**
+     * Release the memory or disk size counted for the current content
+     */
+    private void releaseBudget() {
+        if (fileUpload instanceof MemoryFileUpload) {
+            if (!released) {
+                budget.release((MemoryFileUpload) fileUpload);
+                released = true;
+            }
+        } else {
+            addDiskSize(-diskSize);
+        }
+    }
+
+    private void addDiskSize(long bytes) {
+        diskSize += bytes;
+        budget.addDiskSize(bytes);
     }
 
     @Override
     public void delete() {
+        releaseBudget();
         fileUpload.delete();
     }
 
@@ -128,7 +200,14 @@ public class MixedFileUpload implements FileUpload {
 
     @Override
     public boolean renameTo(File dest) throws IOException {
-        return fileUpload.renameTo(dest);
+        if (fileUpload.renameTo(dest)) {
+            if (!(fileUpload instanceof MemoryFileUpload)) {
+                // not a temporary file anymore
+                addDiskSize(-diskSize);
+            }
+            return true;
+        }
+        return false;
     }
 
     @Override
@@ -138,45 +217,70 @@ public class MixedFileUpload implements FileUpload {
 
     @Override
     public void setContent(ChannelBuffer buffer) throws IOException {
-        if (buffer.readableBytes() > limitSize) {
-            if (fileUpload instanceof MemoryFileUpload) {
-                // change to Disk
-                fileUpload = new DiskFileUpload(fileUpload
-                        .getName(), fileUpload.getFilename(), fileUpload
-                        .getContentType(), fileUpload
-                        .getContentTransferEncoding(), fileUpload.getCharset(),
-                        definedSize);
-            }
+        long newsize = buffer.readableBytes();
+        setContent(newsize);
+        try {
+            fileUpload.setContent(buffer);
+        } catch (IOException e) {
+            releaseNewContent(newsize);
+            throw e;
+        }
+        if (!(fileUpload instanceof MemoryFileUpload)) {
+            addDiskSize(fileUpload.length());
         }
-        fileUpload.setContent(buffer);
     }
 
     @Override
     public void setContent(File file) throws IOException {
-        if (file.length() > limitSize) {
-            if (fileUpload instanceof MemoryFileUpload) {
-                // change to Disk
-                fileUpload = new DiskFileUpload(fileUpload
-                        .getName(), fileUpload.getFilename(), fileUpload
-                        .getContentType(), fileUpload
-                        .getContentTransferEncoding(), fileUpload.getCharset(),
-                        definedSize);
-            }
+        long newsize = file.length();
+        setContent(newsize);
+        try {
+            // not counted in the disk size if not loaded in memory since it is not a temporary file
+            fileUpload.setContent(file);
+        } catch (IOException e) {
+            releaseNewContent(newsize);
+            throw e;
         }
-        fileUpload.setContent(file);
     }
 
     @Override
     public void setContent(InputStream inputStream) throws IOException {
+        // change to Disk as the size is unknown
+        releaseBudget();
         if (fileUpload instanceof MemoryFileUpload) {
-            // change to Disk
-            fileUpload = new DiskFileUpload(fileUpload
-                    .getName(), fileUpload.getFilename(), fileUpload
-                    .getContentType(), fileUpload
-                    .getContentTransferEncoding(), fileUpload.getCharset(),
-                    definedSize);
+            fileUpload = newDiskFileUpload();
         }
         fileUpload.setContent(inputStream);
+        addDiskSize(fileUpload.length());
+    }
+
+    /**
+     * Release the budget of the current content and choose the storage of a new content
+     * of the given size
+     */
+    private void setContent(long newsize) {
+        releaseBudget();
+        if (fileUpload instanceof MemoryFileUpload) {
+            MemoryFileUpload memoryFileUpload = (MemoryFileUpload) fileUpload;
+            // a new content replaces the current one, so there is nothing to move off the heap
+            if (newsize <= limitSize && !memoryFileUpload.isDirect() &&
+                    budget.reserve(memoryFileUpload, newsize, false)) {
+                released = false;
+                return;
+            }
+            // change to Disk
+            fileUpload = newDiskFileUpload();
+        }
+    }
+
+    /**
+     * Release the memory reserved for a new content which could not be set
+     */
+    private void releaseNewContent(long newsize) {
+        if (fileUpload instanceof MemoryFileUpload && !released) {
+            budget.release((MemoryFileUpload) fileUpload, newsize);
+            released = true;
+        }
     }
 
     @Override
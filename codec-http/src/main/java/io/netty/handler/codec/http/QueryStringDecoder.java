@@ -28,7 +28,7 @@ import io.netty.util.CharsetUtil;
 
 /**
  * Splits an HTTP query string into a path string and key-value parameter pairs.
- * This decoder is for one time use only.  Create a new instance for each URI:
+ * Create a new instance for each URI:
  * <pre>
  * {@link QueryStringDecoder} decoder = new {@link QueryStringDecoder}("/hello?recipient=world&x=1;y=2");
  * assert decoder.getPath().equals("/hello");
@@ -44,6 +44,42 @@ import io.netty.util.CharsetUtil;
  * ...
  * </pre>
  *
+ * <h3>Looking up a few parameters</h3>
+ *
+ * The decoder does nothing until it is asked for something.  The first
+ * parameter lookup finds the boundaries of all key-value pairs in a single
+ * scan, and {@link #getParameter(String)} and
+ * {@link #getParameterValues(String)} then decode only the values of the
+ * requested parameter.  The whole {@link #getParameters() parameter map} is
+ * built only when it is asked for:
+ * <pre>
+ * {@link QueryStringDecoder} decoder = new {@link QueryStringDecoder}(request.getUri());
+ * String id = decoder.getParameter("id");
+ * </pre>
+ *
+ * The URI of an {@link HttpRequest} decoded by {@link HttpRequestDecoder}
+ * holds one character per byte of the request line, and percent-escapes are
+ * decoded from those bytes directly into a byte array which is then
+ * converted into a string with the charset of the decoder.  An
+ * {@link AsciiString} can be decoded the same way without converting it into
+ * a {@link String} first.
+ *
+ * <h3>Reusing a decoder</h3>
+ *
+ * An instance can be {@link #reset(CharSequence) reset} to decode another
+ * URI, keeping its index and decoding buffer, so that a handler which decodes
+ * the URI of every request does not need to allocate a new decoder each time:
+ * <pre>
+ * // One instance per channel, as a decoder is not thread-safe.
+ * private final {@link QueryStringDecoder} decoder = new {@link QueryStringDecoder}(CharsetUtil.UTF_8, true, 16);
+ *
+ * public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+ *     {@link HttpRequest} request = ({@link HttpRequest}) e.getMessage();
+ *     decoder.reset(request.getUri());
+ *     route(decoder.getPath(), decoder.getParameter("id"));
+ * }
+ * </pre>
+ *
  * <h3>HashDOS vulnerability fix</h3>
  *
  * As a workaround to the <a href="http://events.ccc.de/congress/2011/Fahrplan/attachments/2007_28C3_Effective_DoS_on_web_application_platforms.pdf">HashDOS</a>
@@ -61,12 +97,32 @@ public class QueryStringDecoder {
     private static final int DEFAULT_MAX_PARAMS = 1024;
 
     private final Charset charset;
-    private final String uri;
     private final boolean hasPath;
     private final int maxParams;
+    private CharSequence uri;
     private String path;
     private Map<String, List<String>> params;
+
+    /**
+     * The end of the path, which is also the position of the {@code '?'} if
+     * there is a query string, or {@code -1} if not found yet
+     */
+    private int pathEnd = -1;
+
+    /**
+     * The start of the name, the end of the name and the end of the value of
+     * every key-value pair, or {@code null} if not indexed yet.  The value
+     * starts right after the end of the name unless it is empty.
+     */
+    private int[] bounds;
     private int nParams;
+    private boolean indexed;
+
+    /**
+     * The buffer percent-escapes are decoded into, which is kept for the next
+     * URI
+     */
+    private byte[] buf;
 
     /**
      * Creates a new decoder that decodes the specified URI. The decoder will
@@ -105,22 +161,8 @@ public class QueryStringDecoder {
      * specified charset.
      */
     public QueryStringDecoder(String uri, Charset charset, boolean hasPath, int maxParams) {
-        if (uri == null) {
-            throw new NullPointerException("uri");
-        }
-        if (charset == null) {
-            throw new NullPointerException("charset");
-        }
-        if (maxParams <= 0) {
-            throw new IllegalArgumentException(
-                    "maxParams: " + maxParams + " (expected: a positive integer)");
-        }
-
-        // http://en.wikipedia.org/wiki/Query_string
-        this.uri = uri.replace(';', '&');
-        this.charset = charset;
-        this.maxParams = maxParams;
-        this.hasPath = hasPath;
+        this(charset, hasPath, maxParams);
+        reset(uri);
     }
 
     /**
@@ -144,9 +186,30 @@ public class QueryStringDecoder {
      * specified charset.
      */
     public QueryStringDecoder(URI uri, Charset charset, int maxParams) {
+        this(charset, true, maxParams);
         if (uri == null) {
             throw new NullPointerException("uri");
         }
+
+        // Also take care of cut of things like "http://localhost"
+        String rawPath = uri.getRawPath();
+        if (rawPath == null) {
+            rawPath = "";
+        }
+        String rawQuery = uri.getRawQuery();
+        reset(rawQuery == null? rawPath : rawPath + '?' + rawQuery);
+    }
+
+    /**
+     * Creates a new decoder that decodes nothing until it is
+     * {@link #reset(CharSequence) reset} with a URI encoded in the specified
+     * charset.
+     *
+     * @param hasPath   {@code false} if the URIs to decode consist of a query
+     *                  string only
+     * @param maxParams the maximum number of key-value pairs to decode
+     */
+    public QueryStringDecoder(Charset charset, boolean hasPath, int maxParams) {
         if (charset == null) {
             throw new NullPointerException("charset");
         }
@@ -154,22 +217,32 @@ public class QueryStringDecoder {
             throw new IllegalArgumentException(
                     "maxParams: " + maxParams + " (expected: a positive integer)");
         }
-        
-        String rawPath = uri.getRawPath();
-        if (rawPath != null) {
-            hasPath = true;
-        } else {
-            rawPath = "";
-            hasPath = false;
-        }
-        // Also take care of cut of things like "http://localhost" 
-        String newUri = rawPath + "?" + uri.getRawQuery();
 
-        // http://en.wikipedia.org/wiki/Query_string
-        this.uri = newUri.replace(';', '&');
         this.charset = charset;
+        this.hasPath = hasPath;
         this.maxParams = maxParams;
+        uri = "";
+    }
 
+    /**
+     * Makes this decoder decode the specified URI from now on, discarding
+     * everything decoded from the previous URI.  The URI can be any
+     * {@link CharSequence} of single-byte characters, such as the URI of an
+     * {@link HttpRequest} or an {@link AsciiString}.
+     *
+     * @return this decoder
+     */
+    public QueryStringDecoder reset(CharSequence uri) {
+        if (uri == null) {
+            throw new NullPointerException("uri");
+        }
+        this.uri = uri;
+        path = null;
+        params = null;
+        pathEnd = -1;
+        nParams = 0;
+        indexed = false;
+        return this;
     }
 
     /**
@@ -177,18 +250,28 @@ public class QueryStringDecoder {
      */
     public String getPath() {
         if (path == null) {
-            if (!hasPath) {
-                return path = "";
-            }
+            path = uri.subSequence(0, pathEnd()).toString();
+        }
+        return path;
+    }
 
-            int pathEndPos = uri.indexOf('?');
-            if (pathEndPos < 0) {
-                path = uri;
+    private int pathEnd() {
+        if (pathEnd < 0) {
+            if (!hasPath) {
+                pathEnd = 0;
             } else {
-                return path = uri.substring(0, pathEndPos);
+                CharSequence uri = this.uri;
+                int length = uri.length();
+                int i;
+                for (i = 0; i < length; i ++) {
+                    if (uri.charAt(i) == '?') {
+                        break;
+                    }
+                }
+                pathEnd = i;
             }
         }
-        return path;
+        return pathEnd;
     }
 
     /**
@@ -196,86 +279,192 @@ public class QueryStringDecoder {
      */
     public Map<String, List<String>> getParameters() {
         if (params == null) {
-            if (hasPath) {
-                int pathLength = getPath().length();
-                if (uri.length() == pathLength) {
-                    return Collections.emptyMap();
-                }
-                decodeParams(uri.substring(pathLength + 1));
-            } else {
-                if (uri.isEmpty()) {
-                    return Collections.emptyMap();
+            index();
+            if (nParams == 0) {
+                return Collections.emptyMap();
+            }
+
+            Map<String, List<String>> params = new LinkedHashMap<String, List<String>>();
+            for (int i = 0; i < nParams; i ++) {
+                String name = decodeName(i);
+                List<String> values = params.get(name);
+                if (values == null) {
+                    values = new ArrayList<String>(1);  // Often there's only 1 value.
+                    params.put(name, values);
                 }
-                decodeParams(uri);
+                values.add(decodeValue(i));
             }
+            this.params = params;
         }
         return params;
     }
 
-    private void decodeParams(String s) {
-        Map<String, List<String>> params = this.params = new LinkedHashMap<String, List<String>>();
-        nParams = 0;
-        String name = null;
-        int pos = 0; // Beginning of the unprocessed region
-        int i;       // End of the unprocessed region
-        char c = 0;  // Current character
-        for (i = 0; i < s.length(); i++) {
-            c = s.charAt(i);
-            if (c == '=' && name == null) {
-                if (pos != i) {
-                    name = decodeComponent(s.substring(pos, i), charset);
-                }
-                pos = i + 1;
-            } else if (c == '&') {
-                if (name == null && pos != i) {
-                    // We haven't seen an `=' so far but moved forward.
-                    // Must be a param of the form '&a&' so add it with
-                    // an empty value.
-                    if (!addParam(params, decodeComponent(s.substring(pos, i), charset), "")) {
-                        return;
-                    }
-                } else if (name != null) {
-                    if (!addParam(params, name, decodeComponent(s.substring(pos, i), charset))) {
-                        return;
-                    }
-                    name = null;
+    /**
+     * Returns the first decoded value of the parameter with the specified
+     * name.  Only the value which is returned is decoded unless the
+     * {@link #getParameters() parameter map} has been built already.
+     *
+     * @return the value, which is an empty string if the parameter has no
+     *         value, or {@code null} if there is no such parameter
+     */
+    public String getParameter(String name) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        if (params != null) {
+            List<String> values = params.get(name);
+            return values == null? null : values.get(0);
+        }
+
+        index();
+        for (int i = 0; i < nParams; i ++) {
+            if (nameEquals(i, name)) {
+                return decodeValue(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all decoded values of the parameter with the specified name.
+     * Only the values which are returned are decoded unless the
+     * {@link #getParameters() parameter map} has been built already.
+     *
+     * @return the values in the order they appear in the URI, or an empty
+     *         list if there is no such parameter
+     */
+    public List<String> getParameterValues(String name) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        if (params != null) {
+            List<String> values = params.get(name);
+            if (values == null) {
+                return Collections.emptyList();
+            }
+            return values;
+        }
+
+        index();
+        List<String> values = null;
+        for (int i = 0; i < nParams; i ++) {
+            if (nameEquals(i, name)) {
+                if (values == null) {
+                    values = new ArrayList<String>(1);
                 }
-                pos = i + 1;
+                values.add(decodeValue(i));
             }
         }
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        return values;
+    }
 
-        if (pos != i) {  // Are there characters we haven't dealt with?
-            if (name == null) {     // Yes and we haven't seen any `='.
-                if (!addParam(params, decodeComponent(s.substring(pos, i), charset), "")) {
-                    return;
+    /**
+     * Finds the boundaries of every key-value pair of the query string.
+     */
+    private void index() {
+        if (indexed) {
+            return;
+        }
+        indexed = true;
+
+        CharSequence uri = this.uri;
+        int length = uri.length();
+        int start = pathEnd();
+        if (hasPath) {
+            // Skip the '?'.
+            start ++;
+        }
+
+        int nameEnd = -1; // The position of the first '=' of the current pair
+        for (int i = start; i <= length; i ++) {
+            // http://en.wikipedia.org/wiki/Query_string
+            char c = i < length? uri.charAt(i) : '&';
+            if (c == '=' && nameEnd < 0) {
+                if (i == start) {
+                    // No name yet - the name starts after the '='.
+                    start = i + 1;
+                } else {
+                    nameEnd = i;
                 }
-            } else {                // Yes and this must be the last value.
-                if (!addParam(params, name, decodeComponent(s.substring(pos, i), charset))) {
-                    return;
+            } else if (c == '&' || c == ';') {
+                if (nameEnd >= 0 || start != i) {
+                    if (nParams >= maxParams) {
+                        return;
+                    }
+                    addBounds(start, nameEnd < 0? i : nameEnd, i);
                 }
-            }
-        } else if (name != null) {  // Have we seen a name without value?
-            if (!addParam(params, name, "")) {
-                return;
+                nameEnd = -1;
+                start = i + 1;
             }
         }
     }
 
-    private boolean addParam(Map<String, List<String>> params, String name, String value) {
-        if (nParams >= maxParams) {
-            return false;
+    private void addBounds(int nameStart, int nameEnd, int valueEnd) {
+        int[] bounds = this.bounds;
+        int i = nParams * 3;
+        if (bounds == null) {
+            bounds = this.bounds = new int[3 * 4];
+        } else if (i == bounds.length) {
+            int[] newBounds = new int[bounds.length << 1];
+            System.arraycopy(bounds, 0, newBounds, 0, bounds.length);
+            bounds = this.bounds = newBounds;
         }
+        bounds[i] = nameStart;
+        bounds[i + 1] = nameEnd;
+        bounds[i + 2] = valueEnd;
+        nParams ++;
+    }
 
-        List<String> values = params.get(name);
-        if (values == null) {
-            values = new ArrayList<String>(1);  // Often there's only 1 value.
-            params.put(name, values);
+    private String decodeName(int index) {
+        return decode(bounds[index * 3], bounds[index * 3 + 1]);
+    }
+
+    private String decodeValue(int index) {
+        int nameEnd = bounds[index * 3 + 1];
+        int valueEnd = bounds[index * 3 + 2];
+        if (nameEnd == valueEnd) {
+            return "";
+        }
+        return decode(nameEnd + 1, valueEnd);
+    }
+
+    /**
+     * Compares the name of the specified key-value pair with the specified
+     * name, decoding the former only if it contains an escaped character.
+     */
+    private boolean nameEquals(int index, String name) {
+        CharSequence uri = this.uri;
+        int start = bounds[index * 3];
+        int end = bounds[index * 3 + 1];
+        for (int i = start; i < end; i ++) {
+            char c = uri.charAt(i);
+            if (c == '%' || c == '+') {
+                return decode(start, end).equals(name);
+            }
+        }
+
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i ++) {
+            if (uri.charAt(i) != name.charAt(i - start)) {
+                return false;
+            }
         }
-        values.add(value);
-        nParams ++;
         return true;
     }
 
+    private String decode(int start, int end) {
+        byte[] buf = this.buf;
+        if (buf == null || buf.length < end - start) {
+            buf = this.buf = new byte[Math.max(64, end - start)];
+        }
+        return decodeComponent(uri, start, end, charset, buf);
+    }
+
     /**
      * Decodes a bit of an URL encoded by a browser.
      * <p>
@@ -313,56 +502,64 @@ public class QueryStringDecoder {
      * @throws IllegalArgumentException if the string contains a malformed
      * escape sequence.
      */
-    @SuppressWarnings("fallthrough")
     public static String decodeComponent(final String s,
                                          final Charset charset) {
         if (s == null) {
             return "";
         }
-        final int size = s.length();
+        return decodeComponent(s, 0, s.length(), charset, null);
+    }
+
+    /**
+     * Decodes the specified region of a {@link CharSequence} of single-byte
+     * characters into the specified buffer, or into a new buffer if the
+     * specified one is {@code null}.
+     */
+    @SuppressWarnings("fallthrough")
+    private static String decodeComponent(
+            final CharSequence s, final int start, final int end,
+            final Charset charset, byte[] buf) {
         boolean modified = false;
-        for (int i = 0; i < size; i++) {
+        for (int i = start; i < end; i++) {
             final char c = s.charAt(i);
-            switch (c) {
-                case '%':
-                    i++;  // We can skip at least one char, e.g. `%%'.
-                    // Fall through.
-                case '+':
-                    modified = true;
-                    break;
+            if (c == '%' || c == '+') {
+                modified = true;
+                break;
             }
         }
         if (!modified) {
-            return s;
+            return s.subSequence(start, end).toString();
+        }
+        if (buf == null) {
+            buf = new byte[end - start];
         }
-        final byte[] buf = new byte[size];
         int pos = 0;  // position in `buf'.
-        for (int i = 0; i < size; i++) {
+        for (int i = start; i < end; i++) {
             char c = s.charAt(i);
             switch (c) {
                 case '+':
                     buf[pos++] = ' ';  // "+" -> " "
                     break;
                 case '%':
-                    if (i == size - 1) {
+                    if (i == end - 1) {
                         throw new IllegalArgumentException("unterminated escape"
-                                + " sequence at end of string: " + s);
+                                + " sequence at end of string: " + s.subSequence(start, end));
                     }
                     c = s.charAt(++i);
                     if (c == '%') {
                         buf[pos++] = '%';  // "%%" -> "%"
                         break;
-                    } else if (i == size - 1) {
+                    } else if (i == end - 1) {
                         throw new IllegalArgumentException("partial escape"
-                                + " sequence at end of string: " + s);
+                                + " sequence at end of string: " + s.subSequence(start, end));
                     }
                     c = decodeHexNibble(c);
                     final char c2 = decodeHexNibble(s.charAt(++i));
                     if (c == Character.MAX_VALUE || c2 == Character.MAX_VALUE) {
                         throw new IllegalArgumentException(
                                 "invalid escape sequence `%" + s.charAt(i - 1)
-                                + s.charAt(i) + "' at index " + (i - 2)
-                                + " of: " + s);
+                                + s.charAt(i) + "' at index " + (i - 2 - start)
+                                + " of: " + s.subSequence(start, end));
                     }
                     c = (char) (c * 16 + c2);
                     // Fall through.
@@ -26,6 +26,7 @@ import io.netty.util.CharsetUtil;
 public class ContinuationWebSocketFrame extends WebSocketFrame {
 
     private String aggregatedText;
+    private ChannelBuffer aggregatedData;
 
     /**
      * Creates a new empty continuation frame.
@@ -128,11 +129,25 @@ public class ContinuationWebSocketFrame extends WebSocketFrame {
      * Aggregated text returned by decoder on the final continuation frame of a fragmented text message
      */
     public String getAggregatedText() {
+        if (aggregatedText == null && aggregatedData != null) {
+            aggregatedText = aggregatedData.toString(CharsetUtil.UTF_8);
+            aggregatedData = null;
+        }
         return aggregatedText;
     }
 
     public void setAggregatedText(String aggregatedText) {
         this.aggregatedText = aggregatedText;
+        aggregatedData = null;
+    }
+
+    /**
+     * Sets the UTF-8 encoded content of a fragmented text message, which is decoded only when
+     * {@link #getAggregatedText()} is called
+     */
+    void setAggregatedData(ChannelBuffer aggregatedData) {
+        aggregatedText = null;
+        this.aggregatedData = aggregatedData;
     }
 
 }
@@ -34,12 +34,17 @@
  */
 package io.netty.handler.codec.http.websocketx;
 
+import io.netty.buffer.ChannelBuffer;
+
 /**
- * Checks UTF8 bytes for validity before converting it into a string
+ * Checks UTF-8 bytes for validity incrementally.  The state of the check is
+ * kept between the calls, so that a character may span several buffers
+ * (e.g. the fragments of a text message).
  */
-final class UTF8Output {
+final class UTF8Validator {
     private static final int UTF8_ACCEPT = 0;
     private static final int UTF8_REJECT = 12;
+    private static final long NON_ASCII_MASK = 0x8080808080808080L;
 
     private static final byte[] TYPES = { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
             0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
@@ -57,40 +62,62 @@ final class UTF8Output {
             12, 12, 12, 12, 12, 12, 12, 12 };
 
     private int state = UTF8_ACCEPT;
-    private int codep;
-
-    private final StringBuilder stringBuilder;
 
-    UTF8Output(byte[] bytes) {
-        stringBuilder = new StringBuilder(bytes.length);
-        write(bytes);
+    /**
+     * Checks the specified region of the specified buffer.
+     *
+     * @throws UTF8Exception if the bytes are not valid UTF-8
+     */
+    void check(ChannelBuffer buffer, int index, int length) {
+        int state = this.state;
+        if (buffer.hasArray()) {
+            int offset = buffer.arrayOffset() + index;
+            state = check(buffer.array(), offset, offset + length, state);
+        } else {
+            final int end = index + length;
+            for (int i = index; i < end;) {
+                if (state == UTF8_ACCEPT && end - i >= 8 && (buffer.getLong(i) & NON_ASCII_MASK) == 0) {
+                    // Skip 8 US-ASCII characters at once.
+                    i += 8;
+                    continue;
+                }
+                state = next(state, buffer.getByte(i ++));
+            }
+        }
+        this.state = state;
     }
 
-    public void write(byte[] bytes) {
-        for (byte b : bytes) {
-            write(b);
+    private static int check(byte[] bytes, int start, int end, int state) {
+        for (int i = start; i < end; i ++) {
+            byte b = bytes[i];
+            if (b >= 0 && state == UTF8_ACCEPT) {
+                continue;
+            }
+            state = next(state, b);
         }
+        return state;
     }
 
-    public void write(int b) {
-        byte type = TYPES[b & 0xFF];
-
-        codep = state != UTF8_ACCEPT ? b & 0x3f | codep << 6 : 0xff >> type & b;
-
-        state = STATES[state + type];
-
-        if (state == UTF8_ACCEPT) {
-            stringBuilder.append((char) codep);
-        } else if (state == UTF8_REJECT) {
+    private static int next(int state, byte b) {
+        state = STATES[state + TYPES[b & 0xFF]];
+        if (state == UTF8_REJECT) {
             throw new UTF8Exception("bytes are not UTF-8");
         }
+        return state;
     }
 
-    @Override
-    public String toString() {
-        if (state != UTF8_ACCEPT) {
-            throw new UTF8Exception("bytes are not UTF-8");
-        }
-        return stringBuilder.toString();
+    /**
+     * Returns {@code true} if and only if a multi-byte character has not been
+     * completed by the bytes checked so far.
+     */
+    boolean isIncomplete() {
+        return state != UTF8_ACCEPT;
+    }
+
+    /**
+     * Makes this validator ready to check a new message.
+     */
+    void reset() {
+        state = UTF8_ACCEPT;
     }
 }
@@ -53,6 +53,9 @@
 
 package io.netty.handler.codec.http.websocketx;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import io.netty.buffer.ChannelBuffer;
 import io.netty.buffer.ChannelBuffers;
 import io.netty.channel.Channel;
@@ -79,16 +82,22 @@ public class WebSocket08FrameDecoder extends ReplayingDecoder<WebSocket08FrameDe
     private static final byte OPCODE_PING = 0x9;
     private static final byte OPCODE_PONG = 0xA;
 
-    private UTF8Output fragmentedFramesText;
+    private final UTF8Validator utf8Validator = new UTF8Validator();
+    private List<ChannelBuffer> fragmentedFramesText;
     private int fragmentedFramesCount;
 
+    /**
+     * Whether the payload of the current message was transformed by an extension (RSV1 set on its first frame, e.g.
+     * compressed by permessage-deflate). Such text is validated by the extension decoder instead.
+     */
+    private boolean extensionMessage;
+
     private boolean frameFinalFlag;
     private int frameRsv;
     private int frameOpcode;
     private long framePayloadLength;
     private ChannelBuffer framePayload;
-    private int framePayloadBytesRead;
-    private ChannelBuffer maskingKey;
+    private int maskingKey;
 
     private final boolean allowExtensions;
     private final boolean maskedPayload;
@@ -113,6 +122,14 @@ public class WebSocket08FrameDecoder extends ReplayingDecoder<WebSocket08FrameDe
         this.allowExtensions = allowExtensions;
     }
 
+    /**
+     * The payloads of the decoded frames are slices of the cumulation.
+     */
+    @Override
+    protected boolean isCumulationSliced() {
+        return true;
+    }
+
     @Override
     protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer, State state)
             throws Exception {
@@ -125,7 +142,6 @@ public class WebSocket08FrameDecoder extends ReplayingDecoder<WebSocket08FrameDe
 
         switch (state) {
         case FRAME_START:
-            framePayloadBytesRead = 0;
             framePayloadLength = -1;
             framePayload = null;
 
@@ -227,54 +243,23 @@ public class WebSocket08FrameDecoder extends ReplayingDecoder<WebSocket08FrameDe
             checkpoint(State.MASKING_KEY);
         case MASKING_KEY:
             if (maskedPayload) {
-                maskingKey = buffer.readBytes(4);
+                maskingKey = buffer.readInt();
             }
             checkpoint(State.PAYLOAD);
         case PAYLOAD:
-            // Sometimes, the payload may not be delivered in 1 nice packet
-            // We need to accumulate the data until we have it all
-            int rbytes = actualReadableBytes();
-            ChannelBuffer payloadBuffer = null;
-
-            int willHaveReadByteCount = framePayloadBytesRead + rbytes;
-            // logger.debug("Frame rbytes=" + rbytes + " willHaveReadByteCount="
-            // + willHaveReadByteCount + " framePayloadLength=" +
-            // framePayloadLength);
-            if (willHaveReadByteCount == framePayloadLength) {
-                // We have all our content so proceed to process
-                payloadBuffer = buffer.readBytes(rbytes);
-            } else if (willHaveReadByteCount < framePayloadLength) {
-                // We don't have all our content so accumulate payload.
-                // Returning null means we will get called back
-                payloadBuffer = buffer.readBytes(rbytes);
-                if (framePayload == null) {
-                    framePayload = channel.getConfig().getBufferFactory().getBuffer(toFrameLength(framePayloadLength));
-                }
-                framePayload.writeBytes(payloadBuffer);
-                framePayloadBytesRead += rbytes;
-
-                // Return null to wait for more bytes to arrive
-                return null;
-            } else if (willHaveReadByteCount > framePayloadLength) {
-                // We have more than what we need so read up to the end of frame
-                // Leave the remainder in the buffer for next frame
-                payloadBuffer = buffer.readBytes(toFrameLength(framePayloadLength - framePayloadBytesRead));
-            }
+            // Wait until the whole payload is received, so that it can be
+            // exposed as a slice of the received data instead of a copy.
+            // The ReplayingDecoder replays this state until then.
+            int payloadLength = toFrameLength(framePayloadLength);
+            framePayload = buffer.readSlice(payloadLength);
 
             // Now we have all the data, the next checkpoint must be the next
             // frame
             checkpoint(State.FRAME_START);
 
-            // Take the data that we have in this packet
-            if (framePayload == null) {
-                framePayload = payloadBuffer;
-            } else {
-                framePayload.writeBytes(payloadBuffer);
-            }
-
-            // Unmask data if needed
+            // Unmask data in place if needed
             if (maskedPayload) {
-                unmask(framePayload);
+                WebSocketUtil.mask(framePayload, framePayload.readerIndex(), payloadLength, maskingKey);
             }
 
             // Processing ping/pong/close frames because they cannot be
@@ -290,8 +275,18 @@ public class WebSocket08FrameDecoder extends ReplayingDecoder<WebSocket08FrameDe
 
             // Processing for possible fragmented messages for text and binary
             // frames
-            String aggregatedText = null;
-            if (frameFinalFlag) {
+            if (fragmentedFramesCount == 0) {
+                extensionMessage = (frameRsv & 0x04) != 0;
+            }
+
+            ChannelBuffer aggregatedText = null;
+            if (extensionMessage) {
+                if (frameFinalFlag) {
+                    fragmentedFramesCount = 0;
+                } else {
+                    fragmentedFramesCount++;
+                }
+            } else if (frameFinalFlag) {
                 // Final frame of the sequence. Apparently ping frames are
                 // allowed in the middle of a fragmented message
                 if (frameOpcode != OPCODE_PING) {
@@ -299,14 +294,23 @@ public class WebSocket08FrameDecoder extends ReplayingDecoder<WebSocket08FrameDe
 
                     // Check text for UTF8 correctness
                     if (frameOpcode == OPCODE_TEXT || fragmentedFramesText != null) {
-                        // Check UTF-8 correctness for this payload
-                        checkUTF8String(channel, framePayload.array());
-
-                        // This does a second check to make sure UTF-8
-                        // correctness for entire text message
-                        aggregatedText = fragmentedFramesText.toString();
-
-                        fragmentedFramesText = null;
+                        // Check UTF-8 correctness for this payload, and
+                        // make sure the entire text message ends with a
+                        // complete character
+                        checkUTF8String(channel, framePayload);
+                        if (utf8Validator.isIncomplete()) {
+                            utf8Validator.reset();
+                            protocolViolation(channel, "invalid UTF-8 bytes");
+                        }
+
+                        // The text of the entire message is decoded only
+                        // if the application asks for it.
+                        if (fragmentedFramesText != null) {
+                            fragmentedFramesText.add(framePayload);
+                            aggregatedText = ChannelBuffers.wrappedBuffer(
+                                    fragmentedFramesText.toArray(new ChannelBuffer[fragmentedFramesText.size()]));
+                            fragmentedFramesText = null;
+                        }
                     }
                 }
             } else {
@@ -316,12 +320,15 @@ public class WebSocket08FrameDecoder extends ReplayingDecoder<WebSocket08FrameDe
                     // First text or binary frame for a fragmented set
                     fragmentedFramesText = null;
                     if (frameOpcode == OPCODE_TEXT) {
-                        checkUTF8String(channel, framePayload.array());
+                        checkUTF8String(channel, framePayload);
+                        fragmentedFramesText = new ArrayList<ChannelBuffer>();
+                        fragmentedFramesText.add(framePayload);
                     }
                 } else {
                     // Subsequent frames - only check if init frame is text
                     if (fragmentedFramesText != null) {
-                        checkUTF8String(channel, framePayload.array());
+                        checkUTF8String(channel, framePayload);
+                        fragmentedFramesText.add(framePayload);
                     }
                 }
 
@@ -335,7 +342,10 @@ public class WebSocket08FrameDecoder extends ReplayingDecoder<WebSocket08FrameDe
             } else if (frameOpcode == OPCODE_BINARY) {
                 return new BinaryWebSocketFrame(frameFinalFlag, frameRsv, framePayload);
             } else if (frameOpcode == OPCODE_CONT) {
-                return new ContinuationWebSocketFrame(frameFinalFlag, frameRsv, framePayload, aggregatedText);
+                ContinuationWebSocketFrame frame =
+                        new ContinuationWebSocketFrame(frameFinalFlag, frameRsv, framePayload);
+                frame.setAggregatedData(aggregatedText);
+                return frame;
             } else {
                 throw new UnsupportedOperationException("Cannot decode web socket frame with opcode: " + frameOpcode);
             }
@@ -349,13 +359,6 @@ public class WebSocket08FrameDecoder extends ReplayingDecoder<WebSocket08FrameDe
         }
     }
 
-    private void unmask(ChannelBuffer frame) {
-        byte[] bytes = frame.array();
-        for (int i = 0; i < bytes.length; i++) {
-            frame.setByte(i, frame.getByte(i) ^ maskingKey.getByte(i % 4));
-        }
-    }
-
     private void protocolViolation(Channel channel, String reason) throws CorruptedFrameException {
         checkpoint(State.CORRUPT);
         if (channel.isConnected()) {
@@ -373,21 +376,11 @@ public class WebSocket08FrameDecoder extends ReplayingDecoder<WebSocket08FrameDe
         }
     }
 
-    private void checkUTF8String(Channel channel, byte[] bytes) throws CorruptedFrameException {
+    private void checkUTF8String(Channel channel, ChannelBuffer payload) throws CorruptedFrameException {
         try {
-            // StringBuilder sb = new StringBuilder("UTF8 " + bytes.length +
-            // " bytes: ");
-            // for (byte b : bytes) {
-            // sb.append(Integer.toHexString(b)).append(" ");
-            // }
-            // logger.debug(sb.toString());
-
-            if (fragmentedFramesText == null) {
-                fragmentedFramesText = new UTF8Output(bytes);
-            } else {
-                fragmentedFramesText.write(bytes);
-            }
+            utf8Validator.check(payload, payload.readerIndex(), payload.readableBytes());
         } catch (UTF8Exception ex) {
+            utf8Validator.reset();
             protocolViolation(channel, "invalid UTF-8 bytes");
         }
     }
@@ -53,12 +53,11 @@
 
 package io.netty.handler.codec.http.websocketx;
 
-import java.nio.ByteBuffer;
-
 import io.netty.buffer.ChannelBuffer;
 import io.netty.buffer.ChannelBuffers;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.group.ChannelGroup;
 import io.netty.handler.codec.frame.TooLongFrameException;
 import io.netty.handler.codec.oneone.OneToOneEncoder;
 import io.netty.logging.InternalLogger;
@@ -94,95 +93,119 @@ public class WebSocket08FrameEncoder extends OneToOneEncoder {
         this.maskPayload = maskPayload;
     }
 
+    /**
+     * <p>
+     * Encodes the specified frame once so that it can be written to any number of channels, e.g. via
+     * {@link ChannelGroup#write(Object)}, without being encoded again for every channel. The frame encoders (and the
+     * {@link WebSocketDeflateEncoder}) pass a {@link ChannelBuffer} through as it is, so the returned buffer only goes
+     * through the handlers which really need to transform the bytes of each channel, such as an SSL handler.
+     * </p>
+     * 
+     * <p>
+     * The frame is encoded into a single direct buffer, which the NIO transport writes without copying it for every
+     * channel. The payload is not masked, so the returned buffer can only be sent by a server.
+     * </p>
+     * 
+     * @param frame
+     *            Frame to encode
+     * @return The encoded frame. Its content must not be modified.
+     * @throws TooLongFrameException
+     *             if the frame is a ping frame whose payload is longer than 125 bytes
+     */
+    public static ChannelBuffer encodeForBroadcast(WebSocketFrame frame) throws TooLongFrameException {
+        ChannelBuffer encoded = encode(frame, false);
+        ChannelBuffer buf = ChannelBuffers.directBuffer(encoded.readableBytes());
+        buf.writeBytes(encoded);
+        return buf;
+    }
+
     @Override
     protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
-
-        byte[] mask;
-
         if (msg instanceof WebSocketFrame) {
-            WebSocketFrame frame = (WebSocketFrame) msg;
-            ChannelBuffer data = frame.getBinaryData();
-            if (data == null) {
-                data = ChannelBuffers.EMPTY_BUFFER;
-            }
-
-            byte opcode;
-            if (frame instanceof TextWebSocketFrame) {
-                opcode = OPCODE_TEXT;
-            } else if (frame instanceof PingWebSocketFrame) {
-                opcode = OPCODE_PING;
-            } else if (frame instanceof PongWebSocketFrame) {
-                opcode = OPCODE_PONG;
-            } else if (frame instanceof CloseWebSocketFrame) {
-                opcode = OPCODE_CLOSE;
-            } else if (frame instanceof BinaryWebSocketFrame) {
-                opcode = OPCODE_BINARY;
-            } else if (frame instanceof ContinuationWebSocketFrame) {
-                opcode = OPCODE_CONT;
-            } else {
-                throw new UnsupportedOperationException("Cannot encode frame of type: " + frame.getClass().getName());
-            }
-
-            int length = data.readableBytes();
-
-            if (logger.isDebugEnabled()) {
-                logger.debug("Encoding WebSocket Frame opCode=" + opcode + " length=" + length);
-            }
-
-            int b0 = 0;
-            if (frame.isFinalFragment()) {
-                b0 |= 1 << 7;
-            }
-            b0 |= frame.getRsv() % 8 << 4;
-            b0 |= opcode % 128;
-
-            ChannelBuffer header;
-            ChannelBuffer body;
-
-            if (opcode == OPCODE_PING && length > 125) {
-                throw new TooLongFrameException("invalid payload for PING (payload length must be <= 125, was "
-                        + length);
-            }
-
-            int maskLength = maskPayload ? 4 : 0;
-            if (length <= 125) {
-                header = ChannelBuffers.buffer(2 + maskLength);
-                header.writeByte(b0);
-                byte b = (byte) (maskPayload ? 0x80 | (byte) length : (byte) length);
-                header.writeByte(b);
-            } else if (length <= 0xFFFF) {
-                header = ChannelBuffers.buffer(4 + maskLength);
-                header.writeByte(b0);
-                header.writeByte(maskPayload ? 0xFE : 126);
-                header.writeByte(length >>> 8 & 0xFF);
-                header.writeByte(length & 0xFF);
-            } else {
-                header = ChannelBuffers.buffer(10 + maskLength);
-                header.writeByte(b0);
-                header.writeByte(maskPayload ? 0xFF : 127);
-                header.writeLong(length);
-            }
-
-            // Write payload
-            if (maskPayload) {
-                Integer random = (int) (Math.random() * Integer.MAX_VALUE);
-                mask = ByteBuffer.allocate(4).putInt(random).array();
-                header.writeBytes(mask);
-
-                body = ChannelBuffers.buffer(length);
-                int counter = 0;
-                while (data.readableBytes() > 0) {
-                    byte byteData = data.readByte();
-                    body.writeByte(byteData ^ mask[+counter++ % 4]);
-                }
-            } else {
-                body = data;
-            }
-            return ChannelBuffers.wrappedBuffer(header, body);
+            return encode((WebSocketFrame) msg, maskPayload);
         }
 
         // If not websocket, then just return the message
         return msg;
     }
 
+    private static ChannelBuffer encode(WebSocketFrame frame, boolean maskPayload) throws TooLongFrameException {
+        ChannelBuffer data = frame.getBinaryData();
+        if (data == null) {
+            data = ChannelBuffers.EMPTY_BUFFER;
+        }
+
+        byte opcode;
+        if (frame instanceof TextWebSocketFrame) {
+            opcode = OPCODE_TEXT;
+        } else if (frame instanceof PingWebSocketFrame) {
+            opcode = OPCODE_PING;
+        } else if (frame instanceof PongWebSocketFrame) {
+            opcode = OPCODE_PONG;
+        } else if (frame instanceof CloseWebSocketFrame) {
+            opcode = OPCODE_CLOSE;
+        } else if (frame instanceof BinaryWebSocketFrame) {
+            opcode = OPCODE_BINARY;
+        } else if (frame instanceof ContinuationWebSocketFrame) {
+            opcode = OPCODE_CONT;
+        } else {
+            throw new UnsupportedOperationException("Cannot encode frame of type: " + frame.getClass().getName());
+        }
+
+        int length = data.readableBytes();
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Encoding WebSocket Frame opCode=" + opcode + " length=" + length);
+        }
+
+        int b0 = 0;
+        if (frame.isFinalFragment()) {
+            b0 |= 1 << 7;
+        }
+        b0 |= frame.getRsv() % 8 << 4;
+        b0 |= opcode % 128;
+
+        ChannelBuffer header;
+        ChannelBuffer body;
+
+        if (opcode == OPCODE_PING && length > 125) {
+            throw new TooLongFrameException("invalid payload for PING (payload length must be <= 125, was "
+                    + length);
+        }
+
+        int maskLength = maskPayload ? 4 : 0;
+        if (length <= 125) {
+            header = ChannelBuffers.buffer(2 + maskLength);
+            header.writeByte(b0);
+            byte b = (byte) (maskPayload ? 0x80 | (byte) length : (byte) length);
+            header.writeByte(b);
+        } else if (length <= 0xFFFF) {
+            header = ChannelBuffers.buffer(4 + maskLength);
+            header.writeByte(b0);
+            header.writeByte(maskPayload ? 0xFE : 126);
+            header.writeByte(length >>> 8 & 0xFF);
+            header.writeByte(length & 0xFF);
+        } else {
+            header = ChannelBuffers.buffer(10 + maskLength);
+            header.writeByte(b0);
+            header.writeByte(maskPayload ? 0xFF : 127);
+            header.writeLong(length);
+        }
+
+        // Write payload
+        if (maskPayload) {
+            // The masked payload can't share the content of the frame,
+            // so copy it once and mask the copy in place.
+            int mask = WebSocketUtil.newMask();
+            header.writeInt(mask);
+
+            body = ChannelBuffers.buffer(header.order(), length);
+            body.writeBytes(data, data.readerIndex(), length);
+            WebSocketUtil.mask(body, 0, length, mask);
+        } else {
+            body = data;
+        }
+        return ChannelBuffers.wrappedBuffer(header, body);
+    }
+
 }
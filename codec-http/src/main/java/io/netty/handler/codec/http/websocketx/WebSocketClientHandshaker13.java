@@ -20,6 +20,7 @@ import java.util.Map;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPipeline;
 import io.netty.handler.codec.http.DefaultHttpRequest;
 import io.netty.handler.codec.http.HttpHeaders.Names;
 import io.netty.handler.codec.http.HttpHeaders.Values;
@@ -53,6 +54,8 @@ public class WebSocketClientHandshaker13 extends WebSocketClientHandshaker {
 
     private final boolean allowExtensions;
 
+    private final WebSocketDeflateParameters deflateParameters;
+
     /**
      * Constructor specifying the destination web socket location and version to initiate
      * 
@@ -70,8 +73,33 @@ public class WebSocketClientHandshaker13 extends WebSocketClientHandshaker {
      */
     public WebSocketClientHandshaker13(URI webSocketURL, WebSocketVersion version, String subprotocol,
             boolean allowExtensions, Map<String, String> customHeaders) {
+        this(webSocketURL, version, subprotocol, allowExtensions, customHeaders, null);
+    }
+
+    /**
+     * Constructor specifying the destination web socket location and version to initiate, and the permessage-deflate
+     * extension to offer
+     * 
+     * @param webSocketURL
+     *            URL for web socket communications. e.g "ws://myhost.com/mypath". Subsequent web socket frames will be
+     *            sent to this URL.
+     * @param version
+     *            Version of web socket specification to use to connect to the server
+     * @param subprotocol
+     *            Sub protocol request sent to the server.
+     * @param allowExtensions
+     *            Allow extensions to be used in the reserved bits of the web socket frame
+     * @param customHeaders
+     *            Map of custom headers to add to the client request
+     * @param deflateParameters
+     *            Parameters of the permessage-deflate extension to offer to the server, or {@code null} to disable
+     *            compression
+     */
+    public WebSocketClientHandshaker13(URI webSocketURL, WebSocketVersion version, String subprotocol,
+            boolean allowExtensions, Map<String, String> customHeaders, WebSocketDeflateParameters deflateParameters) {
         super(webSocketURL, version, subprotocol, customHeaders);
         this.allowExtensions = allowExtensions;
+        this.deflateParameters = deflateParameters;
     }
 
     /**
@@ -127,6 +155,9 @@ public class WebSocketClientHandshaker13 extends WebSocketClientHandshaker {
             request.addHeader(Names.SEC_WEBSOCKET_PROTOCOL, protocol);
         }
         request.addHeader(Names.SEC_WEBSOCKET_VERSION, "13");
+        if (deflateParameters != null) {
+            request.addHeader(Names.SEC_WEBSOCKET_EXTENSIONS, deflateParameters.newOffer());
+        }
 
         if (customHeaders != null) {
             for (String header : customHeaders.keySet()) {
@@ -186,8 +217,21 @@ public class WebSocketClientHandshaker13 extends WebSocketClientHandshaker {
                     expectedChallengeResponseString));
         }
 
-        channel.getPipeline().replace(HttpResponseDecoder.class, "ws-decoder",
-                new WebSocket13FrameDecoder(false, allowExtensions));
+        WebSocketDeflateParameters deflate = null;
+        if (deflateParameters != null) {
+            deflate = deflateParameters.acceptResponse(response.getHeader(Names.SEC_WEBSOCKET_EXTENSIONS));
+        }
+
+        ChannelPipeline p = channel.getPipeline();
+        p.replace(HttpResponseDecoder.class, "ws-decoder",
+                new WebSocket13FrameDecoder(false, allowExtensions || deflate != null));
+        if (deflate != null) {
+            p.addAfter("ws-decoder", "ws-deflate-decoder",
+                    new WebSocketDeflateDecoder(
+                            deflate.isServerNoContextTakeover(), deflate.getMaxMessageSize()));
+            p.addAfter("ws-encoder", "ws-deflate-encoder", new WebSocketDeflateEncoder(deflate.getCompressionLevel(),
+                    deflate.getClientMaxWindowBits(), deflate.isClientNoContextTakeover()));
+        }
 
         setHandshakeComplete();
     }
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http.websocketx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.compression.CompressionException;
+import io.netty.handler.codec.frame.CorruptedFrameException;
+import io.netty.handler.codec.frame.TooLongFrameException;
+import io.netty.handler.codec.oneone.OneToOneDecoder;
+import io.netty.util.internal.jzlib.JZlib;
+import io.netty.util.internal.jzlib.ZStream;
+
+/**
+ * <p>
+ * Decompresses the payload of incoming text and binary messages whose first frame has the RSV1 bit set, as specified
+ * by the <a href="http://tools.ietf.org/html/rfc7692">permessage-deflate</a> extension, and clears the RSV1 bit.
+ * Uncompressed messages and control frames are passed through as they are.
+ * </p>
+ *
+ * <p>
+ * The UTF-8 validity of compressed text messages, which the {@link WebSocket13FrameDecoder} cannot check, is
+ * validated after decompression. This handler must be placed between the {@link WebSocket13FrameDecoder} and the
+ * application handler, and an instance must not be shared between channels.
+ * </p>
+ *
+ * <p>
+ * The decompressed size of a message is limited, because a small compressed payload can inflate to an arbitrarily
+ * large one. When a message exceeds the limit, this handler sends a close frame with the status code {@code 1009}
+ * (message too big), closes the channel and raises a {@link TooLongFrameException}.
+ * </p>
+ */
+public class WebSocketDeflateDecoder extends OneToOneDecoder {
+
+    /**
+     * The default maximum decompressed size of a message in bytes
+     */
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    private static final byte[] FRAME_TAIL = { 0x00, 0x00, (byte) 0xff, (byte) 0xff };
+    private static final int STATUS_MESSAGE_TOO_BIG = 1009;
+
+    private final ZStream z = new ZStream();
+    private final boolean noContextTakeover;
+    private final int maxMessageSize;
+    private final UTF8Validator utf8Validator = new UTF8Validator();
+
+    /**
+     * Whether the continuation frames received next belong to a compressed message
+     */
+    private boolean decompressing;
+
+    /**
+     * The decompressed fragments of the current text message, or {@code null} if not decompressing a fragmented text
+     * message
+     */
+    private List<ChannelBuffer> fragmentedText;
+    private boolean text;
+
+    /**
+     * The decompressed size of the current message so far
+     */
+    private long messageSize;
+
+    // The fields below are used only while a frame is decompressed.
+    private byte[] out;
+    private int outLength;
+    private int maxOutLength;
+    private boolean streamEnded;
+
+    /**
+     * Constructor which limits the decompressed size of a message to {@value #DEFAULT_MAX_MESSAGE_SIZE} bytes
+     *
+     * @param noContextTakeover
+     *            Reset the decompression context after every message. Set this to {@code true} if the remote endpoint
+     *            does not take over its compression context so that the sliding window is not retained needlessly.
+     */
+    public WebSocketDeflateDecoder(boolean noContextTakeover) {
+        this(noContextTakeover, DEFAULT_MAX_MESSAGE_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param noContextTakeover
+     *            Reset the decompression context after every message. Set this to {@code true} if the remote endpoint
+     *            does not take over its compression context so that the sliding window is not retained needlessly.
+     * @param maxMessageSize
+     *            Maximum decompressed size of a message, including all its fragments, in bytes
+     */
+    public WebSocketDeflateDecoder(boolean noContextTakeover, int maxMessageSize) {
+        if (maxMessageSize <= 0 || maxMessageSize == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "maxMessageSize: " + maxMessageSize + " (expected: 1-" + (Integer.MAX_VALUE - 1) + ')');
+        }
+        this.noContextTakeover = noContextTakeover;
+        this.maxMessageSize = maxMessageSize;
+        init();
+    }
+
+    private void init() {
+        // A window of the maximum size can decompress the data compressed with any window size.
+        int resultCode = z.inflateInit(15, JZlib.W_NONE);
+        if (resultCode != JZlib.Z_OK) {
+            fail("initialization failure", resultCode);
+        }
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        if (!(msg instanceof WebSocketFrame)) {
+            return msg;
+        }
+
+        WebSocketFrame frame = (WebSocketFrame) msg;
+        boolean rsv1 = (frame.getRsv() & WebSocketDeflateEncoder.RSV1) != 0;
+        if (frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame) {
+            if (!rsv1) {
+                decompressing = false;
+                return frame;
+            }
+            decompressing = true;
+            text = frame instanceof TextWebSocketFrame;
+            fragmentedText = null;
+            messageSize = 0;
+        } else if (rsv1) {
+            throw new CorruptedFrameException("RSV1 set on a continuation or control frame");
+        } else if (!(frame instanceof ContinuationWebSocketFrame) || !decompressing) {
+            return frame;
+        }
+
+        boolean finalFragment = frame.isFinalFragment();
+        ChannelBuffer decompressed = decompress(frame.getBinaryData(), finalFragment);
+        if (decompressed == null) {
+            tooLongMessage(channel);
+        }
+        messageSize += decompressed.readableBytes();
+
+        ChannelBuffer aggregatedText = null;
+        if (text) {
+            try {
+                utf8Validator.check(decompressed, decompressed.readerIndex(), decompressed.readableBytes());
+            } catch (UTF8Exception e) {
+                utf8Validator.reset();
+                throw new CorruptedFrameException("invalid UTF-8 bytes");
+            }
+            if (finalFragment) {
+                if (utf8Validator.isIncomplete()) {
+                    utf8Validator.reset();
+                    throw new CorruptedFrameException("invalid UTF-8 bytes");
+                }
+                if (fragmentedText != null) {
+                    fragmentedText.add(decompressed);
+                    aggregatedText = ChannelBuffers.wrappedBuffer(
+                            fragmentedText.toArray(new ChannelBuffer[fragmentedText.size()]));
+                }
+            } else {
+                if (fragmentedText == null) {
+                    fragmentedText = new ArrayList<ChannelBuffer>();
+                }
+                fragmentedText.add(decompressed);
+            }
+        }
+
+        int rsv = frame.getRsv() & ~WebSocketDeflateEncoder.RSV1;
+        WebSocketFrame result;
+        if (frame instanceof TextWebSocketFrame) {
+            result = new TextWebSocketFrame(finalFragment, rsv, decompressed);
+        } else if (frame instanceof BinaryWebSocketFrame) {
+            result = new BinaryWebSocketFrame(finalFragment, rsv, decompressed);
+        } else {
+            ContinuationWebSocketFrame continuation = new ContinuationWebSocketFrame(finalFragment, rsv, decompressed);
+            continuation.setAggregatedData(aggregatedText);
+            result = continuation;
+        }
+
+        if (finalFragment) {
+            decompressing = false;
+            fragmentedText = null;
+            if (noContextTakeover) {
+                z.inflateEnd();
+                init();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decompresses the payload of a frame, or returns {@code null} if the message exceeds {@link #maxMessageSize}.
+     */
+    private ChannelBuffer decompress(ChannelBuffer data, boolean finalFragment) {
+        int length = data.readableBytes();
+        maxOutLength = (int) (maxMessageSize - messageSize);
+        // One more byte than allowed tells if the limit has been exceeded.
+        out = new byte[(int) Math.min(Math.max(64, (long) length << 1), maxOutLength + 1L)];
+        outLength = 0;
+        streamEnded = false;
+        try {
+            if (!inflate(data)) {
+                return null;
+            }
+            if (finalFragment && !streamEnded && !inflate(ChannelBuffers.wrappedBuffer(FRAME_TAIL))) {
+                return null;
+            }
+            return ChannelBuffers.wrappedBuffer(out, 0, outLength);
+        } finally {
+            out = null;
+        }
+    }
+
+    /**
+     * Inflates the specified data into {@link #out}, or returns {@code false} if the output exceeds
+     * {@link #maxOutLength}.
+     */
+    private boolean inflate(ChannelBuffer data) {
+        int length = data.readableBytes();
+        if (data.hasArray()) {
+            z.next_in = data.array();
+            z.next_in_index = data.arrayOffset() + data.readerIndex();
+        } else {
+            byte[] in = new byte[length];
+            data.getBytes(data.readerIndex(), in);
+            z.next_in = in;
+            z.next_in_index = 0;
+        }
+        z.avail_in = length;
+        z.next_out = out;
+        z.next_out_index = outLength;
+        z.avail_out = out.length - outLength;
+
+        try {
+            for (;;) {
+                int resultCode = z.inflate(JZlib.Z_SYNC_FLUSH);
+                outLength = z.next_out_index;
+                switch (resultCode) {
+                case JZlib.Z_OK:
+                case JZlib.Z_BUF_ERROR:
+                    break;
+                case JZlib.Z_STREAM_END:
+                    // The sender ended the message with a final block - start over for the next message.
+                    streamEnded = true;
+                    z.inflateEnd();
+                    init();
+                    return outLength <= maxOutLength;
+                default:
+                    fail("decompression failure", resultCode);
+                }
+
+                if (outLength > maxOutLength) {
+                    return false;
+                }
+                if (z.avail_out != 0) {
+                    // Consumed all input which can be consumed.
+                    return true;
+                }
+
+                out = Arrays.copyOf(out, (int) Math.min((long) out.length << 1, maxOutLength + 1L));
+                z.next_out = out;
+                z.avail_out = out.length - outLength;
+            }
+        } finally {
+            z.next_in = null;
+            z.next_out = null;
+        }
+    }
+
+    private void tooLongMessage(Channel channel) throws TooLongFrameException {
+        decompressing = false;
+        fragmentedText = null;
+        utf8Validator.reset();
+        z.inflateEnd();
+        init();
+
+        if (channel.isConnected()) {
+            CloseWebSocketFrame close = new CloseWebSocketFrame(true, 0);
+            ChannelBuffer status = ChannelBuffers.buffer(2);
+            status.writeShort(STATUS_MESSAGE_TOO_BIG);
+            close.setBinaryData(status);
+            channel.write(close).addListener(ChannelFutureListener.CLOSE);
+        }
+        throw new TooLongFrameException(
+                "decompressed message larger than " + maxMessageSize + " bytes");
+    }
+
+    private void fail(String message, int resultCode) {
+        throw new CompressionException(message + " (" + resultCode + ")" + (z.msg != null? ": " + z.msg : ""));
+    }
+}
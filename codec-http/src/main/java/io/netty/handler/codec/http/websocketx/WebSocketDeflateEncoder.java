@@ -0,0 +1,198 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http.websocketx;
+
+import java.util.Arrays;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelEvent;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.compression.CompressionException;
+import io.netty.handler.codec.oneone.OneToOneEncoder;
+import io.netty.util.internal.jzlib.JZlib;
+import io.netty.util.internal.jzlib.ZStream;
+
+/**
+ * <p>
+ * Compresses the payload of outgoing text and binary messages as specified by the <a
+ * href="http://tools.ietf.org/html/rfc7692">permessage-deflate</a> extension, and sets the RSV1 bit of their first
+ * frame. Control frames are passed through as they are.
+ * </p>
+ *
+ * <p>
+ * All messages of a connection are compressed by the same DEFLATE stream, which is flushed at the end of every
+ * frame, so the redundancy between consecutive messages is compressed away unless no context takeover was
+ * negotiated. Therefore, an instance must not be shared between channels. This handler must be placed between the
+ * {@link WebSocket13FrameEncoder} and the application handler, which is what the handshakers do once the extension
+ * has been negotiated.
+ * </p>
+ */
+public class WebSocketDeflateEncoder extends OneToOneEncoder {
+
+    static final int RSV1 = 0x04;
+
+    private final ZStream z = new ZStream();
+    private final int compressionLevel;
+    private final int windowBits;
+    private final boolean noContextTakeover;
+
+    /**
+     * Whether the continuation frames written next belong to a compressed message
+     */
+    private boolean compressing;
+
+    /**
+     * Constructor
+     *
+     * @param compressionLevel
+     *            {@code 1} yields the fastest compression and {@code 9} yields the best compression. {@code 0} means
+     *            no compression.
+     * @param windowBits
+     *            Base-2 logarithm of the sliding window size ({@code 9} - {@code 15})
+     * @param noContextTakeover
+     *            Reset the compression context after every message
+     */
+    public WebSocketDeflateEncoder(int compressionLevel, int windowBits, boolean noContextTakeover) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException("compressionLevel: " + compressionLevel + " (expected: 0-9)");
+        }
+        if (windowBits < 9 || windowBits > 15) {
+            throw new IllegalArgumentException("windowBits: " + windowBits + " (expected: 9-15)");
+        }
+        this.compressionLevel = compressionLevel;
+        this.windowBits = windowBits;
+        this.noContextTakeover = noContextTakeover;
+        init();
+    }
+
+    private void init() {
+        int resultCode = z.deflateInit(compressionLevel, windowBits, JZlib.W_NONE);
+        if (resultCode != JZlib.Z_OK) {
+            fail("initialization failure", resultCode);
+        }
+    }
+
+    @Override
+    public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent evt) throws Exception {
+        // Frames must reach the wire in the order they were compressed because every frame depends on the frames
+        // compressed before it.
+        synchronized (z) {
+            super.handleDownstream(ctx, evt);
+        }
+    }
+
+    @Override
+    protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        if (!(msg instanceof WebSocketFrame)) {
+            return msg;
+        }
+
+        WebSocketFrame frame = (WebSocketFrame) msg;
+        if (frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame) {
+            if ((frame.getRsv() & RSV1) != 0) {
+                // Already transformed by someone else.
+                compressing = false;
+                return frame;
+            }
+            compressing = true;
+        } else if (!(frame instanceof ContinuationWebSocketFrame) || !compressing) {
+            return frame;
+        }
+
+        boolean finalFragment = frame.isFinalFragment();
+        ChannelBuffer compressed = compress(frame.getBinaryData(), finalFragment);
+
+        WebSocketFrame result;
+        if (frame instanceof TextWebSocketFrame) {
+            result = new TextWebSocketFrame(finalFragment, frame.getRsv() | RSV1, compressed);
+        } else if (frame instanceof BinaryWebSocketFrame) {
+            result = new BinaryWebSocketFrame(finalFragment, frame.getRsv() | RSV1, compressed);
+        } else {
+            result = new ContinuationWebSocketFrame(finalFragment, frame.getRsv(), compressed);
+        }
+
+        if (finalFragment) {
+            compressing = false;
+            if (noContextTakeover) {
+                z.deflateEnd();
+                init();
+            }
+        }
+        return result;
+    }
+
+    private ChannelBuffer compress(ChannelBuffer data, boolean finalFragment) {
+        int length = data.readableBytes();
+        if (data.hasArray()) {
+            z.next_in = data.array();
+            z.next_in_index = data.arrayOffset() + data.readerIndex();
+        } else {
+            byte[] in = new byte[length];
+            data.getBytes(data.readerIndex(), in);
+            z.next_in = in;
+            z.next_in_index = 0;
+        }
+        z.avail_in = length;
+
+        // DEFLATE expands incompressible data by 5 bytes per 16KiB block at most, and the sync flush adds 5 more.
+        byte[] out = new byte[length + (length >>> 12) + 16];
+        z.next_out = out;
+        z.next_out_index = 0;
+        z.avail_out = out.length;
+
+        try {
+            for (;;) {
+                int resultCode = z.deflate(JZlib.Z_SYNC_FLUSH);
+                if (resultCode != JZlib.Z_OK && resultCode != JZlib.Z_BUF_ERROR) {
+                    fail("compression failure", resultCode);
+                }
+                if (z.avail_out != 0) {
+                    break;
+                }
+
+                // Not flushed completely yet.
+                int outLength = z.next_out_index;
+                out = Arrays.copyOf(out, out.length << 1);
+                z.next_out = out;
+                z.next_out_index = outLength;
+                z.avail_out = out.length - outLength;
+            }
+
+            int outLength = z.next_out_index;
+            if (finalFragment) {
+                if (outLength == 0) {
+                    // Nothing was flushed because there was no input since the last flush.  Send an empty stored
+                    // block header so that the receiver can append the tail below.
+                    return ChannelBuffers.wrappedBuffer(new byte[1]);
+                }
+
+                // The message ends with the empty stored block of the sync flush (0x00 0x00 0xff 0xff), which is
+                // implied by the extension.
+                outLength -= 4;
+            }
+            return ChannelBuffers.wrappedBuffer(out, 0, outLength);
+        } finally {
+            z.next_in = null;
+            z.next_out = null;
+        }
+    }
+
+    private void fail(String message, int resultCode) {
+        throw new CompressionException(message + " (" + resultCode + ")" + (z.msg != null? ": " + z.msg : ""));
+    }
+}
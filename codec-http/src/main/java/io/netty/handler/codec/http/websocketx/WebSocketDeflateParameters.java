@@ -0,0 +1,422 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http.websocketx;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ * Parameters of the <a href="http://tools.ietf.org/html/rfc7692">permessage-deflate</a> extension, which compresses
+ * the payload of every text and binary message with DEFLATE.
+ * </p>
+ *
+ * <p>
+ * An instance which is passed to {@link WebSocketServerHandshaker13} or {@link WebSocketClientHandshaker13} describes
+ * what the local endpoint prefers. The handshaker negotiates the parameters in effect with the remote endpoint and
+ * inserts a {@link WebSocketDeflateEncoder} and a {@link WebSocketDeflateDecoder} into the pipeline when the
+ * extension was agreed on.
+ * </p>
+ *
+ * <ul>
+ * <li>{@code serverNoContextTakeover} and {@code clientNoContextTakeover} reset the compression context of the
+ * respective endpoint after every message, which saves the memory of the sliding window between messages at the cost
+ * of the compression ratio.</li>
+ * <li>{@code serverMaxWindowBits} and {@code clientMaxWindowBits} limit the size of the sliding window
+ * ({@code 9} - {@code 15}) of the respective endpoint.</li>
+ * <li>{@code compressionLevel} ({@code 0} - {@code 9}) is not negotiated. It only affects the messages sent by the
+ * local endpoint.</li>
+ * <li>{@code maxMessageSize} is not negotiated either. It limits the decompressed size of the messages received by
+ * the local endpoint.</li>
+ * </ul>
+ */
+public class WebSocketDeflateParameters {
+
+    /**
+     * The name of the extension in the {@code "Sec-WebSocket-Extensions"} header
+     */
+    public static final String EXTENSION_NAME = "permessage-deflate";
+
+    static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+    static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+    static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+    private static final int MIN_WINDOW_BITS = 9;
+    private static final int MAX_WINDOW_BITS = 15;
+    private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
+    private final int compressionLevel;
+    private final boolean serverNoContextTakeover;
+    private final boolean clientNoContextTakeover;
+    private final int serverMaxWindowBits;
+    private final int clientMaxWindowBits;
+    private final int maxMessageSize;
+
+    /**
+     * The value of the {@code "Sec-WebSocket-Extensions"} header which agreed on these parameters, or {@code null} if
+     * these parameters have not been negotiated.
+     */
+    private final String extensionHeader;
+
+    /**
+     * Constructor using the default compression level, context takeover and the maximum window size for both
+     * endpoints
+     */
+    public WebSocketDeflateParameters() {
+        this(DEFAULT_COMPRESSION_LEVEL, false, false, MAX_WINDOW_BITS, MAX_WINDOW_BITS);
+    }
+
+    /**
+     * Constructor which limits the decompressed size of a received message to
+     * {@value WebSocketDeflateDecoder#DEFAULT_MAX_MESSAGE_SIZE} bytes
+     *
+     * @param compressionLevel
+     *            Compression level of the messages sent by the local endpoint. {@code 1} yields the fastest
+     *            compression and {@code 9} yields the best compression. {@code 0} means no compression.
+     * @param serverNoContextTakeover
+     *            Reset the compression context of the server after every message
+     * @param clientNoContextTakeover
+     *            Reset the compression context of the client after every message
+     * @param serverMaxWindowBits
+     *            Base-2 logarithm of the maximum sliding window size of the server ({@code 9} - {@code 15})
+     * @param clientMaxWindowBits
+     *            Base-2 logarithm of the maximum sliding window size of the client ({@code 9} - {@code 15})
+     */
+    public WebSocketDeflateParameters(int compressionLevel, boolean serverNoContextTakeover,
+            boolean clientNoContextTakeover, int serverMaxWindowBits, int clientMaxWindowBits) {
+        this(compressionLevel, serverNoContextTakeover, clientNoContextTakeover, serverMaxWindowBits,
+                clientMaxWindowBits, WebSocketDeflateDecoder.DEFAULT_MAX_MESSAGE_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param compressionLevel
+     *            Compression level of the messages sent by the local endpoint. {@code 1} yields the fastest
+     *            compression and {@code 9} yields the best compression. {@code 0} means no compression.
+     * @param serverNoContextTakeover
+     *            Reset the compression context of the server after every message
+     * @param clientNoContextTakeover
+     *            Reset the compression context of the client after every message
+     * @param serverMaxWindowBits
+     *            Base-2 logarithm of the maximum sliding window size of the server ({@code 9} - {@code 15})
+     * @param clientMaxWindowBits
+     *            Base-2 logarithm of the maximum sliding window size of the client ({@code 9} - {@code 15})
+     * @param maxMessageSize
+     *            Maximum decompressed size of a message received by the local endpoint, in bytes
+     */
+    public WebSocketDeflateParameters(int compressionLevel, boolean serverNoContextTakeover,
+            boolean clientNoContextTakeover, int serverMaxWindowBits, int clientMaxWindowBits,
+            int maxMessageSize) {
+        this(compressionLevel, serverNoContextTakeover, clientNoContextTakeover, serverMaxWindowBits,
+                clientMaxWindowBits, maxMessageSize, null);
+    }
+
+    private WebSocketDeflateParameters(int compressionLevel, boolean serverNoContextTakeover,
+            boolean clientNoContextTakeover, int serverMaxWindowBits, int clientMaxWindowBits,
+            int maxMessageSize, String extensionHeader) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException("compressionLevel: " + compressionLevel + " (expected: 0-9)");
+        }
+        if (serverMaxWindowBits < MIN_WINDOW_BITS || serverMaxWindowBits > MAX_WINDOW_BITS) {
+            throw new IllegalArgumentException("serverMaxWindowBits: " + serverMaxWindowBits + " (expected: "
+                    + MIN_WINDOW_BITS + '-' + MAX_WINDOW_BITS + ')');
+        }
+        if (clientMaxWindowBits < MIN_WINDOW_BITS || clientMaxWindowBits > MAX_WINDOW_BITS) {
+            throw new IllegalArgumentException("clientMaxWindowBits: " + clientMaxWindowBits + " (expected: "
+                    + MIN_WINDOW_BITS + '-' + MAX_WINDOW_BITS + ')');
+        }
+        if (maxMessageSize <= 0 || maxMessageSize == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "maxMessageSize: " + maxMessageSize + " (expected: 1-" + (Integer.MAX_VALUE - 1) + ')');
+        }
+        this.compressionLevel = compressionLevel;
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+        this.serverMaxWindowBits = serverMaxWindowBits;
+        this.clientMaxWindowBits = clientMaxWindowBits;
+        this.maxMessageSize = maxMessageSize;
+        this.extensionHeader = extensionHeader;
+    }
+
+    /**
+     * Compression level of the messages sent by the local endpoint
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Returns {@code true} if the server resets its compression context after every message
+     */
+    public boolean isServerNoContextTakeover() {
+        return serverNoContextTakeover;
+    }
+
+    /**
+     * Returns {@code true} if the client resets its compression context after every message
+     */
+    public boolean isClientNoContextTakeover() {
+        return clientNoContextTakeover;
+    }
+
+    /**
+     * Base-2 logarithm of the maximum sliding window size of the server
+     */
+    public int getServerMaxWindowBits() {
+        return serverMaxWindowBits;
+    }
+
+    /**
+     * Base-2 logarithm of the maximum sliding window size of the client
+     */
+    public int getClientMaxWindowBits() {
+        return clientMaxWindowBits;
+    }
+
+    /**
+     * Maximum decompressed size of a message received by the local endpoint
+     */
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    /**
+     * Returns the extension as it appeared in the {@code "Sec-WebSocket-Extensions"} header of the handshake
+     * response, or {@code null} if these parameters have not been negotiated.
+     */
+    public String getExtensionHeader() {
+        return extensionHeader;
+    }
+
+    /**
+     * Server side: accepts the first acceptable permessage-deflate offer of a client.
+     *
+     * @param extensionsHeader
+     *            The {@code "Sec-WebSocket-Extensions"} header of the handshake request. May be {@code null}.
+     * @return The parameters in effect, or {@code null} if the client did not make an acceptable offer
+     */
+    WebSocketDeflateParameters acceptOffer(String extensionsHeader) {
+        if (extensionsHeader == null) {
+            return null;
+        }
+
+        nextOffer: for (String offer: extensionsHeader.split(",")) {
+            String[] params = offer.split(";");
+            if (!EXTENSION_NAME.equals(params[0].trim())) {
+                continue;
+            }
+
+            boolean serverNoContextTakeover = this.serverNoContextTakeover;
+            boolean clientNoContextTakeover = this.clientNoContextTakeover;
+            int serverMaxWindowBits = this.serverMaxWindowBits;
+            int clientMaxWindowBits = MAX_WINDOW_BITS;
+            boolean serverMaxWindowBitsRequested = false;
+            boolean clientMaxWindowBitsSupported = false;
+
+            Set<String> names = new HashSet<String>();
+            for (int i = 1; i < params.length; i ++) {
+                String name = paramName(params[i]);
+                String value = paramValue(params[i]);
+                if (!names.add(name)) {
+                    // Duplicate parameters make the offer invalid.
+                    continue nextOffer;
+                }
+
+                if (SERVER_NO_CONTEXT_TAKEOVER.equals(name) && value == null) {
+                    serverNoContextTakeover = true;
+                } else if (CLIENT_NO_CONTEXT_TAKEOVER.equals(name) && value == null) {
+                    clientNoContextTakeover = true;
+                } else if (SERVER_MAX_WINDOW_BITS.equals(name) && value != null) {
+                    int bits = parseWindowBits(value);
+                    if (bits < 0) {
+                        continue nextOffer;
+                    }
+                    serverMaxWindowBits = Math.min(serverMaxWindowBits, bits);
+                    serverMaxWindowBitsRequested = true;
+                } else if (CLIENT_MAX_WINDOW_BITS.equals(name)) {
+                    if (value != null) {
+                        int bits = parseWindowBits(value);
+                        if (bits < 0) {
+                            continue nextOffer;
+                        }
+                        clientMaxWindowBits = bits;
+                    }
+                    clientMaxWindowBitsSupported = true;
+                } else {
+                    // Unknown parameter or invalid value - decline the offer.
+                    continue nextOffer;
+                }
+            }
+
+            // The client can only be asked to use a smaller window if it said it supports it.
+            if (clientMaxWindowBitsSupported) {
+                clientMaxWindowBits = Math.min(clientMaxWindowBits, this.clientMaxWindowBits);
+            }
+
+            StringBuilder header = new StringBuilder(EXTENSION_NAME);
+            if (serverNoContextTakeover) {
+                header.append("; ").append(SERVER_NO_CONTEXT_TAKEOVER);
+            }
+            if (clientNoContextTakeover) {
+                header.append("; ").append(CLIENT_NO_CONTEXT_TAKEOVER);
+            }
+            if (serverMaxWindowBitsRequested) {
+                header.append("; ").append(SERVER_MAX_WINDOW_BITS).append('=').append(serverMaxWindowBits);
+            }
+            if (clientMaxWindowBits < MAX_WINDOW_BITS) {
+                header.append("; ").append(CLIENT_MAX_WINDOW_BITS).append('=').append(clientMaxWindowBits);
+            }
+
+            return new WebSocketDeflateParameters(compressionLevel, serverNoContextTakeover,
+                    clientNoContextTakeover, serverMaxWindowBits, clientMaxWindowBits, maxMessageSize,
+                    header.toString());
+        }
+
+        return null;
+    }
+
+    /**
+     * Client side: returns the permessage-deflate offer to be sent in the {@code "Sec-WebSocket-Extensions"} header
+     * of the handshake request.
+     */
+    String newOffer() {
+        StringBuilder header = new StringBuilder(EXTENSION_NAME);
+        if (serverNoContextTakeover) {
+            header.append("; ").append(SERVER_NO_CONTEXT_TAKEOVER);
+        }
+        if (clientNoContextTakeover) {
+            header.append("; ").append(CLIENT_NO_CONTEXT_TAKEOVER);
+        }
+        if (serverMaxWindowBits < MAX_WINDOW_BITS) {
+            header.append("; ").append(SERVER_MAX_WINDOW_BITS).append('=').append(serverMaxWindowBits);
+        }
+
+        // Always tell the server that it may limit the window of the client.
+        header.append("; ").append(CLIENT_MAX_WINDOW_BITS);
+        if (clientMaxWindowBits < MAX_WINDOW_BITS) {
+            header.append('=').append(clientMaxWindowBits);
+        }
+        return header.toString();
+    }
+
+    /**
+     * Client side: validates the permessage-deflate response of the server to the offer made by {@link #newOffer()}.
+     *
+     * @param extensionsHeader
+     *            The {@code "Sec-WebSocket-Extensions"} header of the handshake response. May be {@code null}.
+     * @return The parameters in effect, or {@code null} if the server declined the offer
+     * @throws WebSocketHandshakeException
+     *             if the response is invalid
+     */
+    WebSocketDeflateParameters acceptResponse(String extensionsHeader) throws WebSocketHandshakeException {
+        if (extensionsHeader == null) {
+            return null;
+        }
+
+        WebSocketDeflateParameters accepted = null;
+        for (String extension: extensionsHeader.split(",")) {
+            String[] params = extension.split(";");
+            String name = params[0].trim();
+            if (!EXTENSION_NAME.equals(name)) {
+                throw new WebSocketHandshakeException("Unexpected extension in handshake response: " + name);
+            }
+            if (accepted != null) {
+                throw new WebSocketHandshakeException("Duplicate extension in handshake response: " + name);
+            }
+
+            boolean serverNoContextTakeover = false;
+            boolean clientNoContextTakeover = this.clientNoContextTakeover;
+            int serverMaxWindowBits = MAX_WINDOW_BITS;
+            int clientMaxWindowBits = this.clientMaxWindowBits;
+
+            Set<String> names = new HashSet<String>();
+            for (int i = 1; i < params.length; i ++) {
+                String paramName = paramName(params[i]);
+                String value = paramValue(params[i]);
+                if (!names.add(paramName)) {
+                    throw new WebSocketHandshakeException("Duplicate extension parameter: " + paramName);
+                }
+
+                int bits = value == null? -1 : parseWindowBits(value);
+                if (SERVER_NO_CONTEXT_TAKEOVER.equals(paramName) && value == null) {
+                    serverNoContextTakeover = true;
+                } else if (CLIENT_NO_CONTEXT_TAKEOVER.equals(paramName) && value == null) {
+                    clientNoContextTakeover = true;
+                } else if (SERVER_MAX_WINDOW_BITS.equals(paramName) && bits > 0) {
+                    serverMaxWindowBits = bits;
+                } else if (CLIENT_MAX_WINDOW_BITS.equals(paramName) && bits > 0) {
+                    clientMaxWindowBits = Math.min(clientMaxWindowBits, bits);
+                } else {
+                    throw new WebSocketHandshakeException("Invalid extension parameter: " + params[i].trim());
+                }
+            }
+
+            accepted = new WebSocketDeflateParameters(compressionLevel, serverNoContextTakeover,
+                    clientNoContextTakeover, serverMaxWindowBits, clientMaxWindowBits, maxMessageSize,
+                    extension.trim());
+        }
+        return accepted;
+    }
+
+    private static String paramName(String param) {
+        int eq = param.indexOf('=');
+        return (eq < 0? param : param.substring(0, eq)).trim();
+    }
+
+    private static String paramValue(String param) {
+        int eq = param.indexOf('=');
+        if (eq < 0) {
+            return null;
+        }
+        String value = param.substring(eq + 1).trim();
+        if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+            value = value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the window bits in the specified parameter value, or {@code -1} if it is invalid.
+     */
+    private static int parseWindowBits(String value) {
+        // Leading zeros are not allowed.
+        if (value.length() == 0 || value.length() > 2 || value.charAt(0) == '0') {
+            return -1;
+        }
+        int bits = 0;
+        for (int i = 0; i < value.length(); i ++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            bits = bits * 10 + c - '0';
+        }
+        if (bits < MIN_WINDOW_BITS || bits > MAX_WINDOW_BITS) {
+            return -1;
+        }
+        return bits;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(compressionLevel: " + compressionLevel + ", serverNoContextTakeover: "
+                + serverNoContextTakeover + ", clientNoContextTakeover: " + clientNoContextTakeover
+                + ", serverMaxWindowBits: " + serverMaxWindowBits + ", clientMaxWindowBits: "
+                + clientMaxWindowBits + ", maxMessageSize: " + maxMessageSize + ')';
+    }
+}
@@ -18,6 +18,8 @@ package io.netty.handler.codec.http.websocketx;
 import static io.netty.handler.codec.http.HttpHeaders.Values.WEBSOCKET;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
+import java.util.List;
+
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
@@ -50,6 +52,8 @@ public class WebSocketServerHandshaker13 extends WebSocketServerHandshaker {
 
     private final boolean allowExtensions;
 
+    private final WebSocketDeflateParameters deflateParameters;
+
     /**
      * Constructor specifying the destination web socket location
      * 
@@ -62,8 +66,28 @@ public class WebSocketServerHandshaker13 extends WebSocketServerHandshaker {
      *            Allow extensions to be used in the reserved bits of the web socket frame
      */
     public WebSocketServerHandshaker13(String webSocketURL, String subprotocols, boolean allowExtensions) {
+        this(webSocketURL, subprotocols, allowExtensions, null);
+    }
+
+    /**
+     * Constructor specifying the destination web socket location and the permessage-deflate extension to negotiate
+     * 
+     * @param webSocketURL
+     *            URL for web socket communications. e.g "ws://myhost.com/mypath". Subsequent web socket frames will be
+     *            sent to this URL.
+     * @param subprotocols
+     *            CSV of supported protocols
+     * @param allowExtensions
+     *            Allow extensions to be used in the reserved bits of the web socket frame
+     * @param deflateParameters
+     *            Parameters of the permessage-deflate extension which is accepted if the client offers it, or
+     *            {@code null} to disable compression
+     */
+    public WebSocketServerHandshaker13(String webSocketURL, String subprotocols, boolean allowExtensions,
+            WebSocketDeflateParameters deflateParameters) {
         super(WebSocketVersion.V13, webSocketURL, subprotocols);
         this.allowExtensions = allowExtensions;
+        this.deflateParameters = deflateParameters;
     }
 
     /**
@@ -100,6 +124,12 @@ public class WebSocketServerHandshaker13 extends WebSocketServerHandshaker {
      * Sec-WebSocket-Protocol: chat
      * </pre>
      * 
+     * <p>
+     * If a {@link WebSocketDeflateParameters} was specified and the client offers permessage-deflate, the response
+     * includes a {@code Sec-WebSocket-Extensions} header and a {@link WebSocketDeflateEncoder} and a
+     * {@link WebSocketDeflateDecoder} are added to the pipeline.
+     * </p>
+     * 
      * @param channel
      *            Channel
      * @param req
@@ -134,6 +164,13 @@ public class WebSocketServerHandshaker13 extends WebSocketServerHandshaker {
         if (protocol != null) {
             res.addHeader(Names.SEC_WEBSOCKET_PROTOCOL, selectSubprotocol(protocol));
         }
+        WebSocketDeflateParameters deflate = null;
+        if (deflateParameters != null) {
+            deflate = deflateParameters.acceptOffer(joinHeaders(req.getHeaders(Names.SEC_WEBSOCKET_EXTENSIONS)));
+            if (deflate != null) {
+                res.addHeader(Names.SEC_WEBSOCKET_EXTENSIONS, deflate.getExtensionHeader());
+            }
+        }
 
         ChannelFuture future = channel.write(res);
 
@@ -143,12 +180,37 @@ public class WebSocketServerHandshaker13 extends WebSocketServerHandshaker {
             p.remove(HttpChunkAggregator.class);
         }
 
-        p.replace(HttpRequestDecoder.class, "wsdecoder", new WebSocket13FrameDecoder(true, allowExtensions));
+        p.replace(HttpRequestDecoder.class, "wsdecoder",
+                new WebSocket13FrameDecoder(true, allowExtensions || deflate != null));
         p.replace(HttpResponseEncoder.class, "wsencoder", new WebSocket13FrameEncoder(false));
+        if (deflate != null) {
+            p.addAfter("wsdecoder", "wsdeflatedecoder",
+                    new WebSocketDeflateDecoder(
+                            deflate.isClientNoContextTakeover(), deflate.getMaxMessageSize()));
+            p.addAfter("wsencoder", "wsdeflateencoder", new WebSocketDeflateEncoder(deflate.getCompressionLevel(),
+                    deflate.getServerMaxWindowBits(), deflate.isServerNoContextTakeover()));
+        }
 
         return future;
     }
 
+    private static String joinHeaders(List<String> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        if (values.size() == 1) {
+            return values.get(0);
+        }
+        StringBuilder buf = new StringBuilder();
+        for (String v: values) {
+            if (buf.length() > 0) {
+                buf.append(',');
+            }
+            buf.append(v);
+        }
+        return buf.toString();
+    }
+
     /**
      * Echo back the closing frame and close the connection
      * 
@@ -34,6 +34,8 @@ public class WebSocketServerHandshakerFactory {
 
     private final boolean allowExtensions;
 
+    private final WebSocketDeflateParameters deflateParameters;
+
     /**
      * Constructor specifying the destination web socket location
      * 
@@ -46,9 +48,29 @@ public class WebSocketServerHandshakerFactory {
      *            Allow extensions to be used in the reserved bits of the web socket frame
      */
     public WebSocketServerHandshakerFactory(String webSocketURL, String subprotocols, boolean allowExtensions) {
+        this(webSocketURL, subprotocols, allowExtensions, null);
+    }
+
+    /**
+     * Constructor specifying the destination web socket location and the permessage-deflate extension to negotiate
+     * 
+     * @param webSocketURL
+     *            URL for web socket communications. e.g "ws://myhost.com/mypath". Subsequent web socket frames will be
+     *            sent to this URL.
+     * @param subprotocols
+     *            CSV of supported protocols. Null if sub protocols not supported.
+     * @param allowExtensions
+     *            Allow extensions to be used in the reserved bits of the web socket frame
+     * @param deflateParameters
+     *            Parameters of the permessage-deflate extension which is accepted if a version 13 client offers it,
+     *            or {@code null} to disable compression
+     */
+    public WebSocketServerHandshakerFactory(String webSocketURL, String subprotocols, boolean allowExtensions,
+            WebSocketDeflateParameters deflateParameters) {
         this.webSocketURL = webSocketURL;
         this.subprotocols = subprotocols;
         this.allowExtensions = allowExtensions;
+        this.deflateParameters = deflateParameters;
     }
 
     /**
@@ -63,7 +85,7 @@ public class WebSocketServerHandshakerFactory {
         if (version != null) {
             if (version.equals(WebSocketVersion.V13.toHttpHeaderValue())) {
                 // Version 13 of the wire protocol - RFC 6455 (version 17 of the draft hybi specification).
-                return new WebSocketServerHandshaker13(webSocketURL, subprotocols, allowExtensions);
+                return new WebSocketServerHandshaker13(webSocketURL, subprotocols, allowExtensions, deflateParameters);
             } else if (version.equals(WebSocketVersion.V08.toHttpHeaderValue())) {
                 // Version 8 of the wire protocol - version 10 of the draft hybi specification.
                 return new WebSocketServerHandshaker08(webSocketURL, subprotocols, allowExtensions);
@@ -15,8 +15,10 @@
  */
 package io.netty.handler.codec.http.websocketx;
 
+import java.nio.ByteOrder;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Random;
 
 import io.netty.buffer.ChannelBuffer;
 import io.netty.buffer.ChannelBuffers;
@@ -24,10 +26,20 @@ import io.netty.handler.codec.base64.Base64;
 import io.netty.util.CharsetUtil;
 
 /**
- * TODO Document me.
+ * Hashing, encoding, random number and masking utilities shared by the WebSocket handshakers and frame codecs.
  */
 final class WebSocketUtil {
 
+    /**
+     * A generator per thread, so that the I/O threads do not contend on the seed of a shared {@link Random}
+     */
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
     /**
      * Performs an MD5 hash
      *
@@ -102,6 +114,51 @@ final class WebSocketUtil {
         return (int) (Math.random() * max + min);
     }
 
+    /**
+     * Creates a random masking key for a client-to-server frame
+     *
+     * @return masking key
+     */
+    static int newMask() {
+        return RANDOM.get().nextInt();
+    }
+
+    /**
+     * Masks or unmasks the specified region of a buffer in place, 8 bytes at a time. The masking key must have been
+     * read from, or will be written to, a buffer of the same byte order.
+     *
+     * @param buffer
+     *            Buffer to (un)mask
+     * @param index
+     *            Index of the first byte of the payload
+     * @param length
+     *            Length of the payload
+     * @param mask
+     *            Masking key
+     */
+    static void mask(ChannelBuffer buffer, int index, int length, int mask) {
+        if (mask == 0) {
+            return;
+        }
+
+        final int end = index + length;
+        final long longMask = (long) mask << 32 | mask & 0xFFFFFFFFL;
+        int i = index;
+        for (; i + 8 <= end; i += 8) {
+            buffer.setLong(i, buffer.getLong(i) ^ longMask);
+        }
+        if (i + 4 <= end) {
+            buffer.setInt(i, buffer.getInt(i) ^ mask);
+            i += 4;
+        }
+
+        // Remaining 0 to 3 bytes - the mask is aligned with the payload start.
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        for (int j = 0; i < end; i ++, j ++) {
+            int shift = bigEndian ? 24 - (j << 3) : j << 3;
+            buffer.setByte(i, buffer.getByte(i) ^ mask >>> shift);
+        }
+    }
 
     private WebSocketUtil() {
         // Unused
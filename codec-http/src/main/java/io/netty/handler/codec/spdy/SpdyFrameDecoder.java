@@ -303,7 +303,18 @@ public class SpdyFrameDecoder extends FrameDecoder {
             return spdyHeadersFrame;
 
         case SPDY_WINDOW_UPDATE_FRAME:
-            return null;
+            if (flags != 0 || data.readableBytes() != 8) {
+                throw new SpdyProtocolException(
+                        "Received invalid WINDOW_UPDATE control frame");
+            }
+            streamID = getUnsignedInt(data, data.readerIndex());
+            int deltaWindowSize = getUnsignedInt(data, data.readerIndex() + 4);
+            if (deltaWindowSize == 0) {
+                throw new SpdyProtocolException(
+                        "Received invalid WINDOW_UPDATE delta window size");
+            }
+
+            return new DefaultSpdyWindowUpdateFrame(streamID, deltaWindowSize);
 
         default:
             return null;
@@ -15,7 +15,6 @@
  */
 package io.netty.handler.codec.spdy;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -35,6 +34,7 @@ import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.oneone.OneToOneDecoder;
+import io.netty.util.internal.IntObjectHashMap;
 
 /**
  * Decodes {@link SpdySynStreamFrame}s, {@link SpdySynReplyFrame}s,
@@ -43,7 +43,7 @@ import io.netty.handler.codec.oneone.OneToOneDecoder;
 public class SpdyHttpDecoder extends OneToOneDecoder {
 
     private final int maxContentLength;
-    private final Map<Integer, HttpMessage> messageMap = new HashMap<Integer, HttpMessage>();
+    private final IntObjectHashMap<HttpMessage> messageMap = new IntObjectHashMap<HttpMessage>();
 
     /**
      * Creates a new instance.
@@ -107,7 +107,7 @@ public class SpdyHttpDecoder extends OneToOneDecoder {
                         return httpResponse;
                     } else {
                         // Response body will follow in a series of Data Frames
-                        messageMap.put(new Integer(streamID), httpResponse);
+                        messageMap.put(streamID, httpResponse);
                     }
                 } catch (Exception e) {
                     SpdyRstStreamFrame spdyRstStreamFrame =
@@ -127,7 +127,7 @@ public class SpdyHttpDecoder extends OneToOneDecoder {
                         return httpRequest;
                     } else {
                         // Request body will follow in a series of Data Frames
-                        messageMap.put(new Integer(streamID), httpRequest);
+                        messageMap.put(streamID, httpRequest);
                     }
                 } catch (Exception e) {
                     // If a client sends a SYN_STREAM without method, url, and version headers
@@ -157,7 +157,7 @@ public class SpdyHttpDecoder extends OneToOneDecoder {
                     return httpResponse;
                 } else {
                     // Response body will follow in a series of Data Frames
-                    messageMap.put(new Integer(streamID), httpResponse);
+                    messageMap.put(streamID, httpResponse);
                 }
             } catch (Exception e) {
                 // If a client receives a SYN_REPLY without valid status and version headers
@@ -170,7 +170,7 @@ public class SpdyHttpDecoder extends OneToOneDecoder {
         } else if (msg instanceof SpdyHeadersFrame) {
 
             SpdyHeadersFrame spdyHeadersFrame = (SpdyHeadersFrame) msg;
-            Integer streamID = new Integer(spdyHeadersFrame.getStreamID());
+            int streamID = spdyHeadersFrame.getStreamID();
             HttpMessage httpMessage = messageMap.get(streamID);
 
             // If message is not in map discard HEADERS frame.
@@ -186,7 +186,7 @@ public class SpdyHttpDecoder extends OneToOneDecoder {
         } else if (msg instanceof SpdyDataFrame) {
 
             SpdyDataFrame spdyDataFrame = (SpdyDataFrame) msg;
-            Integer streamID = new Integer(spdyDataFrame.getStreamID());
+            int streamID = spdyDataFrame.getStreamID();
             HttpMessage httpMessage = messageMap.get(streamID);
 
             // If message is not in map discard Data Frame.
@@ -15,95 +15,228 @@
  */
 package io.netty.handler.codec.spdy;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import io.netty.channel.MessageEvent;
+import io.netty.util.internal.IntObjectHashMap;
+
+/**
+ * The state of the active streams of a session.  All accesses to the streams
+ * are synchronized on this object, but the pending writes of a removed stream
+ * are failed outside the lock because the futures notify their listeners.
+ */
 final class SpdySession {
 
-    private final Map<Integer, StreamState> activeStreams =
-        new ConcurrentHashMap<Integer, StreamState>();
+    private final IntObjectHashMap<StreamState> activeStreams =
+        new IntObjectHashMap<StreamState>();
 
     SpdySession() {
     }
 
-    public int numActiveStreams() {
+    public synchronized int numActiveStreams() {
         return activeStreams.size();
     }
 
-    public boolean noActiveStreams() {
+    public synchronized boolean noActiveStreams() {
         return activeStreams.isEmpty();
     }
 
-    public boolean isActiveStream(int streamID) {
-        return activeStreams.containsKey(new Integer(streamID));
+    public synchronized boolean isActiveStream(int streamID) {
+        return activeStreams.containsKey(streamID);
     }
 
-    public void acceptStream(int streamID, boolean remoteSideClosed, boolean localSideClosed) {
+    public synchronized void acceptStream(
+            int streamID, byte priority, boolean remoteSideClosed, boolean localSideClosed,
+            int sendWindowSize, int receiveWindowSize) {
         if (!remoteSideClosed || !localSideClosed) {
-            activeStreams.put(new Integer(streamID),
-                              new StreamState(remoteSideClosed, localSideClosed));
+            activeStreams.put(streamID, new StreamState(
+                    priority, remoteSideClosed, localSideClosed, sendWindowSize, receiveWindowSize));
         }
         return;
     }
 
-    public void removeStream(int streamID) {
-        activeStreams.remove(new Integer(streamID));
-        return;
+    public void removeStream(int streamID, Throwable cause) {
+        StreamState state;
+        synchronized (this) {
+            state = activeStreams.remove(streamID);
+        }
+        if (state != null) {
+            state.clearPendingWrites(cause);
+        }
     }
 
-    public boolean isRemoteSideClosed(int streamID) {
-        StreamState state = activeStreams.get(new Integer(streamID));
+    public synchronized boolean isRemoteSideClosed(int streamID) {
+        StreamState state = activeStreams.get(streamID);
         return (state == null) || state.isRemoteSideClosed();
     }
 
-    public void closeRemoteSide(int streamID) {
-        Integer StreamID = new Integer(streamID);
-        StreamState state = activeStreams.get(StreamID);
-        if (state != null) {
+    public void closeRemoteSide(int streamID, Throwable cause) {
+        StreamState state;
+        synchronized (this) {
+            state = activeStreams.get(streamID);
+            if (state == null) {
+                return;
+            }
             state.closeRemoteSide();
-            if (state.isLocalSideClosed()) {
-                activeStreams.remove(StreamID);
+            if (!state.isLocalSideClosed()) {
+                return;
             }
+            activeStreams.remove(streamID);
         }
+        state.clearPendingWrites(cause);
     }
 
-    public boolean isLocalSideClosed(int streamID) {
-        StreamState state = activeStreams.get(new Integer(streamID));
+    public synchronized boolean isLocalSideClosed(int streamID) {
+        StreamState state = activeStreams.get(streamID);
         return (state == null) || state.isLocalSideClosed();
     }
 
-    public void closeLocalSide(int streamID) {
-        Integer StreamID = new Integer(streamID);
-        StreamState state = activeStreams.get(StreamID);
-        if (state != null) {
+    public void closeLocalSide(int streamID, Throwable cause) {
+        StreamState state;
+        synchronized (this) {
+            state = activeStreams.get(streamID);
+            if (state == null) {
+                return;
+            }
             state.closeLocalSide();
-            if (state.isRemoteSideClosed()) {
-                activeStreams.remove(StreamID);
+            if (!state.isRemoteSideClosed()) {
+                return;
             }
+            activeStreams.remove(streamID);
         }
+        state.clearPendingWrites(cause);
     }
 
-    public boolean hasReceivedReply(int streamID) {
-        StreamState state = activeStreams.get(new Integer(streamID));
+    public synchronized boolean hasReceivedReply(int streamID) {
+        StreamState state = activeStreams.get(streamID);
         return (state != null) && state.hasReceivedReply();
     }
 
-    public void receivedReply(int streamID) {
-        StreamState state = activeStreams.get(new Integer(streamID));
+    public synchronized void receivedReply(int streamID) {
+        StreamState state = activeStreams.get(streamID);
         if (state != null) {
             state.receivedReply();
         }
     }
 
+    /*
+     * Flow control
+     */
+
+    // Returns the new send window size, or Integer.MIN_VALUE if the stream is not active
+    public synchronized int updateSendWindowSize(int streamID, int deltaWindowSize) {
+        StreamState state = activeStreams.get(streamID);
+        return state != null ? state.updateSendWindowSize(deltaWindowSize) : Integer.MIN_VALUE;
+    }
+
+    // Returns the new receive window size, or Integer.MIN_VALUE if the stream is not active
+    public synchronized int updateReceiveWindowSize(int streamID, int deltaWindowSize) {
+        StreamState state = activeStreams.get(streamID);
+        return state != null ? state.updateReceiveWindowSize(deltaWindowSize) : Integer.MIN_VALUE;
+    }
+
+    public synchronized void updateAllSendWindowSizes(int deltaWindowSize) {
+        for (IntObjectHashMap.Entry<StreamState> entry: activeStreams) {
+            entry.getValue().updateSendWindowSize(deltaWindowSize);
+        }
+    }
+
+    public synchronized void updateAllReceiveWindowSizes(int deltaWindowSize) {
+        for (IntObjectHashMap.Entry<StreamState> entry: activeStreams) {
+            entry.getValue().updateReceiveWindowSize(deltaWindowSize);
+        }
+    }
+
+    public synchronized int getSendWindowSize(int streamID) {
+        StreamState state = activeStreams.get(streamID);
+        return state != null ? state.getSendWindowSize() : -1;
+    }
+
+    public synchronized boolean putPendingWrite(int streamID, MessageEvent evt) {
+        StreamState state = activeStreams.get(streamID);
+        return state != null && state.putPendingWrite(evt);
+    }
+
+    public synchronized MessageEvent getPendingWrite(int streamID) {
+        StreamState state = activeStreams.get(streamID);
+        return state != null ? state.getPendingWrite() : null;
+    }
+
+    public synchronized MessageEvent removePendingWrite(int streamID) {
+        StreamState state = activeStreams.get(streamID);
+        return state != null ? state.removePendingWrite() : null;
+    }
+
+    public void clearPendingWrites(Throwable cause) {
+        List<StreamState> states = new ArrayList<StreamState>();
+        synchronized (this) {
+            for (IntObjectHashMap.Entry<StreamState> entry: activeStreams) {
+                states.add(entry.getValue());
+            }
+        }
+        for (StreamState state: states) {
+            state.clearPendingWrites(cause);
+        }
+    }
+
+    /**
+     * Returns the Stream-ID of the stream whose next pending write should be
+     * written, or {@code 0} if no pending write can be written.  A stream of
+     * a higher priority always goes first.  Streams of the same priority take
+     * turns in the order of their Stream-IDs, starting after the stream which
+     * was written last.
+     */
+    public synchronized int nextPendingWrite(int lastStreamID, int sessionSendWindowSize) {
+        int nextStreamID = 0;
+        int nextPriority = Integer.MAX_VALUE;
+        boolean nextWrapped = false;
+        for (IntObjectHashMap.Entry<StreamState> entry: activeStreams) {
+            StreamState state = entry.getValue();
+            if (!state.hasWritablePendingWrite(sessionSendWindowSize)) {
+                continue;
+            }
+
+            int streamID = entry.getKey();
+            int priority = state.getPriority();
+            boolean wrapped = streamID <= lastStreamID;
+            if (priority < nextPriority ||
+                priority == nextPriority &&
+                (wrapped == nextWrapped ? streamID < nextStreamID : nextWrapped)) {
+                nextStreamID = streamID;
+                nextPriority = priority;
+                nextWrapped = wrapped;
+            }
+        }
+        return nextStreamID;
+    }
+
     private static final class StreamState {
 
-        private boolean remoteSideClosed;
-        private boolean localSideClosed;
-        private boolean receivedReply;
+        private final byte priority;
+        private volatile boolean remoteSideClosed;
+        private volatile boolean localSideClosed;
+        private volatile boolean receivedReply;
+        private final AtomicInteger sendWindowSize;
+        private final AtomicInteger receiveWindowSize;
+        private final Queue<MessageEvent> pendingWriteQueue =
+            new ConcurrentLinkedQueue<MessageEvent>();
 
-        public StreamState(boolean remoteSideClosed, boolean localSideClosed) {
+        public StreamState(
+                byte priority, boolean remoteSideClosed, boolean localSideClosed,
+                int sendWindowSize, int receiveWindowSize) {
+            this.priority = priority;
             this.remoteSideClosed = remoteSideClosed;
             this.localSideClosed = localSideClosed;
+            this.sendWindowSize = new AtomicInteger(sendWindowSize);
+            this.receiveWindowSize = new AtomicInteger(receiveWindowSize);
+        }
+
+        public byte getPriority() {
+            return priority;
         }
 
         public boolean isRemoteSideClosed() {
@@ -129,5 +262,50 @@ final class SpdySession {
         public void receivedReply() {
             receivedReply = true;
         }
+
+        public int getSendWindowSize() {
+            return sendWindowSize.get();
+        }
+
+        public int updateSendWindowSize(int deltaWindowSize) {
+            return sendWindowSize.addAndGet(deltaWindowSize);
+        }
+
+        public int updateReceiveWindowSize(int deltaWindowSize) {
+            return receiveWindowSize.addAndGet(deltaWindowSize);
+        }
+
+        public boolean putPendingWrite(MessageEvent evt) {
+            return pendingWriteQueue.offer(evt);
+        }
+
+        public MessageEvent getPendingWrite() {
+            return pendingWriteQueue.peek();
+        }
+
+        public MessageEvent removePendingWrite() {
+            return pendingWriteQueue.poll();
+        }
+
+        // Empty data frames do not consume the window and thus can always be written.
+        public boolean hasWritablePendingWrite(int sessionSendWindowSize) {
+            MessageEvent evt = pendingWriteQueue.peek();
+            if (evt == null) {
+                return false;
+            }
+            SpdyDataFrame spdyDataFrame = (SpdyDataFrame) evt.getMessage();
+            return !spdyDataFrame.getData().readable() ||
+                   sessionSendWindowSize > 0 && sendWindowSize.get() > 0;
+        }
+
+        public void clearPendingWrites(Throwable cause) {
+            for (;;) {
+                MessageEvent evt = pendingWriteQueue.poll();
+                if (evt == null) {
+                    break;
+                }
+                evt.getFuture().setFailure(cause);
+            }
+        }
     }
 }
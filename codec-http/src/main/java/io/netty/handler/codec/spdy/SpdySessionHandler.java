@@ -19,6 +19,7 @@ import java.net.SocketAddress;
 import java.nio.channels.ClosedChannelException;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import io.netty.buffer.ChannelBuffer;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelDownstreamHandler;
 import io.netty.channel.ChannelEvent;
@@ -32,11 +33,36 @@ import io.netty.channel.SimpleChannelUpstreamHandler;
 
 /**
  * Manages streams within a SPDY session.
+ *
+ * <h3>Flow control</h3>
+ *
+ * If flow control is enabled, the data frames of each stream are sent only as
+ * far as the send window of the stream and the send window of the session
+ * allow.  Both windows start at 64KB.  The stream windows can be changed with
+ * the {@code SETTINGS_INITIAL_WINDOW_SIZE} setting and are replenished by the
+ * {@link SpdyWindowUpdateFrame}s of the remote endpoint;  the session window
+ * is replenished by the {@link SpdyWindowUpdateFrame}s whose Stream-ID is
+ * {@code 0}.  The data frames which cannot be sent yet are queued and sent in
+ * chunks of 8KB at most, in the order of stream priority, while the channel is
+ * writable.  Streams of the same priority take turns so that a large data
+ * frame does not hold up the other streams.
+ * <p>
+ * In return, the received data frames are checked against the receive windows
+ * and the windows are replenished with {@link SpdyWindowUpdateFrame}s once
+ * half of them are consumed.  The application must not send
+ * {@link SpdyWindowUpdateFrame}s by itself in this mode.
+ * <p>
+ * The remote endpoint must implement the same flow control, which is why it
+ * is disabled by default.
  */
 public class SpdySessionHandler extends SimpleChannelUpstreamHandler 
         implements ChannelDownstreamHandler {
 
     private static final SpdyProtocolException PROTOCOL_EXCEPTION = new SpdyProtocolException();
+    private static final SpdyProtocolException STREAM_CLOSED = new SpdyProtocolException("Stream closed");
+
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024; // 64KB
+    private static final int MAX_CHUNK_SIZE = 8192;
 
     private final SpdySession spdySession = new SpdySession();
     private volatile int lastGoodStreamID;
@@ -53,9 +79,18 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
     private volatile ChannelFuture closeSessionFuture;
 
     private final boolean server;
+    private final boolean flowControl;
+
+    private volatile int initialSendWindowSize = DEFAULT_WINDOW_SIZE;
+    private volatile int initialReceiveWindowSize = DEFAULT_WINDOW_SIZE;
+    private final AtomicInteger sessionSendWindowSize = new AtomicInteger(DEFAULT_WINDOW_SIZE);
+    private int sessionReceiveWindowSize = DEFAULT_WINDOW_SIZE;
+
+    private final AtomicInteger flushRequests = new AtomicInteger();
+    private int lastWrittenStreamID;
 
     /**
-     * Creates a new session handler.
+     * Creates a new session handler without flow control.
      *
      * @param server {@code true} if and only if this session handler should
      *               handle the server endpoint of the connection.
@@ -63,8 +98,23 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
      *               handle the client endpoint of the connection.
      */
     public SpdySessionHandler(boolean server) {
+        this(server, false);
+    }
+
+    /**
+     * Creates a new session handler.
+     *
+     * @param server      {@code true} if and only if this session handler should
+     *                    handle the server endpoint of the connection.
+     *                    {@code false} if and only if this session handler should
+     *                    handle the client endpoint of the connection.
+     * @param flowControl {@code true} if and only if the data frames should be
+     *                    subject to flow control in both directions
+     */
+    public SpdySessionHandler(boolean server, boolean flowControl) {
         super();
         this.server = server;
+        this.flowControl = flowControl;
     }
 
     @Override
@@ -95,6 +145,12 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
 
             SpdyDataFrame spdyDataFrame = (SpdyDataFrame) msg;
             int streamID = spdyDataFrame.getStreamID();
+            int dataLength = spdyDataFrame.getData().readableBytes();
+
+            // The session window is consumed by the data frames of all streams
+            if (flowControl && !updateSessionReceiveWindowSize(ctx, e, dataLength)) {
+                return;
+            }
 
             // Check if we received a data frame for a Stream-ID which is not open
             if (spdySession.isRemoteSideClosed(streamID)) {
@@ -110,6 +166,25 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
                 return;
             }
 
+            if (flowControl) {
+                // Check if the remote endpoint exceeded the receive window
+                int newWindowSize = spdySession.updateReceiveWindowSize(streamID, -dataLength);
+                if (newWindowSize < 0) {
+                    issueStreamError(ctx, e, streamID, SpdyStreamStatus.FLOW_CONTROL_ERROR);
+                    return;
+                }
+
+                // Replenish the receive window once half of it is consumed
+                int initialWindowSize = initialReceiveWindowSize;
+                if (!spdyDataFrame.isLast() && newWindowSize <= initialWindowSize / 2) {
+                    int deltaWindowSize = initialWindowSize - newWindowSize;
+                    spdySession.updateReceiveWindowSize(streamID, deltaWindowSize);
+                    SpdyWindowUpdateFrame spdyWindowUpdateFrame =
+                        new DefaultSpdyWindowUpdateFrame(streamID, deltaWindowSize);
+                    Channels.write(ctx, Channels.future(e.getChannel()), spdyWindowUpdateFrame, e.getRemoteAddress());
+                }
+            }
+
             if (spdyDataFrame.isLast()) {
                 // Close remote side of stream
                 halfCloseStream(streamID, true);
@@ -147,7 +222,8 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
             // Try to accept the stream
             boolean remoteSideClosed = spdySynStreamFrame.isLast();
             boolean localSideClosed = spdySynStreamFrame.isUnidirectional();
-            if (!acceptStream(streamID, remoteSideClosed, localSideClosed)) {
+            byte priority = spdySynStreamFrame.getPriority();
+            if (!acceptStream(streamID, priority, remoteSideClosed, localSideClosed)) {
                 issueStreamError(ctx, e, streamID, SpdyStreamStatus.REFUSED_STREAM);
                 return;
             }
@@ -199,12 +275,19 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
         } else if (msg instanceof SpdySettingsFrame) {
 
             /*
-             * Only concerned with MAX_CONCURRENT_STREAMS
+             * Only concerned with MAX_CONCURRENT_STREAMS and INITIAL_WINDOW_SIZE
              */
 
             SpdySettingsFrame spdySettingsFrame = (SpdySettingsFrame) msg;
             updateConcurrentStreams(spdySettingsFrame, true);
 
+            int newInitialWindowSize =
+                spdySettingsFrame.getValue(SpdySettingsFrame.SETTINGS_INITIAL_WINDOW_SIZE);
+            if (flowControl && newInitialWindowSize >= 0) {
+                updateInitialSendWindowSize(newInitialWindowSize);
+                flushPendingWrites(ctx);
+            }
+
         } else if (msg instanceof SpdyPingFrame) {
 
             /*
@@ -248,11 +331,65 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
                 issueStreamError(ctx, e, streamID, SpdyStreamStatus.INVALID_STREAM);
                 return;
             }
+
+        } else if (msg instanceof SpdyWindowUpdateFrame) {
+
+            /*
+             * SPDY WINDOW_UPDATE frame processing requirements:
+             *
+             * Receivers of a WINDOW_UPDATE that cause the window size to exceed 2^31
+             * must send a RST_STREAM with the status code FLOW_CONTROL_ERROR.
+             *
+             * Sender should ignore all WINDOW_UPDATE frames associated with a stream
+             * after sending the last frame for the stream.
+             */
+
+            if (flowControl) {
+                SpdyWindowUpdateFrame spdyWindowUpdateFrame = (SpdyWindowUpdateFrame) msg;
+                int streamID = spdyWindowUpdateFrame.getStreamID();
+                int deltaWindowSize = spdyWindowUpdateFrame.getDeltaWindowSize();
+
+                if (streamID == 0) {
+                    if (sessionSendWindowSize.get() > Integer.MAX_VALUE - deltaWindowSize) {
+                        issueSessionError(ctx, e.getChannel(), e.getRemoteAddress());
+                        return;
+                    }
+                    sessionSendWindowSize.addAndGet(deltaWindowSize);
+                } else {
+                    if (spdySession.isLocalSideClosed(streamID)) {
+                        return;
+                    }
+                    if (spdySession.getSendWindowSize(streamID) > Integer.MAX_VALUE - deltaWindowSize) {
+                        issueStreamError(ctx, e, streamID, SpdyStreamStatus.FLOW_CONTROL_ERROR);
+                        return;
+                    }
+                    spdySession.updateSendWindowSize(streamID, deltaWindowSize);
+                }
+
+                flushPendingWrites(ctx);
+            }
         }
 
         super.messageReceived(ctx, e);
     }
 
+    @Override
+    public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e)
+            throws Exception {
+        if (flowControl) {
+            // Resume writing the pending data frames when the channel becomes writable
+            flushPendingWrites(ctx);
+        }
+        super.channelInterestChanged(ctx, e);
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e)
+            throws Exception {
+        spdySession.clearPendingWrites(new ClosedChannelException());
+        super.channelClosed(ctx, e);
+    }
+
     public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent evt)
             throws Exception {
         if (evt instanceof ChannelStateEvent) {
@@ -285,6 +422,16 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
                 return;
             }
 
+            if (flowControl) {
+                // The stream is half-closed once its last data frame is written.
+                if (!spdySession.putPendingWrite(streamID, e)) {
+                    e.getFuture().setFailure(PROTOCOL_EXCEPTION);
+                    return;
+                }
+                flushPendingWrites(ctx);
+                return;
+            }
+
             if (spdyDataFrame.isLast()) {
                 halfCloseStream(streamID, false);
             }
@@ -294,7 +441,8 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
             SpdySynStreamFrame spdySynStreamFrame = (SpdySynStreamFrame) msg;
             boolean remoteSideClosed = spdySynStreamFrame.isUnidirectional();
             boolean localSideClosed = spdySynStreamFrame.isLast();
-            if (!acceptStream(spdySynStreamFrame.getStreamID(), remoteSideClosed, localSideClosed)) {
+            byte priority = spdySynStreamFrame.getPriority();
+            if (!acceptStream(spdySynStreamFrame.getStreamID(), priority, remoteSideClosed, localSideClosed)) {
                 e.getFuture().setFailure(PROTOCOL_EXCEPTION);
                 return;
             }
@@ -323,6 +471,12 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
             SpdySettingsFrame spdySettingsFrame = (SpdySettingsFrame) msg;
             updateConcurrentStreams(spdySettingsFrame, false);
 
+            int newInitialWindowSize =
+                spdySettingsFrame.getValue(SpdySettingsFrame.SETTINGS_INITIAL_WINDOW_SIZE);
+            if (flowControl && newInitialWindowSize >= 0) {
+                updateInitialReceiveWindowSize(newInitialWindowSize);
+            }
+
         } else if (msg instanceof SpdyPingFrame) {
 
             SpdyPingFrame spdyPingFrame = (SpdyPingFrame) msg;
@@ -348,11 +502,136 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
                 e.getFuture().setFailure(PROTOCOL_EXCEPTION);
                 return;
             }
+
+        } else if (msg instanceof SpdyWindowUpdateFrame) {
+
+            // The receive windows are managed by this handler
+            if (flowControl) {
+                e.getFuture().setFailure(PROTOCOL_EXCEPTION);
+                return;
+            }
         }
 
         ctx.sendDownstream(evt);
     }
 
+    /*
+     * Flow Control
+     */
+
+    // Only called in the upstream direction
+    private boolean updateSessionReceiveWindowSize(
+            ChannelHandlerContext ctx, MessageEvent e, int dataLength) {
+        int newWindowSize = sessionReceiveWindowSize - dataLength;
+        if (newWindowSize < 0) {
+            issueSessionError(ctx, e.getChannel(), e.getRemoteAddress());
+            return false;
+        }
+
+        // Replenish the receive window once half of it is consumed
+        if (newWindowSize <= DEFAULT_WINDOW_SIZE / 2) {
+            int deltaWindowSize = DEFAULT_WINDOW_SIZE - newWindowSize;
+            newWindowSize = DEFAULT_WINDOW_SIZE;
+            SpdyWindowUpdateFrame spdyWindowUpdateFrame =
+                new DefaultSpdyWindowUpdateFrame(0, deltaWindowSize);
+            Channels.write(ctx, Channels.future(e.getChannel()), spdyWindowUpdateFrame, e.getRemoteAddress());
+        }
+        sessionReceiveWindowSize = newWindowSize;
+        return true;
+    }
+
+    // need to synchronize with acceptStream so that no stream misses the update
+    private synchronized void updateInitialSendWindowSize(int newInitialWindowSize) {
+        int deltaWindowSize = newInitialWindowSize - initialSendWindowSize;
+        initialSendWindowSize = newInitialWindowSize;
+        spdySession.updateAllSendWindowSizes(deltaWindowSize);
+    }
+
+    private synchronized void updateInitialReceiveWindowSize(int newInitialWindowSize) {
+        int deltaWindowSize = newInitialWindowSize - initialReceiveWindowSize;
+        initialReceiveWindowSize = newInitialWindowSize;
+
+        // The remote endpoint may keep sending as permitted by the old setting until it receives
+        // the new one, so existing windows are only ever widened.
+        if (deltaWindowSize > 0) {
+            spdySession.updateAllReceiveWindowSizes(deltaWindowSize);
+        }
+    }
+
+    private void flushPendingWrites(ChannelHandlerContext ctx) {
+        // Only one thread writes the pending data frames at a time so that the chunks of a stream
+        // are written in order.  A thread which finds the pending data frames being written, including
+        // a thread which re-enters via an event fired by the transport, leaves the work to the writing
+        // thread instead of waiting for it, which could deadlock with the transport.
+        if (flushRequests.getAndIncrement() != 0) {
+            return;
+        }
+
+        int requests = 1;
+        for (;;) {
+            writePendingWrites(ctx);
+            requests = flushRequests.addAndGet(-requests);
+            if (requests == 0) {
+                break;
+            }
+        }
+    }
+
+    private void writePendingWrites(ChannelHandlerContext ctx) {
+        Channel channel = ctx.getChannel();
+        while (channel.isWritable()) {
+            int sessionWindowSize = sessionSendWindowSize.get();
+            int streamID = spdySession.nextPendingWrite(lastWrittenStreamID, sessionWindowSize);
+            if (streamID == 0) {
+                break;
+            }
+
+            MessageEvent e = spdySession.getPendingWrite(streamID);
+            if (e == null) {
+                // Removed concurrently
+                continue;
+            }
+            lastWrittenStreamID = streamID;
+
+            if (spdySession.isLocalSideClosed(streamID)) {
+                // Written after the last data frame of the stream
+                spdySession.removePendingWrite(streamID);
+                e.getFuture().setFailure(PROTOCOL_EXCEPTION);
+                continue;
+            }
+
+            SpdyDataFrame spdyDataFrame = (SpdyDataFrame) e.getMessage();
+            ChannelBuffer data = spdyDataFrame.getData();
+            int dataLength = data.readableBytes();
+            int chunkSize = 0;
+            if (dataLength != 0) {
+                int windowSize = Math.min(spdySession.getSendWindowSize(streamID), sessionWindowSize);
+                if (windowSize <= 0) {
+                    // Shrunk concurrently by a SETTINGS frame
+                    continue;
+                }
+                chunkSize = Math.min(Math.min(dataLength, MAX_CHUNK_SIZE), windowSize);
+                spdySession.updateSendWindowSize(streamID, -chunkSize);
+                sessionSendWindowSize.addAndGet(-chunkSize);
+            }
+
+            if (chunkSize == dataLength) {
+                spdySession.removePendingWrite(streamID);
+                if (spdyDataFrame.isLast()) {
+                    halfCloseStream(streamID, false);
+                }
+                ctx.sendDownstream(e);
+            } else {
+                SpdyDataFrame chunk = new DefaultSpdyDataFrame(streamID);
+                chunk.setCompressed(spdyDataFrame.isCompressed());
+                chunk.setData(data.readSlice(chunkSize));
+                ChannelFuture chunkFuture = Channels.future(channel);
+                chunkFuture.addListener(new ChunkWriteFutureListener(e.getFuture()));
+                Channels.write(ctx, chunkFuture, chunk, e.getRemoteAddress());
+            }
+        }
+    }
+
     /*
      * Error Handling
      */
@@ -385,6 +664,10 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
 
     private synchronized void updateConcurrentStreams(SpdySettingsFrame settings, boolean remote) {
         int newConcurrentStreams = settings.getValue(SpdySettingsFrame.SETTINGS_MAX_CONCURRENT_STREAMS);
+        if (newConcurrentStreams < 0) {
+            // Not set
+            return;
+        }
         if (remote) {
             remoteConcurrentStreams = newConcurrentStreams;
         } else {
@@ -411,7 +694,7 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
 
     // need to synchronize accesses to sentGoAwayFrame and lastGoodStreamID
     private synchronized boolean acceptStream(
-            int streamID, boolean remoteSideClosed, boolean localSideClosed) {
+            int streamID, byte priority, boolean remoteSideClosed, boolean localSideClosed) {
         // Cannot initiate any new streams after receiving or sending GOAWAY
         if (receivedGoAwayFrame || sentGoAwayFrame) {
             return false;
@@ -420,7 +703,9 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
            (spdySession.numActiveStreams() >= maxConcurrentStreams)) {
             return false;
         }
-        spdySession.acceptStream(streamID, remoteSideClosed, localSideClosed);
+        spdySession.acceptStream(
+                streamID, priority, remoteSideClosed, localSideClosed,
+                initialSendWindowSize, initialReceiveWindowSize);
         if (isRemoteInitiatedID(streamID)) {
             lastGoodStreamID = streamID;
         }
@@ -429,9 +714,9 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
 
     private void halfCloseStream(int streamID, boolean remote) {
         if (remote) {
-            spdySession.closeRemoteSide(streamID);
+            spdySession.closeRemoteSide(streamID, STREAM_CLOSED);
         } else {
-            spdySession.closeLocalSide(streamID);
+            spdySession.closeLocalSide(streamID, STREAM_CLOSED);
         }
         if ((closeSessionFuture != null) && spdySession.noActiveStreams()) {
             closeSessionFuture.setSuccess();
@@ -439,7 +724,7 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
     }
 
     private void removeStream(int streamID) {
-        spdySession.removeStream(streamID);
+        spdySession.removeStream(streamID, STREAM_CLOSED);
         if ((closeSessionFuture != null) && spdySession.noActiveStreams()) {
             closeSessionFuture.setSuccess();
         }
@@ -472,6 +757,21 @@ public class SpdySessionHandler extends SimpleChannelUpstreamHandler
         return Channels.succeededFuture(channel);
     }
 
+    private static final class ChunkWriteFutureListener implements ChannelFutureListener {
+
+        private final ChannelFuture future;
+
+        ChunkWriteFutureListener(ChannelFuture future) {
+            this.future = future;
+        }
+
+        public void operationComplete(ChannelFuture chunkFuture) throws Exception {
+            if (!chunkFuture.isSuccess()) {
+                future.setFailure(chunkFuture.getCause());
+            }
+        }
+    }
+
     private static final class ClosingChannelFutureListener implements ChannelFutureListener {
 
         private final ChannelHandlerContext ctx;
@@ -347,4 +347,26 @@ public class CookieDecoderTest {
 
         assertFalse(it.hasNext());
     }
+
+    @Test
+    public void testFindingCookie() {
+        String source =
+            "$Version=\"1\"; a=\"1\"; $Path=\"/a\"; " +
+            "session_id=\"x\\\"y\"; $Path=\"/\"; $Domain=\".example.com\"; " +
+            "b=2,3; session_id=\"other\"";
+
+        Cookie c = new CookieDecoder().find(source, "session_id");
+        assertNotNull(c);
+        assertEquals(1, c.getVersion());
+        assertEquals("x\"y", c.getValue());
+        assertEquals("/", c.getPath());
+        assertEquals(".example.com", c.getDomain());
+
+        c = new CookieDecoder().find(source, "b");
+        assertEquals("2,3", c.getValue());
+        assertNull(c.getPath());
+
+        assertNull(new CookieDecoder().find(source, "c"));
+        assertNull(new CookieDecoder().find("", "c"));
+    }
 }
@@ -22,6 +22,10 @@ import static org.junit.Assert.assertNotNull;
 import java.text.DateFormat;
 import java.util.Date;
 
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.util.CharsetUtil;
+
 import org.junit.Test;
 
 public class CookieEncoderTest {
@@ -138,4 +142,23 @@ public class CookieEncoderTest {
     	
     }
     
+
+    @Test
+    public void testEncodingIntoBuffer() {
+        Cookie cookie = new DefaultCookie("myCookie", "my \"quoted\" value");
+        cookie.setVersion(1);
+        cookie.setPorts(80, 8080);
+        CookieEncoder encoder = new CookieEncoder(false);
+        encoder.addCookie(cookie);
+
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+        buffer.writeBytes("Cookie: ".getBytes(CharsetUtil.US_ASCII));
+        encoder.encode(buffer);
+        assertEquals("Cookie: $Version=1;myCookie=\"my \\\"quoted\\\" value\";$Port=\"80,8080\"",
+                buffer.toString(CharsetUtil.US_ASCII));
+
+        // Nothing is written once the cookies have been encoded.
+        encoder.encode(buffer);
+        assertEquals(8 + 57, buffer.readableBytes());
+    }
 }
@@ -15,6 +15,15 @@
  */
 package io.netty.handler.codec.http;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.handler.codec.embedder.EncoderEmbedder;
+import io.netty.util.CharsetUtil;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -43,4 +52,23 @@ public class DefaultHttpMessageTest {
         // Check if sequential access returns nothing.
         Assert.assertTrue(m.getHeaders().isEmpty());
     }
+
+    @Test
+    public void testOverriddenHeadersAreEncoded() {
+        HttpResponse res = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK) {
+            @Override
+            public List<Map.Entry<String, String>> getHeaders() {
+                List<Map.Entry<String, String>> headers = new ArrayList<Map.Entry<String, String>>(super.getHeaders());
+                headers.add(new AbstractMap.SimpleEntry<String, String>("X-Added", "yes"));
+                return headers;
+            }
+        };
+        res.setHeader("X-Set", "1");
+
+        EncoderEmbedder<Object> encoder = new EncoderEmbedder<Object>(new HttpResponseEncoder());
+        encoder.offer(res);
+        String encoded = ((ChannelBuffer) encoder.poll()).toString(CharsetUtil.US_ASCII);
+        Assert.assertTrue(encoded, encoded.contains("X-Set: 1\r\n"));
+        Assert.assertTrue(encoded, encoded.contains("X-Added: yes\r\n"));
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.channel.FileRegion;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.util.CharsetUtil;
+
+import org.junit.Test;
+
+public class DiskFileUploadTest {
+
+    private static final byte[] CONTENT = new byte[10000];
+
+    static {
+        for (int i = 0; i < CONTENT.length; i ++) {
+            CONTENT[i] = (byte) (i * 7);
+        }
+    }
+
+    private static DiskFileUpload newUpload() throws Exception {
+        DiskFileUpload upload = new DiskFileUpload(
+                "file", "data.bin", "application/octet-stream", null, CharsetUtil.UTF_8, 0);
+        // A composite buffer followed by a plain one
+        upload.addContent(ChannelBuffers.wrappedBuffer(
+                ChannelBuffers.wrappedBuffer(CONTENT, 0, 1000),
+                ChannelBuffers.wrappedBuffer(CONTENT, 1000, 3000)), false);
+        upload.addContent(ChannelBuffers.wrappedBuffer(CONTENT, 4000, CONTENT.length - 4000), true);
+        return upload;
+    }
+
+    @Test
+    public void testContent() throws Exception {
+        DiskFileUpload upload = newUpload();
+        try {
+            assertTrue(upload.isCompleted());
+            assertEquals(CONTENT.length, upload.length());
+            assertEquals(CONTENT.length, upload.getFile().length());
+            assertArrayEquals(CONTENT, upload.get());
+            ChannelBuffer buffer = upload.getChannelBuffer();
+            assertTrue(buffer.hasArray());
+            assertEquals(ChannelBuffers.wrappedBuffer(CONTENT), buffer);
+        } finally {
+            upload.delete();
+        }
+    }
+
+    @Test
+    public void testMappedContentSurvivesNewContent() throws Exception {
+        DiskFileUpload upload = newUpload();
+        try {
+            ChannelBuffer mapped = upload.getMappedChannelBuffer();
+            assertEquals(ChannelBuffers.wrappedBuffer(CONTENT), mapped);
+
+            // The mapped file must not be truncated under the mapping.
+            upload.setContent(ChannelBuffers.wrappedBuffer(new byte[] { 1, 2, 3 }));
+            assertArrayEquals(new byte[] { 1, 2, 3 }, upload.get());
+            assertEquals(ChannelBuffers.wrappedBuffer(CONTENT), mapped);
+
+            mapped = upload.getMappedChannelBuffer();
+            upload.addContent(ChannelBuffers.wrappedBuffer(new byte[] { 4 }), true);
+            assertArrayEquals(new byte[] { 4 }, upload.get());
+            assertEquals(ChannelBuffers.wrappedBuffer(new byte[] { 1, 2, 3 }), mapped);
+        } finally {
+            upload.delete();
+        }
+    }
+
+    @Test
+    public void testChunks() throws Exception {
+        DiskFileUpload upload = newUpload();
+        try {
+            assertEquals(ChannelBuffers.wrappedBuffer(CONTENT, 5000, 100), upload.getChunk(5000, 100));
+            assertEquals(ChannelBuffers.wrappedBuffer(CONTENT, 9900, 100), upload.getChunk(9900, 4096));
+            assertEquals(0, upload.getChunk(CONTENT.length, 100).readableBytes());
+
+            // The positional reads above do not move the sequential reads.
+            for (int round = 0; round < 2; round ++) {
+                ChannelBuffer chunk = upload.getChunk(6000);
+                assertEquals(ChannelBuffers.wrappedBuffer(CONTENT, 0, 6000), chunk);
+                chunk = upload.getChunk(6000);
+                assertEquals(ChannelBuffers.wrappedBuffer(CONTENT, 6000, 4000), chunk);
+            }
+        } finally {
+            upload.delete();
+        }
+    }
+
+    @Test
+    public void testFileRegionAndChunkedInput() throws Exception {
+        DiskFileUpload upload = newUpload();
+        try {
+            FileRegion region = upload.getFileRegion();
+            assertEquals(CONTENT.length, region.getCount());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long position = 0;
+            while (position < region.getCount()) {
+                position += region.transferTo(Channels.newChannel(out), position);
+            }
+            region.releaseExternalResources();
+            assertArrayEquals(CONTENT, out.toByteArray());
+
+            ChunkedNioFile input = upload.getChunkedInput(4096);
+            ChannelBuffer content = ChannelBuffers.dynamicBuffer();
+            while (!input.isEndOfInput()) {
+                content.writeBytes((ChannelBuffer) input.nextChunk());
+            }
+            input.close();
+            assertEquals(ChannelBuffers.wrappedBuffer(CONTENT), content);
+        } finally {
+            upload.delete();
+        }
+        assertFalse(upload.getFile().exists());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http;
+
+import static org.junit.Assert.*;
+
+import io.netty.buffer.ChannelBuffers;
+import io.netty.buffer.CompositeChannelBuffer;
+import io.netty.handler.codec.embedder.CodecEmbedderException;
+import io.netty.handler.codec.embedder.DecoderEmbedder;
+import io.netty.handler.codec.frame.TooLongFrameException;
+import io.netty.util.CharsetUtil;
+
+import org.junit.Test;
+
+public class HttpChunkAggregatorTest {
+
+    @Test
+    public void testAggregate() {
+        DecoderEmbedder<HttpMessage> embedder =
+                new DecoderEmbedder<HttpMessage>(new HttpChunkAggregator(1024));
+        offerChunkedRequest(embedder, "Hello, ", "world!");
+
+        HttpMessage message = embedder.poll();
+        assertFalse(message.isChunked());
+        assertNull(message.getHeader(HttpHeaders.Names.TRANSFER_ENCODING));
+        assertEquals("13", message.getHeader(HttpHeaders.Names.CONTENT_LENGTH));
+        assertEquals("test", message.getHeader("X-Trailer"));
+        // The chunks were not copied.
+        assertTrue(message.getContent() instanceof CompositeChannelBuffer);
+        assertEquals("Hello, world!", message.getContent().toString(CharsetUtil.US_ASCII));
+        assertNull(embedder.poll());
+    }
+
+    @Test
+    public void testConsolidate() {
+        HttpChunkAggregator aggregator = new HttpChunkAggregator(1024);
+        aggregator.setMaxCumulationBufferComponents(3);
+        DecoderEmbedder<HttpMessage> embedder = new DecoderEmbedder<HttpMessage>(aggregator);
+        offerChunkedRequest(embedder, "a", "b", "c", "d", "e", "f", "g");
+
+        HttpMessage message = embedder.poll();
+        assertEquals("7", message.getHeader(HttpHeaders.Names.CONTENT_LENGTH));
+        assertEquals("abcdefg", message.getContent().toString(CharsetUtil.US_ASCII));
+        // 'g' made the components consolidated into one.
+        assertFalse(message.getContent() instanceof CompositeChannelBuffer);
+    }
+
+    @Test
+    public void testTooLongContent() {
+        DecoderEmbedder<HttpMessage> embedder =
+                new DecoderEmbedder<HttpMessage>(new HttpChunkAggregator(8));
+        try {
+            offerChunkedRequest(embedder, "12345", "6789");
+            fail();
+        } catch (CodecEmbedderException e) {
+            assertTrue(e.getCause() instanceof TooLongFrameException);
+        }
+
+        // The rest of the rejected message is discarded.
+        embedder.offer(HttpChunk.LAST_CHUNK);
+        offerChunkedRequest(embedder, "1234", "5678");
+        assertEquals("12345678", embedder.poll().getContent().toString(CharsetUtil.US_ASCII));
+        assertNull(embedder.poll());
+    }
+
+    @Test
+    public void testTooLongDeclaredContentLength() {
+        DecoderEmbedder<HttpMessage> embedder =
+                new DecoderEmbedder<HttpMessage>(new HttpChunkAggregator(8));
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/");
+        request.setChunked(true);
+        request.setHeader(HttpHeaders.Names.CONTENT_LENGTH, "9");
+        HttpHeaders.set100ContinueExpected(request);
+        try {
+            embedder.offer(request);
+            fail();
+        } catch (CodecEmbedderException e) {
+            assertTrue(e.getCause() instanceof TooLongFrameException);
+        }
+
+        // Neither '100 Continue' was sent nor the chunks were buffered.
+        embedder.offer(new DefaultHttpChunk(ChannelBuffers.copiedBuffer("123456789", CharsetUtil.US_ASCII)));
+        embedder.offer(HttpChunk.LAST_CHUNK);
+        assertNull(embedder.poll());
+    }
+
+    private static void offerChunkedRequest(DecoderEmbedder<HttpMessage> embedder, String... chunks) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/");
+        request.setChunked(true);
+        request.setHeader(HttpHeaders.Names.TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+        embedder.offer(request);
+        for (String chunk: chunks) {
+            embedder.offer(new DefaultHttpChunk(ChannelBuffers.copiedBuffer(chunk, CharsetUtil.US_ASCII)));
+        }
+        HttpChunkTrailer trailer = new DefaultHttpChunkTrailer();
+        trailer.setHeader("X-Trailer", "test");
+        embedder.offer(trailer);
+    }
+}
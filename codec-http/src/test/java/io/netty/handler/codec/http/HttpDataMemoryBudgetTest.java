@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.util.CharsetUtil;
+
+import org.junit.Test;
+
+public class HttpDataMemoryBudgetTest {
+
+    private static final HttpRequest REQUEST =
+            new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/upload");
+
+    private static ChannelBuffer content(int length, int offset) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i ++) {
+            bytes[i] = (byte) (offset + i);
+        }
+        return ChannelBuffers.wrappedBuffer(bytes);
+    }
+
+    private static void assertUsage(HttpDataMemoryBudget budget, long heap, long direct, long disk) {
+        assertEquals(heap, budget.getHeapMemorySize());
+        assertEquals(direct, budget.getDirectMemorySize());
+        assertEquals(disk, budget.getDiskSize());
+    }
+
+    @Test
+    public void testTiers() throws Exception {
+        HttpDataMemoryBudget budget = new HttpDataMemoryBudget(-1);
+        DefaultHttpDataFactory factory = new DefaultHttpDataFactory(1000, 4000, budget);
+        FileUpload upload = factory.createFileUpload(
+                REQUEST, "file", "data.bin", "application/octet-stream", null, CharsetUtil.UTF_8, 0);
+        ChannelBuffer expected = ChannelBuffers.dynamicBuffer();
+
+        ChannelBuffer chunk = content(500, 0);
+        expected.writeBytes(chunk, chunk.readerIndex(), chunk.readableBytes());
+        upload.addContent(chunk, false);
+        assertUsage(budget, 500, 0, 0);
+
+        // Larger than the heap limit: moved off the heap
+        chunk = content(1000, 500);
+        expected.writeBytes(chunk, chunk.readerIndex(), chunk.readableBytes());
+        upload.addContent(chunk, false);
+        assertUsage(budget, 0, 1500, 0);
+        assertTrue(upload.isInMemory());
+        assertFalse(upload.getChannelBuffer().hasArray());
+
+        // Larger than the direct limit: moved to disk
+        chunk = content(3000, 1500);
+        expected.writeBytes(chunk, chunk.readerIndex(), chunk.readableBytes());
+        upload.addContent(chunk, true);
+        assertUsage(budget, 0, 0, 4500);
+        assertFalse(upload.isInMemory());
+        assertEquals(expected, ChannelBuffers.wrappedBuffer(upload.get()));
+
+        factory.cleanRequestHttpDatas(REQUEST);
+        assertUsage(budget, 0, 0, 0);
+    }
+
+    @Test
+    public void testBudgetExhausted() throws Exception {
+        HttpDataMemoryBudget budget = new HttpDataMemoryBudget(1000);
+        DefaultHttpDataFactory factory = new DefaultHttpDataFactory(16384, 16384, budget);
+
+        Attribute first = factory.createAttribute(REQUEST, "first");
+        first.addContent(content(800, 0), true);
+        assertTrue(first.isInMemory());
+        assertUsage(budget, 800, 0, 0);
+
+        // Small, but the budget is exhausted.
+        Attribute second = factory.createAttribute(REQUEST, "second");
+        second.addContent(content(100, 0), false);
+        second.addContent(content(200, 100), true);
+        assertFalse(second.isInMemory());
+        assertEquals(content(300, 0), ChannelBuffers.wrappedBuffer(second.get()));
+        assertUsage(budget, 800, 0, 300);
+
+        Attribute third = factory.createAttribute(REQUEST, "third", "value");
+        assertTrue(third.isInMemory());
+        assertUsage(budget, 805, 0, 300);
+        budget.setMaxMemorySize(805);
+        third.setValue("longer value");
+        assertFalse(third.isInMemory());
+        assertEquals("longer value", third.getValue());
+        assertUsage(budget, 800, 0, 312);
+
+        factory.cleanRequestHttpDatas(REQUEST);
+        assertUsage(budget, 0, 0, 0);
+    }
+
+    @Test
+    public void testConcurrentReservationsDoNotOvershoot() throws Exception {
+        final HttpDataMemoryBudget budget = new HttpDataMemoryBudget(1000);
+        final MemoryAttribute data = new MemoryAttribute("data");
+        final AtomicInteger reserved = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i ++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 1000; j ++) {
+                        if (budget.reserve(data, 1, false)) {
+                            reserved.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread: threads) {
+            thread.join();
+        }
+
+        // Every byte of the budget is reserved, and never more.
+        assertEquals(1000, reserved.get());
+        assertUsage(budget, 1000, 0, 0);
+    }
+}
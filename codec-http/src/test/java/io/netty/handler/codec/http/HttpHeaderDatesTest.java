@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HttpHeaderDatesTest {
+
+    private static final long DATE = 784111777000L;
+
+    @Test
+    public void testFormat() {
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HttpHeaderDates.format(DATE));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HttpHeaderDates.format(DATE + 999));
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", HttpHeaderDates.format(0));
+        assertEquals("Wed, 31 Dec 1969 23:59:59 GMT", HttpHeaderDates.format(-1));
+        assertEquals("Tue, 29 Feb 2000 12:00:00 GMT", HttpHeaderDates.format(951825600000L));
+
+        // Agrees with the DateFormat over three centuries in both directions, well after the Julian calendar.
+        HttpHeaderDateFormat format = new HttpHeaderDateFormat();
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i ++) {
+            long millis = (random.nextLong() % 10000000000000L) / 1000 * 1000;
+            String formatted = HttpHeaderDates.format(millis);
+            assertEquals(format.format(new Date(millis)), formatted);
+            assertEquals(millis, HttpHeaderDates.parseRfc1123(formatted));
+        }
+
+        byte[] bytes = new byte[HttpHeaderDates.LENGTH + 1];
+        assertTrue(HttpHeaderDates.format(DATE, bytes, 1));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT",
+                new AsciiString(bytes, 1, HttpHeaderDates.LENGTH, false).toString());
+    }
+
+    @Test
+    public void testParse() {
+        assertEquals(DATE, HttpHeaderDates.parse("Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertEquals(DATE, HttpHeaderDates.parse(new AsciiString("Sun, 06 Nov 1994 08:49:37 GMT")));
+        assertEquals(DATE, HttpHeaderDates.parse("Sun, 6 Nov 1994 08:49:37 GMT"));
+        assertEquals(DATE, HttpHeaderDates.parse("Sunday, 06-Nov-94 08:49:37 GMT"));
+        assertEquals(DATE, HttpHeaderDates.parse("Sun Nov 6 08:49:37 1994"));
+        assertEquals(HttpHeaderDates.INVALID, HttpHeaderDates.parse("yesterday"));
+        assertEquals(HttpHeaderDates.INVALID, HttpHeaderDates.parseRfc1123("Sun, 06 Nov 1994 08:49:37 UTC"));
+        assertEquals(HttpHeaderDates.INVALID, HttpHeaderDates.parseRfc1123("Abc, 06 Nov 1994 08:49:37 GMT"));
+        assertEquals(HttpHeaderDates.INVALID, HttpHeaderDates.parseRfc1123("Sun, 06 Nov 1994 24:49:37 GMT"));
+    }
+
+    @Test
+    public void testNow() {
+        String now = HttpHeaderDates.now();
+        long millis = HttpHeaderDates.parse(now);
+        assertTrue(Math.abs(System.currentTimeMillis() - millis) < 2000);
+
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        HttpHeaders.setDate(response);
+        assertTrue(Math.abs(HttpHeaders.getDate(response, null).getTime() - millis) <= 1000);
+    }
+}
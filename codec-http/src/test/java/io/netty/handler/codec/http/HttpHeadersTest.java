@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.util.CharsetUtil;
+
+import org.junit.Test;
+
+public class HttpHeadersTest {
+
+    @Test
+    public void testCaseInsensitiveLookup() {
+        HttpHeaders h = new HttpHeaders();
+        h.addHeader(HttpHeaders.Names.CONTENT_TYPE, "text/plain");
+        h.addHeader("X-Custom", "a");
+
+        assertEquals("text/plain", h.getHeader("content-type"));
+        assertEquals("text/plain", h.getHeader("CONTENT-TYPE"));
+        assertEquals("a", h.getHeader("x-custom"));
+        assertTrue(h.containsHeader("X-CUSTOM"));
+        assertNull(h.getHeader("X-Other"));
+    }
+
+    @Test
+    public void testInsertionOrderIsRetained() {
+        HttpHeaders h = new HttpHeaders();
+        for (int i = 0; i < 100; i ++) {
+            h.addHeader("X-Header-" + i, String.valueOf(i));
+            h.addHeader("X-Header-" + i % 10, "dup" + i);
+        }
+        h.removeHeader("X-Header-5");
+
+        List<Map.Entry<String, String>> entries = h.getHeaders();
+        int expectedSize = 100 * 2 - 11;
+        assertEquals(expectedSize, entries.size());
+        assertEquals("X-Header-0", entries.get(0).getKey());
+        assertEquals("0", entries.get(0).getValue());
+        assertEquals("dup0", entries.get(1).getValue());
+
+        List<String> values = h.getHeaders("x-header-3");
+        assertEquals(11, values.size());
+        assertEquals("3", values.get(0));
+        for (int i = 1; i < values.size(); i ++) {
+            assertEquals("dup" + (3 + (i - 1) * 10), values.get(i));
+        }
+
+        assertNull(h.getHeader("X-Header-5"));
+        for (int i = 0; i < 100; i ++) {
+            if (i != 5) {
+                assertTrue(h.containsHeader("X-Header-" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testSetHeaderReplacesAllValues() {
+        HttpHeaders h = new HttpHeaders();
+        h.addHeader("Via", "a");
+        h.addHeader("via", "b");
+        h.setHeader("VIA", Arrays.asList("c", "d"));
+
+        assertEquals(Arrays.asList("c", "d"), h.getHeaders("Via"));
+        assertEquals(2, h.getHeaders().size());
+    }
+
+    @Test
+    public void testKnownNamesAreShared() {
+        assertSame(
+                HttpHeaders.toAsciiName(HttpHeaders.Names.HOST),
+                HttpHeaders.toAsciiName(new AsciiString("Host".getBytes(CharsetUtil.US_ASCII))));
+        assertNotSame(
+                HttpHeaders.toAsciiName(HttpHeaders.Names.HOST),
+                HttpHeaders.toAsciiName(new AsciiString("host".getBytes(CharsetUtil.US_ASCII))));
+    }
+
+    @Test
+    public void testEncode() {
+        HttpHeaders h = new HttpHeaders();
+        h.addHeader(HttpHeaders.Names.HOST, "localhost");
+        h.addHeader(new AsciiString("x-bytes".getBytes(CharsetUtil.US_ASCII)),
+                    new AsciiString("value".getBytes(CharsetUtil.US_ASCII)));
+        h.addHeader("X-Non-Ascii", "café");
+
+        ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+        h.encode(buf);
+        assertEquals(
+                "Host: localhost\r\nx-bytes: value\r\nX-Non-Ascii: caf?\r\n",
+                buf.toString(CharsetUtil.US_ASCII));
+        assertEquals("café", h.getHeader("x-non-ascii"));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.util.CharsetUtil;
+
+import org.junit.Test;
+
+public class HttpPostRequestDecoderTest {
+
+    private static final String BOUNDARY = "dLV9Wyq26L_-JQxk6ferf-RT153LhOO";
+
+    private static final byte[] FILE_CONTENT = newFileContent();
+
+    private static byte[] newFileContent() {
+        // Contains line breaks and prefixes of the delimiter to trick the boundary search.
+        byte[] prefix = ("\r\n--" + BOUNDARY.substring(0, 10) + "\n--\r\r\n").getBytes(CharsetUtil.US_ASCII);
+        byte[] content = new byte[20000];
+        for (int i = 0; i < content.length; i ++) {
+            content[i] = (byte) (i * 31);
+        }
+        System.arraycopy(prefix, 0, content, 0, prefix.length);
+        System.arraycopy(prefix, 0, content, content.length - prefix.length, prefix.length);
+        return content;
+    }
+
+    private static ChannelBuffer newBody() {
+        String head = "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"Field1\"\r\n" +
+                "\r\n" +
+                "value1\r\nline2\r\n" +
+                "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"empty\"\r\n" +
+                "\r\n" +
+                "\r\n" +
+                "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"file\"; filename=\"data.bin\"\r\n" +
+                "Content-Type: application/octet-stream\r\n" +
+                "\r\n";
+        String tail = "\r\n" +
+                "--" + BOUNDARY + "\r\n" +
+                "Content-Disposition: form-data; name=\"field1\"\r\n" +
+                "\r\n" +
+                "value2\r\n" +
+                "--" + BOUNDARY + "--\r\n";
+        return ChannelBuffers.wrappedBuffer(
+                ChannelBuffers.copiedBuffer(head, CharsetUtil.US_ASCII),
+                ChannelBuffers.wrappedBuffer(FILE_CONTENT),
+                ChannelBuffers.copiedBuffer(tail, CharsetUtil.US_ASCII));
+    }
+
+    private static HttpRequest newRequest(boolean chunked) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/upload");
+        request.setHeader(HttpHeaders.Names.CONTENT_TYPE, "multipart/form-data; boundary=" + BOUNDARY);
+        request.setChunked(chunked);
+        return request;
+    }
+
+    @Test
+    public void testNotChunked() throws Exception {
+        for (boolean useDisk: new boolean[] { false, true }) {
+            HttpRequest request = newRequest(false);
+            request.setContent(newBody());
+            HttpPostRequestDecoder decoder =
+                    new HttpPostRequestDecoder(new DefaultHttpDataFactory(useDisk), request);
+            assertBody(decoder.getBodyHttpDatas());
+            decoder.cleanFiles();
+        }
+    }
+
+    @Test
+    public void testChunked() throws Exception {
+        ChannelBuffer body = newBody();
+        for (int chunkSize: new int[] { 1, 2, 7, 31, 32, 33, 1000, 8192 }) {
+            for (boolean useDisk: new boolean[] { false, true }) {
+                if (useDisk && chunkSize < 1000) {
+                    // Too slow as every chunk is written to the file synchronously.
+                    continue;
+                }
+                final List<InterfaceHttpData> events = new ArrayList<InterfaceHttpData>();
+                HttpRequest request = newRequest(true);
+                HttpPostRequestDecoder decoder = new HttpPostRequestDecoder(
+                        new DefaultHttpDataFactory(useDisk), request, CharsetUtil.UTF_8,
+                        new HttpPostRequestDecoder.HttpDataListener() {
+                            public void httpDataDecoded(InterfaceHttpData data) {
+                                events.add(data);
+                            }
+                        });
+
+                int eventsInTheMiddle = -1;
+                for (int i = body.readerIndex(); i < body.writerIndex(); i += chunkSize) {
+                    int length = Math.min(chunkSize, body.writerIndex() - i);
+                    decoder.offer(new DefaultHttpChunk(body.copy(i, length)));
+                    if (eventsInTheMiddle < 0 && i + length >= body.writerIndex() / 2) {
+                        eventsInTheMiddle = events.size();
+                    }
+                }
+                decoder.offer(HttpChunk.LAST_CHUNK);
+
+                // The fields before the file are emitted while the file is still being received.
+                assertEquals(2, eventsInTheMiddle);
+                assertBody(events);
+                assertBody(decoder.getBodyHttpDatas());
+                assertEquals(Arrays.asList(events.get(0), events.get(3)), decoder.getBodyHttpDatas("FIELD1"));
+                assertSame(events.get(2), decoder.getBodyHttpData("File"));
+                decoder.cleanFiles();
+            }
+        }
+    }
+
+    private static void assertBody(List<InterfaceHttpData> datas) throws Exception {
+        assertEquals(4, datas.size());
+        assertEquals("value1\r\nline2", ((Attribute) datas.get(0)).getValue());
+        assertEquals("", ((Attribute) datas.get(1)).getValue());
+        FileUpload file = (FileUpload) datas.get(2);
+        assertEquals("data.bin", file.getFilename());
+        assertTrue(file.isCompleted());
+        assertArrayEquals(FILE_CONTENT, file.get());
+        assertEquals("value2", ((Attribute) datas.get(3)).getValue());
+    }
+
+    @Test
+    public void testUrlEncodedNameSplitAcrossChunks() throws Exception {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/form");
+        request.setHeader(HttpHeaders.Names.CONTENT_TYPE, "application/x-www-form-urlencoded");
+        request.setChunked(true);
+        HttpPostRequestDecoder decoder = new HttpPostRequestDecoder(request);
+        for (String chunk: new String[] { "first=1&sec", "ond=2&th", "ird=3" }) {
+            decoder.offer(new DefaultHttpChunk(ChannelBuffers.copiedBuffer(chunk, CharsetUtil.US_ASCII)));
+        }
+        decoder.offer(HttpChunk.LAST_CHUNK);
+
+        assertEquals("1", ((Attribute) decoder.getBodyHttpData("first")).getValue());
+        assertEquals("2", ((Attribute) decoder.getBodyHttpData("second")).getValue());
+        assertEquals("3", ((Attribute) decoder.getBodyHttpData("third")).getValue());
+    }
+}
@@ -16,6 +16,7 @@
 package io.netty.handler.codec.http;
 
 import java.net.URI;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -162,6 +163,46 @@ public class QueryStringDecoderTest {
         }
     }
 
+    @Test
+    public void testParameterLookup() throws Exception {
+        QueryStringDecoder d = new QueryStringDecoder("/foo;x?a=1&b=%41+B;a=2&c&%61=3");
+        Assert.assertEquals("/foo;x", d.getPath());
+        Assert.assertEquals("1", d.getParameter("a"));
+        Assert.assertEquals("A B", d.getParameter("b"));
+        Assert.assertEquals("", d.getParameter("c"));
+        Assert.assertNull(d.getParameter("d"));
+        Assert.assertEquals(Arrays.asList("1", "2", "3"), d.getParameterValues("a"));
+        Assert.assertTrue(d.getParameterValues("d").isEmpty());
+
+        // The lookups agree with the parameter map.
+        Assert.assertEquals(3, d.getParameters().size());
+        Assert.assertEquals(d.getParameters().get("a"), d.getParameterValues("a"));
+        Assert.assertEquals("A B", d.getParameter("b"));
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        QueryStringDecoder d = new QueryStringDecoder(CharsetUtil.UTF_8, true, 2);
+        Assert.assertEquals("", d.getPath());
+        Assert.assertTrue(d.getParameters().isEmpty());
+
+        d.reset("/foo?a=1&b=2&c=3");
+        Assert.assertEquals("/foo", d.getPath());
+        Assert.assertEquals("2", d.getParameter("b"));
+        Assert.assertNull(d.getParameter("c"));
+        Assert.assertEquals(2, d.getParameters().size());
+
+        Assert.assertSame(d, d.reset(new AsciiString("/bar?q=Caff%C3%A9".getBytes("US-ASCII"))));
+        Assert.assertEquals("/bar", d.getPath());
+        Assert.assertEquals("Caff\u00e9", d.getParameter("q"));
+        Assert.assertNull(d.getParameter("a"));
+
+        d.reset("/baz");
+        Assert.assertEquals("/baz", d.getPath());
+        Assert.assertNull(d.getParameter("q"));
+        Assert.assertTrue(d.getParameters().isEmpty());
+    }
+
     private static void assertQueryString(String expected, String actual) {
         QueryStringDecoder ed = new QueryStringDecoder(expected, CharsetUtil.UTF_8);
         QueryStringDecoder ad = new QueryStringDecoder(actual, CharsetUtil.UTF_8);
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http.websocketx;
+
+import static org.junit.Assert.*;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.util.CharsetUtil;
+
+import org.junit.Test;
+
+public class UTF8ValidatorTest {
+
+    private static final String TEXT = "plain ASCII text, été, €, 😀 and more ASCII";
+
+    @Test
+    public void testValidHeapBuffer() {
+        UTF8Validator validator = new UTF8Validator();
+        ChannelBuffer buf = ChannelBuffers.copiedBuffer(TEXT, CharsetUtil.UTF_8);
+        validator.check(buf, buf.readerIndex(), buf.readableBytes());
+        assertFalse(validator.isIncomplete());
+    }
+
+    @Test
+    public void testValidAcrossBuffers() {
+        byte[] bytes = TEXT.getBytes(CharsetUtil.UTF_8);
+        // Split at every position, using direct and composite buffers.
+        for (int split = 0; split <= bytes.length; split ++) {
+            UTF8Validator validator = new UTF8Validator();
+            ChannelBuffer first = ChannelBuffers.directBuffer(split);
+            first.writeBytes(bytes, 0, split);
+            ChannelBuffer second = ChannelBuffers.wrappedBuffer(
+                    ChannelBuffers.wrappedBuffer(bytes, split, (bytes.length - split) / 2),
+                    ChannelBuffers.wrappedBuffer(bytes, split + (bytes.length - split) / 2,
+                            bytes.length - split - (bytes.length - split) / 2));
+
+            validator.check(first, 0, first.readableBytes());
+            validator.check(second, second.readerIndex(), second.readableBytes());
+            assertFalse(validator.isIncomplete());
+        }
+    }
+
+    @Test
+    public void testIncomplete() {
+        UTF8Validator validator = new UTF8Validator();
+        ChannelBuffer buf = ChannelBuffers.wrappedBuffer(new byte[] { 'a', (byte) 0xE2, (byte) 0x82 });
+        validator.check(buf, 0, buf.readableBytes());
+        assertTrue(validator.isIncomplete());
+
+        validator.reset();
+        assertFalse(validator.isIncomplete());
+    }
+
+    @Test(expected = UTF8Exception.class)
+    public void testInvalid() {
+        UTF8Validator validator = new UTF8Validator();
+        ChannelBuffer buf = ChannelBuffers.directBuffer(16);
+        buf.writeBytes("01234567".getBytes(CharsetUtil.US_ASCII));
+        buf.writeByte(0xC0);
+        buf.writeByte(0xAF);
+        validator.check(buf, 0, buf.readableBytes());
+    }
+}
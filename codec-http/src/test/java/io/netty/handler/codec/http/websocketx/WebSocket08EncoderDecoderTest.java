@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http.websocketx;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteOrder;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.handler.codec.embedder.DecoderEmbedder;
+import io.netty.handler.codec.embedder.EncoderEmbedder;
+import io.netty.util.CharsetUtil;
+
+import org.junit.Test;
+
+public class WebSocket08EncoderDecoderTest {
+
+    @Test
+    public void testMaskedBinaryFrames() {
+        for (int length: new int[] { 0, 1, 3, 4, 7, 8, 9, 125, 126, 1000, 65535, 65536 }) {
+            ChannelBuffer data = ChannelBuffers.buffer(length);
+            for (int i = 0; i < length; i ++) {
+                data.writeByte(i);
+            }
+
+            ChannelBuffer encoded = encode(new BinaryWebSocketFrame(data), true);
+            assertEquals("length " + length, length, data.readableBytes());
+
+            WebSocketFrame frame = decode(encoded, true, 1);
+            assertTrue(frame instanceof BinaryWebSocketFrame);
+            assertEquals("length " + length, data, frame.getBinaryData());
+        }
+    }
+
+    @Test
+    public void testFragmentedDelivery() {
+        String text = "Hello, world! Привет, мир!";
+        ChannelBuffer encoded = encode(new TextWebSocketFrame(text), true);
+
+        WebSocketFrame frame = decode(encoded, true, 3);
+        assertTrue(frame instanceof TextWebSocketFrame);
+        assertEquals(text, ((TextWebSocketFrame) frame).getText());
+    }
+
+    @Test
+    public void testFragmentedTextMessage() {
+        byte[] euro = "\u20ac".getBytes(CharsetUtil.UTF_8);
+        TextWebSocketFrame first = new TextWebSocketFrame(
+                false, 0, ChannelBuffers.wrappedBuffer("a".getBytes(CharsetUtil.UTF_8), new byte[] { euro[0] }));
+        ContinuationWebSocketFrame last = new ContinuationWebSocketFrame(
+                true, 0, ChannelBuffers.wrappedBuffer(euro, 1, 2));
+
+        DecoderEmbedder<WebSocketFrame> decoder =
+                new DecoderEmbedder<WebSocketFrame>(new WebSocket13FrameDecoder(true, false));
+        decoder.offer(encode(first, true));
+        decoder.offer(encode(last, true));
+
+        assertTrue(decoder.poll() instanceof TextWebSocketFrame);
+        ContinuationWebSocketFrame frame = (ContinuationWebSocketFrame) decoder.poll();
+        assertEquals("a\u20ac", frame.getAggregatedText());
+    }
+
+    @Test
+    public void testUnmaskedFrame() {
+        ChannelBuffer data = ChannelBuffers.copiedBuffer("unmasked", CharsetUtil.US_ASCII);
+        ChannelBuffer encoded = encode(new BinaryWebSocketFrame(data), false);
+
+        WebSocketFrame frame = decode(encoded, false, 1);
+        assertEquals(data, frame.getBinaryData());
+    }
+
+    @Test
+    public void testEncodeForBroadcast() throws Exception {
+        ChannelBuffer encoded = WebSocket08FrameEncoder.encodeForBroadcast(new TextWebSocketFrame("broadcast"));
+        assertTrue(encoded.isDirect());
+
+        // Already encoded buffers are passed through.
+        assertEquals(encoded, encode(encoded, false));
+
+        WebSocketFrame frame = decode(encoded.duplicate(), false, 1);
+        assertEquals("broadcast", ((TextWebSocketFrame) frame).getText());
+    }
+
+    @Test
+    public void testMaskIsAlignedWithPayload() {
+        int mask = 0x01020304;
+        for (ByteOrder order: new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+            ChannelBuffer maskBuf = ChannelBuffers.buffer(order, 4);
+            maskBuf.writeInt(mask);
+
+            ChannelBuffer buf = ChannelBuffers.buffer(order, 32);
+            buf.writerIndex(32);
+            WebSocketUtil.mask(buf, 1, 31, mask);
+
+            assertEquals(0, buf.getByte(0));
+            for (int i = 1; i < 32; i ++) {
+                assertEquals(maskBuf.getByte((i - 1) % 4), buf.getByte(i));
+            }
+        }
+    }
+
+    private static ChannelBuffer encode(Object frame, boolean mask) {
+        EncoderEmbedder<ChannelBuffer> encoder =
+                new EncoderEmbedder<ChannelBuffer>(new WebSocket13FrameEncoder(mask));
+        encoder.offer(frame);
+        ChannelBuffer encoded = encoder.poll();
+        assertNull(encoder.poll());
+        return encoded;
+    }
+
+    private static WebSocketFrame decode(ChannelBuffer encoded, boolean masked, int parts) {
+        DecoderEmbedder<WebSocketFrame> decoder =
+                new DecoderEmbedder<WebSocketFrame>(new WebSocket13FrameDecoder(masked, false));
+        int length = encoded.readableBytes();
+        for (int i = 0; i < parts; i ++) {
+            int end = (i + 1) * length / parts;
+            decoder.offer(encoded.readBytes(end - encoded.readerIndex()));
+        }
+
+        WebSocketFrame frame = decoder.poll();
+        assertNotNull(frame);
+        assertNull(decoder.poll());
+        return frame;
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.http.websocketx;
+
+import static org.junit.Assert.*;
+
+import java.util.zip.Inflater;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.handler.codec.embedder.CodecEmbedderException;
+import io.netty.handler.codec.embedder.DecoderEmbedder;
+import io.netty.handler.codec.embedder.EncoderEmbedder;
+import io.netty.handler.codec.frame.TooLongFrameException;
+import io.netty.util.CharsetUtil;
+
+import org.junit.Test;
+
+public class WebSocketDeflateTest {
+
+    private static final String MESSAGE =
+            "{\"symbol\":\"NTTY\",\"bid\":1.2345,\"ask\":1.2346,\"volume\":100000,\"exchange\":\"example\"}";
+
+    @Test
+    public void testCompressedMessages() {
+        EncoderEmbedder<ChannelBuffer> encoder = newEncoder(false);
+        DecoderEmbedder<WebSocketFrame> decoder = newDecoder(false);
+
+        int firstLength = 0;
+        for (int i = 0; i < 10; i ++) {
+            encoder.offer(new TextWebSocketFrame(MESSAGE));
+            ChannelBuffer encoded = encoder.poll();
+            assertEquals(0x40, encoded.getByte(0) & 0x40);
+            if (i == 0) {
+                firstLength = encoded.readableBytes();
+                assertTrue(firstLength < MESSAGE.length());
+            } else {
+                // The message was compressed against the previous one.
+                assertTrue(encoded.readableBytes() < firstLength / 2);
+            }
+
+            decoder.offer(encoded);
+            TextWebSocketFrame frame = (TextWebSocketFrame) decoder.poll();
+            assertEquals(0, frame.getRsv());
+            assertEquals(MESSAGE, frame.getText());
+        }
+    }
+
+    @Test
+    public void testInflatableByJdk() throws Exception {
+        EncoderEmbedder<WebSocketFrame> encoder =
+                new EncoderEmbedder<WebSocketFrame>(new WebSocketDeflateEncoder(9, 10, false));
+        Inflater inflater = new Inflater(true);
+        for (int i = 0; i < 3; i ++) {
+            encoder.offer(new TextWebSocketFrame(MESSAGE));
+            ChannelBuffer payload = ChannelBuffers.wrappedBuffer(
+                    encoder.poll().getBinaryData(), ChannelBuffers.wrappedBuffer(new byte[] { 0, 0, -1, -1 }));
+            byte[] in = new byte[payload.readableBytes()];
+            payload.readBytes(in);
+            inflater.setInput(in);
+
+            byte[] out = new byte[MESSAGE.length() + 1];
+            assertEquals(MESSAGE.length(), inflater.inflate(out));
+            assertEquals(MESSAGE, new String(out, 0, MESSAGE.length(), CharsetUtil.UTF_8));
+        }
+        inflater.end();
+    }
+
+    @Test
+    public void testNoContextTakeover() {
+        EncoderEmbedder<ChannelBuffer> encoder = newEncoder(true);
+        DecoderEmbedder<WebSocketFrame> decoder = newDecoder(true);
+
+        int length = -1;
+        for (int i = 0; i < 3; i ++) {
+            encoder.offer(new BinaryWebSocketFrame(ChannelBuffers.copiedBuffer(MESSAGE, CharsetUtil.UTF_8)));
+            ChannelBuffer encoded = encoder.poll();
+            if (length >= 0) {
+                assertEquals(length, encoded.readableBytes());
+            }
+            length = encoded.readableBytes();
+
+            decoder.offer(encoded);
+            assertEquals(MESSAGE, decoder.poll().getBinaryData().toString(CharsetUtil.UTF_8));
+        }
+    }
+
+    @Test
+    public void testFragmentedAndEmptyMessages() {
+        EncoderEmbedder<ChannelBuffer> encoder = newEncoder(false);
+        DecoderEmbedder<WebSocketFrame> decoder = newDecoder(false);
+
+        encoder.offer(new TextWebSocketFrame(false, 0, "Hello, "));
+        encoder.offer(new PingWebSocketFrame(ChannelBuffers.wrappedBuffer(new byte[] { 1, 2 })));
+        encoder.offer(new ContinuationWebSocketFrame(false, 0, ChannelBuffers.EMPTY_BUFFER));
+        encoder.offer(new ContinuationWebSocketFrame(true, 0, "world!"));
+        encoder.offer(new TextWebSocketFrame(""));
+        for (;;) {
+            ChannelBuffer encoded = encoder.poll();
+            if (encoded == null) {
+                break;
+            }
+            decoder.offer(encoded);
+        }
+
+        assertEquals("Hello, ", ((TextWebSocketFrame) decoder.poll()).getText());
+        WebSocketFrame ping = decoder.poll();
+        assertTrue(ping instanceof PingWebSocketFrame);
+        assertEquals(ChannelBuffers.wrappedBuffer(new byte[] { 1, 2 }), ping.getBinaryData());
+        assertEquals(0, decoder.poll().getBinaryData().readableBytes());
+        ContinuationWebSocketFrame last = (ContinuationWebSocketFrame) decoder.poll();
+        assertEquals("world!", last.getText());
+        assertEquals("Hello, world!", last.getAggregatedText());
+        assertEquals("", ((TextWebSocketFrame) decoder.poll()).getText());
+        assertNull(decoder.poll());
+    }
+
+    @Test
+    public void testUncompressedMessagesPassThrough() {
+        EncoderEmbedder<ChannelBuffer> encoder =
+                new EncoderEmbedder<ChannelBuffer>(new WebSocket13FrameEncoder(true));
+        DecoderEmbedder<WebSocketFrame> decoder = newDecoder(false);
+
+        encoder.offer(new TextWebSocketFrame(MESSAGE));
+        decoder.offer(encoder.poll());
+        assertEquals(MESSAGE, ((TextWebSocketFrame) decoder.poll()).getText());
+    }
+
+    @Test
+    public void testDecompressedMessageSizeIsLimited() {
+        EncoderEmbedder<ChannelBuffer> encoder = newEncoder(false);
+        DecoderEmbedder<WebSocketFrame> decoder = newDecoder(false, 65536);
+
+        // Exactly at the limit
+        encoder.offer(new BinaryWebSocketFrame(ChannelBuffers.wrappedBuffer(new byte[65536])));
+        decoder.offer(encoder.poll());
+        assertEquals(65536, decoder.poll().getBinaryData().readableBytes());
+
+        // A few hundred bytes which inflate to 16 MiB
+        encoder.offer(new BinaryWebSocketFrame(ChannelBuffers.wrappedBuffer(new byte[16 * 1024 * 1024])));
+        ChannelBuffer bomb = encoder.poll();
+        assertTrue(bomb.readableBytes() < 65536);
+        assertTooLongMessage(decoder, bomb);
+    }
+
+    @Test
+    public void testDecompressedSizeOfFragmentedMessageIsLimited() {
+        EncoderEmbedder<ChannelBuffer> encoder = newEncoder(false);
+        DecoderEmbedder<WebSocketFrame> decoder = newDecoder(false, 65536);
+
+        encoder.offer(new BinaryWebSocketFrame(false, 0, ChannelBuffers.wrappedBuffer(new byte[40000])));
+        encoder.offer(new ContinuationWebSocketFrame(true, 0, ChannelBuffers.wrappedBuffer(new byte[40000])));
+        decoder.offer(encoder.poll());
+        assertEquals(40000, decoder.poll().getBinaryData().readableBytes());
+        assertTooLongMessage(decoder, encoder.poll());
+    }
+
+    private static void assertTooLongMessage(DecoderEmbedder<WebSocketFrame> decoder, ChannelBuffer message) {
+        try {
+            decoder.offer(message);
+            fail();
+        } catch (CodecEmbedderException e) {
+            assertTrue(e.getCause() instanceof TooLongFrameException);
+        }
+
+        // The close frame written by the decoder
+        WebSocketFrame close = decoder.poll();
+        assertTrue(close instanceof CloseWebSocketFrame);
+        assertEquals(1009, close.getBinaryData().getUnsignedShort(0));
+        assertNull(decoder.poll());
+    }
+
+    @Test
+    public void testNegotiation() throws Exception {
+        WebSocketDeflateParameters server = new WebSocketDeflateParameters(6, false, true, 12, 10);
+
+        assertNull(server.acceptOffer(null));
+        assertNull(server.acceptOffer("x-webkit-deflate-frame"));
+        assertNull(server.acceptOffer("permessage-deflate; unknown"));
+        assertNull(server.acceptOffer("permessage-deflate; server_max_window_bits=8"));
+        assertNull(server.acceptOffer("permessage-deflate; server_no_context_takeover; server_no_context_takeover"));
+
+        // The first acceptable offer is accepted.
+        WebSocketDeflateParameters accepted = server.acceptOffer(
+                "permessage-deflate; server_max_window_bits=16, "
+                + "permessage-deflate; server_max_window_bits=\"14\"; client_max_window_bits, permessage-deflate");
+        assertEquals(12, accepted.getServerMaxWindowBits());
+        assertEquals(10, accepted.getClientMaxWindowBits());
+        assertTrue(accepted.isClientNoContextTakeover());
+        assertFalse(accepted.isServerNoContextTakeover());
+        assertEquals("permessage-deflate; client_no_context_takeover; server_max_window_bits=12; "
+                + "client_max_window_bits=10", accepted.getExtensionHeader());
+
+        // The client window is not limited unless the client said it supports it.
+        accepted = server.acceptOffer("permessage-deflate");
+        assertEquals(12, accepted.getServerMaxWindowBits());
+        assertEquals(15, accepted.getClientMaxWindowBits());
+        assertEquals("permessage-deflate; client_no_context_takeover", accepted.getExtensionHeader());
+
+        WebSocketDeflateParameters client = new WebSocketDeflateParameters(6, true, false, 15, 15);
+        assertEquals("permessage-deflate; server_no_context_takeover; client_max_window_bits", client.newOffer());
+        assertNull(client.acceptResponse(null));
+        accepted = client.acceptResponse(server.acceptOffer(client.newOffer()).getExtensionHeader());
+        assertTrue(accepted.isServerNoContextTakeover());
+        assertTrue(accepted.isClientNoContextTakeover());
+        assertEquals(10, accepted.getClientMaxWindowBits());
+
+        for (String invalid: new String[] {
+                "permessage-deflate; client_max_window_bits",
+                "permessage-deflate; client_max_window_bits=8",
+                "permessage-deflate; foo=bar",
+                "permessage-deflate, permessage-deflate",
+                "x-webkit-deflate-frame" }) {
+            try {
+                client.acceptResponse(invalid);
+                fail(invalid);
+            } catch (WebSocketHandshakeException e) {
+                // Expected
+            }
+        }
+    }
+
+    private static EncoderEmbedder<ChannelBuffer> newEncoder(boolean noContextTakeover) {
+        return new EncoderEmbedder<ChannelBuffer>(
+                new WebSocket13FrameEncoder(true), new WebSocketDeflateEncoder(6, 15, noContextTakeover));
+    }
+
+    private static DecoderEmbedder<WebSocketFrame> newDecoder(boolean noContextTakeover) {
+        return new DecoderEmbedder<WebSocketFrame>(
+                new WebSocket13FrameDecoder(true, true), new WebSocketDeflateDecoder(noContextTakeover));
+    }
+
+    private static DecoderEmbedder<WebSocketFrame> newDecoder(boolean noContextTakeover, int maxMessageSize) {
+        return new DecoderEmbedder<WebSocketFrame>(
+                new WebSocket13FrameDecoder(true, true),
+                new WebSocketDeflateDecoder(noContextTakeover, maxMessageSize));
+    }
+}
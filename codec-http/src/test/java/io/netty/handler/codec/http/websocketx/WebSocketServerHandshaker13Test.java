@@ -73,4 +73,34 @@ public class WebSocketServerHandshaker13Test {
         Assert.assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", res.getValue().getHeader(Names.SEC_WEBSOCKET_ACCEPT));
         Assert.assertEquals("chat", res.getValue().getHeader(Names.SEC_WEBSOCKET_PROTOCOL));
     }
+
+    @Test
+    public void testPerformOpeningHandshakeWithDeflate() {
+        Channel channelMock = EasyMock.createMock(Channel.class);
+
+        DefaultChannelPipeline pipeline = createPipeline();
+        EasyMock.expect(channelMock.getPipeline()).andReturn(pipeline);
+
+        Capture<HttpResponse> res = new Capture<HttpResponse>();
+        EasyMock.expect(channelMock.write(capture(res))).andReturn(new DefaultChannelFuture(channelMock, true));
+
+        replay(channelMock);
+
+        HttpRequest req = new DefaultHttpRequest(HTTP_1_1, HttpMethod.GET, "/chat");
+        req.setHeader(Names.HOST, "server.example.com");
+        req.setHeader(Names.UPGRADE, WEBSOCKET.toLowerCase());
+        req.setHeader(Names.CONNECTION, "Upgrade");
+        req.setHeader(Names.SEC_WEBSOCKET_KEY, "dGhlIHNhbXBsZSBub25jZQ==");
+        req.setHeader(Names.SEC_WEBSOCKET_VERSION, "13");
+        req.setHeader(Names.SEC_WEBSOCKET_EXTENSIONS, "permessage-deflate; client_max_window_bits");
+        WebSocketServerHandshaker13 handsaker = new WebSocketServerHandshaker13("ws://example.com/chat", null, false,
+                new WebSocketDeflateParameters(6, true, false, 15, 15));
+        handsaker.handshake(channelMock, req);
+
+        Assert.assertEquals("permessage-deflate; server_no_context_takeover",
+                res.getValue().getHeader(Names.SEC_WEBSOCKET_EXTENSIONS));
+        Assert.assertTrue(pipeline.get("wsdeflatedecoder") instanceof WebSocketDeflateDecoder);
+        Assert.assertTrue(pipeline.get("wsdeflateencoder") instanceof WebSocketDeflateEncoder);
+        Assert.assertEquals("[wsdecoder, wsdeflatedecoder, wsencoder, wsdeflateencoder]", pipeline.getNames().toString());
+    }
 }
@@ -47,7 +47,7 @@ import org.junit.Test;
 public abstract class AbstractSocketSpdyEchoTest {
 
     private static final Random random = new Random();
-    static final ChannelBuffer frames = ChannelBuffers.buffer(1160);
+    static final ChannelBuffer frames = ChannelBuffers.buffer(1176);
     static final int ignoredBytes = 20;
 
     private static ExecutorService executor;
@@ -134,6 +134,14 @@ public abstract class AbstractSocketSpdyEchoTest {
         frames.writeShort(8);
         frames.writeInt(4);
         frames.writeInt(random.nextInt() & 0x7FFFFFFF);
+
+        // SPDY WINDOW_UPDATE Frame
+        frames.writeByte(0x80);
+        frames.writeByte(2);
+        frames.writeShort(9);
+        frames.writeInt(8);
+        frames.writeInt(random.nextInt() & 0x7FFFFFFF);
+        frames.writeInt(random.nextInt() & 0x7FFFFFFF | 0x01);
     }
 
     @BeforeClass
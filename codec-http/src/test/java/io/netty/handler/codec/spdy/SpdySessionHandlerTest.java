@@ -18,6 +18,9 @@ package io.netty.handler.codec.spdy;
 import java.util.List;
 import java.util.Map;
 
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.channel.Channel;
 import io.netty.channel.Channels;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelStateEvent;
@@ -260,6 +263,184 @@ public class SpdySessionHandlerTest {
         testSpdySessionHandler(true);
     }
 
+    private void assertWindowUpdate(Object msg, int streamID, int deltaWindowSize) {
+        Assert.assertNotNull(msg);
+        Assert.assertTrue(msg instanceof SpdyWindowUpdateFrame);
+        SpdyWindowUpdateFrame spdyWindowUpdateFrame = (SpdyWindowUpdateFrame) msg;
+        Assert.assertEquals(streamID, spdyWindowUpdateFrame.getStreamID());
+        Assert.assertEquals(deltaWindowSize, spdyWindowUpdateFrame.getDeltaWindowSize());
+    }
+
+    private ChannelBuffer assertDataChunk(Object msg, int streamID, int length, boolean last) {
+        assertDataFrame(msg, streamID, last);
+        ChannelBuffer data = ((SpdyDataFrame) msg).getData();
+        Assert.assertEquals(length, data.readableBytes());
+        return data;
+    }
+
+    private static SpdyDataFrame newDataFrame(int streamID, int length, boolean last) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i ++) {
+            data[i] = (byte) i;
+        }
+        SpdyDataFrame spdyDataFrame = new DefaultSpdyDataFrame(streamID);
+        spdyDataFrame.setData(ChannelBuffers.wrappedBuffer(data));
+        spdyDataFrame.setLast(last);
+        return spdyDataFrame;
+    }
+
+    private static SpdySynStreamFrame newSynStreamFrame(int streamID, int priority) {
+        SpdySynStreamFrame spdySynStreamFrame =
+            new DefaultSpdySynStreamFrame(streamID, 0, (byte) priority);
+        spdySynStreamFrame.setLast(true);
+        return spdySynStreamFrame;
+    }
+
+    @Test
+    public void testSpdySessionHandlerSendFlowControl() {
+        ChannelHandler handler = new ChannelHandler();
+        DecoderEmbedder<Object> sessionHandler =
+            new DecoderEmbedder<Object>(new SpdySessionHandler(true, true), handler);
+        Assert.assertNull(sessionHandler.peek());
+
+        sessionHandler.offer(newSynStreamFrame(1, 0));
+        Channels.write(handler.channel, new DefaultSpdySynReplyFrame(1));
+        assertSynReply(sessionHandler.poll(), 1, false, new DefaultSpdySynReplyFrame(1));
+        SpdyDataFrame spdyDataFrame = newDataFrame(1, 80000, true);
+        ChannelBuffer expected = spdyDataFrame.getData().duplicate();
+        Channels.write(handler.channel, spdyDataFrame);
+
+        // The initial window of 64KB is sent in chunks of 8KB
+        ChannelBuffer sent = ChannelBuffers.dynamicBuffer();
+        for (int i = 0; i < 8; i ++) {
+            sent.writeBytes(assertDataChunk(sessionHandler.poll(), 1, 8192, false));
+        }
+        Assert.assertNull(sessionHandler.peek());
+
+        // Both the stream window and the session window must be open
+        sessionHandler.offer(new DefaultSpdyWindowUpdateFrame(1, 10000));
+        Assert.assertNull(sessionHandler.peek());
+        sessionHandler.offer(new DefaultSpdyWindowUpdateFrame(0, 100000));
+        sent.writeBytes(assertDataChunk(sessionHandler.poll(), 1, 8192, false));
+        sent.writeBytes(assertDataChunk(sessionHandler.poll(), 1, 10000 - 8192, false));
+        Assert.assertNull(sessionHandler.peek());
+
+        // A larger initial window widens the stream window
+        SpdySettingsFrame spdySettingsFrame = new DefaultSpdySettingsFrame();
+        spdySettingsFrame.setValue(SpdySettingsFrame.SETTINGS_INITIAL_WINDOW_SIZE, 70000);
+        sessionHandler.offer(spdySettingsFrame);
+        sent.writeBytes(assertDataChunk(sessionHandler.poll(), 1, 80000 - 75536, true));
+        Assert.assertNull(sessionHandler.peek());
+        Assert.assertEquals(expected, sent);
+
+        // The stream is closed now
+        sessionHandler.offer(new DefaultSpdyWindowUpdateFrame(1, 10000));
+        Assert.assertNull(sessionHandler.peek());
+
+        sessionHandler.finish();
+    }
+
+    @Test
+    public void testSpdySessionHandlerPriorities() {
+        ChannelHandler handler = new ChannelHandler();
+        DecoderEmbedder<Object> sessionHandler =
+            new DecoderEmbedder<Object>(new SpdySessionHandler(true, true), handler);
+
+        SpdySettingsFrame spdySettingsFrame = new DefaultSpdySettingsFrame();
+        spdySettingsFrame.setValue(SpdySettingsFrame.SETTINGS_INITIAL_WINDOW_SIZE, 0);
+        sessionHandler.offer(spdySettingsFrame);
+
+        // Queue 20000 bytes on streams of priority 3, 0, 0 and 1 in this order
+        int[] priorities = { 3, 0, 0, 1 };
+        for (int i = 0; i < priorities.length; i ++) {
+            int streamID = 2 * i + 1;
+            sessionHandler.offer(newSynStreamFrame(streamID, priorities[i]));
+            Channels.write(handler.channel, new DefaultSpdySynReplyFrame(streamID));
+            Channels.write(handler.channel, newDataFrame(streamID, 20000, true));
+            Assert.assertTrue(sessionHandler.poll() instanceof SpdySynReplyFrame);
+        }
+        Assert.assertNull(sessionHandler.peek());
+
+        sessionHandler.offer(new DefaultSpdyWindowUpdateFrame(0, 100000));
+        spdySettingsFrame.setValue(SpdySettingsFrame.SETTINGS_INITIAL_WINDOW_SIZE, 65536);
+        sessionHandler.offer(spdySettingsFrame);
+
+        // The streams of the highest priority take turns
+        assertDataChunk(sessionHandler.poll(), 3, 8192, false);
+        assertDataChunk(sessionHandler.poll(), 5, 8192, false);
+        assertDataChunk(sessionHandler.poll(), 3, 8192, false);
+        assertDataChunk(sessionHandler.poll(), 5, 8192, false);
+        assertDataChunk(sessionHandler.poll(), 3, 20000 - 16384, true);
+        assertDataChunk(sessionHandler.poll(), 5, 20000 - 16384, true);
+        assertDataChunk(sessionHandler.poll(), 7, 8192, false);
+        assertDataChunk(sessionHandler.poll(), 7, 8192, false);
+        assertDataChunk(sessionHandler.poll(), 7, 20000 - 16384, true);
+        assertDataChunk(sessionHandler.poll(), 1, 8192, false);
+        assertDataChunk(sessionHandler.poll(), 1, 8192, false);
+        assertDataChunk(sessionHandler.poll(), 1, 20000 - 16384, true);
+        Assert.assertNull(sessionHandler.peek());
+
+        sessionHandler.finish();
+    }
+
+    @Test
+    public void testSpdySessionHandlerReceiveFlowControl() {
+        ChannelHandler handler = new ChannelHandler();
+        DecoderEmbedder<Object> sessionHandler =
+            new DecoderEmbedder<Object>(new SpdySessionHandler(true, true), handler);
+
+        SpdySynStreamFrame spdySynStreamFrame = newSynStreamFrame(1, 0);
+        spdySynStreamFrame.setLast(false);
+        sessionHandler.offer(spdySynStreamFrame);
+        Assert.assertNull(sessionHandler.peek());
+
+        // The windows are replenished once half of them are consumed
+        sessionHandler.offer(newDataFrame(1, 30000, false));
+        Assert.assertNull(sessionHandler.peek());
+        sessionHandler.offer(newDataFrame(1, 3000, false));
+        assertWindowUpdate(sessionHandler.poll(), 0, 33000);
+        assertWindowUpdate(sessionHandler.poll(), 1, 33000);
+        Assert.assertNull(sessionHandler.peek());
+
+        // The remote endpoint must not exceed the receive window of a stream
+        SpdySettingsFrame spdySettingsFrame = new DefaultSpdySettingsFrame();
+        spdySettingsFrame.setValue(SpdySettingsFrame.SETTINGS_INITIAL_WINDOW_SIZE, 1000);
+        Channels.write(handler.channel, spdySettingsFrame);
+        Assert.assertTrue(sessionHandler.poll() instanceof SpdySettingsFrame);
+        spdySynStreamFrame.setStreamID(3);
+        sessionHandler.offer(spdySynStreamFrame);
+        sessionHandler.offer(newDataFrame(3, 1001, false));
+        assertRstStream(sessionHandler.poll(), 3, SpdyStreamStatus.FLOW_CONTROL_ERROR);
+        Assert.assertNull(sessionHandler.peek());
+
+        // The application must leave the windows to the session handler
+        Assert.assertFalse(Channels.write(
+                handler.channel, new DefaultSpdyWindowUpdateFrame(1, 1000)).isSuccess());
+
+        // ... nor the session window
+        sessionHandler.offer(newDataFrame(1, 65537, false));
+        assertGoAway(sessionHandler.poll(), 3);
+
+        sessionHandler.finish();
+    }
+
+    // Channel Handler lets the test write frames as the application
+    private static class ChannelHandler extends SimpleChannelUpstreamHandler {
+        volatile Channel channel;
+
+        @Override
+        public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e)
+                throws Exception {
+            channel = e.getChannel();
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+                throws Exception {
+            // Discard
+        }
+    }
+
     // Echo Handler opens 4 half-closed streams on session connection
     // and then sets the number of concurrent streams to 3
     private class EchoHandler extends SimpleChannelUpstreamHandler {
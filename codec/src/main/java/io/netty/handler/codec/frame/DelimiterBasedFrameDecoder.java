@@ -16,6 +16,7 @@
 package io.netty.handler.codec.frame;
 
 import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.Channels;
@@ -58,12 +59,30 @@ import io.netty.channel.Channels;
  */
 public class DelimiterBasedFrameDecoder extends FrameDecoder {
 
+    private static final int PARTIAL = -2;
+
     private final ChannelBuffer[] delimiters;
+    /**
+     * The distinct first bytes of the delimiters
+     */
+    private final byte[] firstBytes;
+    /**
+     * The indexes of {@code "\r\n"} and {@code "\n"} in the delimiters if
+     * they are the only delimiters, or {@code -1}
+     */
+    private final int crlfIndex;
+    private final int lfIndex;
     private final int maxFrameLength;
     private final boolean stripDelimiter;
     private final boolean failFast;
     private boolean discardingTooLongFrame;
     private int tooLongFrameLength;
+    /**
+     * The number of readable bytes already known not to contain the beginning
+     * of a delimiter, so that they are not scanned again when more bytes are
+     * received
+     */
+    private int scannedBytes;
 
     /**
      * Creates a new instance.
@@ -112,15 +131,7 @@ public class DelimiterBasedFrameDecoder extends FrameDecoder {
     public DelimiterBasedFrameDecoder(
             int maxFrameLength, boolean stripDelimiter, boolean failFast,
             ChannelBuffer delimiter) {
-        validateMaxFrameLength(maxFrameLength);
-        validateDelimiter(delimiter);
-        delimiters = new ChannelBuffer[] {
-                delimiter.slice(
-                        delimiter.readerIndex(), delimiter.readableBytes())
-        };
-        this.maxFrameLength = maxFrameLength;
-        this.stripDelimiter = stripDelimiter;
-        this.failFast = failFast;
+        this(maxFrameLength, stripDelimiter, failFast, new ChannelBuffer[] { delimiter });
     }
 
     /**
@@ -182,6 +193,24 @@ public class DelimiterBasedFrameDecoder extends FrameDecoder {
             validateDelimiter(d);
             this.delimiters[i] = d.slice(d.readerIndex(), d.readableBytes());
         }
+        firstBytes = firstBytes(this.delimiters);
+        int crlfIndex = -1;
+        int lfIndex = -1;
+        if (this.delimiters.length == 2) {
+            for (int i = 0; i < 2; i ++) {
+                if (isDelimiter(this.delimiters[i], '\r', '\n')) {
+                    crlfIndex = i;
+                } else if (isDelimiter(this.delimiters[i], '\n')) {
+                    lfIndex = i;
+                }
+            }
+        }
+        if (crlfIndex >= 0 && lfIndex >= 0) {
+            this.crlfIndex = crlfIndex;
+            this.lfIndex = lfIndex;
+        } else {
+            this.crlfIndex = this.lfIndex = -1;
+        }
         this.maxFrameLength = maxFrameLength;
         this.stripDelimiter = stripDelimiter;
         this.failFast = failFast;
@@ -190,20 +219,57 @@ public class DelimiterBasedFrameDecoder extends FrameDecoder {
     @Override
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
-        // Try all delimiters and choose the delimiter which yields the shortest frame.
-        int minFrameLength = Integer.MAX_VALUE;
+        // Find the delimiter which yields the shortest frame.
+        int minFrameLength = -1;
         ChannelBuffer minDelim = null;
-        for (ChannelBuffer delim: delimiters) {
-            int frameLength = indexOf(buffer, delim);
-            if (frameLength >= 0 && frameLength < minFrameLength) {
-                minFrameLength = frameLength;
-                minDelim = delim;
+        if (scannedBytes > buffer.readableBytes()) {
+            scannedBytes = 0;
+        }
+        if (lfIndex >= 0) {
+            // Line delimiters: every frame ends with '\n', which may be preceded by '\r'.
+            int index = buffer.indexOf(buffer.readerIndex() + scannedBytes, buffer.writerIndex(), (byte) '\n');
+            if (index >= 0) {
+                minFrameLength = index - buffer.readerIndex();
+                minDelim = delimiters[lfIndex];
+                if (minFrameLength > 0 && buffer.getByte(index - 1) == '\r') {
+                    minFrameLength --;
+                    minDelim = delimiters[crlfIndex];
+                }
+            } else {
+                scannedBytes = buffer.readableBytes();
+            }
+        } else {
+            int index = buffer.readerIndex() + scannedBytes;
+            int partialIndex = -1;
+            for (;;) {
+                index = ChannelBuffers.indexOfAny(buffer, index, buffer.writerIndex(), firstBytes);
+                if (index < 0) {
+                    if (partialIndex >= 0) {
+                        // Wait for the rest of the delimiter.
+                        scannedBytes = partialIndex - buffer.readerIndex();
+                    } else {
+                        scannedBytes = buffer.readableBytes();
+                    }
+                    break;
+                }
+                int delimIndex = findDelimiter(buffer, index);
+                if (delimIndex >= 0) {
+                    minFrameLength = index - buffer.readerIndex();
+                    minDelim = delimiters[delimIndex];
+                    break;
+                }
+                if (delimIndex == PARTIAL && partialIndex < 0) {
+                    // A shorter delimiter may still be complete further on.
+                    partialIndex = index;
+                }
+                index ++;
             }
         }
 
         if (minDelim != null) {
             int minDelimLength = minDelim.capacity();
             ChannelBuffer frame;
+            scannedBytes = 0;
 
             if (discardingTooLongFrame) {
                 // We've just finished discarding a very large frame.
@@ -227,10 +293,10 @@ public class DelimiterBasedFrameDecoder extends FrameDecoder {
             }
 
             if (stripDelimiter) {
-                frame = buffer.readBytes(minFrameLength);
+                frame = readFrame(buffer, minFrameLength);
                 buffer.skipBytes(minDelimLength);
             } else {
-                frame = buffer.readBytes(minFrameLength + minDelimLength);
+                frame = readFrame(buffer, minFrameLength + minDelimLength);
             }
 
             return frame;
@@ -240,6 +306,7 @@ public class DelimiterBasedFrameDecoder extends FrameDecoder {
                     // Discard the content of the buffer until a delimiter is found.
                     tooLongFrameLength = buffer.readableBytes();
                     buffer.skipBytes(buffer.readableBytes());
+                    scannedBytes = 0;
                     discardingTooLongFrame = true;
                     if (failFast) {
                         fail(ctx, tooLongFrameLength);
@@ -249,6 +316,7 @@ public class DelimiterBasedFrameDecoder extends FrameDecoder {
                 // Still discarding the buffer since a delimiter is not found.
                 tooLongFrameLength += buffer.readableBytes();
                 buffer.skipBytes(buffer.readableBytes());
+                scannedBytes = 0;
             }
             return null;
         }
@@ -271,32 +339,61 @@ public class DelimiterBasedFrameDecoder extends FrameDecoder {
     }
 
     /**
-     * Returns the number of bytes between the readerIndex of the haystack and
-     * the first needle found in the haystack.  -1 is returned if no needle is
-     * found in the haystack.
+     * Returns the index of the first delimiter found at the specified index of
+     * the buffer, {@link #PARTIAL} if no delimiter is found but the readable
+     * bytes from the index are the beginning of a delimiter, or {@code -1}.
      */
-    private static int indexOf(ChannelBuffer haystack, ChannelBuffer needle) {
-        for (int i = haystack.readerIndex(); i < haystack.writerIndex(); i ++) {
-            int haystackIndex = i;
-            int needleIndex;
-            for (needleIndex = 0; needleIndex < needle.capacity(); needleIndex ++) {
-                if (haystack.getByte(haystackIndex) != needle.getByte(needleIndex)) {
+    private int findDelimiter(ChannelBuffer buffer, int index) {
+        int result = -1;
+        for (int i = 0; i < delimiters.length; i ++) {
+            ChannelBuffer delim = delimiters[i];
+            int length = Math.min(delim.capacity(), buffer.writerIndex() - index);
+            int j;
+            for (j = 0; j < length; j ++) {
+                if (buffer.getByte(index + j) != delim.getByte(j)) {
+                    break;
+                }
+            }
+            if (j == delim.capacity()) {
+                return i;
+            }
+            if (j == length) {
+                result = PARTIAL;
+            }
+        }
+        return result;
+    }
+
+    private static byte[] firstBytes(ChannelBuffer[] delimiters) {
+        byte[] firstBytes = new byte[delimiters.length];
+        int count = 0;
+        for (ChannelBuffer d: delimiters) {
+            byte b = d.getByte(0);
+            int i;
+            for (i = 0; i < count; i ++) {
+                if (firstBytes[i] == b) {
                     break;
-                } else {
-                    haystackIndex ++;
-                    if (haystackIndex == haystack.writerIndex() &&
-                        needleIndex != needle.capacity() - 1) {
-                        return -1;
-                    }
                 }
             }
+            if (i == count) {
+                firstBytes[count ++] = b;
+            }
+        }
+        byte[] result = new byte[count];
+        System.arraycopy(firstBytes, 0, result, 0, count);
+        return result;
+    }
 
-            if (needleIndex == needle.capacity()) {
-                // Found the needle from the haystack!
-                return i - haystack.readerIndex();
+    private static boolean isDelimiter(ChannelBuffer delimiter, char... bytes) {
+        if (delimiter.capacity() != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i ++) {
+            if (delimiter.getByte(i) != bytes[i]) {
+                return false;
             }
         }
-        return -1;
+        return true;
     }
 
     private static void validateDelimiter(ChannelBuffer delimiter) {
@@ -70,7 +70,7 @@ public class FixedLengthFrameDecoder extends FrameDecoder {
         if (buffer.readableBytes() < frameLength) {
             return null;
         } else {
-            return buffer.readBytes(frameLength);
+            return readFrame(buffer, frameLength);
         }
     }
 
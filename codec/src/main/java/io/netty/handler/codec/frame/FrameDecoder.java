@@ -133,6 +133,20 @@ import io.netty.handler.codec.replay.ReplayingDecoder;
  * {@link ChannelUpstreamHandler} receives a {@link MessageEvent} which
  * contains a POJO rather than a {@link ChannelBuffer}.
  *
+ * <h3>Extracting a frame without a memory copy</h3>
+ * <p>
+ * {@link #extractFrame(ChannelBuffer, int, int)} and
+ * {@link #readFrame(ChannelBuffer, int)} return a slice of the cumulative
+ * buffer rather than a copy, which is what the frame decoders in this package
+ * do.  {@link FrameDecoder} never compacts or overwrites the cumulative buffer
+ * once a slice of it has been returned - it switches to a new cumulative
+ * buffer instead, so that the frame stays intact even if it is processed
+ * after {@code decode()} returns.  Please note that a frame keeps the whole
+ * buffer it was sliced from reachable, and that it may share its content with
+ * the {@link ChannelBuffer} received from the previous handler.  Call
+ * {@link #setCopyFrames(boolean)} with {@code true} if you want a frame to be
+ * a copy rather than a slice.
+ *
  * <h3>Replacing a decoder with another decoder in a pipeline</h3>
  * <p>
  * If you are going to write a protocol multiplexer, you will probably want to
@@ -177,7 +191,13 @@ import io.netty.handler.codec.replay.ReplayingDecoder;
 public abstract class FrameDecoder extends SimpleChannelUpstreamHandler {
 
     private final boolean unfold;
+    private volatile boolean copyFrames;
     private ChannelBuffer cumulation;
+    /**
+     * Whether a frame was sliced from the current {@link #cumulation}, which
+     * must not be compacted then
+     */
+    private boolean cumulationSliced;
 
     protected FrameDecoder() {
         this(false);
@@ -187,6 +207,24 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler {
         this.unfold = unfold;
     }
 
+    /**
+     * Returns {@code true} if and only if the frames extracted by
+     * {@link #extractFrame(ChannelBuffer, int, int)} are copies of the
+     * cumulative buffer rather than its slices.
+     */
+    public boolean isCopyFrames() {
+        return copyFrames;
+    }
+
+    /**
+     * Sets whether the frames extracted by
+     * {@link #extractFrame(ChannelBuffer, int, int)} are copies of the
+     * cumulative buffer rather than its slices.  The default is {@code false}.
+     */
+    public void setCopyFrames(boolean copyFrames) {
+        this.copyFrames = copyFrames;
+    }
+
     @Override
     public void messageReceived(
             ChannelHandlerContext ctx, MessageEvent e) throws Exception {
@@ -213,12 +251,23 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler {
             ChannelBuffer cumulation = this.cumulation;
             assert cumulation.readable();
             if (cumulation.writableBytes() < input.readableBytes()) {
-                cumulation.discardReadBytes();
+                if (cumulationSliced) {
+                    // Do not overwrite the extracted frames - continue with a
+                    // new buffer instead.
+                    ChannelBuffer newCumulation = newCumulationBuffer(
+                            ctx, cumulation.readableBytes() + input.readableBytes());
+                    newCumulation.writeBytes(cumulation);
+                    this.cumulation = cumulation = newCumulation;
+                    cumulationSliced = false;
+                } else {
+                    cumulation.discardReadBytes();
+                }
             }
             cumulation.writeBytes(input);
             callDecode(ctx, e.getChannel(), cumulation, e.getRemoteAddress());
             if (!cumulation.readable()) {
                 this.cumulation = null;
+                cumulationSliced = false;
             }
         }
     }
@@ -276,6 +325,42 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler {
         return decode(ctx, channel, buffer);
     }
 
+    /**
+     * Extracts the sub-region of the specified buffer as a frame.  The
+     * default implementation returns a slice of the sub-region unless
+     * {@link #isCopyFrames()} is {@code true}, in which case a copy is
+     * returned.  The buffer is not modified.  You could override this method
+     * to use an alternative {@link ChannelBufferFactory} for example.
+     *
+     * @param buffer  the buffer passed to {@code decode()}
+     * @param index   the index of the first byte of the frame
+     * @param length  the length of the frame
+     */
+    protected ChannelBuffer extractFrame(ChannelBuffer buffer, int index, int length) {
+        if (copyFrames) {
+            ChannelBuffer frame = buffer.factory().getBuffer(length);
+            frame.writeBytes(buffer, index, length);
+            return frame;
+        }
+        if (buffer == cumulation) {
+            cumulationSliced = true;
+        }
+        return buffer.slice(index, length);
+    }
+
+    /**
+     * Extracts the specified number of bytes from the current
+     * {@code readerIndex} of the specified buffer as a frame using
+     * {@link #extractFrame(ChannelBuffer, int, int)}, and increases the
+     * {@code readerIndex} by the number of the extracted bytes.
+     */
+    protected ChannelBuffer readFrame(ChannelBuffer buffer, int length) {
+        int readerIndex = buffer.readerIndex();
+        ChannelBuffer frame = extractFrame(buffer, readerIndex, length);
+        buffer.readerIndex(readerIndex + length);
+        return frame;
+    }
+
     private void callDecode(
             ChannelHandlerContext context, Channel channel,
             ChannelBuffer cumulation, SocketAddress remoteAddress) throws Exception {
@@ -330,6 +415,7 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler {
             }
 
             this.cumulation = null;
+            cumulationSliced = false;
 
             if (cumulation.readable()) {
                 // Make sure all frames are read before notifying a closed channel.
@@ -16,11 +16,9 @@
 package io.netty.handler.codec.frame;
 
 import io.netty.buffer.ChannelBuffer;
-import io.netty.buffer.ChannelBufferFactory;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.Channels;
-import io.netty.handler.codec.serialization.ObjectDecoder;
 
 /**
  * A decoder that splits the received {@link ChannelBuffer}s dynamically by the
@@ -415,27 +413,6 @@ public class LengthFieldBasedFrameDecoder extends FrameDecoder {
 
     }
 
-    /**
-     * Extract the sub-region of the specified buffer. This method is called by
-     * {@link #decode(ChannelHandlerContext, Channel, ChannelBuffer)} for each
-     * frame.  The default implementation returns a copy of the sub-region.
-     * For example, you could override this method to use an alternative
-     * {@link ChannelBufferFactory}.
-     * <p>
-     * If you are sure that the frame and its content are not accessed after
-     * the current {@link #decode(ChannelHandlerContext, Channel, ChannelBuffer)}
-     * call returns, you can even avoid memory copy by returning the sliced
-     * sub-region (i.e. <tt>return buffer.slice(index, length)</tt>).
-     * It's often useful when you convert the extracted frame into an object.
-     * Refer to the source code of {@link ObjectDecoder} to see how this method
-     * is overridden to avoid memory copy.
-     */
-    protected ChannelBuffer extractFrame(ChannelBuffer buffer, int index, int length) {
-        ChannelBuffer frame = buffer.factory().getBuffer(length);
-        frame.writeBytes(buffer, index, length);
-        return frame;
-    }
-
     private void fail(ChannelHandlerContext ctx, long frameLength) {
         if (frameLength > 0) {
             Channels.fireExceptionCaught(
@@ -15,8 +15,9 @@
  */
 package io.netty.handler.codec.protobuf;
 
+import java.nio.ByteBuffer;
+
 import io.netty.buffer.ChannelBuffer;
-import io.netty.buffer.ChannelBufferInputStream;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
@@ -66,6 +67,10 @@ import com.google.protobuf.MessageLite;
 @Sharable
 public class ProtobufDecoder extends OneToOneDecoder {
 
+    private static final int MAX_SCRATCH_ARRAY_SIZE = 65536;
+
+    private static final ThreadLocal<byte[]> scratchArray = new ThreadLocal<byte[]>();
+
     private final MessageLite prototype;
     private final ExtensionRegistry extensionRegistry;
 
@@ -92,23 +97,43 @@ public class ProtobufDecoder extends OneToOneDecoder {
         }
 
         ChannelBuffer buf = (ChannelBuffer) msg;
+        int length = buf.readableBytes();
+        byte[] array;
+        int offset;
         if (buf.hasArray()) {
-            final int offset = buf.readerIndex();
-            if (extensionRegistry == null) {
-                return prototype.newBuilderForType().mergeFrom(
-                        buf.array(), buf.arrayOffset() + offset, buf.readableBytes()).build();
-            } else {
-                return prototype.newBuilderForType().mergeFrom(
-                        buf.array(), buf.arrayOffset() + offset, buf.readableBytes(), extensionRegistry).build();
-            }
+            array = buf.array();
+            offset = buf.arrayOffset() + buf.readerIndex();
         } else {
-            if (extensionRegistry == null) {
-                return prototype.newBuilderForType().mergeFrom(
-                        new ChannelBufferInputStream((ChannelBuffer) msg)).build();
+            ByteBuffer[] nioBuffers = buf.toByteBuffers();
+            if (nioBuffers.length == 1 && nioBuffers[0].hasArray()) {
+                array = nioBuffers[0].array();
+                offset = nioBuffers[0].arrayOffset() + nioBuffers[0].position();
             } else {
-                return prototype.newBuilderForType().mergeFrom(
-                        new ChannelBufferInputStream((ChannelBuffer) msg), extensionRegistry).build();
+                // A direct or composite buffer - gather it into a reusable
+                // array rather than parsing it through an InputStream.  The
+                // parser does not retain the array.
+                array = scratchArray(length);
+                offset = 0;
+                buf.getBytes(buf.readerIndex(), array, 0, length);
             }
         }
+
+        if (extensionRegistry == null) {
+            return prototype.newBuilderForType().mergeFrom(array, offset, length).build();
+        } else {
+            return prototype.newBuilderForType().mergeFrom(array, offset, length, extensionRegistry).build();
+        }
+    }
+
+    private static byte[] scratchArray(int length) {
+        if (length > MAX_SCRATCH_ARRAY_SIZE) {
+            return new byte[length];
+        }
+        byte[] array = scratchArray.get();
+        if (array == null || array.length < length) {
+            array = new byte[Math.max(length, 1024)];
+            scratchArray.set(array);
+        }
+        return array;
     }
 }
@@ -57,6 +57,9 @@ import com.google.protobuf.MessageLite;
  *     ch.write(res);
  * }
  * </pre>
+ * If the messages are framed with a {@link ProtobufVarint32LengthFieldPrepender},
+ * you can leave this encoder out because the prepender serializes a message
+ * into the same buffer as its length field.
  * @apiviz.landmark
  */
 @Sharable
@@ -18,10 +18,10 @@ package io.netty.handler.codec.protobuf;
 import io.netty.buffer.ChannelBuffer;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.Channels;
 import io.netty.handler.codec.frame.CorruptedFrameException;
 import io.netty.handler.codec.frame.FrameDecoder;
-
-import com.google.protobuf.CodedInputStream;
+import io.netty.handler.codec.frame.TooLongFrameException;
 
 /**
  * A decoder that splits the received {@link ChannelBuffer}s dynamically by the
@@ -36,46 +36,140 @@ import com.google.protobuf.CodedInputStream;
  * +--------+---------------+      +---------------+
  * </pre>
  *
+ * The length field is read in place, and frames longer than the
+ * {@code maxFrameLength} are discarded just like
+ * {@link io.netty.handler.codec.frame.LengthFieldBasedFrameDecoder} does.
+ *
  * @see com.google.protobuf.CodedInputStream
  */
 public class ProtobufVarint32FrameDecoder extends FrameDecoder {
 
-    // TODO maxFrameLength + safe skip + fail-fast option
-    //      (just like LengthFieldBasedFrameDecoder)
+    private final int maxFrameLength;
+    private final boolean failFast;
+    private boolean discardingTooLongFrame;
+    private long tooLongFrameLength;
+    private long bytesToDiscard;
 
     /**
-     * Creates a new instance.
+     * Creates a new instance which does not limit the length of a frame.
      */
     public ProtobufVarint32FrameDecoder() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new fail-fast instance.
+     *
+     * @param maxFrameLength
+     *        the maximum length of the frame, excluding the length field
+     */
+    public ProtobufVarint32FrameDecoder(int maxFrameLength) {
+        this(maxFrameLength, true);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maxFrameLength
+     *        the maximum length of the frame, excluding the length field.
+     *        If the length of the frame is greater than this value,
+     *        {@link TooLongFrameException} will be raised and the frame will
+     *        be discarded.
+     * @param failFast
+     *        If <tt>true</tt>, a {@link TooLongFrameException} is raised as
+     *        soon as the length field has been read.  If <tt>false</tt>, a
+     *        {@link TooLongFrameException} is raised after the entire frame
+     *        has been discarded.
+     */
+    public ProtobufVarint32FrameDecoder(int maxFrameLength, boolean failFast) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException(
+                    "maxFrameLength must be a positive integer: " +
+                    maxFrameLength);
+        }
+        this.maxFrameLength = maxFrameLength;
+        this.failFast = failFast;
     }
 
     @Override
     protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
-        buffer.markReaderIndex();
-        final byte[] buf = new byte[5];
-        for (int i = 0; i < buf.length; i ++) {
-            if (!buffer.readable()) {
-                buffer.resetReaderIndex();
+        if (discardingTooLongFrame) {
+            int localBytesToDiscard = (int) Math.min(bytesToDiscard, buffer.readableBytes());
+            buffer.skipBytes(localBytesToDiscard);
+            bytesToDiscard -= localBytesToDiscard;
+            failIfNecessary(ctx, false);
+            return null;
+        }
+
+        // Read the length field in place - nothing is consumed until the
+        // whole frame has been received.
+        int readerIndex = buffer.readerIndex();
+        int readableBytes = buffer.readableBytes();
+        int length = 0;
+        int headerLength = 0;
+        for (;;) {
+            if (headerLength == readableBytes) {
                 return null;
             }
+            byte b = buffer.getByte(readerIndex + headerLength);
+            length |= (b & 0x7F) << 7 * headerLength;
+            headerLength ++;
+            if (b >= 0) {
+                break;
+            }
+            if (headerLength == 5) {
+                // Couldn't find the byte whose MSB is off.
+                throw new CorruptedFrameException("length wider than 32-bit");
+            }
+        }
 
-            buf[i] = buffer.readByte();
-            if (buf[i] >= 0) {
-                int length = CodedInputStream.newInstance(buf, 0, i + 1).readRawVarint32();
-                if (length < 0) {
-                    throw new CorruptedFrameException("negative length: " + length);
-                }
+        if (length < 0) {
+            buffer.skipBytes(headerLength);
+            throw new CorruptedFrameException("negative length: " + length);
+        }
 
-                if (buffer.readableBytes() < length) {
-                    buffer.resetReaderIndex();
-                    return null;
-                } else {
-                    return buffer.readBytes(length);
-                }
+        if (length > maxFrameLength) {
+            // Enter the discard mode and discard the frame received so far.
+            buffer.skipBytes(headerLength);
+            int localBytesToDiscard = Math.min(length, buffer.readableBytes());
+            buffer.skipBytes(localBytesToDiscard);
+            discardingTooLongFrame = true;
+            tooLongFrameLength = length;
+            bytesToDiscard = length - localBytesToDiscard;
+            failIfNecessary(ctx, true);
+            return null;
+        }
+
+        if (readableBytes - headerLength < length) {
+            return null;
+        }
+        buffer.skipBytes(headerLength);
+        return readFrame(buffer, length);
+    }
+
+    private void failIfNecessary(ChannelHandlerContext ctx, boolean firstDetectionOfTooLongFrame) {
+        if (bytesToDiscard == 0) {
+            // Reset to the initial state and tell the handlers that
+            // the frame was too large.
+            long tooLongFrameLength = this.tooLongFrameLength;
+            this.tooLongFrameLength = 0;
+            discardingTooLongFrame = false;
+            if (!failFast || firstDetectionOfTooLongFrame) {
+                fail(ctx, tooLongFrameLength);
+            }
+        } else {
+            // Keep discarding and notify handlers if necessary.
+            if (failFast && firstDetectionOfTooLongFrame) {
+                fail(ctx, tooLongFrameLength);
             }
         }
+    }
 
-        // Couldn't find the byte whose MSB is off.
-        throw new CorruptedFrameException("length wider than 32-bit");
+    private void fail(ChannelHandlerContext ctx, long frameLength) {
+        Channels.fireExceptionCaught(
+                ctx.getChannel(),
+                new TooLongFrameException(
+                        "frame length exceeds " + maxFrameLength +
+                        ": " + frameLength + " - discarded"));
     }
 }
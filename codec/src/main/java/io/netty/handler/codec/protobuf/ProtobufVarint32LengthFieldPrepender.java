@@ -18,13 +18,13 @@ package io.netty.handler.codec.protobuf;
 import static io.netty.buffer.ChannelBuffers.*;
 
 import io.netty.buffer.ChannelBuffer;
-import io.netty.buffer.ChannelBufferOutputStream;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.handler.codec.oneone.OneToOneEncoder;
 
 import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
 
 /**
  * An encoder that prepends the the Google Protocol Buffers
@@ -36,7 +36,11 @@ import com.google.protobuf.CodedOutputStream;
  * | Protobuf Data |-------------->| Length | Protobuf Data |
  * |  (300 bytes)  |               | 0xAC02 |  (300 bytes)  |
  * +---------------+               +--------+---------------+
- * </pre> *
+ * </pre>
+ *
+ * A {@link MessageLite} or a {@link MessageLite.Builder} can be written
+ * directly too, in which case it is serialized into the same buffer as the
+ * length field, so that no {@link ProtobufEncoder} is needed.
  *
  * @see com.google.protobuf.CodedOutputStream
  */
@@ -52,6 +56,24 @@ public class ProtobufVarint32LengthFieldPrepender extends OneToOneEncoder {
     @Override
     protected Object encode(ChannelHandlerContext ctx, Channel channel,
             Object msg) throws Exception {
+        if (msg instanceof MessageLite.Builder) {
+            msg = ((MessageLite.Builder) msg).build();
+        }
+        if (msg instanceof MessageLite) {
+            // Serialize the message right after the length field.
+            MessageLite message = (MessageLite) msg;
+            int length = message.getSerializedSize();
+            int headerLength = CodedOutputStream.computeRawVarint32Size(length);
+            byte[] array = new byte[headerLength + length];
+            ChannelBuffer frame = wrappedBuffer(array);
+            frame.clear();
+            writeRawVarint32(frame, length);
+            CodedOutputStream out = CodedOutputStream.newInstance(array, headerLength, length);
+            message.writeTo(out);
+            out.checkNoSpaceLeft();
+            frame.writerIndex(array.length);
+            return frame;
+        }
         if (!(msg instanceof ChannelBuffer)) {
             return msg;
         }
@@ -62,11 +84,15 @@ public class ProtobufVarint32LengthFieldPrepender extends OneToOneEncoder {
             channel.getConfig().getBufferFactory().getBuffer(
                     body.order(),
                     CodedOutputStream.computeRawVarint32Size(length));
-        CodedOutputStream codedOutputStream = CodedOutputStream
-                .newInstance(new ChannelBufferOutputStream(header));
-        codedOutputStream.writeRawVarint32(length);
-        codedOutputStream.flush();
+        writeRawVarint32(header, length);
         return wrappedBuffer(header, body);
     }
 
+    private static void writeRawVarint32(ChannelBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        buffer.writeByte(value);
+    }
 }
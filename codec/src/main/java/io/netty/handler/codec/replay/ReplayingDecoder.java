@@ -472,7 +472,18 @@ public abstract class ReplayingDecoder<T extends Enum<T>>
             ChannelBuffer cumulation = this.cumulation;
             assert cumulation.readable();
             if (cumulation.writableBytes() < input.readableBytes()) {
-                cumulation.discardReadBytes();
+                if (!isCumulationSliced()) {
+                    cumulation.discardReadBytes();
+                } else if (cumulation.readerIndex() > 0) {
+                    // Move the unread bytes into a new buffer instead of
+                    // discarding the read bytes in place, so that the slices
+                    // returned by decode() are never overwritten.
+                    ChannelBuffer newCumulation = newCumulationBuffer(
+                            ctx, cumulation.readableBytes() + input.readableBytes());
+                    newCumulation.writeBytes(cumulation);
+                    cumulation = this.cumulation = newCumulation;
+                    replayable = new ReplayingDecoderBuffer(cumulation);
+                }
             }
             cumulation.writeBytes(input);
             callDecode(ctx, e.getChannel(), cumulation, replayable, e.getRemoteAddress());
@@ -597,6 +608,17 @@ public abstract class ReplayingDecoder<T extends Enum<T>>
         }
     }
 
+    /**
+     * Returns {@code true} if {@link #decode(ChannelHandlerContext, Channel, ChannelBuffer, Enum) decode()}
+     * returns slices of the cumulation buffer rather than copies.  If so, the
+     * bytes read from the cumulation are never discarded in place; the unread
+     * bytes are moved into a new cumulation buffer instead, at the cost of
+     * a copy.  The default implementation returns {@code false}.
+     */
+    protected boolean isCumulationSliced() {
+        return false;
+    }
+
     /**
      * Create a new {@link ChannelBuffer} which is used for the cumulation.
      * Be aware that this MUST be a dynamic buffer. Sub-classes may override
@@ -15,16 +15,19 @@
  */
 package io.netty.handler.codec.serialization;
 
+import java.util.Iterator;
 import java.util.Map;
 
 class CachingClassResolver implements ClassResolver {
 
     private final Map<String, Class<?>> classCache;
     private final ClassResolver delegate;
+    private final int maxCacheSize;
 
-    CachingClassResolver(ClassResolver delegate, Map<String, Class<?>> classCache) {
+    CachingClassResolver(ClassResolver delegate, Map<String, Class<?>> classCache, int maxCacheSize) {
         this.delegate = delegate;
         this.classCache = classCache;
+        this.maxCacheSize = maxCacheSize;
     }
 
     @Override
@@ -39,6 +42,14 @@ class CachingClassResolver implements ClassResolver {
         // And then try to load.
         clazz = delegate.resolve(className);
 
+        if (classCache.size() >= maxCacheSize) {
+            // Make room by evicting an arbitrary class.
+            Iterator<String> i = classCache.keySet().iterator();
+            if (i.hasNext()) {
+                i.next();
+                i.remove();
+            }
+        }
         classCache.put(className, clazz);
         return clazz;
     }
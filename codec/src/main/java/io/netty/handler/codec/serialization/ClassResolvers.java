@@ -16,11 +16,15 @@
 package io.netty.handler.codec.serialization;
 
 import java.lang.ref.Reference;
-import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 public final class ClassResolvers {
 
+    /**
+     * The maximum number of the classes a caching {@link ClassResolver} keeps
+     */
+    static final int MAX_CACHE_SIZE = 1024;
+
     /**
      * cache disabled
      * @param classLoader - specific classLoader to use, or null if you want to revert to default
@@ -31,47 +35,47 @@ public final class ClassResolvers {
     }
 
     /**
-     * non-agressive non-concurrent cache
+     * non-agressive bounded cache
      * good for non-shared default cache
      *
      * @param classLoader - specific classLoader to use, or null if you want to revert to default
      * @return new instance of class resolver
      */
     public static ClassResolver weakCachingResolver(ClassLoader classLoader) {
-        return new CachingClassResolver(new ClassLoaderClassResolver(defaultClassLoader(classLoader)), new WeakReferenceMap<String, Class<?>>(new HashMap<String, Reference<Class<?>>>()));
+        return new CachingClassResolver(new ClassLoaderClassResolver(defaultClassLoader(classLoader)), new WeakReferenceMap<String, Class<?>>(new ConcurrentHashMap<String, Reference<Class<?>>>()), MAX_CACHE_SIZE);
     }
     
     /**
-     * agressive non-concurrent cache
+     * agressive bounded cache
      * good for non-shared cache, when we're not worried about class unloading
      *
      * @param classLoader - specific classLoader to use, or null if you want to revert to default
      * @return new instance of class resolver
      */
     public static ClassResolver softCachingResolver(ClassLoader classLoader) {
-        return new CachingClassResolver(new ClassLoaderClassResolver(defaultClassLoader(classLoader)), new SoftReferenceMap<String, Class<?>>(new HashMap<String, Reference<Class<?>>>()));
+        return new CachingClassResolver(new ClassLoaderClassResolver(defaultClassLoader(classLoader)), new SoftReferenceMap<String, Class<?>>(new ConcurrentHashMap<String, Reference<Class<?>>>()), MAX_CACHE_SIZE);
     }
 
     /**
-     * non-agressive concurrent cache
+     * non-agressive bounded concurrent cache
      * good for shared cache, when we're worried about class unloading
      *
      * @param classLoader - specific classLoader to use, or null if you want to revert to default
      * @return new instance of class resolver
      */
     public static ClassResolver weakCachingConcurrentResolver(ClassLoader classLoader) {
-        return new CachingClassResolver(new ClassLoaderClassResolver(defaultClassLoader(classLoader)), new WeakReferenceMap<String, Class<?>>(new ConcurrentHashMap<String, Reference<Class<?>>>()));
+        return new CachingClassResolver(new ClassLoaderClassResolver(defaultClassLoader(classLoader)), new WeakReferenceMap<String, Class<?>>(new ConcurrentHashMap<String, Reference<Class<?>>>()), MAX_CACHE_SIZE);
     }
 
     /**
-     * agressive concurrent cache
+     * agressive bounded concurrent cache
      * good for shared cache, when we're not worried about class unloading
      *
      * @param classLoader - specific classLoader to use, or null if you want to revert to default
      * @return new instance of class resolver
      */
     public static ClassResolver softCachingConcurrentResolver(ClassLoader classLoader) {
-        return new CachingClassResolver(new ClassLoaderClassResolver(defaultClassLoader(classLoader)), new SoftReferenceMap<String, Class<?>>(new ConcurrentHashMap<String, Reference<Class<?>>>()));
+        return new CachingClassResolver(new ClassLoaderClassResolver(defaultClassLoader(classLoader)), new SoftReferenceMap<String, Class<?>>(new ConcurrentHashMap<String, Reference<Class<?>>>()), MAX_CACHE_SIZE);
     }
 
     static ClassLoader defaultClassLoader(ClassLoader classLoader) {
@@ -21,14 +21,33 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
 import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
 
 class CompactObjectInputStream extends ObjectInputStream {
     
     private final ClassResolver classResolver;
+    /**
+     * The thin class descriptors read so far, with {@code null} for those
+     * whose class could not be resolved, or {@code null} if a descriptor is
+     * never referenced by its ID
+     */
+    private final List<ObjectStreamClass> descriptors;
 
     CompactObjectInputStream(InputStream in, ClassResolver classResolver) throws IOException {
+        this(in, classResolver, false);
+    }
+
+    /**
+     * @param referenceDescriptors  {@code true} if the stream was written by
+     *        a {@link CompactObjectOutputStream} which references the thin
+     *        class descriptors by their IDs
+     */
+    CompactObjectInputStream(
+            InputStream in, ClassResolver classResolver, boolean referenceDescriptors) throws IOException {
         super(in);
         this.classResolver = classResolver;
+        descriptors = referenceDescriptors? new ArrayList<ObjectStreamClass>() : null;
     }
 
     @Override
@@ -52,12 +71,55 @@ class CompactObjectInputStream extends ObjectInputStream {
             return super.readClassDescriptor();
         case CompactObjectOutputStream.TYPE_THIN_DESCRIPTOR:
             String className = readUTF();
+            int index = -1;
+            if (descriptors != null) {
+                // The writer has given the descriptor an ID already, so take
+                // its place even if the class cannot be resolved.
+                index = descriptors.size();
+                descriptors.add(null);
+            }
             Class<?> clazz = classResolver.resolve(className);
-            return ObjectStreamClass.lookup(clazz);
-        default:
-            throw new StreamCorruptedException(
-                    "Unexpected class descriptor type: " + type);
+            ObjectStreamClass desc = ObjectStreamClass.lookup(clazz);
+            if (descriptors != null) {
+                descriptors.set(index, desc);
+            }
+            return desc;
+        case CompactObjectOutputStream.TYPE_REFERENCED_DESCRIPTOR:
+            if (descriptors == null) {
+                break;
+            }
+            int id = readDescriptorId();
+            if (id >= descriptors.size()) {
+                throw new StreamCorruptedException(
+                        "Unknown class descriptor ID: " + id);
+            }
+            ObjectStreamClass referenced = descriptors.get(id);
+            if (referenced == null) {
+                throw new ClassNotFoundException(
+                        "Unresolved class descriptor ID: " + id);
+            }
+            return referenced;
+        }
+        throw new StreamCorruptedException(
+                "Unexpected class descriptor type: " + type);
+    }
+
+    private int readDescriptorId() throws IOException {
+        int id = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            id |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (id < 0) {
+                    break;
+                }
+                return id;
+            }
         }
+        throw new StreamCorruptedException("Malformed class descriptor ID");
     }
 
     @Override
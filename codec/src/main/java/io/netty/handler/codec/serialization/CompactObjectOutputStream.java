@@ -19,14 +19,59 @@ import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 class CompactObjectOutputStream extends ObjectOutputStream {
 
     static final int TYPE_FAT_DESCRIPTOR = 0;
     static final int TYPE_THIN_DESCRIPTOR = 1;
+    static final int TYPE_REFERENCED_DESCRIPTOR = 2;
+
+    /**
+     * The IDs of the classes whose thin descriptors were written so far, or
+     * {@code null} if a descriptor is never referenced by its ID
+     */
+    private final Map<Class<?>, Integer> descriptorIds;
 
     CompactObjectOutputStream(OutputStream out) throws IOException {
+        this(out, false);
+    }
+
+    /**
+     * @param referenceDescriptors  {@code true} if a thin class descriptor
+     *        written before should be written as its ID, which is the number
+     *        of the thin descriptors written before it.  The stream must be
+     *        read by a {@link CompactObjectInputStream} which references the
+     *        descriptors too.
+     */
+    CompactObjectOutputStream(OutputStream out, boolean referenceDescriptors) throws IOException {
         super(out);
+        descriptorIds = referenceDescriptors? new IdentityHashMap<Class<?>, Integer>() : null;
+    }
+
+    /**
+     * Returns the number of the thin class descriptors which can be
+     * referenced by their IDs.
+     */
+    int descriptorCount() {
+        return descriptorIds == null? 0 : descriptorIds.size();
+    }
+
+    /**
+     * Forgets the thin class descriptors written after the specified number
+     * of descriptors, which is useful when the written bytes are discarded.
+     */
+    void forgetDescriptors(int count) {
+        if (descriptorIds == null) {
+            return;
+        }
+        for (Iterator<Integer> i = descriptorIds.values().iterator(); i.hasNext();) {
+            if (i.next() >= count) {
+                i.remove();
+            }
+        }
     }
 
     @Override
@@ -40,9 +85,24 @@ class CompactObjectOutputStream extends ObjectOutputStream {
         if (clazz.isPrimitive() || clazz.isArray() || desc.getSerialVersionUID() == 0) {
             write(TYPE_FAT_DESCRIPTOR);
             super.writeClassDescriptor(desc);
+            return;
+        }
+
+        Integer id = descriptorIds == null? null : descriptorIds.get(clazz);
+        if (id != null) {
+            write(TYPE_REFERENCED_DESCRIPTOR);
+            int value = id;
+            while ((value & ~0x7F) != 0) {
+                write(value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            write(value);
         } else {
             write(TYPE_THIN_DESCRIPTOR);
             writeUTF(desc.getName());
+            if (descriptorIds != null) {
+                descriptorIds.put(clazz, descriptorIds.size());
+            }
         }
     }
 }
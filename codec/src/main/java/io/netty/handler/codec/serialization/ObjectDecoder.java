@@ -38,6 +38,17 @@ import io.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
 public class ObjectDecoder extends LengthFieldBasedFrameDecoder {
 
     private final ClassResolver classResolver;
+    /**
+     * The stream the frames are read from if connection-scoped, or
+     * {@code null}
+     */
+    private final SwitchableInputStream bin;
+    private CompactObjectInputStream oin;
+    /**
+     * The failure which left {@link #oin} in an unknown state, after which
+     * no connection-scoped frame can be decoded anymore
+     */
+    private Exception failure;
 
     /**
      * Creates a new decoder whose maximum object size is {@code 1048576}
@@ -90,8 +101,25 @@ public class ObjectDecoder extends LengthFieldBasedFrameDecoder {
      *                       of the serialized object
      */
     public ObjectDecoder(int maxObjectSize, ClassResolver classResolver) {
+        this(maxObjectSize, classResolver, false);
+    }
+
+    /**
+     * Creates a new decoder with the specified maximum object size.
+     *
+     * @param maxObjectSize  the maximum byte length of the serialized object.
+     *                       if the length of the received object is greater
+     *                       than this value, {@link StreamCorruptedException}
+     *                       will be raised.
+     * @param classResolver    the {@link ClassResolver} which will load the class
+     *                       of the serialized object
+     * @param connectionScoped  {@code true} if the objects were encoded by an
+     *                       {@link ObjectEncoder} which is connection-scoped
+     */
+    public ObjectDecoder(int maxObjectSize, ClassResolver classResolver, boolean connectionScoped) {
         super(maxObjectSize, 0, 4, 0, 4);
         this.classResolver = classResolver;
+        bin = connectionScoped? new SwitchableInputStream() : null;
     }
 
 
@@ -119,8 +147,29 @@ public class ObjectDecoder extends LengthFieldBasedFrameDecoder {
             return null;
         }
 
-        return new CompactObjectInputStream(
-                new ChannelBufferInputStream(frame), classResolver).readObject();
+        if (bin == null) {
+            return new CompactObjectInputStream(
+                    new ChannelBufferInputStream(frame), classResolver).readObject();
+        }
+
+        if (failure != null) {
+            StreamCorruptedException e = new StreamCorruptedException(
+                    "a previous object could not be decoded: " + failure);
+            e.initCause(failure);
+            throw e;
+        }
+        bin.switchStream(new ChannelBufferInputStream(frame));
+        try {
+            if (oin == null) {
+                // The stream header is in the first frame only.
+                oin = new CompactObjectInputStream(bin, classResolver, true);
+            }
+            return oin.readObject();
+        } catch (Exception e) {
+            // The state of the stream shared with the encoder is lost.
+            failure = e;
+            throw e;
+        }
     }
 
     @Override
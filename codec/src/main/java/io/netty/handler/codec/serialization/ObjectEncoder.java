@@ -17,13 +17,16 @@ package io.netty.handler.codec.serialization;
 
 import static io.netty.buffer.ChannelBuffers.*;
 
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 
 import io.netty.buffer.ChannelBuffer;
 import io.netty.buffer.ChannelBufferOutputStream;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelEvent;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.LifeCycleAwareChannelHandler;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.handler.codec.oneone.OneToOneEncoder;
 
@@ -38,10 +41,11 @@ import io.netty.handler.codec.oneone.OneToOneEncoder;
  * @apiviz.has io.netty.handler.codec.serialization.ObjectEncoderOutputStream - - - compatible with
  */
 @Sharable
-public class ObjectEncoder extends OneToOneEncoder {
+public class ObjectEncoder extends OneToOneEncoder implements LifeCycleAwareChannelHandler {
     private static final byte[] LENGTH_PLACEHOLDER = new byte[4];
 
     private final int estimatedLength;
+    private final boolean connectionScoped;
 
     /**
      * Creates a new encoder with the estimated length of 512 bytes.
@@ -62,26 +66,133 @@ public class ObjectEncoder extends OneToOneEncoder {
      *        cost, please specify the properly estimated value.
      */
     public ObjectEncoder(int estimatedLength) {
+        this(estimatedLength, false);
+    }
+
+    /**
+     * Creates a new encoder.
+     *
+     * @param estimatedLength
+     *        the estimated byte length of the serialized form of an object.
+     *        If the length of the serialized form exceeds this value, the
+     *        internal buffer will be expanded automatically at the cost of
+     *        memory bandwidth.  If this value is too big, it will also waste
+     *        memory bandwidth.  To avoid unnecessary memory copy or allocation
+     *        cost, please specify the properly estimated value.
+     * @param connectionScoped
+     *        {@code true} if all objects written to a channel should be
+     *        serialized by one object stream, so that the class descriptors
+     *        written once are referenced by their IDs later.  Only the
+     *        back-references to the objects are reset between the objects.
+     *        The objects must be decoded by an {@link ObjectDecoder} which is
+     *        connection-scoped too.
+     */
+    public ObjectEncoder(int estimatedLength, boolean connectionScoped) {
         if (estimatedLength < 0) {
             throw new IllegalArgumentException(
                     "estimatedLength: " + estimatedLength);
         }
         this.estimatedLength = estimatedLength;
+        this.connectionScoped = connectionScoped;
+    }
+
+    @Override
+    public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent evt) throws Exception {
+        Object stream = ctx.getAttachment();
+        if (stream == null) {
+            super.handleDownstream(ctx, evt);
+            return;
+        }
+
+        // The objects must reach the wire in the order they were serialized
+        // because the class descriptor IDs are assigned in that order.
+        synchronized (stream) {
+            super.handleDownstream(ctx, evt);
+        }
     }
 
     @Override
     protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        ConnectionStream stream = (ConnectionStream) ctx.getAttachment();
         ChannelBufferOutputStream bout =
             new ChannelBufferOutputStream(dynamicBuffer(
-                    estimatedLength, ctx.getChannel().getConfig().getBufferFactory()));
+                    stream == null? estimatedLength : Math.max(estimatedLength, stream.lastLength),
+                    ctx.getChannel().getConfig().getBufferFactory()));
         bout.write(LENGTH_PLACEHOLDER);
-        ObjectOutputStream oout = new CompactObjectOutputStream(bout);
-        oout.writeObject(msg);
-        oout.flush();
-        oout.close();
+        if (stream == null) {
+            ObjectOutputStream oout = new CompactObjectOutputStream(bout);
+            oout.writeObject(msg);
+            oout.flush();
+            oout.close();
+        } else {
+            stream.writeObject(bout, msg);
+        }
 
         ChannelBuffer encoded = bout.buffer();
         encoded.setInt(0, encoded.writerIndex() - 4);
         return encoded;
     }
+
+    @Override
+    public void beforeAdd(ChannelHandlerContext ctx) throws Exception {
+        if (connectionScoped) {
+            ctx.setAttachment(new ConnectionStream());
+        }
+    }
+
+    @Override
+    public void afterAdd(ChannelHandlerContext ctx) throws Exception {
+        // Unused
+    }
+
+    @Override
+    public void beforeRemove(ChannelHandlerContext ctx) throws Exception {
+        // Unused
+    }
+
+    @Override
+    public void afterRemove(ChannelHandlerContext ctx) throws Exception {
+        // Unused
+    }
+
+    /**
+     * The object stream which serializes all objects written to a channel
+     */
+    private static final class ConnectionStream {
+        private final SwitchableOutputStream out = new SwitchableOutputStream();
+        private CompactObjectOutputStream oout;
+        private int lastLength;
+
+        void writeObject(ChannelBufferOutputStream bout, Object msg) throws IOException {
+            out.switchStream(bout);
+            boolean first = oout == null;
+            int descriptorCount = 0;
+            boolean success = false;
+            try {
+                if (first) {
+                    // The stream header goes to the first object only.
+                    oout = new CompactObjectOutputStream(out, true);
+                } else {
+                    // Forget the objects written before, but not their classes.
+                    oout.reset();
+                    descriptorCount = oout.descriptorCount();
+                }
+                oout.writeObject(msg);
+                oout.flush();
+                success = true;
+            } finally {
+                out.switchStream(null);
+                if (!success) {
+                    // The written bytes are discarded - start over or forget
+                    // the classes the remote peer will never know.
+                    if (first) {
+                        oout = null;
+                    } else {
+                        oout.forgetDescriptors(descriptorCount);
+                    }
+                }
+            }
+            lastLength = bout.buffer().writerIndex();
+        }
+    }
 }
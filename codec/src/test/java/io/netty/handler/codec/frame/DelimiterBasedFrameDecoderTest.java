@@ -64,4 +64,63 @@ public class DelimiterBasedFrameDecoderTest {
             Assert.assertEquals("A", buf.toString(CharsetUtil.ISO_8859_1));
         }
     }
+
+    @Test
+    public void testMultipleDelimitersSplitAcrossChunks() throws Exception {
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(
+                new DelimiterBasedFrameDecoder(8192, true,
+                        ChannelBuffers.copiedBuffer("||", CharsetUtil.US_ASCII),
+                        ChannelBuffers.copiedBuffer(";", CharsetUtil.US_ASCII),
+                        ChannelBuffers.copiedBuffer("--", CharsetUtil.US_ASCII)));
+        String input = "first||second;third-fourth--fifth;-;";
+        for (int i = 0; i < input.length(); i ++) {
+            embedder.offer(ChannelBuffers.copiedBuffer(input.substring(i, i + 1), CharsetUtil.US_ASCII));
+        }
+        Assert.assertTrue(embedder.finish());
+        for (String expected: new String[] { "first", "second", "third-fourth", "fifth", "-" }) {
+            Assert.assertEquals(expected, embedder.poll().toString(CharsetUtil.US_ASCII));
+        }
+        Assert.assertNull(embedder.poll());
+    }
+
+    @Test
+    public void testLineDelimiters() throws Exception {
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(
+                new DelimiterBasedFrameDecoder(8192, false, Delimiters.lineDelimiter()));
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 500; i ++) {
+            longLine.append("0123456789\r");
+        }
+        String input = "ABC\r\nDEF\n\r\n\n" + longLine + "\r\n";
+        for (int i = 0; i < input.length(); i += 7) {
+            embedder.offer(ChannelBuffers.copiedBuffer(
+                    input.substring(i, Math.min(i + 7, input.length())), CharsetUtil.US_ASCII));
+        }
+        Assert.assertTrue(embedder.finish());
+        for (String expected: new String[] { "ABC\r\n", "DEF\n", "\r\n", "\n", longLine + "\r\n" }) {
+            Assert.assertEquals(expected, embedder.poll().toString(CharsetUtil.US_ASCII));
+        }
+        Assert.assertNull(embedder.poll());
+    }
+
+    @Test
+    public void testShorterDelimiterAfterPartialLongerDelimiter() throws Exception {
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(
+                new DelimiterBasedFrameDecoder(8192, true,
+                        ChannelBuffers.copiedBuffer("\r\n\r\n", CharsetUtil.US_ASCII),
+                        ChannelBuffers.copiedBuffer("\n", CharsetUtil.US_ASCII)));
+
+        // "\r\n" may be the beginning of "\r\n\r\n", but "\n" is complete.
+        embedder.offer(ChannelBuffers.copiedBuffer("foo\r\n", CharsetUtil.US_ASCII));
+        Assert.assertEquals("foo\r", embedder.poll().toString(CharsetUtil.US_ASCII));
+        Assert.assertNull(embedder.poll());
+
+        // A partial delimiter alone still waits for more bytes.
+        embedder.offer(ChannelBuffers.copiedBuffer("bar\r", CharsetUtil.US_ASCII));
+        Assert.assertNull(embedder.poll());
+        embedder.offer(ChannelBuffers.copiedBuffer("\n\r\nbaz\n", CharsetUtil.US_ASCII));
+        Assert.assertEquals("bar", embedder.poll().toString(CharsetUtil.US_ASCII));
+        Assert.assertEquals("baz", embedder.poll().toString(CharsetUtil.US_ASCII));
+        Assert.assertNull(embedder.poll());
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.frame;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.handler.codec.embedder.DecoderEmbedder;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FixedLengthFrameDecoderTest {
+    @Test
+    public void testSlicedFramesAreNotOverwritten() throws Exception {
+        testFramesAreNotOverwritten(false);
+    }
+
+    @Test
+    public void testCopiedFramesAreNotOverwritten() throws Exception {
+        testFramesAreNotOverwritten(true);
+    }
+
+    private static void testFramesAreNotOverwritten(boolean copyFrames) throws Exception {
+        FixedLengthFrameDecoder decoder = new FixedLengthFrameDecoder(3);
+        decoder.setCopyFrames(copyFrames);
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(decoder);
+
+        // Fill the cumulative buffer up so that it has to make room for the
+        // bytes received later while the frames sliced from it are retained.
+        byte[] data = new byte[3000];
+        for (int i = 0; i < data.length; i ++) {
+            data[i] = (byte) i;
+        }
+        int index = 0;
+        for (int length: new int[] { 1, 255, 10, 700, 1, 33, 1000, 1000 }) {
+            embedder.offer(ChannelBuffers.wrappedBuffer(data.clone(), index, length));
+            index += length;
+        }
+        Assert.assertTrue(embedder.finish());
+
+        for (int i = 0; i < data.length; i += 3) {
+            ChannelBuffer frame = embedder.poll();
+            Assert.assertEquals(ChannelBuffers.wrappedBuffer(data, i, 3), frame);
+        }
+        Assert.assertNull(embedder.poll());
+    }
+}
@@ -21,7 +21,9 @@ import static io.netty.buffer.ChannelBuffers.*;
 import static org.junit.Assert.*;
 
 import io.netty.buffer.ChannelBuffer;
+import io.netty.handler.codec.embedder.CodecEmbedderException;
 import io.netty.handler.codec.embedder.DecoderEmbedder;
+import io.netty.handler.codec.frame.TooLongFrameException;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -63,4 +65,31 @@ public class ProtobufVarint32FrameDecoderTest {
         assertThat(embedder.poll(), is(wrappedBuffer(b, 2, b.length - 2)));
     }
 
+    @Test
+    public void testTooLongFrameRecovery() {
+        for (boolean failFast: new boolean[] { true, false }) {
+            embedder = new DecoderEmbedder<ChannelBuffer>(
+                    new ProtobufVarint32FrameDecoder(3, failFast));
+            for (int i = 0; i < 2; i ++) {
+                byte[] b = { 5, 1, 1, 1, 1, 1 };
+                try {
+                    // Raised as soon as the length field is read if fail-fast,
+                    // or after the whole frame has been discarded otherwise.
+                    embedder.offer(wrappedBuffer(b, 0, 4));
+                    assertFalse(failFast);
+                    embedder.offer(wrappedBuffer(b, 4, 2));
+                    fail(CodecEmbedderException.class.getSimpleName() + " must be raised.");
+                } catch (CodecEmbedderException e) {
+                    assertTrue(e.getCause() instanceof TooLongFrameException);
+                }
+                if (failFast) {
+                    embedder.offer(wrappedBuffer(b, 4, 2));
+                }
+
+                embedder.offer(wrappedBuffer(new byte[] { 2, 2, 2 }));
+                assertThat(embedder.poll(), is(wrappedBuffer(new byte[] { 2, 2 })));
+                assertThat(embedder.poll(), is(nullValue()));
+            }
+        }
+    }
 }
@@ -20,10 +20,13 @@ import static io.netty.buffer.ChannelBuffers.*;
 import static org.junit.Assert.*;
 
 import io.netty.buffer.ChannelBuffer;
+import io.netty.handler.codec.embedder.DecoderEmbedder;
 import io.netty.handler.codec.embedder.EncoderEmbedder;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+
 public class ProtobufVarint32LengthFieldPrependerTest {
 
     private EncoderEmbedder<ChannelBuffer> embedder;
@@ -52,4 +55,23 @@ public class ProtobufVarint32LengthFieldPrependerTest {
         embedder.offer(wrappedBuffer(b, 2, b.length - 2));
         assertThat(embedder.poll(), is(wrappedBuffer(b)));
     }
+
+    @Test
+    public void testMessageEncode() throws Exception {
+        FileDescriptorProto message = FileDescriptorProto.newBuilder()
+                .setName("test.proto").setPackage("io.netty.test").build();
+        embedder.offer(message);
+        ChannelBuffer frame = embedder.poll();
+        byte[] body = message.toByteArray();
+        assertThat(frame.readByte(), is((byte) body.length));
+        assertThat(frame, is(wrappedBuffer(body)));
+
+        // Decode it back from a direct buffer.
+        ChannelBuffer direct = directBuffer(frame.readableBytes());
+        direct.writeBytes(frame, frame.readerIndex(), frame.readableBytes());
+        DecoderEmbedder<Object> decoder = new DecoderEmbedder<Object>(
+                new ProtobufDecoder(FileDescriptorProto.getDefaultInstance()));
+        decoder.offer(direct);
+        assertThat(decoder.poll(), is((Object) message));
+    }
 }
@@ -49,6 +49,22 @@ public class ReplayingDecoderTest {
         assertNull(e.poll());
     }
 
+    @Test
+    public void testSlicedCumulationIsNotOverwritten() {
+        DecoderEmbedder<ChannelBuffer> e = new DecoderEmbedder<ChannelBuffer>(
+                new SlicingLineDecoder());
+
+        e.offer(ChannelBuffers.wrappedBuffer(new byte[] { 'A' }));
+        e.offer(ChannelBuffers.wrappedBuffer(new byte[] { 'B', '\n', 'C' }));
+        ChannelBuffer line = e.poll();
+        assertEquals(ChannelBuffers.wrappedBuffer(new byte[] { 'A', 'B' }), line);
+
+        // Grow the cumulation while the slice is still in use.
+        e.offer(ChannelBuffers.wrappedBuffer(new byte[1024]));
+        assertEquals(ChannelBuffers.wrappedBuffer(new byte[] { 'A', 'B' }), line);
+        assertNull(e.poll());
+    }
+
     private static final class LineDecoder extends ReplayingDecoder<VoidEnum> {
 
         LineDecoder() {
@@ -63,4 +79,24 @@ public class ReplayingDecoderTest {
             return msg;
         }
     }
+
+    private static final class SlicingLineDecoder extends ReplayingDecoder<VoidEnum> {
+
+        SlicingLineDecoder() {
+        }
+
+        @Override
+        protected boolean isCumulationSliced() {
+            return true;
+        }
+
+        @Override
+        protected Object decode(ChannelHandlerContext ctx, Channel channel,
+                ChannelBuffer buffer, VoidEnum state) throws Exception {
+            ChannelBuffer msg = buffer.readSlice(
+                    buffer.bytesBefore(ChannelBufferIndexFinder.LF));
+            buffer.skipBytes(1);
+            return msg;
+        }
+    }
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.codec.serialization;
+
+import java.io.NotSerializableException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.handler.codec.embedder.CodecEmbedderException;
+import io.netty.handler.codec.embedder.DecoderEmbedder;
+import io.netty.handler.codec.embedder.EncoderEmbedder;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ObjectEncoderTest {
+
+    @Test
+    public void testConnectionScopedSerialization() throws Exception {
+        EncoderEmbedder<ChannelBuffer> encoder = new EncoderEmbedder<ChannelBuffer>(
+                new ObjectEncoder(512, true));
+        DecoderEmbedder<Object> decoder = new DecoderEmbedder<Object>(
+                new ObjectDecoder(1048576, ClassResolvers.cacheDisabled(null), true));
+
+        int firstLength = 0;
+        for (int i = 0; i < 5; i ++) {
+            Date date = new Date(i);
+            List<Object> list = new ArrayList<Object>();
+            list.add(date);
+            list.add(date);
+            encoder.offer(list);
+            ChannelBuffer encoded = encoder.poll();
+            if (i == 0) {
+                firstLength = encoded.readableBytes();
+            } else {
+                // The class descriptors are referenced by their IDs.
+                Assert.assertTrue(encoded.readableBytes() < firstLength - 20);
+            }
+
+            decoder.offer(encoded);
+            @SuppressWarnings("unchecked")
+            List<Object> decoded = (List<Object>) decoder.poll();
+            Assert.assertEquals(list, decoded);
+            Assert.assertSame(decoded.get(0), decoded.get(1));
+        }
+    }
+
+    @Test
+    public void testConnectionScopedSerializationFailure() throws Exception {
+        EncoderEmbedder<ChannelBuffer> encoder = new EncoderEmbedder<ChannelBuffer>(
+                new ObjectEncoder(512, true));
+        DecoderEmbedder<Object> decoder = new DecoderEmbedder<Object>(
+                new ObjectDecoder(1048576, ClassResolvers.weakCachingConcurrentResolver(null), true));
+
+        for (int i = 0; i < 2; i ++) {
+            List<Object> list = new ArrayList<Object>();
+            list.add(new Date(i));
+            list.add(new Object());
+            try {
+                encoder.offer(list);
+                Assert.fail();
+            } catch (CodecEmbedderException e) {
+                Assert.assertTrue(e.getCause() instanceof NotSerializableException);
+            }
+
+            // The descriptors of the discarded object are written again.
+            list.remove(1);
+            encoder.offer(list);
+            decoder.offer(encoder.poll());
+            Assert.assertEquals(list, decoder.poll());
+        }
+    }
+
+    @Test
+    public void testConnectionScopedDeserializationFailure() throws Exception {
+        final ClassResolver resolver = ClassResolvers.cacheDisabled(null);
+        EncoderEmbedder<ChannelBuffer> encoder = new EncoderEmbedder<ChannelBuffer>(
+                new ObjectEncoder(512, true));
+        DecoderEmbedder<Object> decoder = new DecoderEmbedder<Object>(
+                new ObjectDecoder(1048576, new ClassResolver() {
+                    private boolean failed;
+
+                    @Override
+                    public Class<?> resolve(String className) throws ClassNotFoundException {
+                        if (!failed && className.equals(Date.class.getName())) {
+                            failed = true;
+                            throw new ClassNotFoundException(className);
+                        }
+                        return resolver.resolve(className);
+                    }
+                }, true));
+
+        encoder.offer(new Date(0));
+        try {
+            decoder.offer(encoder.poll());
+            Assert.fail();
+        } catch (CodecEmbedderException e) {
+            Assert.assertTrue(e.getCause().getCause() instanceof ClassNotFoundException);
+        }
+
+        // The stream cannot be trusted anymore, so later objects are not
+        // decoded, even if their classes are resolved.
+        for (int i = 0; i < 2; i ++) {
+            encoder.offer(new Date(i));
+            try {
+                decoder.offer(encoder.poll());
+                Assert.fail();
+            } catch (CodecEmbedderException e) {
+                Assert.assertTrue(e.getCause() instanceof StreamCorruptedException);
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.internal;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map whose keys are primitive {@code int}s, such as stream IDs.
+ * Unlike a {@link java.util.HashMap} with {@link Integer} keys, it neither
+ * boxes the keys nor allocates an entry per mapping;  the keys and the values
+ * are stored in two arrays which are probed linearly.
+ * <p>
+ * This map does not permit {@code null} values and is not thread-safe.
+ *
+ * @param <V> the type of the values
+ */
+public class IntObjectHashMap<V> implements Iterable<IntObjectHashMap.Entry<V>> {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 8;
+
+    /**
+     * A mapping of this map.
+     */
+    public interface Entry<V> {
+
+        /**
+         * Returns the key of this mapping.
+         */
+        int getKey();
+
+        /**
+         * Returns the value of this mapping.
+         */
+        V getValue();
+    }
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * Creates a new map with the default initial capacity.
+     */
+    public IntObjectHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a new map which holds the specified number of mappings without
+     * growing.
+     */
+    public IntObjectHashMap(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException(
+                    "initialCapacity: " + initialCapacity + " (expected: >= 0)");
+        }
+
+        // Keep the load factor at 0.5 at most so that the probe sequences stay short.
+        int capacity = 2;
+        while (capacity <= initialCapacity << 1) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private int index(int key) {
+        // Spread the sequential keys over the table.
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the number of mappings in this map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns {@code true} if and only if this map has no mapping.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns {@code true} if and only if this map has a mapping for the
+     * specified key.
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns the value the specified key is mapped to, or {@code null} if
+     * this map has no mapping for the key.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        for (int i = index(key);; i = (i + 1) & mask) {
+            Object value = values[i];
+            if (value == null) {
+                return null;
+            }
+            if (keys[i] == key) {
+                return (V) value;
+            }
+        }
+    }
+
+    /**
+     * Maps the specified key to the specified value.
+     *
+     * @return the value the key was mapped to, or {@code null} if this map
+     *         had no mapping for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+
+        int i = index(key);
+        for (;;) {
+            Object oldValue = values[i];
+            if (oldValue == null) {
+                break;
+            }
+            if (keys[i] == key) {
+                values[i] = value;
+                return (V) oldValue;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++ size > mask >>> 1) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the mapping for the specified key.
+     *
+     * @return the value the key was mapped to, or {@code null} if this map
+     *         had no mapping for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int i = index(key);
+        for (;;) {
+            Object value = values[i];
+            if (value == null) {
+                return null;
+            }
+            if (keys[i] == key) {
+                removeAt(i);
+                return (V) value;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Removes all mappings.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the keys of this map in no particular order.
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int j = 0;
+        for (int i = 0; i < values.length; i ++) {
+            if (values[i] != null) {
+                result[j ++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns an iterator over the mappings of this map in no particular order.
+     * The iterator returns the same {@link Entry} instance, updated for every
+     * mapping, and fails if this map is modified during the iteration.
+     */
+    public Iterator<Entry<V>> iterator() {
+        return new EntryIterator();
+    }
+
+    private void removeAt(int i) {
+        values[i] = null;
+        size --;
+
+        // Shift back the following mappings of the probe sequence instead of leaving a tombstone.
+        int j = i;
+        for (;;) {
+            j = (j + 1) & mask;
+            Object value = values[j];
+            if (value == null) {
+                return;
+            }
+            int k = index(keys[j]);
+            // Move the mapping unless its home slot lies cyclically within (i, j].
+            if (i <= j? i < k && k <= j : i < k || k <= j) {
+                continue;
+            }
+            keys[i] = keys[j];
+            values[i] = value;
+            values[j] = null;
+            i = j;
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i ++) {
+            Object value = oldValues[i];
+            if (value != null) {
+                int j = index(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = value;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append('{');
+        for (int i = 0; i < values.length; i ++) {
+            if (values[i] != null) {
+                if (buf.length() > 1) {
+                    buf.append(", ");
+                }
+                buf.append(keys[i]);
+                buf.append('=');
+                buf.append(values[i]);
+            }
+        }
+        buf.append('}');
+        return buf.toString();
+    }
+
+    private final class EntryIterator implements Iterator<Entry<V>>, Entry<V> {
+
+        private final Object[] values = IntObjectHashMap.this.values;
+        private final int expectedSize = size;
+        private int index = -1;
+        private int next = -1;
+
+        public boolean hasNext() {
+            if (values != IntObjectHashMap.this.values || expectedSize != size) {
+                throw new IllegalStateException("modified during iteration");
+            }
+            if (next < 0) {
+                next = index + 1;
+                while (next < values.length && values[next] == null) {
+                    next ++;
+                }
+            }
+            return next < values.length;
+        }
+
+        public Entry<V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            index = next;
+            next = -1;
+            return this;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public int getKey() {
+            return keys[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (V) values[index];
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@code long} counter which is updated frequently by many threads but read
+ * rarely.  Unlike an {@link java.util.concurrent.atomic.AtomicLong}, the
+ * updates are spread over several cells, picked by the ID of the updating
+ * thread and laid out on different cache lines, so that the threads do not
+ * contend on a single memory location.  Reading the value sums all cells.
+ */
+public final class StripedLongCounter {
+
+    /**
+     * The distance between two cells, in {@code long}s, so that they do not share a cache line.
+     */
+    private static final int STRIDE = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    /**
+     * Creates a new counter with a number of cells suited to the number of processors.
+     */
+    public StripedLongCounter() {
+        this(Runtime.getRuntime().availableProcessors() << 1);
+    }
+
+    /**
+     * Creates a new counter with at least the given number of cells.
+     */
+    public StripedLongCounter(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes: " + stripes + " (expected: > 0)");
+        }
+        int length = 1;
+        while (length < stripes) {
+            length <<= 1;
+        }
+        mask = length - 1;
+        cells = new AtomicLongArray(length * STRIDE);
+    }
+
+    /**
+     * Adds the given value, which may be negative, to this counter.
+     */
+    public void add(long delta) {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ id >>> 32) * 0x9E3779B9;
+        cells.getAndAdd(((hash ^ hash >>> 16) & mask) * STRIDE, delta);
+    }
+
+    /**
+     * Returns the sum of all the values added so far.  The sum is not an atomic
+     * snapshot if the counter is updated concurrently.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += STRIDE) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(sum());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link IntObjectHashMap}.
+ */
+public class IntObjectHashMapTest {
+
+    @Test
+    public void putGetRemove() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<String>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(1, "a"));
+        assertNull(map.put(3, "b"));
+        assertEquals("a", map.put(1, "c"));
+        assertEquals(2, map.size());
+        assertEquals("c", map.get(1));
+        assertEquals("b", map.get(3));
+        assertNull(map.get(5));
+        assertTrue(map.containsKey(3));
+        assertFalse(map.containsKey(-3));
+
+        assertEquals("c", map.remove(1));
+        assertNull(map.remove(1));
+        assertEquals(1, map.size());
+        assertArrayEquals(new int[] { 3 }, map.keys());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(3));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullValue() {
+        new IntObjectHashMap<String>().put(1, null);
+    }
+
+    @Test
+    public void iterator() {
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<Integer>(4);
+        for (int i = 1; i < 100; i += 2) {
+            map.put(i, Integer.valueOf(-i));
+        }
+
+        int[] keys = new int[map.size()];
+        int n = 0;
+        for (IntObjectHashMap.Entry<Integer> e: map) {
+            assertEquals(-e.getKey(), e.getValue().intValue());
+            keys[n ++] = e.getKey();
+        }
+        assertEquals(50, n);
+        Arrays.sort(keys);
+        for (int i = 0; i < keys.length; i ++) {
+            assertEquals(2 * i + 1, keys[i]);
+        }
+    }
+
+    @Test
+    public void randomOperations() {
+        // Exercise the collisions and the backward shift of removal against a HashMap.
+        Random random = new Random(42);
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<Integer>();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 100000; i ++) {
+            int key = random.nextInt(512) * 1024;
+            Integer value = Integer.valueOf(i);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Integer, Integer> e: expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey().intValue()));
+        }
+        assertEquals(expected.size(), map.keys().length);
+    }
+}
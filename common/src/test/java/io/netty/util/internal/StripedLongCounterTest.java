@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.internal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class StripedLongCounterTest {
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final StripedLongCounter counter = new StripedLongCounter(4);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i ++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j ++) {
+                        counter.add(3);
+                        counter.add(-1);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t: threads) {
+            t.join();
+        }
+        assertEquals(threads.length * 20000L, counter.sum());
+        assertEquals("160000", counter.toString());
+    }
+}
@@ -15,7 +15,11 @@
  */
 package io.netty.handler.ssl;
 
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 import javax.net.ssl.SSLEngine;
 
@@ -32,16 +36,44 @@ import javax.net.ssl.SSLEngine;
  * required buffer is much smaller than that, and therefore allocating a 17KiB
  * buffer for every 'wrap' and 'unwrap' operation wastes a lot of memory
  * bandwidth, resulting in the application performance degradation.
+ *
+ * <h3>Thread caches</h3>
+ * <p>
+ * Every thread which acquires a buffer from this pool (usually an I/O thread)
+ * gets a small cache of its own, so that acquiring and releasing a buffer
+ * does not require any synchronization in most cases.  The buffers which do
+ * not fit into the thread cache are kept in a shared overflow pool.  The
+ * capacity of the thread caches is reserved from the maximum pool size, and
+ * therefore the pool never holds more than {@link #getMaxPoolSize()} bytes
+ * in total.  The reservation of a thread cache is returned to the pool when
+ * its thread dies.
  */
 public class SslBufferPool {
 
     // Add 1024 as a room for compressed data and another 1024 for Apache Harmony compatibility.
     private static final int MAX_PACKET_SIZE = 16665 + 2048;
     private static final int DEFAULT_POOL_SIZE = MAX_PACKET_SIZE * 1024;
+    private static final int DEFAULT_THREAD_CACHE_SIZE = 4;
 
-    private final ByteBuffer[] pool;
     private final int maxBufferCount;
+    private final int threadCacheSize;
+    private final boolean allocateDirect;
+
+    private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            return newThreadCache();
+        }
+    };
+
+    // The fields below are guarded by 'this'.
+    private final ByteBuffer[] pool;
     private int index;
+    private int reservedBufferCount;
+    private final List<ThreadCache> threadCaches = new ArrayList<ThreadCache>();
+    private long reclaimedThreadCacheHits;
+    private long reclaimedPoolHits;
+    private long reclaimedAllocations;
 
     /**
      * Creates a new buffer pool whose size is {@code 18113536}, which can
@@ -57,9 +89,37 @@ public class SslBufferPool {
      * @param maxPoolSize the maximum number of bytes that this pool can hold
      */
     public SslBufferPool(int maxPoolSize) {
+        this(maxPoolSize, false);
+    }
+
+    /**
+     * Creates a new buffer pool.
+     *
+     * @param maxPoolSize    the maximum number of bytes that this pool can hold
+     * @param allocateDirect {@code true} to allocate direct buffers,
+     *                       {@code false} to allocate heap buffers
+     */
+    public SslBufferPool(int maxPoolSize, boolean allocateDirect) {
+        this(maxPoolSize, DEFAULT_THREAD_CACHE_SIZE, allocateDirect);
+    }
+
+    /**
+     * Creates a new buffer pool.
+     *
+     * @param maxPoolSize     the maximum number of bytes that this pool can hold
+     * @param threadCacheSize the maximum number of buffers that the cache of
+     *                        each thread can hold.  {@code 0} disables the
+     *                        thread caches.
+     * @param allocateDirect  {@code true} to allocate direct buffers,
+     *                        {@code false} to allocate heap buffers
+     */
+    public SslBufferPool(int maxPoolSize, int threadCacheSize, boolean allocateDirect) {
         if (maxPoolSize <= 0) {
             throw new IllegalArgumentException("maxPoolSize: " + maxPoolSize);
         }
+        if (threadCacheSize < 0) {
+            throw new IllegalArgumentException("threadCacheSize: " + threadCacheSize);
+        }
 
         int maxBufferCount = maxPoolSize / MAX_PACKET_SIZE;
         if (maxPoolSize % MAX_PACKET_SIZE != 0) {
@@ -68,6 +128,8 @@ public class SslBufferPool {
 
         pool = new ByteBuffer[maxBufferCount];
         this.maxBufferCount = maxBufferCount;
+        this.threadCacheSize = threadCacheSize;
+        this.allocateDirect = allocateDirect;
     }
 
     /**
@@ -78,6 +140,13 @@ public class SslBufferPool {
         return maxBufferCount * MAX_PACKET_SIZE;
     }
 
+    /**
+     * Returns {@code true} if and only if this pool allocates direct buffers.
+     */
+    public boolean isAllocateDirect() {
+        return allocateDirect;
+    }
+
     /**
      * Returns the number of bytes which were allocated but have not been
      * acquired yet.  You can estimate how optimal the specified maximum pool
@@ -86,20 +155,173 @@ public class SslBufferPool {
      * value, it means the pool is wasting the heap space.
      */
     public synchronized int getUnacquiredPoolSize() {
-        return index * MAX_PACKET_SIZE;
+        int count = index;
+        for (ThreadCache c: threadCaches) {
+            count += c.size;
+        }
+        return count * MAX_PACKET_SIZE;
     }
 
-    synchronized ByteBuffer acquire() {
-        if (index == 0) {
-            return ByteBuffer.allocate(MAX_PACKET_SIZE);
+    /**
+     * Returns the number of acquisitions which were served by the cache of
+     * the acquiring thread.
+     */
+    public synchronized long getThreadCacheHitCount() {
+        long count = reclaimedThreadCacheHits;
+        for (ThreadCache c: threadCaches) {
+            count += c.threadCacheHits;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of acquisitions which were served by the shared
+     * overflow pool.
+     */
+    public synchronized long getPoolHitCount() {
+        long count = reclaimedPoolHits;
+        for (ThreadCache c: threadCaches) {
+            count += c.poolHits;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of acquisitions which required a new buffer to be
+     * allocated.  If this value keeps increasing, the pool is getting
+     * exhausted.
+     */
+    public synchronized long getAllocationCount() {
+        long count = reclaimedAllocations;
+        for (ThreadCache c: threadCaches) {
+            count += c.allocations;
+        }
+        return count;
+    }
+
+    ByteBuffer acquire() {
+        ThreadCache cache = threadCache.get();
+        ByteBuffer buf = cache.poll();
+        if (buf != null) {
+            cache.threadCacheHits ++;
+            return (ByteBuffer) buf.clear();
+        }
+
+        synchronized (this) {
+            if (index != 0) {
+                buf = pool[-- index];
+                pool[index] = null;
+            }
+        }
+
+        if (buf != null) {
+            cache.poolHits ++;
+            return (ByteBuffer) buf.clear();
+        }
+
+        cache.allocations ++;
+        if (allocateDirect) {
+            return ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
         } else {
-            return (ByteBuffer) pool[-- index].clear();
+            return ByteBuffer.allocate(MAX_PACKET_SIZE);
+        }
+    }
+
+    void release(ByteBuffer buffer) {
+        if (threadCache.get().offer(buffer)) {
+            return;
+        }
+
+        synchronized (this) {
+            if (index < maxBufferCount - reservedBufferCount) {
+                pool[index ++] = buffer;
+            }
         }
     }
 
-    synchronized void release(ByteBuffer buffer) {
-        if (index < maxBufferCount) {
-            pool[index ++] = buffer;
+    /**
+     * Creates the cache of the current thread, reserving its capacity from
+     * the maximum pool size.
+     */
+    private synchronized ThreadCache newThreadCache() {
+        if (maxBufferCount - reservedBufferCount < threadCacheSize) {
+            reclaimThreadCaches();
+        }
+
+        int capacity = Math.min(threadCacheSize, maxBufferCount - reservedBufferCount);
+        reservedBufferCount += capacity;
+
+        // Discard the buffers in the shared pool which do not fit anymore.
+        int maxIndex = maxBufferCount - reservedBufferCount;
+        while (index > maxIndex) {
+            pool[-- index] = null;
+        }
+
+        ThreadCache cache = new ThreadCache(Thread.currentThread(), capacity);
+        threadCaches.add(cache);
+        return cache;
+    }
+
+    /**
+     * Returns the reserved capacity of the caches whose threads have died.
+     */
+    private void reclaimThreadCaches() {
+        assert Thread.holdsLock(this);
+
+        for (Iterator<ThreadCache> i = threadCaches.iterator(); i.hasNext();) {
+            ThreadCache c = i.next();
+            Thread t = c.thread.get();
+            if (t != null && t.isAlive()) {
+                continue;
+            }
+
+            i.remove();
+            reservedBufferCount -= c.buffers.length;
+            reclaimedThreadCacheHits += c.threadCacheHits;
+            reclaimedPoolHits += c.poolHits;
+            reclaimedAllocations += c.allocations;
+        }
+    }
+
+    /**
+     * The buffer cache of a thread.  Only the owner thread updates its
+     * fields, and other threads read them only to calculate the metrics.
+     */
+    private static final class ThreadCache {
+        final WeakReference<Thread> thread;
+        final ByteBuffer[] buffers;
+        volatile int size;
+        volatile long threadCacheHits;
+        volatile long poolHits;
+        volatile long allocations;
+
+        ThreadCache(Thread thread, int capacity) {
+            this.thread = new WeakReference<Thread>(thread);
+            buffers = new ByteBuffer[capacity];
+        }
+
+        ByteBuffer poll() {
+            int size = this.size;
+            if (size == 0) {
+                return null;
+            }
+
+            size --;
+            ByteBuffer buf = buffers[size];
+            buffers[size] = null;
+            this.size = size;
+            return buf;
+        }
+
+        boolean offer(ByteBuffer buffer) {
+            int size = this.size;
+            if (size == buffers.length) {
+                return false;
+            }
+
+            buffers[size] = buffer;
+            this.size = size + 1;
+            return true;
         }
     }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.ssl;
+
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLEngine;
+
+import io.netty.util.ExternalResourceReleasable;
+import io.netty.util.internal.ExecutorUtil;
+import io.netty.util.internal.QueueFactory;
+
+/**
+ * An {@link Executor} which runs the delegated tasks of {@link SSLEngine}s
+ * (i.e. the expensive key exchange computations of SSL / TLS handshakes)
+ * off the I/O threads, running at most the specified number of tasks at the
+ * same time.
+ * <p>
+ * An {@link SslHandler} submits at most one task at a time, and stops
+ * reading from its channel until the task is complete.  Therefore, the
+ * maximum number of active tasks is also the maximum number of handshakes
+ * which perform their computations at the same time, and the other
+ * handshakes wait in the queue of this executor without consuming any CPU.
+ * <pre>
+ * {@link SslDelegatedTaskExecutor} executor = new {@link SslDelegatedTaskExecutor}(4);
+ * ...
+ * // In your ChannelPipelineFactory:
+ * pipeline.addLast("ssl", new {@link SslHandler}(engine, executor));
+ * </pre>
+ * If a task is rejected by the underlying {@link Executor}, it is run by the
+ * caller thread.
+ *
+ * @apiviz.landmark
+ */
+public class SslDelegatedTaskExecutor implements Executor, ExternalResourceReleasable {
+
+    private final Executor executor;
+    private final int maxActiveTasks;
+    private final Queue<Runnable> tasks = QueueFactory.createQueue(Runnable.class);
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger activeTasks = new AtomicInteger();
+    private final AtomicLong completedTasks = new AtomicLong();
+
+    /**
+     * Creates a new instance which runs the tasks in a new cached thread
+     * pool.
+     *
+     * @param maxActiveTasks the maximum number of the tasks which run at the
+     *                       same time, which is usually the number of the
+     *                       available processors
+     */
+    public SslDelegatedTaskExecutor(int maxActiveTasks) {
+        this(Executors.newCachedThreadPool(), maxActiveTasks);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param executor       the {@link Executor} which runs the tasks
+     * @param maxActiveTasks the maximum number of the tasks which run at the
+     *                       same time
+     */
+    public SslDelegatedTaskExecutor(Executor executor, int maxActiveTasks) {
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        if (maxActiveTasks <= 0) {
+            throw new IllegalArgumentException(
+                    "maxActiveTasks: " + maxActiveTasks + " (expected: > 0)");
+        }
+        this.executor = executor;
+        this.maxActiveTasks = maxActiveTasks;
+    }
+
+    /**
+     * Returns the maximum number of the tasks which run at the same time.
+     */
+    public int getMaxActiveTasks() {
+        return maxActiveTasks;
+    }
+
+    /**
+     * Returns the number of the tasks which are running now.
+     */
+    public int getActiveTaskCount() {
+        return activeTasks.get();
+    }
+
+    /**
+     * Returns the number of the tasks which are waiting for one of the
+     * active tasks to complete.
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Returns the number of the completed tasks.
+     */
+    public long getCompletedTaskCount() {
+        return completedTasks.get();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+
+        queueDepth.incrementAndGet();
+        tasks.offer(task);
+        scheduleTasks();
+    }
+
+    private void scheduleTasks() {
+        for (;;) {
+            int active = activeTasks.get();
+            if (active >= maxActiveTasks || tasks.isEmpty()) {
+                return;
+            }
+            if (!activeTasks.compareAndSet(active, active + 1)) {
+                continue;
+            }
+
+            Runnable task = tasks.poll();
+            if (task == null) {
+                // Another thread took the task - give the slot back and
+                // check again so that no task is left behind.
+                activeTasks.decrementAndGet();
+                continue;
+            }
+
+            queueDepth.decrementAndGet();
+            ActiveTask activeTask = new ActiveTask(task);
+            try {
+                executor.execute(activeTask);
+            } catch (RejectedExecutionException e) {
+                activeTask.run();
+            }
+        }
+    }
+
+    /**
+     * Terminates the underlying {@link Executor}.
+     */
+    @Override
+    public void releaseExternalResources() {
+        ExecutorUtil.terminate(executor);
+    }
+
+    private final class ActiveTask implements Runnable {
+        private final Runnable task;
+
+        ActiveTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                completedTasks.incrementAndGet();
+                activeTasks.decrementAndGet();
+                scheduleTasks();
+            }
+        }
+    }
+}
@@ -20,10 +20,15 @@ import static io.netty.channel.Channels.*;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import javax.net.ssl.SSLEngine;
@@ -31,6 +36,7 @@ import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLEngineResult.HandshakeStatus;
 import javax.net.ssl.SSLEngineResult.Status;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
 
 import io.netty.buffer.ChannelBuffer;
 import io.netty.buffer.ChannelBuffers;
@@ -47,6 +53,9 @@ import io.netty.channel.DownstreamMessageEvent;
 import io.netty.channel.ExceptionEvent;
 import io.netty.channel.LifeCycleAwareChannelHandler;
 import io.netty.channel.MessageEvent;
+import io.netty.channel.UpstreamMessageEvent;
+import io.netty.channel.socket.Worker;
+import io.netty.channel.socket.nio.NioChannel;
 import io.netty.handler.codec.frame.FrameDecoder;
 import io.netty.logging.InternalLogger;
 import io.netty.logging.InternalLoggerFactory;
@@ -94,6 +103,39 @@ import io.netty.util.internal.QueueFactory;
  *   <li><a href="http://www.oracle.com/technetwork/java/javase/documentation/tlsreadme2-176330.html">Phased Approach to Fixing the TLS Renegotiation Issue</a></li>
  * </ul>
  *
+ * <h3>Running the delegated tasks asynchronously</h3>
+ * <p>
+ * By default, the delegated tasks of the {@link SSLEngine}, which perform
+ * the expensive key exchange computations of a handshake, are run by the
+ * I/O thread, blocking all other channels handled by the same thread.  If
+ * an {@link Executor} is specified in the constructor, {@link SslHandler}
+ * runs the delegated tasks with it instead.  While the tasks are running,
+ * {@link SslHandler} stops reading from the channel and keeps the received
+ * records, and once they are complete, it resumes the handshake in the I/O
+ * thread of the channel.  {@link SslDelegatedTaskExecutor} limits the
+ * number of the handshakes whose tasks run at the same time.
+ *
+ * <h3>Handshake metrics and session resumption</h3>
+ * <p>
+ * An {@link SslHandshakeListener} added via
+ * {@link #addHandshakeListener(SslHandshakeListener)} is notified with the
+ * negotiated session, whether it was resumed, and the duration of every
+ * handshake.  {@link SslHandshakeStatistics} collects the handshake metrics
+ * and {@link SslSessionCache} manages the resumable sessions.  A handshake
+ * is reported as resumed only if an {@link SslSessionCache} added as a
+ * listener has cached the negotiated session.
+ *
+ * <h3>Coalescing records</h3>
+ * <p>
+ * By default, {@link SslHandler} unwraps one SSL / TLS record per decode
+ * call and sends one encrypted write request per record downstream.  If
+ * {@link #setCoalesceRecords(boolean) coalesceRecords} is {@code true}, all
+ * complete records in the received data are unwrapped in one pass into a
+ * single plaintext buffer, and all pending write requests are wrapped in
+ * one pass and written with a single write request.  This
+ * reduces the number of events and lock acquisitions considerably on a
+ * high-throughput connection.
+ *
  * <h3>Closing the session</h3>
  * <p>
  * To close the SSL session, the {@link #close()} method should be
@@ -147,6 +189,8 @@ import io.netty.util.internal.QueueFactory;
  * </ol>
  * @apiviz.landmark
  * @apiviz.uses io.netty.handler.ssl.SslBufferPool
+ * @apiviz.uses io.netty.handler.ssl.SslDelegatedTaskExecutor
+ * @apiviz.has io.netty.handler.ssl.SslHandshakeListener oneway - - notifies
  */
 public class SslHandler extends FrameDecoder
                         implements ChannelDownstreamHandler,
@@ -157,6 +201,12 @@ public class SslHandler extends FrameDecoder
 
     private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
 
+    /**
+     * The maximum number of bytes offered as a single encrypted write request
+     * when {@link #isCoalesceRecords() coalesceRecords} is {@code true}.
+     */
+    private static final int MAX_COALESCED_WRITE_SIZE = 16 * 16384;
+
     private static final Pattern IGNORABLE_ERROR_MESSAGE = Pattern.compile(
             "^.*(?:connection.*reset|connection.*closed|broken.*pipe).*$",
             Pattern.CASE_INSENSITIVE);
@@ -174,6 +224,10 @@ public class SslHandler extends FrameDecoder
         return defaultBufferPool;
     }
 
+    private static final int TASKS_SUBMITTING = 0;
+    private static final int TASKS_SUBMITTED = 1;
+    private static final int TASKS_COMPLETED = 2;
+
     private volatile ChannelHandlerContext ctx;
     private final SSLEngine engine;
     private final SslBufferPool bufferPool;
@@ -195,6 +249,19 @@ public class SslHandler extends FrameDecoder
     private final Queue<MessageEvent> pendingEncryptedWrites = QueueFactory.createQueue(MessageEvent.class);
     private final NonReentrantLock pendingEncryptedWritesLock = new NonReentrantLock();
     private volatile boolean issueHandshake;
+    private volatile boolean coalesceRecords;
+    private final List<SslHandshakeListener> handshakeListeners =
+        new CopyOnWriteArrayList<SslHandshakeListener>();
+    // Guarded by handshakeLock
+    private long handshakeStartNanos = -1;
+    private boolean delegatedTasksPending;
+    private boolean readSuspended;
+    /**
+     * Whether the channel is to be readable once the delegated tasks are
+     * complete, which is changed by the requests made while they run
+     */
+    private boolean readRequested;
+    private ChannelBuffer pendingNetData;
     
     private static final ChannelFutureListener HANDSHAKE_LISTENER = new ChannelFutureListener() {
 
@@ -258,7 +325,8 @@ public class SslHandler extends FrameDecoder
      *        the {@link SSLEngine} this handler will use
      * @param delegatedTaskExecutor
      *        the {@link Executor} which will execute the delegated task
-     *        that {@link SSLEngine#getDelegatedTask()} will return
+     *        that {@link SSLEngine#getDelegatedTask()} will return,
+     *        asynchronously to the I/O thread
      */
     public SslHandler(SSLEngine engine, Executor delegatedTaskExecutor) {
         this(engine, getDefaultBufferPool(), delegatedTaskExecutor);
@@ -274,7 +342,8 @@ public class SslHandler extends FrameDecoder
      *        the buffers required by the {@link SSLEngine}
      * @param delegatedTaskExecutor
      *        the {@link Executor} which will execute the delegated task
-     *        that {@link SSLEngine#getDelegatedTask()} will return
+     *        that {@link SSLEngine#getDelegatedTask()} will return,
+     *        asynchronously to the I/O thread
      */
     public SslHandler(SSLEngine engine, SslBufferPool bufferPool, Executor delegatedTaskExecutor) {
         this(engine, bufferPool, false, delegatedTaskExecutor);
@@ -290,7 +359,8 @@ public class SslHandler extends FrameDecoder
      *        by the {@link SSLEngine}
      * @param delegatedTaskExecutor
      *        the {@link Executor} which will execute the delegated task
-     *        that {@link SSLEngine#getDelegatedTask()} will return
+     *        that {@link SSLEngine#getDelegatedTask()} will return,
+     *        asynchronously to the I/O thread
      */
     public SslHandler(SSLEngine engine, boolean startTls, Executor delegatedTaskExecutor) {
         this(engine, getDefaultBufferPool(), startTls, delegatedTaskExecutor);
@@ -309,7 +379,8 @@ public class SslHandler extends FrameDecoder
      *        by the {@link SSLEngine}
      * @param delegatedTaskExecutor
      *        the {@link Executor} which will execute the delegated task
-     *        that {@link SSLEngine#getDelegatedTask()} will return
+     *        that {@link SSLEngine#getDelegatedTask()} will return,
+     *        asynchronously to the I/O thread
      */
     public SslHandler(SSLEngine engine, SslBufferPool bufferPool, boolean startTls, Executor delegatedTaskExecutor) {
         if (engine == null) {
@@ -355,6 +426,7 @@ public class SslHandler extends FrameDecoder
                 return this.handshakeFuture;
             } else {
                 handshaking = true;
+                handshakeStartNanos = System.nanoTime();
                 try {
                     engine.beginHandshake();
                     runDelegatedTasks();
@@ -425,6 +497,44 @@ public class SslHandler extends FrameDecoder
     public boolean isIssueHandshake() {
         return issueHandshake;
     }
+
+    /**
+     * Returns {@code true} if and only if multiple SSL / TLS records are
+     * unwrapped and wrapped in one pass.
+     */
+    public boolean isCoalesceRecords() {
+        return coalesceRecords;
+    }
+
+    /**
+     * Enables or disables unwrapping all complete records of the received
+     * data into a single plaintext buffer, and wrapping all pending write
+     * requests into a single network buffer.
+     */
+    public void setCoalesceRecords(boolean coalesceRecords) {
+        this.coalesceRecords = coalesceRecords;
+    }
+
+    /**
+     * Adds the specified {@link SslHandshakeListener} which is notified
+     * when a handshake succeeds or fails.
+     */
+    public void addHandshakeListener(SslHandshakeListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+        handshakeListeners.add(listener);
+    }
+
+    /**
+     * Removes the specified {@link SslHandshakeListener}.
+     */
+    public void removeHandshakeListener(SslHandshakeListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+        handshakeListeners.remove(listener);
+    }
     
     @Override
     public void handleDownstream(
@@ -432,6 +542,11 @@ public class SslHandler extends FrameDecoder
         if (evt instanceof ChannelStateEvent) {
             ChannelStateEvent e = (ChannelStateEvent) evt;
             switch (e.getState()) {
+            case INTEREST_OPS:
+                if (setInterestOpsWhileReadSuspended(context, e)) {
+                    return;
+                }
+                break;
             case OPEN:
             case CONNECTED:
             case BOUND:
@@ -551,6 +666,15 @@ public class SslHandler extends FrameDecoder
     protected Object decode(
             final ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
 
+        synchronized (handshakeLock) {
+            if (delegatedTasksPending) {
+                // The engine can't unwrap anything until the delegated tasks
+                // are complete - keep what has been received so far.
+                addPendingNetData(buffer);
+                return null;
+            }
+        }
+
         if (buffer.readableBytes() < 5) {
             return null;
         }
@@ -623,6 +747,10 @@ public class SslHandler extends FrameDecoder
             return null;
         }
 
+        if (tls && coalesceRecords) {
+            packetLength += getCompleteRecordsLength(buffer, buffer.readerIndex() + packetLength);
+        }
+
         // We advance the buffer's readerIndex before calling unwrap() because
         // unwrap() can trigger FrameDecoder call decode(), this method, recursively.
         // The recursive call results in decoding the same packet twice if
@@ -642,6 +770,34 @@ public class SslHandler extends FrameDecoder
         return unwrap(ctx, channel, buffer, packetOffset, packetLength);
     }
 
+    /**
+     * Returns the total length of the complete SSLv3 / TLS records which
+     * start at the specified offset of the buffer.
+     */
+    private static int getCompleteRecordsLength(ChannelBuffer buffer, int offset) {
+        final int writerIndex = buffer.writerIndex();
+        int length = 0;
+        for (;;) {
+            int recordOffset = offset + length;
+            if (writerIndex - recordOffset < 5) {
+                break;
+            }
+
+            int contentType = buffer.getUnsignedByte(recordOffset);
+            if (contentType < 20 || contentType > 23 ||
+                buffer.getUnsignedByte(recordOffset + 1) != 3) {
+                break;
+            }
+
+            int recordLength = (getShort(buffer, recordOffset + 3) & 0xFFFF) + 5;
+            if (recordLength <= 5 || writerIndex - recordOffset < recordLength) {
+                break;
+            }
+            length += recordLength;
+        }
+        return length;
+    }
+
     /**
      * Reads a big-endian short integer from the buffer.  Please note that we do not use
      * {@link ChannelBuffer#getShort(int)} because it might be a little-endian buffer.
@@ -653,6 +809,10 @@ public class SslHandler extends FrameDecoder
     private ChannelFuture wrap(ChannelHandlerContext context, Channel channel)
             throws SSLException {
 
+        if (coalesceRecords) {
+            return wrapCoalesced(context, channel);
+        }
+
         ChannelFuture future = null;
         ChannelBuffer msg;
         ByteBuffer outNetBuf = bufferPool.acquire();
@@ -696,7 +856,7 @@ public class SslHandler extends FrameDecoder
                         if (result.bytesProduced() > 0) {
                             outNetBuf.flip();
                             msg = ChannelBuffers.buffer(outNetBuf.remaining());
-                            msg.writeBytes(outNetBuf.array(), 0, msg.capacity());
+                            msg.writeBytes(outNetBuf);
                             outNetBuf.clear();
 
                             if (pendingWrite.outAppBuf.hasRemaining()) {
@@ -730,7 +890,10 @@ public class SslHandler extends FrameDecoder
                                 needsUnwrap = true;
                                 break loop;
                             case NEED_TASK:
-                                runDelegatedTasks();
+                                if (runDelegatedTasks()) {
+                                    // Wrapped when the handshake is resumed.
+                                    break loop;
+                                }
                                 break;
                             case FINISHED:
                             case NOT_HANDSHAKING:
@@ -762,24 +925,150 @@ public class SslHandler extends FrameDecoder
             }
 
             if (!success) {
-                IllegalStateException cause =
-                    new IllegalStateException("SSLEngine already closed");
-                // Mark all remaining pending writes as failure if anything
-                // wrong happened before the write requests are wrapped.
-                // Please note that we do not call setFailure while a lock is
-                // acquired, to avoid a potential dead lock.
+                failPendingUnencryptedWrites();
+            }
+        }
+
+        if (needsUnwrap) {
+            unwrap(context, channel, ChannelBuffers.EMPTY_BUFFER, 0, 0);
+        }
+
+        if (future == null) {
+            future = succeededFuture(channel);
+        }
+        return future;
+    }
+
+    /**
+     * Wraps as many pending write requests as possible (up to
+     * {@link #MAX_COALESCED_WRITE_SIZE} bytes) and offers the records as a
+     * single encrypted write request.  Unlike
+     * {@link #wrap(ChannelHandlerContext, Channel)}, the lock of the pending
+     * write queue is acquired only once for the whole pass.  The records are
+     * wrapped into a pooled network buffer, whose content is copied out
+     * whenever it cannot hold another record.
+     */
+    private ChannelFuture wrapCoalesced(ChannelHandlerContext context, Channel channel)
+            throws SSLException {
+
+        ChannelFuture future = null;
+        ByteBuffer outNetBuf = bufferPool.acquire();
+        boolean success = true;
+        boolean offered = false;
+        boolean needsUnwrap = false;
+        try {
+            // Acquire a lock to make sure unencrypted data is polled
+            // in order and their encrypted counterpart is offered in
+            // order.
+            synchronized (pendingUnencryptedWrites) {
+                final int packetBufferSize = engine.getSession().getPacketBufferSize();
+                final List<ChannelFuture> writtenFutures = new ArrayList<ChannelFuture>();
+                final List<ChannelBuffer> records = new ArrayList<ChannelBuffer>();
+                int recordBytes = 0;
+
+                loop:
                 for (;;) {
-                    PendingWrite pendingWrite;
-                    synchronized (pendingUnencryptedWrites) {
-                        pendingWrite = pendingUnencryptedWrites.poll();
-                        if (pendingWrite == null) {
+                    PendingWrite pendingWrite = pendingUnencryptedWrites.peek();
+                    if (pendingWrite == null) {
+                        break;
+                    }
+
+                    ByteBuffer outAppBuf = pendingWrite.outAppBuf;
+                    if (outAppBuf == null) {
+                        // A write request with an empty buffer
+                        pendingUnencryptedWrites.remove();
+                        writtenFutures.add(pendingWrite.future);
+                        continue;
+                    }
+
+                    if (outNetBuf.remaining() < packetBufferSize) {
+                        // The network buffer cannot hold another record.
+                        recordBytes += drainRecords(outNetBuf, records);
+                        if (recordBytes >= MAX_COALESCED_WRITE_SIZE) {
+                            future = offerCoalescedWriteRequest(channel, records, writtenFutures);
+                            offered = true;
+                            records.clear();
+                            writtenFutures.clear();
+                            recordBytes = 0;
+                        }
+                    }
+
+                    SSLEngineResult result = null;
+                    try {
+                        synchronized (handshakeLock) {
+                            result = engine.wrap(outAppBuf, outNetBuf);
+                        }
+                    } finally {
+                        if (!outAppBuf.hasRemaining()) {
+                            pendingUnencryptedWrites.remove();
+                            writtenFutures.add(pendingWrite.future);
+                        }
+                    }
+
+                    if (result.bytesProduced() > 0) {
+                        continue;
+                    }
+                    if (result.getStatus() == Status.CLOSED) {
+                        // SSLEngine has been closed already.
+                        // Any further write attempts should be denied.
+                        success = false;
+                        break;
+                    }
+
+                    final HandshakeStatus handshakeStatus = result.getHandshakeStatus();
+                    handleRenegotiation(handshakeStatus);
+                    switch (handshakeStatus) {
+                    case NEED_WRAP:
+                        if (outAppBuf.hasRemaining()) {
                             break;
+                        } else {
+                            break loop;
+                        }
+                    case NEED_UNWRAP:
+                        needsUnwrap = true;
+                        break loop;
+                    case NEED_TASK:
+                        if (runDelegatedTasks()) {
+                            // Wrapped when the handshake is resumed.
+                            break loop;
                         }
+                        break;
+                    case FINISHED:
+                    case NOT_HANDSHAKING:
+                        if (handshakeStatus == HandshakeStatus.FINISHED) {
+                            setHandshakeSuccess(channel);
+                        }
+                        if (result.getStatus() == Status.CLOSED) {
+                            success = false;
+                        }
+                        break loop;
+                    default:
+                        throw new IllegalStateException(
+                                "Unknown handshake status: " +
+                                handshakeStatus);
                     }
+                }
 
-                    pendingWrite.future.setFailure(cause);
+                drainRecords(outNetBuf, records);
+                if (!records.isEmpty() || !writtenFutures.isEmpty()) {
+                    future = offerCoalescedWriteRequest(channel, records, writtenFutures);
+                    offered = true;
                 }
             }
+        } catch (SSLException e) {
+            success = false;
+            setHandshakeFailure(channel, e);
+            throw e;
+        } finally {
+            bufferPool.release(outNetBuf);
+
+            if (offered) {
+                flushPendingEncryptedWrites(context);
+            }
+
+            if (!success) {
+                failPendingUnencryptedWrites();
+            }
         }
 
         if (needsUnwrap) {
@@ -792,6 +1081,99 @@ public class SslHandler extends FrameDecoder
         return future;
     }
 
+    /**
+     * Copies the records wrapped into the specified network buffer out into
+     * a new buffer, and clears the network buffer.
+     *
+     * @return the number of the copied bytes
+     */
+    private static int drainRecords(ByteBuffer outNetBuf, List<ChannelBuffer> records) {
+        outNetBuf.flip();
+        int length = outNetBuf.remaining();
+        if (length > 0) {
+            ChannelBuffer msg = ChannelBuffers.buffer(length);
+            msg.writeBytes(outNetBuf);
+            records.add(msg);
+        }
+        outNetBuf.clear();
+        return length;
+    }
+
+    /**
+     * Offers the specified records as a single encrypted write request
+     * whose completion notifies all the specified
+     * futures of the write requests it contains.
+     */
+    private ChannelFuture offerCoalescedWriteRequest(
+            Channel channel, List<ChannelBuffer> records, List<ChannelFuture> writtenFutures) {
+
+        ChannelBuffer msg;
+        switch (records.size()) {
+        case 0:
+            msg = ChannelBuffers.EMPTY_BUFFER;
+            break;
+        case 1:
+            msg = records.get(0);
+            break;
+        default:
+            msg = ChannelBuffers.wrappedBuffer(records.toArray(new ChannelBuffer[records.size()]));
+        }
+
+        final ChannelFuture future;
+        switch (writtenFutures.size()) {
+        case 0:
+            // Only partial data of a write request is written.
+            future = succeededFuture(channel);
+            break;
+        case 1:
+            future = writtenFutures.get(0);
+            break;
+        default:
+            final ChannelFuture[] futures =
+                writtenFutures.toArray(new ChannelFuture[writtenFutures.size()]);
+            future = future(channel);
+            future.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (future.isSuccess()) {
+                        for (ChannelFuture f: futures) {
+                            f.setSuccess();
+                        }
+                    } else {
+                        Throwable cause = future.getCause();
+                        for (ChannelFuture f: futures) {
+                            f.setFailure(cause);
+                        }
+                    }
+                }
+            });
+        }
+
+        offerEncryptedWriteRequest(new DownstreamMessageEvent(
+                channel, future, msg, channel.getRemoteAddress()));
+        return future;
+    }
+
+    private void failPendingUnencryptedWrites() {
+        IllegalStateException cause =
+            new IllegalStateException("SSLEngine already closed");
+        // Mark all remaining pending writes as failure if anything
+        // wrong happened before the write requests are wrapped.
+        // Please note that we do not call setFailure while a lock is
+        // acquired, to avoid a potential dead lock.
+        for (;;) {
+            PendingWrite pendingWrite;
+            synchronized (pendingUnencryptedWrites) {
+                pendingWrite = pendingUnencryptedWrites.poll();
+                if (pendingWrite == null) {
+                    break;
+                }
+            }
+
+            pendingWrite.future.setFailure(cause);
+        }
+    }
+
     private void offerEncryptedWriteRequest(MessageEvent encryptedWrite) {
         final boolean locked = pendingEncryptedWritesLock.tryLock();
         try {
@@ -835,7 +1217,7 @@ public class SslHandler extends FrameDecoder
                 if (result.bytesProduced() > 0) {
                     outNetBuf.flip();
                     ChannelBuffer msg = ChannelBuffers.buffer(outNetBuf.remaining());
-                    msg.writeBytes(outNetBuf.array(), 0, msg.capacity());
+                    msg.writeBytes(outNetBuf);
                     outNetBuf.clear();
 
                     future = future(channel);
@@ -902,6 +1284,8 @@ public class SslHandler extends FrameDecoder
             ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer, int offset, int length) throws SSLException {
         ByteBuffer inNetBuf = buffer.toByteBuffer(offset, length);
         ByteBuffer outAppBuf = bufferPool.acquire();
+        final boolean coalesceRecords = this.coalesceRecords;
+        ChannelBuffer frame = null;
 
         try {
             boolean needsWrap = false;
@@ -925,6 +1309,12 @@ public class SslHandler extends FrameDecoder
                     result = engine.unwrap(inNetBuf, outAppBuf);
                 }
 
+                if (coalesceRecords && outAppBuf.position() > 0) {
+                    // Move the plaintext out so that the next record
+                    // can be unwrapped into outAppBuf.
+                    frame = appendAppData(ctx, frame, outAppBuf, length);
+                }
+
                 final HandshakeStatus handshakeStatus = result.getHandshakeStatus();
                 handleRenegotiation(handshakeStatus);
                 switch (handshakeStatus) {
@@ -938,14 +1328,28 @@ public class SslHandler extends FrameDecoder
                     wrapNonAppData(ctx, channel);
                     break;
                 case NEED_TASK:
-                    runDelegatedTasks();
+                    if (runDelegatedTasks()) {
+                        // Unwrapped when the handshake is resumed.
+                        if (inNetBuf.hasRemaining()) {
+                            synchronized (handshakeLock) {
+                                addPendingNetData(ChannelBuffers.wrappedBuffer(inNetBuf));
+                            }
+                        }
+                        break loop;
+                    }
                     break;
                 case FINISHED:
                     setHandshakeSuccess(channel);
                     needsWrap = true;
+                    if (hasMoreRecords(coalesceRecords, inNetBuf, result)) {
+                        break;
+                    }
                     break loop;
                 case NOT_HANDSHAKING:
                     needsWrap = true;
+                    if (hasMoreRecords(coalesceRecords, inNetBuf, result)) {
+                        break;
+                    }
                     break loop;
                 default:
                     throw new IllegalStateException(
@@ -969,11 +1373,15 @@ public class SslHandler extends FrameDecoder
                 }
             }
 
+            if (coalesceRecords) {
+                return frame;
+            }
+
             outAppBuf.flip();
 
             if (outAppBuf.hasRemaining()) {
-                ChannelBuffer frame = ctx.getChannel().getConfig().getBufferFactory().getBuffer(outAppBuf.remaining());
-                frame.writeBytes(outAppBuf.array(), 0, frame.capacity());
+                frame = ctx.getChannel().getConfig().getBufferFactory().getBuffer(outAppBuf.remaining());
+                frame.writeBytes(outAppBuf);
                 return frame;
             } else {
                 return null;
@@ -986,6 +1394,35 @@ public class SslHandler extends FrameDecoder
         }
     }
 
+    /**
+     * Returns {@code true} if the coalesced unwrap loop should keep
+     * unwrapping the remaining records in the specified network buffer.
+     */
+    private boolean hasMoreRecords(
+            boolean coalesceRecords, ByteBuffer inNetBuf, SSLEngineResult result) {
+        return coalesceRecords && inNetBuf.hasRemaining() &&
+               result.getStatus() == Status.OK && result.bytesConsumed() > 0 &&
+               !engine.isInboundDone();
+    }
+
+    /**
+     * Appends the plaintext in the specified application buffer to the
+     * aggregated frame, creating the frame if necessary, and clears the
+     * application buffer.
+     */
+    private static ChannelBuffer appendAppData(
+            ChannelHandlerContext ctx, ChannelBuffer frame, ByteBuffer outAppBuf, int estimatedLength) {
+        outAppBuf.flip();
+        if (frame == null) {
+            frame = ChannelBuffers.dynamicBuffer(
+                    Math.max(estimatedLength, outAppBuf.remaining()),
+                    ctx.getChannel().getConfig().getBufferFactory());
+        }
+        frame.writeBytes(outAppBuf);
+        outAppBuf.clear();
+        return frame;
+    }
+
     private void handleRenegotiation(HandshakeStatus handshakeStatus) {
         if (handshakeStatus == HandshakeStatus.NOT_HANDSHAKING ||
             handshakeStatus == HandshakeStatus.FINISHED) {
@@ -1037,29 +1474,224 @@ public class SslHandler extends FrameDecoder
         }
     }
 
-    private void runDelegatedTasks() {
-        for (;;) {
-            final Runnable task;
-            synchronized (handshakeLock) {
-                task = engine.getDelegatedTask();
+    /**
+     * Runs the delegated tasks of the engine.
+     *
+     * @return {@code true} if the tasks are running asynchronously, which
+     *         means the engine can't make any progress until the handshake
+     *         is resumed by {@link #resumeHandshake()}
+     */
+    private boolean runDelegatedTasks() {
+        Channel channel = ctx.getChannel();
+        if (delegatedTaskExecutor == ImmediateExecutor.INSTANCE ||
+            !(channel instanceof NioChannel)) {
+            // An I/O thread of the old blocking I/O transport serves only
+            // one channel, so there's nothing to gain from suspending it.
+            for (;;) {
+                final Runnable task;
+                synchronized (handshakeLock) {
+                    task = engine.getDelegatedTask();
+                }
+
+                if (task == null) {
+                    break;
+                }
+
+                delegatedTaskExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (handshakeLock) {
+                            task.run();
+                        }
+                    }
+                });
             }
+            return false;
+        }
 
-            if (task == null) {
-                break;
+        final List<Runnable> tasks = new ArrayList<Runnable>(2);
+        synchronized (handshakeLock) {
+            if (delegatedTasksPending) {
+                return true;
+            }
+
+            for (;;) {
+                Runnable task = engine.getDelegatedTask();
+                if (task == null) {
+                    break;
+                }
+                tasks.add(task);
             }
 
+            if (tasks.isEmpty()) {
+                return false;
+            }
+            delegatedTasksPending = true;
+        }
+
+        suspendRead(channel);
+
+        // SUBMITTING -> SUBMITTED if the tasks are still running when
+        // execute() returns, SUBMITTING -> COMPLETED otherwise.
+        final AtomicInteger state = new AtomicInteger(TASKS_SUBMITTING);
+        final Worker worker = ((NioChannel) channel).getWorker();
+        try {
             delegatedTaskExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
-                    synchronized (handshakeLock) {
-                        task.run();
+                    try {
+                        for (Runnable task: tasks) {
+                            task.run();
+                        }
+                    } finally {
+                        if (!state.compareAndSet(TASKS_SUBMITTING, TASKS_COMPLETED)) {
+                            worker.executeInIoThread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    resumeHandshake();
+                                }
+                            });
+                        }
                     }
                 }
             });
+        } catch (RejectedExecutionException e) {
+            for (Runnable task: tasks) {
+                task.run();
+            }
+            state.set(TASKS_COMPLETED);
         }
+
+        if (state.compareAndSet(TASKS_SUBMITTING, TASKS_SUBMITTED)) {
+            return true;
+        }
+
+        // The tasks are complete already - the caller can go on.
+        synchronized (handshakeLock) {
+            delegatedTasksPending = false;
+        }
+        resumeRead(channel);
+        return false;
+    }
+
+    /**
+     * Continues the handshake in the I/O thread once the delegated tasks
+     * are complete, unwrapping the records received and wrapping the writes
+     * requested in the meantime.
+     */
+    private void resumeHandshake() {
+        ChannelHandlerContext ctx = this.ctx;
+        Channel channel = ctx.getChannel();
+        ChannelBuffer netData;
+        HandshakeStatus handshakeStatus;
+        synchronized (handshakeLock) {
+            delegatedTasksPending = false;
+            netData = pendingNetData;
+            pendingNetData = null;
+            handshakeStatus = engine.getHandshakeStatus();
+        }
+
+        try {
+            switch (handshakeStatus) {
+            case NEED_TASK:
+                runDelegatedTasks();
+                break;
+            case NEED_WRAP:
+                wrapNonAppData(ctx, channel);
+                break;
+            case NEED_UNWRAP:
+                if (netData == null) {
+                    unwrap(ctx, channel, ChannelBuffers.EMPTY_BUFFER, 0, 0);
+                }
+                break;
+            default:
+                break;
+            }
+
+            if (netData != null) {
+                // Let FrameDecoder decode the records as if they were just read.
+                handleUpstream(ctx, new UpstreamMessageEvent(
+                        channel, netData, channel.getRemoteAddress()));
+            }
+
+            // The writes requested while the tasks were running were not
+            // wrapped, and nothing else may trigger a wrap until the next
+            // write request.
+            boolean needsWrap;
+            synchronized (handshakeLock) {
+                needsWrap = !delegatedTasksPending;
+            }
+            if (needsWrap) {
+                synchronized (pendingUnencryptedWrites) {
+                    needsWrap = !pendingUnencryptedWrites.isEmpty();
+                }
+                if (needsWrap) {
+                    wrap(ctx, channel);
+                }
+            }
+        } catch (Exception e) {
+            fireExceptionCaught(ctx, e);
+        } finally {
+            resumeRead(channel);
+        }
+    }
+
+    private void addPendingNetData(ChannelBuffer buffer) {
+        assert Thread.holdsLock(handshakeLock);
+
+        if (pendingNetData == null) {
+            pendingNetData = ChannelBuffers.dynamicBuffer(buffer.readableBytes());
+        }
+        pendingNetData.writeBytes(buffer);
+    }
+
+    private void suspendRead(Channel channel) {
+        synchronized (handshakeLock) {
+            if (readSuspended || !channel.isReadable()) {
+                return;
+            }
+            readSuspended = true;
+            readRequested = true;
+        }
+        setInterestOps(ctx, succeededFuture(channel), channel.getInterestOps() & ~Channel.OP_READ);
+    }
+
+    private void resumeRead(Channel channel) {
+        synchronized (handshakeLock) {
+            if (!readSuspended || delegatedTasksPending) {
+                return;
+            }
+            readSuspended = false;
+            if (!readRequested) {
+                // Suspended by someone else in the meantime.
+                return;
+            }
+        }
+        setInterestOps(ctx, succeededFuture(channel), channel.getInterestOps() | Channel.OP_READ);
+    }
+
+    /**
+     * Records whether the channel is to be readable when the interest ops
+     * are changed while the read is suspended, and applies the other ops
+     * only, so that {@link #resumeRead(Channel)} restores what was
+     * requested last.
+     *
+     * @return {@code true} if the event has been handled
+     */
+    private boolean setInterestOpsWhileReadSuspended(ChannelHandlerContext context, ChannelStateEvent e) {
+        int interestOps = ((Integer) e.getValue()).intValue();
+        synchronized (handshakeLock) {
+            if (!readSuspended) {
+                return false;
+            }
+            readRequested = (interestOps & Channel.OP_READ) != 0;
+        }
+        setInterestOps(context, e.getFuture(), interestOps & ~Channel.OP_READ);
+        return true;
     }
 
     private void setHandshakeSuccess(Channel channel) {
+        long durationNanos;
         synchronized (handshakeLock) {
             handshaking = false;
             handshaken = true;
@@ -1067,18 +1699,70 @@ public class SslHandler extends FrameDecoder
             if (handshakeFuture == null) {
                 handshakeFuture = future(channel);
             }
+
+            durationNanos = getHandshakeDuration();
         }
 
         handshakeFuture.setSuccess();
+
+        if (!handshakeListeners.isEmpty()) {
+            SSLSession session = engine.getSession();
+            boolean resumed = isResumed(session);
+            for (SslHandshakeListener l: handshakeListeners) {
+                try {
+                    l.handshakeCompleted(this, session, resumed, durationNanos);
+                } catch (Throwable t) {
+                    if (logger.isWarnEnabled()) {
+                        logger.warn(
+                                "An exception was thrown by " +
+                                SslHandshakeListener.class.getSimpleName() + '.', t);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if the specified session has been cached by one of
+     * the {@link SslSessionCache}s listening to this handler, i.e. it was
+     * resumed rather than negotiated by a full handshake.
+     */
+    private boolean isResumed(SSLSession session) {
+        boolean clientMode = engine.getUseClientMode();
+        for (SslHandshakeListener l: handshakeListeners) {
+            if (l instanceof SslSessionCache &&
+                ((SslSessionCache) l).contains(clientMode, session)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the duration of the current handshake and forgets its start
+     * time, or returns {@code -1} if the handshake was not started by
+     * {@link #handshake()}.
+     */
+    private long getHandshakeDuration() {
+        assert Thread.holdsLock(handshakeLock);
+
+        long startNanos = handshakeStartNanos;
+        handshakeStartNanos = -1;
+        if (startNanos < 0) {
+            return -1;
+        }
+        return System.nanoTime() - startNanos;
     }
 
     private void setHandshakeFailure(Channel channel, SSLException cause) {
+        long durationNanos;
         synchronized (handshakeLock) {
             if (!handshaking) {
                 return;
             }
             handshaking = false;
             handshaken = false;
+            durationNanos = getHandshakeDuration();
 
             if (handshakeFuture == null) {
                 handshakeFuture = future(channel);
@@ -1102,6 +1786,18 @@ public class SslHandler extends FrameDecoder
         }
         
         handshakeFuture.setFailure(cause);
+
+        for (SslHandshakeListener l: handshakeListeners) {
+            try {
+                l.handshakeFailed(this, cause, durationNanos);
+            } catch (Throwable t) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn(
+                            "An exception was thrown by " +
+                            SslHandshakeListener.class.getSimpleName() + '.', t);
+                }
+            }
+        }
     }
 
     private void closeOutboundAndChannel(
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.ssl;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * Listens to the completion of the SSL / TLS handshakes performed by an
+ * {@link SslHandler}.  A listener is usually shared by many handlers, and
+ * therefore its implementation must be thread-safe.
+ *
+ * @see SslHandler#addHandshakeListener(SslHandshakeListener)
+ */
+public interface SslHandshakeListener {
+
+    /**
+     * Invoked when a handshake has been completed successfully.
+     *
+     * @param handler       the {@link SslHandler} which performed the handshake
+     * @param session       the negotiated session
+     * @param resumed       {@code true} if a session cached by an
+     *                      {@link SslSessionCache} listening to the handler
+     *                      was resumed, {@code false} otherwise
+     * @param durationNanos the duration of the handshake in nanoseconds, or
+     *                      {@code -1} if unknown
+     */
+    void handshakeCompleted(SslHandler handler, SSLSession session, boolean resumed, long durationNanos);
+
+    /**
+     * Invoked when a handshake has failed.
+     *
+     * @param handler       the {@link SslHandler} which performed the handshake
+     * @param cause         the cause of the failure
+     * @param durationNanos the duration of the handshake in nanoseconds, or
+     *                      {@code -1} if unknown
+     */
+    void handshakeFailed(SslHandler handler, Throwable cause, long durationNanos);
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.ssl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * An {@link SslHandshakeListener} which counts full, resumed and failed
+ * handshakes and records the handshake latency in a histogram.
+ * <p>
+ * The histogram has {@value #BUCKET_COUNT} buckets whose upper bounds grow
+ * in powers of two, starting from {@code 1} microsecond; the bucket {@code i}
+ * counts the handshakes which took less than {@code 2^i} microseconds, but
+ * not less than {@code 2^(i-1)} microseconds.  The last bucket counts
+ * everything longer.
+ * <pre>
+ * {@link SslHandshakeStatistics} stats = new {@link SslHandshakeStatistics}();
+ * ...
+ * {@link SslHandler} handler = new {@link SslHandler}(engine);
+ * handler.addHandshakeListener(stats);
+ * ...
+ * long resumed = stats.getResumedHandshakeCount();
+ * </pre>
+ */
+public class SslHandshakeStatistics implements SslHandshakeListener {
+
+    /**
+     * The number of the buckets of the latency histogram.
+     */
+    public static final int BUCKET_COUNT = 32;
+
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+    private final AtomicLong failedHandshakes = new AtomicLong();
+    private final AtomicLong totalDurationNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_COUNT);
+
+    @Override
+    public void handshakeCompleted(
+            SslHandler handler, SSLSession session, boolean resumed, long durationNanos) {
+        if (resumed) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+        record(durationNanos);
+    }
+
+    @Override
+    public void handshakeFailed(SslHandler handler, Throwable cause, long durationNanos) {
+        failedHandshakes.incrementAndGet();
+    }
+
+    private void record(long durationNanos) {
+        if (durationNanos < 0) {
+            return;
+        }
+
+        totalDurationNanos.addAndGet(durationNanos);
+        long micros = TimeUnit.NANOSECONDS.toMicros(durationNanos);
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        histogram.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+    }
+
+    /**
+     * Returns the number of the successful handshakes which did not resume
+     * a previous session.
+     */
+    public long getFullHandshakeCount() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * Returns the number of the successful handshakes which resumed a
+     * previous session.
+     */
+    public long getResumedHandshakeCount() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Returns the number of the failed handshakes.
+     */
+    public long getFailedHandshakeCount() {
+        return failedHandshakes.get();
+    }
+
+    /**
+     * Returns the average duration of the successful handshakes in
+     * nanoseconds, or {@code 0} if no handshake has been recorded.
+     */
+    public long getAverageHandshakeDuration() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i ++) {
+            count += histogram.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        return totalDurationNanos.get() / count;
+    }
+
+    /**
+     * Returns a snapshot of the latency histogram.
+     */
+    public long[] getHandshakeDurationHistogram() {
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i ++) {
+            snapshot[i] = histogram.get(i);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() +
+               "(full: " + getFullHandshakeCount() +
+               ", resumed: " + getResumedHandshakeCount() +
+               ", failed: " + getFailedHandshakeCount() +
+               ", avgDuration: " + getAverageHandshakeDuration() + "ns)";
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.ssl;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import io.netty.util.ExternalResourceReleasable;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+
+/**
+ * A bounded, striped cache of the SSL / TLS sessions negotiated by the
+ * {@link SslHandler}s of an {@link SSLContext}, which makes the session
+ * resumption of short-lived connections predictable.
+ * <p>
+ * The {@link SSLEngine} looks up a resumable session in the
+ * {@link SSLSessionContext} of its {@link SSLContext} by itself: by session ID
+ * on the server side, and by the peer host and port on the client side.
+ * This cache decides how long and how many of those sessions stay resumable.
+ * Every session negotiated by a full handshake is added to this cache, and
+ * an {@link SslHandler} this cache listens to reports a handshake as resumed
+ * when the negotiated session has the same ID with the cached one.  It
+ * is invalidated (i.e. removed from the {@link SSLSessionContext} too) when
+ * it expires, which is driven by a {@link Timer}, or when it is evicted to
+ * keep the cache within its maximum size.
+ * <p>
+ * Please note that session tickets (RFC 5077) are not supported because the
+ * {@link SSLEngine} implementation of the JDK does not support them.
+ *
+ * <h3>Server side</h3>
+ * <pre>
+ * {@link Timer} timer = new {@link HashedWheelTimer}();
+ * {@link SslSessionCache} cache = new {@link SslSessionCache}(sslContext, timer, 20480, 5, TimeUnit.MINUTES);
+ * ...
+ * // In your ChannelPipelineFactory:
+ * {@link SslHandler} handler = new {@link SslHandler}(cache.newServerEngine());
+ * handler.addHandshakeListener(cache);
+ * </pre>
+ *
+ * <h3>Client side</h3>
+ * The client-side sessions are reused only when the {@link SSLEngine} is
+ * created with the host and port of the peer, which is what
+ * {@link #newClientEngine(InetSocketAddress)} does:
+ * <pre>
+ * {@link SslHandler} handler = new {@link SslHandler}(cache.newClientEngine(remoteAddress));
+ * handler.addHandshakeListener(cache);
+ * </pre>
+ *
+ * The {@link Timer} should be stopped manually by calling
+ * {@link #releaseExternalResources()} or {@link Timer#stop()} when your
+ * application shuts down.
+ *
+ * @apiviz.uses io.netty.util.HashedWheelTimer
+ */
+public class SslSessionCache implements SslHandshakeListener, ExternalResourceReleasable {
+
+    private static final int STRIPE_COUNT = 16;
+
+    private final SSLContext context;
+    private final Timer timer;
+    private final long timeoutMillis;
+    private final int maxSize;
+    private final Stripe[] stripes;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param context  the {@link SSLContext} whose sessions are cached
+     * @param timer    the {@link Timer} which expires the cached sessions.
+     *                 The recommended {@link Timer} implementation is
+     *                 {@link HashedWheelTimer}.
+     * @param maxSize  the maximum number of the cached sessions
+     * @param timeout  the lifetime of a cached session
+     * @param unit     the {@link TimeUnit} of {@code timeout}
+     */
+    public SslSessionCache(SSLContext context, Timer timer, int maxSize, long timeout, TimeUnit unit) {
+        if (context == null) {
+            throw new NullPointerException("context");
+        }
+        if (timer == null) {
+            throw new NullPointerException("timer");
+        }
+        if (unit == null) {
+            throw new NullPointerException("unit");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize: " + maxSize + " (expected: > 0)");
+        }
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout: " + timeout + " (expected: > 0)");
+        }
+
+        this.context = context;
+        this.timer = timer;
+        this.maxSize = maxSize;
+        timeoutMillis = unit.toMillis(timeout);
+
+        int stripeCount = Math.min(STRIPE_COUNT, maxSize);
+        int stripeSize = (maxSize + stripeCount - 1) / stripeCount;
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i ++) {
+            stripes[i] = new Stripe(stripeSize);
+        }
+
+        // Let the SSLSessionContexts keep the sessions at least as long as
+        // this cache does.  The sessions which are not managed by this cache
+        // are still bounded by the same limits.
+        int timeoutSeconds = (int) Math.min(
+                Integer.MAX_VALUE, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis + 999));
+        configure(context.getServerSessionContext(), maxSize, timeoutSeconds);
+        configure(context.getClientSessionContext(), maxSize, timeoutSeconds);
+    }
+
+    private static void configure(SSLSessionContext ctx, int maxSize, int timeoutSeconds) {
+        if (ctx == null) {
+            return;
+        }
+        ctx.setSessionCacheSize(maxSize);
+        ctx.setSessionTimeout(timeoutSeconds);
+    }
+
+    /**
+     * Returns the {@link SSLContext} whose sessions are cached.
+     */
+    public SSLContext getContext() {
+        return context;
+    }
+
+    /**
+     * Returns the maximum number of the cached sessions.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the lifetime of a cached session in milliseconds.
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Returns the number of the cached sessions.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe s: stripes) {
+            synchronized (s) {
+                size += s.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Creates a new server-side {@link SSLEngine}.
+     */
+    public SSLEngine newServerEngine() {
+        SSLEngine engine = context.createSSLEngine();
+        engine.setUseClientMode(false);
+        return engine;
+    }
+
+    /**
+     * Creates a new client-side {@link SSLEngine} which resumes the session
+     * previously negotiated with the specified peer, if there is any.
+     */
+    public SSLEngine newClientEngine(InetSocketAddress remoteAddress) {
+        if (remoteAddress == null) {
+            throw new NullPointerException("remoteAddress");
+        }
+        return newClientEngine(remoteAddress.getHostName(), remoteAddress.getPort());
+    }
+
+    /**
+     * Creates a new client-side {@link SSLEngine} which resumes the session
+     * previously negotiated with the specified peer, if there is any.
+     */
+    public SSLEngine newClientEngine(String host, int port) {
+        SSLEngine engine = context.createSSLEngine(host, port);
+        engine.setUseClientMode(true);
+        return engine;
+    }
+
+    @Override
+    public void handshakeCompleted(
+            SslHandler handler, SSLSession session, boolean resumed, long durationNanos) {
+        if (resumed || !session.isValid()) {
+            return;
+        }
+
+        Object key = key(handler.getEngine().getUseClientMode(), session);
+        if (key != null) {
+            stripe(key).put(key, session);
+        }
+    }
+
+    /**
+     * Returns {@code true} if and only if the specified session, negotiated
+     * by a client-side or server-side {@link SSLEngine}, has the same ID with
+     * the session cached for its peer or ID.  {@link SslHandler} uses this
+     * to tell a resumed session from a newly negotiated one.
+     */
+    boolean contains(boolean clientMode, SSLSession session) {
+        Object key = key(clientMode, session);
+        if (key == null) {
+            return false;
+        }
+
+        Stripe stripe = stripe(key);
+        CachedSession entry;
+        synchronized (stripe) {
+            entry = stripe.get(key);
+        }
+        return entry != null && Arrays.equals(entry.session.getId(), session.getId());
+    }
+
+    private static Object key(boolean clientMode, SSLSession session) {
+        if (clientMode) {
+            if (session.getPeerHost() == null || session.getPeerPort() < 0) {
+                // Not resumable by the JDK anyway.
+                return null;
+            }
+            return session.getPeerHost() + ':' + session.getPeerPort();
+        }
+        return ByteBuffer.wrap(session.getId());
+    }
+
+    @Override
+    public void handshakeFailed(SslHandler handler, Throwable cause, long durationNanos) {
+        // Nothing to cache.
+    }
+
+    /**
+     * Invalidates and removes all cached sessions.
+     */
+    public void clear() {
+        for (Stripe s: stripes) {
+            s.clear();
+        }
+    }
+
+    /**
+     * Stops the {@link Timer} which was specified in the constructor of this
+     * cache.
+     */
+    @Override
+    public void releaseExternalResources() {
+        timer.stop();
+    }
+
+    private Stripe stripe(Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return stripes[(h & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    private final class Stripe extends LinkedHashMap<Object, CachedSession> {
+
+        private static final long serialVersionUID = -3553410264386400254L;
+
+        private final int maxStripeSize;
+
+        Stripe(int maxStripeSize) {
+            this.maxStripeSize = maxStripeSize;
+        }
+
+        void put(Object key, SSLSession session) {
+            CachedSession newEntry = new CachedSession(this, key, session);
+            CachedSession oldEntry;
+            synchronized (this) {
+                oldEntry = put(key, newEntry);
+            }
+
+            if (oldEntry != null) {
+                oldEntry.invalidate();
+            }
+            newEntry.timeout = timer.newTimeout(newEntry, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        void expire(CachedSession entry) {
+            synchronized (this) {
+                if (get(entry.key) != entry) {
+                    return;
+                }
+                remove(entry.key);
+            }
+            entry.session.invalidate();
+        }
+
+        @Override
+        public void clear() {
+            CachedSession[] entries;
+            synchronized (this) {
+                entries = values().toArray(new CachedSession[size()]);
+                super.clear();
+            }
+            for (CachedSession e: entries) {
+                e.invalidate();
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, CachedSession> eldest) {
+            if (size() <= maxStripeSize) {
+                return false;
+            }
+
+            // It is safe to invalidate the evicted session while the lock
+            // of this stripe is held because invalidate() never calls back
+            // this cache.
+            eldest.getValue().invalidate();
+            return true;
+        }
+    }
+
+    private static final class CachedSession implements TimerTask {
+        final Stripe stripe;
+        final Object key;
+        final SSLSession session;
+        volatile Timeout timeout;
+
+        CachedSession(Stripe stripe, Object key, SSLSession session) {
+            this.stripe = stripe;
+            this.key = key;
+            this.session = session;
+        }
+
+        void invalidate() {
+            Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            session.invalidate();
+        }
+
+        @Override
+        public void run(Timeout timeout) throws Exception {
+            stripe.expire(this);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.stream;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+
+/**
+ * Keeps the buffers a {@link ChunkedInput} reads its chunks into, so that a
+ * chunk can be read into the buffer of a chunk which has been written
+ * already.  Only a few buffers are kept because {@link ChunkedWriteHandler}
+ * stops fetching chunks while the channel is not writable; a buffer is
+ * allocated without being kept when all kept buffers are still being
+ * written.
+ */
+final class ChunkBufferPool {
+
+    private static final int MAX_BUFFERS = 4;
+
+    private final int chunkSize;
+    private final boolean direct;
+    private final ChannelBuffer[] buffers = new ChannelBuffer[MAX_BUFFERS];
+    private final boolean[] acquired = new boolean[MAX_BUFFERS];
+    private int size;
+
+    ChunkBufferPool(int chunkSize, boolean direct) {
+        this.chunkSize = chunkSize;
+        this.direct = direct;
+    }
+
+    /**
+     * Returns an empty buffer whose capacity is the chunk size.
+     */
+    synchronized ChannelBuffer acquire() {
+        for (int i = 0; i < size; i ++) {
+            if (!acquired[i]) {
+                acquired[i] = true;
+                ChannelBuffer buffer = buffers[i];
+                buffer.clear();
+                return buffer;
+            }
+        }
+
+        ChannelBuffer buffer = direct? ChannelBuffers.directBuffer(chunkSize) : ChannelBuffers.buffer(chunkSize);
+        if (size < MAX_BUFFERS) {
+            buffers[size] = buffer;
+            acquired[size] = true;
+            size ++;
+        }
+        return buffer;
+    }
+
+    /**
+     * Makes the specified chunk available to {@link #acquire()} again if it
+     * is one of the buffers kept by this pool.
+     */
+    synchronized void release(Object chunk) {
+        for (int i = 0; i < size; i ++) {
+            if (buffers[i] == chunk) {
+                acquired[i] = false;
+                return;
+            }
+        }
+    }
+}
@@ -15,27 +15,29 @@
  */
 package io.netty.handler.stream;
 
-import static io.netty.buffer.ChannelBuffers.*;
-
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 
+import io.netty.buffer.ChannelBuffer;
+import io.netty.channel.DefaultFileRegion;
 import io.netty.channel.FileRegion;
 
 /**
  * A {@link ChunkedInput} that fetches data from a file chunk by chunk.
  * <p>
- * If your operating system supports
- * <a href="http://en.wikipedia.org/wiki/Zero-copy">zero-copy file transfer</a>
- * such as {@code sendfile()}, you might want to use {@link FileRegion} instead.
+ * The buffers of the chunks are reused once {@link ChunkedWriteHandler} has
+ * written them, and the file is transferred as {@link FileRegion}s instead if
+ * {@link ChunkedWriteHandler} finds that nothing needs to see the content.
+ * Therefore, a chunk must not be retained after it has been written.
  */
-public class ChunkedFile implements ChunkedInput {
+public class ChunkedFile implements ChunkedRegionInput {
 
     private final RandomAccessFile file;
     private final long startOffset;
     private final long endOffset;
     private final int chunkSize;
+    private final ChunkBufferPool pool;
     private volatile long offset;
 
     /**
@@ -102,6 +104,7 @@ public class ChunkedFile implements ChunkedInput {
         this.offset = startOffset = offset;
         endOffset = offset + length;
         this.chunkSize = chunkSize;
+        pool = new ChunkBufferPool(chunkSize, false);
 
         file.seek(offset);
     }
@@ -145,9 +148,28 @@ public class ChunkedFile implements ChunkedInput {
         }
 
         int chunkSize = (int) Math.min(this.chunkSize, endOffset - offset);
-        byte[] chunk = new byte[chunkSize];
-        file.readFully(chunk);
+        ChannelBuffer chunk = pool.acquire();
+        file.readFully(chunk.array(), chunk.arrayOffset(), chunkSize);
+        chunk.writerIndex(chunkSize);
+        this.offset = offset + chunkSize;
+        return chunk;
+    }
+
+    @Override
+    public FileRegion nextRegion() throws Exception {
+        long offset = this.offset;
+        if (offset >= endOffset) {
+            return null;
+        }
+
+        int chunkSize = (int) Math.min(this.chunkSize, endOffset - offset);
+        file.seek(offset + chunkSize);
         this.offset = offset + chunkSize;
-        return wrappedBuffer(chunk);
+        return new DefaultFileRegion(file.getChannel(), offset, chunkSize, false);
+    }
+
+    @Override
+    public void releaseChunk(Object chunk) {
+        pool.release(chunk);
     }
 }
@@ -15,30 +15,33 @@
  */
 package io.netty.handler.stream;
 
-import static io.netty.buffer.ChannelBuffers.*;
-
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
+import io.netty.buffer.ChannelBuffer;
+import io.netty.channel.DefaultFileRegion;
 import io.netty.channel.FileRegion;
 
 /**
  * A {@link ChunkedInput} that fetches data from a file chunk by chunk using
  * NIO {@link FileChannel}.
  * <p>
- * If your operating system supports
- * <a href="http://en.wikipedia.org/wiki/Zero-copy">zero-copy file transfer</a>
- * such as {@code sendfile()}, you might want to use {@link FileRegion} instead.
+ * The chunks are read into direct buffers, which are reused once
+ * {@link ChunkedWriteHandler} has written them, and the file is transferred
+ * as {@link FileRegion}s instead if {@link ChunkedWriteHandler} finds that
+ * nothing needs to see the content.  Therefore, a chunk must not be retained
+ * after it has been written.
  */
-public class ChunkedNioFile implements ChunkedInput {
+public class ChunkedNioFile implements ChunkedRegionInput {
 
     private final FileChannel in;
     private long startOffset;
     private final long endOffset;
     private final int chunkSize;
+    private final ChunkBufferPool pool;
     private volatile long offset;
 
     /**
@@ -107,6 +110,7 @@ public class ChunkedNioFile implements ChunkedInput {
         }
         this.in = in;
         this.chunkSize = chunkSize;
+        pool = new ChunkBufferPool(chunkSize, true);
         this.offset = startOffset = offset;
         endOffset = offset + length;
     }
@@ -150,8 +154,8 @@ public class ChunkedNioFile implements ChunkedInput {
         }
 
         int chunkSize = (int) Math.min(this.chunkSize, endOffset - offset);
-        byte[] chunkArray = new byte[chunkSize];
-        ByteBuffer chunk = ByteBuffer.wrap(chunkArray);
+        ChannelBuffer chunkBuffer = pool.acquire();
+        ByteBuffer chunk = chunkBuffer.toByteBuffer(0, chunkSize);
         int readBytes = 0;
         for (;;) {
             int localReadBytes = in.read(chunk);
@@ -165,6 +169,25 @@ public class ChunkedNioFile implements ChunkedInput {
         }
 
         this.offset += readBytes;
-        return wrappedBuffer(chunkArray);
+        chunkBuffer.writerIndex(readBytes);
+        return chunkBuffer;
+    }
+
+    @Override
+    public FileRegion nextRegion() throws Exception {
+        long offset = this.offset;
+        if (offset >= endOffset) {
+            return null;
+        }
+
+        int chunkSize = (int) Math.min(this.chunkSize, endOffset - offset);
+        in.position(offset + chunkSize);
+        this.offset = offset + chunkSize;
+        return new DefaultFileRegion(in, offset, chunkSize, false);
+    }
+
+    @Override
+    public void releaseChunk(Object chunk) {
+        pool.release(chunk);
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.stream;
+
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+
+/**
+ * A {@link ChunkedInput} that fetches a region of a file.
+ * <p>
+ * When no handler between the {@link ChunkedWriteHandler} and the socket
+ * needs to see the content, {@link ChunkedWriteHandler} fetches the input
+ * with {@link #nextRegion()} instead of {@link #nextChunk()}, so that the
+ * file is transferred to the socket by the operating system without being
+ * read into memory.  Otherwise, it passes every chunk it has written to
+ * {@link #releaseChunk(Object)}, so that the input can read the next chunks
+ * into the same buffers.
+ */
+public interface ChunkedRegionInput extends ChunkedInput {
+
+    /**
+     * Fetches the next chunk as a {@link FileRegion} which does not release
+     * the file after the transfer, such as a {@link DefaultFileRegion}, so
+     * that the file is closed only when this input is closed.
+     *
+     * @return the fetched region, or {@code null} if there is no data left
+     */
+    FileRegion nextRegion() throws Exception;
+
+    /**
+     * Notifies that the specified chunk, which was returned by
+     * {@link #nextChunk()}, has been written or failed to be written, and
+     * thus its buffer can be reused.
+     */
+    void releaseChunk(Object chunk);
+}
@@ -19,6 +19,7 @@ import static io.netty.channel.Channels.*;
 
 import java.nio.channels.ClosedChannelException;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.netty.buffer.ChannelBuffers;
 import io.netty.channel.Channel;
@@ -32,7 +33,10 @@ import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelStateEvent;
 import io.netty.channel.ChannelUpstreamHandler;
 import io.netty.channel.Channels;
+import io.netty.channel.FileRegion;
 import io.netty.channel.MessageEvent;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.socket.oio.OioSocketChannel;
 import io.netty.logging.InternalLogger;
 import io.netty.logging.InternalLoggerFactory;
 import io.netty.util.internal.QueueFactory;
@@ -67,6 +71,24 @@ import io.netty.util.internal.QueueFactory;
  * {@link ChunkedInput#nextChunk()}, resulting in the indefinitely suspended
  * transfer.  To resume the transfer when a new chunk is available, you have to
  * call {@link #resumeTransfer()}.
+ *
+ * <h3>Zero-copy transfer</h3>
+ *
+ * A {@link ChunkedRegionInput} such as {@link ChunkedFile} and
+ * {@link ChunkedNioFile} is written as {@link FileRegion}s, which the
+ * operating system transfers to the socket without copying the content into
+ * memory, if there is no {@link ChannelDownstreamHandler} between the
+ * {@link ChunkedWriteHandler} and the socket.  Otherwise, for example when
+ * an {@link io.netty.handler.ssl.SslHandler} has to encrypt the content, the
+ * input is read chunk by chunk, and the buffer of every chunk is given back
+ * to the input once the chunk has been written.
+ *
+ * <h3>Concurrency</h3>
+ *
+ * The handler does not lock.  Chunks are fetched and written by the thread
+ * which wrote the {@link ChunkedInput}, or by the I/O thread when the
+ * channel becomes writable again.  When both try at the same time, the one
+ * which came first fetches the chunks on behalf of the other.
  * @apiviz.landmark
  * @apiviz.has io.netty.handler.stream.ChunkedInput oneway - - reads from
  */
@@ -77,8 +99,17 @@ public class ChunkedWriteHandler implements ChannelUpstreamHandler, ChannelDowns
 
     private final Queue<MessageEvent> queue = QueueFactory.createQueue(MessageEvent.class);
 
-    private ChannelHandlerContext ctx;
+    /**
+     * The number of {@link #flush(ChannelHandlerContext, boolean)} calls
+     * which have not been served yet
+     */
+    private final AtomicInteger pendingFlushes = new AtomicInteger();
+
+    private volatile ChannelHandlerContext ctx;
+
+    // The fields below are accessed only while flushing.
     private MessageEvent currentEvent;
+    private boolean writeRegions;
 
     /**
      * Continues to fetch the chunks from the input.
@@ -110,12 +141,9 @@ public class ChunkedWriteHandler implements ChannelUpstreamHandler, ChannelDowns
         assert offered;
 
         final Channel channel = ctx.getChannel();
-        if (channel.isWritable()) {
+        if (channel.isWritable() || !channel.isConnected()) {
             this.ctx = ctx;
             flush(ctx, false);
-        } else if (!channel.isConnected()) {
-            this.ctx = ctx;
-            discard(ctx, false);
         }
     }
 
@@ -132,7 +160,7 @@ public class ChunkedWriteHandler implements ChannelUpstreamHandler, ChannelDowns
             case OPEN:
                 if (!Boolean.TRUE.equals(cse.getValue())) {
                     // Fail all pending writes
-                    discard(ctx, true);
+                    flush(ctx, true);
                 }
                 break;
             }
@@ -181,7 +209,45 @@ public class ChunkedWriteHandler implements ChannelUpstreamHandler, ChannelDowns
         }
     }
 
-    private synchronized void flush(ChannelHandlerContext ctx, boolean fireNow) throws Exception {
+    private void flush(ChannelHandlerContext ctx, boolean fireNow) throws Exception {
+        if (pendingFlushes.getAndIncrement() != 0) {
+            // Someone else is flushing, and will flush once again for this call.
+            return;
+        }
+
+        int flushes = 1;
+        Exception cause = null;
+        boolean success = false;
+        try {
+            for (;;) {
+                try {
+                    doFlush(ctx, fireNow);
+                } catch (Exception e) {
+                    // The calls made meanwhile have returned already, so keep
+                    // flushing for them and rethrow once they are all served.
+                    if (cause == null) {
+                        cause = e;
+                    }
+                }
+                flushes = pendingFlushes.addAndGet(-flushes);
+                if (flushes == 0) {
+                    break;
+                }
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                // Give up the flushes counted so far, but not the ones
+                // requested meanwhile, so that the next call flushes again.
+                pendingFlushes.addAndGet(-flushes);
+            }
+        }
+        if (cause != null) {
+            throw cause;
+        }
+    }
+
+    private void doFlush(ChannelHandlerContext ctx, boolean fireNow) throws Exception {
         final Channel channel = ctx.getChannel();
         if (!channel.isConnected()) {
             discard(ctx, fireNow);
@@ -190,6 +256,9 @@ public class ChunkedWriteHandler implements ChannelUpstreamHandler, ChannelDowns
         while (channel.isWritable()) {
             if (currentEvent == null) {
                 currentEvent = queue.poll();
+                if (currentEvent != null && currentEvent.getMessage() instanceof ChunkedRegionInput) {
+                    writeRegions = canWriteRegions(ctx);
+                }
             }
 
             if (currentEvent == null) {
@@ -204,12 +273,16 @@ public class ChunkedWriteHandler implements ChannelUpstreamHandler, ChannelDowns
                 final MessageEvent currentEvent = this.currentEvent;
                 Object m = currentEvent.getMessage();
                 if (m instanceof ChunkedInput) {
-                    ChunkedInput chunks = (ChunkedInput) m;
+                    final ChunkedInput chunks = (ChunkedInput) m;
                     Object chunk;
                     boolean endOfInput;
                     boolean suspend;
                     try {
-                        chunk = chunks.nextChunk();
+                        if (writeRegions && chunks instanceof ChunkedRegionInput) {
+                            chunk = ((ChunkedRegionInput) chunks).nextRegion();
+                        } else {
+                            chunk = chunks.nextChunk();
+                        }
                         endOfInput = chunks.isEndOfInput();
                         if (chunk == null) {
                             chunk = ChannelBuffers.EMPTY_BUFFER;
@@ -241,8 +314,18 @@ public class ChunkedWriteHandler implements ChannelUpstreamHandler, ChannelDowns
                         ChannelFuture writeFuture;
                         if (endOfInput) {
                             this.currentEvent = null;
-                            closeInput(chunks);
                             writeFuture = currentEvent.getFuture();
+                            if (chunk instanceof FileRegion) {
+                                // The region is transferred from the file after this method returns.
+                                writeFuture.addListener(new ChannelFutureListener() {
+                                    @Override
+                                    public void operationComplete(ChannelFuture future) throws Exception {
+                                        closeInput(chunks);
+                                    }
+                                });
+                            } else {
+                                closeInput(chunks);
+                            }
                         } else {
                             writeFuture = future(channel);
                             writeFuture.addListener(new ChannelFutureListener() {
@@ -257,6 +340,16 @@ public class ChunkedWriteHandler implements ChannelUpstreamHandler, ChannelDowns
                             });
                         }
 
+                        if (chunks instanceof ChunkedRegionInput && !(chunk instanceof FileRegion)) {
+                            final Object writtenChunk = chunk;
+                            writeFuture.addListener(new ChannelFutureListener() {
+                                @Override
+                                public void operationComplete(ChannelFuture future) throws Exception {
+                                    ((ChunkedRegionInput) chunks).releaseChunk(writtenChunk);
+                                }
+                            });
+                        }
+
                         Channels.write(
                                 ctx, writeFuture, chunk,
                                 currentEvent.getRemoteAddress());
@@ -274,6 +367,32 @@ public class ChunkedWriteHandler implements ChannelUpstreamHandler, ChannelDowns
         }
     }
 
+    /**
+     * Returns {@code true} if a {@link FileRegion} written by the specified
+     * context reaches a socket without passing through another handler.
+     * Only the sinks of the NIO and OIO socket transports accept a
+     * {@link FileRegion}; other {@link io.netty.channel.socket.SocketChannel}s
+     * such as the HTTP tunnel ones only accept {@link io.netty.buffer.ChannelBuffer}s.
+     */
+    private static boolean canWriteRegions(ChannelHandlerContext ctx) {
+        Channel channel = ctx.getChannel();
+        if (!(channel instanceof NioSocketChannel) && !(channel instanceof OioSocketChannel)) {
+            return false;
+        }
+
+        // Downstream events flow from the last handler to the first one.
+        ChannelPipeline pipeline = ctx.getPipeline();
+        for (String name: pipeline.getNames()) {
+            if (name.equals(ctx.getName())) {
+                break;
+            }
+            if (pipeline.getContext(name).canHandleDownstream()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     static void closeInput(ChunkedInput chunks) {
         try {
             chunks.close();
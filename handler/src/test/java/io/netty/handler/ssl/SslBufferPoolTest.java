@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.ssl;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class SslBufferPoolTest {
+
+    @Test
+    public void shouldReuseBuffersFromThreadCache() {
+        SslBufferPool pool = new SslBufferPool();
+        ByteBuffer a = pool.acquire();
+        pool.release(a);
+        ByteBuffer b = pool.acquire();
+        pool.release(b);
+
+        assertSame(a, b);
+        assertEquals(1, pool.getAllocationCount());
+        assertEquals(1, pool.getThreadCacheHitCount());
+        assertEquals(0, pool.getPoolHitCount());
+    }
+
+    @Test
+    public void shouldOverflowToSharedPool() {
+        SslBufferPool pool = new SslBufferPool(Integer.MAX_VALUE / 2, 1, true);
+        ByteBuffer a = pool.acquire();
+        ByteBuffer b = pool.acquire();
+        assertTrue(a.isDirect());
+
+        pool.release(a);
+        pool.release(b);
+        assertSame(a, pool.acquire());
+        assertSame(b, pool.acquire());
+        assertEquals(2, pool.getAllocationCount());
+        assertEquals(1, pool.getThreadCacheHitCount());
+        assertEquals(1, pool.getPoolHitCount());
+    }
+
+    @Test
+    public void shouldNotExceedMaxPoolSize() throws Exception {
+        final SslBufferPool pool = new SslBufferPool(1, 4, false);
+        assertEquals(0, pool.getUnacquiredPoolSize());
+
+        // The current thread reserves the only buffer of the pool.
+        pool.release(pool.acquire());
+        assertEquals(pool.getMaxPoolSize(), pool.getUnacquiredPoolSize());
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                pool.release(pool.acquire());
+            }
+        };
+        t.start();
+        t.join();
+
+        // The other thread had no room to cache its buffer.
+        assertEquals(pool.getMaxPoolSize(), pool.getUnacquiredPoolSize());
+        assertEquals(2, pool.getAllocationCount());
+    }
+}
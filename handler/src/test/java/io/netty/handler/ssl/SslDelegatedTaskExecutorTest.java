@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.ssl;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SslDelegatedTaskExecutorTest {
+
+    @Test
+    public void shouldLimitActiveTasks() throws Exception {
+        SslDelegatedTaskExecutor executor = new SslDelegatedTaskExecutor(2);
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(5);
+            for (int i = 0; i < 5; i ++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            // Ignore.
+                        }
+                        done.countDown();
+                    }
+                });
+            }
+
+            assertEquals(2, executor.getActiveTaskCount());
+            assertEquals(3, executor.getQueueDepth());
+
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.releaseExternalResources();
+        }
+
+        assertEquals(0, executor.getQueueDepth());
+        assertEquals(5, executor.getCompletedTaskCount());
+    }
+
+    @Test
+    public void shouldRunRejectedTaskInCallerThread() {
+        SslDelegatedTaskExecutor executor = new SslDelegatedTaskExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        }, 1);
+
+        final Thread[] thread = new Thread[1];
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                thread[0] = Thread.currentThread();
+            }
+        });
+
+        assertSame(Thread.currentThread(), thread[0]);
+        assertEquals(0, executor.getActiveTaskCount());
+        assertEquals(1, executor.getCompletedTaskCount());
+    }
+}
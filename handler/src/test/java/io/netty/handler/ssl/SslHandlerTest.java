@@ -0,0 +1,387 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.ssl;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+import io.netty.bootstrap.ClientBootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelStateEvent;
+import io.netty.channel.MessageEvent;
+import io.netty.channel.SimpleChannelUpstreamHandler;
+import io.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import io.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import io.netty.util.CharsetUtil;
+import io.netty.util.internal.ExecutorUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SslHandlerTest {
+
+    private ExecutorService executor;
+    private ServerBootstrap sb;
+    private ClientBootstrap cb;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        sb = new ServerBootstrap(new NioServerSocketChannelFactory(executor));
+        cb = new ClientBootstrap(new NioClientSocketChannelFactory(executor));
+    }
+
+    @After
+    public void tearDown() {
+        cb.releaseExternalResources();
+        sb.releaseExternalResources();
+        ExecutorUtil.terminate(executor);
+    }
+
+    @Test(timeout = 30000)
+    public void shouldWrapPendingWritesWhenHandshakeIsResumed() throws Throwable {
+        // The server greets the client as soon as it is connected, before
+        // the handshake is complete, and the handshake finishes in the wrap
+        // which follows a slow delegated task.  Nothing but the resumed
+        // handshake may wrap the greeting, as the client sends nothing.
+        SSLEngine sse = BogusSslContextFactory.getServerContext().createSSLEngine();
+        sse.setUseClientMode(false);
+        sse.setEnabledProtocols(new String[] { "TLSv1.2" });
+        sb.getPipeline().addLast("ssl", new SslHandler(new DelegatedTaskBeforeWrapEngine(sse), new SlowExecutor()));
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                e.getChannel().write(ChannelBuffers.copiedBuffer("hello", CharsetUtil.US_ASCII));
+            }
+        });
+
+        SSLEngine cse = BogusSslContextFactory.getClientContext().createSSLEngine();
+        cse.setUseClientMode(true);
+        cse.setEnabledProtocols(new String[] { "TLSv1.2" });
+        final BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+        cb.getPipeline().addLast("ssl", new SslHandler(cse));
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                ctx.getPipeline().get(SslHandler.class).handshake();
+            }
+
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                received.add(((ChannelBuffer) e.getMessage()).toString(CharsetUtil.US_ASCII));
+            }
+        });
+
+        Channel sc = sb.bind(new InetSocketAddress("127.0.0.1", 0));
+        try {
+            ChannelFuture cf = cb.connect(sc.getLocalAddress());
+            assertTrue(cf.awaitUninterruptibly(10000));
+            Channel cc = cf.getChannel();
+            try {
+                assertEquals("hello", received.poll(10, TimeUnit.SECONDS));
+            } finally {
+                cc.close().awaitUninterruptibly(5000);
+            }
+        } finally {
+            sc.close().awaitUninterruptibly(5000);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void shouldNotResumeReadDisabledWhileTasksAreRunning() throws Throwable {
+        // The application disables the read while the first delegated task
+        // is running, so the handshake must not go on until it enables the
+        // read again.
+        final BlockingQueue<Channel> accepted = new LinkedBlockingQueue<Channel>();
+        final BlockingQueue<Channel> serverChannels = new LinkedBlockingQueue<Channel>();
+        final CountDownLatch taskDone = new CountDownLatch(1);
+        Executor executor = new Executor() {
+            private final SlowExecutor slowExecutor = new SlowExecutor();
+            private boolean first = true;
+
+            @Override
+            public synchronized void execute(final Runnable command) {
+                if (!first) {
+                    slowExecutor.execute(command);
+                    return;
+                }
+                first = false;
+                slowExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            accepted.take().setReadable(false).awaitUninterruptibly(5000);
+                        } catch (InterruptedException e) {
+                            // Ignore.
+                        }
+                        command.run();
+                        taskDone.countDown();
+                    }
+                });
+            }
+        };
+        SSLEngine sse = BogusSslContextFactory.getServerContext().createSSLEngine();
+        sse.setUseClientMode(false);
+        sse.setEnabledProtocols(new String[] { "TLSv1.2" });
+        sb.getPipeline().addLast("ssl", new SslHandler(new DelegatedTaskBeforeWrapEngine(sse), executor));
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                accepted.add(e.getChannel());
+                serverChannels.add(e.getChannel());
+                e.getChannel().write(ChannelBuffers.copiedBuffer("hello", CharsetUtil.US_ASCII));
+            }
+        });
+
+        SSLEngine cse = BogusSslContextFactory.getClientContext().createSSLEngine();
+        cse.setUseClientMode(true);
+        cse.setEnabledProtocols(new String[] { "TLSv1.2" });
+        final BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+        cb.getPipeline().addLast("ssl", new SslHandler(cse));
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                ctx.getPipeline().get(SslHandler.class).handshake();
+            }
+
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                received.add(((ChannelBuffer) e.getMessage()).toString(CharsetUtil.US_ASCII));
+            }
+        });
+
+        Channel sc = sb.bind(new InetSocketAddress("127.0.0.1", 0));
+        try {
+            ChannelFuture cf = cb.connect(sc.getLocalAddress());
+            assertTrue(cf.awaitUninterruptibly(10000));
+            Channel cc = cf.getChannel();
+            try {
+                Channel sch = serverChannels.poll(10, TimeUnit.SECONDS);
+                assertNotNull(sch);
+                assertTrue(taskDone.await(10, TimeUnit.SECONDS));
+                // Give the I/O thread the time to resume the handshake.
+                Thread.sleep(500);
+                assertFalse(sch.isReadable());
+                assertNull(received.poll());
+
+                assertTrue(sch.setReadable(true).awaitUninterruptibly(5000));
+                assertEquals("hello", received.poll(10, TimeUnit.SECONDS));
+            } finally {
+                cc.close().awaitUninterruptibly(5000);
+            }
+        } finally {
+            sc.close().awaitUninterruptibly(5000);
+        }
+    }
+
+    /**
+     * Runs each task in a new thread after a short delay so that the tasks
+     * are always still running when {@link #execute(Runnable)} returns.
+     */
+    private static final class SlowExecutor implements Executor {
+        @Override
+        public void execute(final Runnable command) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        // Ignore.
+                    }
+                    command.run();
+                }
+            }).start();
+        }
+    }
+
+    /**
+     * Runs a delegated task before every handshake message the wrapped
+     * {@link SSLEngine} is about to send in response to an unwrapped one.
+     */
+    private static final class DelegatedTaskBeforeWrapEngine extends SSLEngine {
+        private final SSLEngine engine;
+        private volatile boolean taskPending;
+        private boolean taskTaken;
+
+        DelegatedTaskBeforeWrapEngine(SSLEngine engine) {
+            this.engine = engine;
+        }
+
+        @Override
+        public SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst) throws SSLException {
+            return engine.wrap(srcs, offset, length, dst);
+        }
+
+        @Override
+        public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length) throws SSLException {
+            SSLEngineResult result = engine.unwrap(src, dsts, offset, length);
+            if (result.getHandshakeStatus() != HandshakeStatus.NEED_WRAP) {
+                return result;
+            }
+            taskPending = true;
+            taskTaken = false;
+            return new SSLEngineResult(
+                    result.getStatus(), HandshakeStatus.NEED_TASK,
+                    result.bytesConsumed(), result.bytesProduced());
+        }
+
+        @Override
+        public Runnable getDelegatedTask() {
+            if (!taskPending) {
+                return engine.getDelegatedTask();
+            }
+            if (taskTaken) {
+                return null;
+            }
+            taskTaken = true;
+            return new Runnable() {
+                @Override
+                public void run() {
+                    taskPending = false;
+                }
+            };
+        }
+
+        @Override
+        public HandshakeStatus getHandshakeStatus() {
+            if (taskPending) {
+                return HandshakeStatus.NEED_TASK;
+            }
+            return engine.getHandshakeStatus();
+        }
+
+        @Override
+        public void beginHandshake() throws SSLException {
+            engine.beginHandshake();
+        }
+
+        @Override
+        public SSLSession getSession() {
+            return engine.getSession();
+        }
+
+        @Override
+        public void closeInbound() throws SSLException {
+            engine.closeInbound();
+        }
+
+        @Override
+        public boolean isInboundDone() {
+            return engine.isInboundDone();
+        }
+
+        @Override
+        public void closeOutbound() {
+            engine.closeOutbound();
+        }
+
+        @Override
+        public boolean isOutboundDone() {
+            return engine.isOutboundDone();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return engine.getSupportedCipherSuites();
+        }
+
+        @Override
+        public String[] getEnabledCipherSuites() {
+            return engine.getEnabledCipherSuites();
+        }
+
+        @Override
+        public void setEnabledCipherSuites(String[] suites) {
+            engine.setEnabledCipherSuites(suites);
+        }
+
+        @Override
+        public String[] getSupportedProtocols() {
+            return engine.getSupportedProtocols();
+        }
+
+        @Override
+        public String[] getEnabledProtocols() {
+            return engine.getEnabledProtocols();
+        }
+
+        @Override
+        public void setEnabledProtocols(String[] protocols) {
+            engine.setEnabledProtocols(protocols);
+        }
+
+        @Override
+        public void setUseClientMode(boolean mode) {
+            engine.setUseClientMode(mode);
+        }
+
+        @Override
+        public boolean getUseClientMode() {
+            return engine.getUseClientMode();
+        }
+
+        @Override
+        public void setNeedClientAuth(boolean need) {
+            engine.setNeedClientAuth(need);
+        }
+
+        @Override
+        public boolean getNeedClientAuth() {
+            return engine.getNeedClientAuth();
+        }
+
+        @Override
+        public void setWantClientAuth(boolean want) {
+            engine.setWantClientAuth(want);
+        }
+
+        @Override
+        public boolean getWantClientAuth() {
+            return engine.getWantClientAuth();
+        }
+
+        @Override
+        public void setEnableSessionCreation(boolean flag) {
+            engine.setEnableSessionCreation(flag);
+        }
+
+        @Override
+        public boolean getEnableSessionCreation() {
+            return engine.getEnableSessionCreation();
+        }
+    }
+}
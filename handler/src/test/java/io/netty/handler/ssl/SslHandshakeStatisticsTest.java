@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.ssl;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SslHandshakeStatisticsTest {
+
+    @Test
+    public void shouldCountHandshakes() {
+        SslHandshakeStatistics stats = new SslHandshakeStatistics();
+        stats.handshakeCompleted(null, null, false, TimeUnit.MICROSECONDS.toNanos(3));
+        stats.handshakeCompleted(null, null, true, TimeUnit.MICROSECONDS.toNanos(5));
+        stats.handshakeCompleted(null, null, true, -1);
+        stats.handshakeFailed(null, null, 100);
+
+        assertEquals(1, stats.getFullHandshakeCount());
+        assertEquals(2, stats.getResumedHandshakeCount());
+        assertEquals(1, stats.getFailedHandshakeCount());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(4), stats.getAverageHandshakeDuration());
+
+        long[] histogram = stats.getHandshakeDurationHistogram();
+        assertEquals(SslHandshakeStatistics.BUCKET_COUNT, histogram.length);
+        assertEquals(1, histogram[2]);
+        assertEquals(1, histogram[3]);
+    }
+
+    @Test
+    public void shouldPutLongHandshakesIntoLastBucket() {
+        SslHandshakeStatistics stats = new SslHandshakeStatistics();
+        stats.handshakeCompleted(null, null, false, Long.MAX_VALUE);
+
+        long[] histogram = stats.getHandshakeDurationHistogram();
+        assertEquals(1, histogram[SslHandshakeStatistics.BUCKET_COUNT - 1]);
+    }
+}
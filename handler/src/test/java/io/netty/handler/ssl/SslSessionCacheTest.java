@@ -0,0 +1,416 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.ssl;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.security.cert.X509Certificate;
+
+import io.netty.bootstrap.ClientBootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPipelineFactory;
+import io.netty.channel.ChannelStateEvent;
+import io.netty.channel.Channels;
+import io.netty.channel.SimpleChannelUpstreamHandler;
+import io.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import io.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.internal.ExecutorUtil;
+import org.junit.Test;
+
+public class SslSessionCacheTest {
+
+    private final ManualTimer timer = new ManualTimer();
+
+    @Test
+    public void shouldCacheFullHandshakeSessions() {
+        SslSessionCache cache = newCache(16);
+        SslHandler handler = new SslHandler(cache.newServerEngine());
+        FakeSession session = new FakeSession(1);
+
+        assertFalse(cache.contains(false, session));
+        cache.handshakeCompleted(handler, session, false, 100);
+        assertEquals(1, cache.size());
+        assertTrue(cache.contains(false, session));
+        assertFalse(cache.contains(false, new FakeSession(2)));
+        assertFalse(cache.contains(true, session));
+    }
+
+    @Test
+    public void shouldNotCacheResumedOrInvalidSessions() {
+        SslSessionCache cache = newCache(16);
+        SslHandler handler = new SslHandler(cache.newServerEngine());
+        FakeSession invalid = new FakeSession(2);
+        invalid.invalidate();
+
+        cache.handshakeCompleted(handler, new FakeSession(1), true, 100);
+        cache.handshakeCompleted(handler, invalid, false, 100);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void shouldCacheClientSessionsByPeer() {
+        SslSessionCache cache = newCache(16);
+        SslHandler handler = new SslHandler(cache.newClientEngine("example.com", 443));
+        FakeSession oldSession = new FakeSession(1);
+        FakeSession newSession = new FakeSession(2);
+
+        cache.handshakeCompleted(handler, oldSession, false, 100);
+        cache.handshakeCompleted(handler, newSession, false, 100);
+        assertEquals(1, cache.size());
+        assertFalse(oldSession.isValid());
+        assertFalse(cache.contains(true, oldSession));
+        assertTrue(cache.contains(true, newSession));
+    }
+
+    @Test
+    public void shouldExpireSessions() {
+        SslSessionCache cache = newCache(16);
+        SslHandler handler = new SslHandler(cache.newServerEngine());
+        FakeSession session = new FakeSession(1);
+
+        cache.handshakeCompleted(handler, session, false, 100);
+        assertEquals(1, timer.tasks.size());
+
+        timer.expireAll();
+        assertEquals(0, cache.size());
+        assertFalse(session.isValid());
+        assertFalse(cache.contains(false, session));
+    }
+
+    @Test
+    public void shouldEvictEldestSession() {
+        SslSessionCache cache = newCache(1);
+        SslHandler handler = new SslHandler(cache.newServerEngine());
+        FakeSession eldest = new FakeSession(1);
+        FakeSession youngest = new FakeSession(2);
+
+        cache.handshakeCompleted(handler, eldest, false, 100);
+        cache.handshakeCompleted(handler, youngest, false, 100);
+        assertEquals(1, cache.size());
+        assertFalse(eldest.isValid());
+        assertTrue(youngest.isValid());
+        assertTrue(cache.contains(false, youngest));
+    }
+
+    @Test
+    public void shouldInvalidateSessionsOnClear() {
+        SslSessionCache cache = newCache(16);
+        SslHandler handler = new SslHandler(cache.newServerEngine());
+        FakeSession session = new FakeSession(1);
+
+        cache.handshakeCompleted(handler, session, false, 100);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertFalse(session.isValid());
+    }
+
+    @Test(timeout = 60000)
+    public void shouldReportResumedHandshakes() throws Throwable {
+        final SslSessionCache serverCache = new SslSessionCache(
+                BogusSslContextFactory.getServerContext(), timer, 16, 1, TimeUnit.MINUTES);
+        final SslSessionCache clientCache = new SslSessionCache(
+                BogusSslContextFactory.getClientContext(), timer, 16, 1, TimeUnit.MINUTES);
+        final BlockingQueue<Boolean> serverResumed = new LinkedBlockingQueue<Boolean>();
+        final BlockingQueue<Boolean> clientResumed = new LinkedBlockingQueue<Boolean>();
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        ServerBootstrap sb = new ServerBootstrap(new NioServerSocketChannelFactory(executor));
+        ClientBootstrap cb = new ClientBootstrap(new NioClientSocketChannelFactory(executor));
+        sb.setPipelineFactory(new ChannelPipelineFactory() {
+            @Override
+            public ChannelPipeline getPipeline() {
+                SslHandler handler = new SslHandler(serverCache.newServerEngine());
+                handler.getEngine().setEnabledProtocols(new String[] { "TLSv1.2" });
+                handler.addHandshakeListener(serverCache);
+                handler.addHandshakeListener(new ResumedRecorder(serverResumed));
+                return Channels.pipeline(handler);
+            }
+        });
+
+        try {
+            Channel sc = sb.bind(new InetSocketAddress("127.0.0.1", 0));
+            final int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+            cb.setPipelineFactory(new ChannelPipelineFactory() {
+                @Override
+                public ChannelPipeline getPipeline() {
+                    SslHandler handler = new SslHandler(clientCache.newClientEngine("127.0.0.1", port));
+                    handler.getEngine().setEnabledProtocols(new String[] { "TLSv1.2" });
+                    handler.addHandshakeListener(clientCache);
+                    handler.addHandshakeListener(new ResumedRecorder(clientResumed));
+                    return Channels.pipeline(handler, new SimpleChannelUpstreamHandler() {
+                        @Override
+                        public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                            ctx.getPipeline().get(SslHandler.class).handshake();
+                        }
+                    });
+                }
+            });
+
+            try {
+                for (int i = 0; i < 2; i ++) {
+                    ChannelFuture cf = cb.connect(sc.getLocalAddress());
+                    assertTrue(cf.awaitUninterruptibly(10000));
+                    Channel cc = cf.getChannel();
+                    try {
+                        boolean resumed = i > 0;
+                        assertEquals(resumed, clientResumed.poll(10, TimeUnit.SECONDS));
+                        assertEquals(resumed, serverResumed.poll(10, TimeUnit.SECONDS));
+                    } finally {
+                        cc.close().awaitUninterruptibly(5000);
+                    }
+                }
+                assertEquals(1, serverCache.size());
+                assertEquals(1, clientCache.size());
+            } finally {
+                sc.close().awaitUninterruptibly(5000);
+            }
+        } finally {
+            serverCache.clear();
+            clientCache.clear();
+            cb.releaseExternalResources();
+            sb.releaseExternalResources();
+            ExecutorUtil.terminate(executor);
+        }
+    }
+
+    private SslSessionCache newCache(int maxSize) {
+        return new SslSessionCache(
+                BogusSslContextFactory.getServerContext(), timer, maxSize, 1, TimeUnit.MINUTES);
+    }
+
+    private static final class ResumedRecorder implements SslHandshakeListener {
+        private final BlockingQueue<Boolean> resumed;
+
+        ResumedRecorder(BlockingQueue<Boolean> resumed) {
+            this.resumed = resumed;
+        }
+
+        @Override
+        public void handshakeCompleted(
+                SslHandler handler, SSLSession session, boolean resumed, long durationNanos) {
+            this.resumed.add(resumed);
+        }
+
+        @Override
+        public void handshakeFailed(SslHandler handler, Throwable cause, long durationNanos) {
+            // Leave it to the timeout of the test.
+        }
+    }
+
+    /**
+     * Expires the scheduled tasks only when asked to.
+     */
+    private static final class ManualTimer implements Timer {
+        final List<ManualTimeout> tasks = new ArrayList<ManualTimeout>();
+
+        @Override
+        public synchronized Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+            ManualTimeout timeout = new ManualTimeout(this, task);
+            tasks.add(timeout);
+            return timeout;
+        }
+
+        synchronized void expireAll() {
+            for (ManualTimeout t: tasks) {
+                if (!t.isCancelled()) {
+                    try {
+                        t.task.run(t);
+                    } catch (Exception e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            }
+            tasks.clear();
+        }
+
+        @Override
+        public Set<Timeout> stop() {
+            return Collections.emptySet();
+        }
+    }
+
+    private static final class ManualTimeout implements Timeout {
+        private final Timer timer;
+        final TimerTask task;
+        private volatile boolean cancelled;
+
+        ManualTimeout(Timer timer, TimerTask task) {
+            this.timer = timer;
+            this.task = task;
+        }
+
+        @Override
+        public Timer getTimer() {
+            return timer;
+        }
+
+        @Override
+        public TimerTask getTask() {
+            return task;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private static final class FakeSession implements SSLSession {
+        private final byte[] id;
+        private volatile boolean valid = true;
+
+        FakeSession(int id) {
+            this.id = new byte[] { (byte) id };
+        }
+
+        @Override
+        public byte[] getId() {
+            return id.clone();
+        }
+
+        @Override
+        public boolean isValid() {
+            return valid;
+        }
+
+        @Override
+        public void invalidate() {
+            valid = false;
+        }
+
+        @Override
+        public String getPeerHost() {
+            return "example.com";
+        }
+
+        @Override
+        public int getPeerPort() {
+            return 443;
+        }
+
+        @Override
+        public SSLSessionContext getSessionContext() {
+            return null;
+        }
+
+        @Override
+        public long getCreationTime() {
+            return 0;
+        }
+
+        @Override
+        public long getLastAccessedTime() {
+            return 0;
+        }
+
+        @Override
+        public void putValue(String name, Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object getValue(String name) {
+            return null;
+        }
+
+        @Override
+        public void removeValue(String name) {
+            // Unused
+        }
+
+        @Override
+        public String[] getValueNames() {
+            return new String[0];
+        }
+
+        @Override
+        public Certificate[] getPeerCertificates() {
+            return null;
+        }
+
+        @Override
+        public Certificate[] getLocalCertificates() {
+            return null;
+        }
+
+        @Override
+        public X509Certificate[] getPeerCertificateChain() {
+            return null;
+        }
+
+        @Override
+        public Principal getPeerPrincipal() {
+            return null;
+        }
+
+        @Override
+        public Principal getLocalPrincipal() {
+            return null;
+        }
+
+        @Override
+        public String getCipherSuite() {
+            return null;
+        }
+
+        @Override
+        public String getProtocol() {
+            return null;
+        }
+
+        @Override
+        public int getPacketBufferSize() {
+            return 0;
+        }
+
+        @Override
+        public int getApplicationBufferSize() {
+            return 0;
+        }
+    }
+}
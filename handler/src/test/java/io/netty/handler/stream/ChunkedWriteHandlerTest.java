@@ -0,0 +1,178 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.stream;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.bootstrap.ClientBootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelStateEvent;
+import io.netty.channel.FileRegion;
+import io.netty.channel.MessageEvent;
+import io.netty.channel.SimpleChannelUpstreamHandler;
+import io.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import io.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import io.netty.handler.codec.embedder.EncoderEmbedder;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ChunkedWriteHandlerTest {
+
+    private static final byte[] BYTES = new byte[100000];
+    private static File file;
+
+    @BeforeClass
+    public static void createFile() throws IOException {
+        for (int i = 0; i < BYTES.length; i ++) {
+            BYTES[i] = (byte) (i * 31 + (i >>> 8));
+        }
+        file = File.createTempFile("netty-", ".tmp");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(BYTES);
+        } finally {
+            out.close();
+        }
+    }
+
+    @AfterClass
+    public static void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void testChunkedFile() throws IOException {
+        check(new ChunkedFile(file, 4096));
+    }
+
+    @Test
+    public void testChunkedNioFile() throws IOException {
+        check(new ChunkedNioFile(file, 4096));
+    }
+
+    @Test
+    public void testChunkedFileRegion() throws Exception {
+        ChunkedFile input = new ChunkedFile(new RandomAccessFile(file, "r"), 10, BYTES.length - 20, 30000);
+        ChannelBuffer chunk = (ChannelBuffer) input.nextChunk();
+        assertEquals(ChannelBuffers.wrappedBuffer(BYTES, 10, 30000), chunk);
+
+        // A region continues where the chunk ended, and a chunk where the region ended.
+        FileRegion region = input.nextRegion();
+        assertEquals(30010, region.getPosition());
+        assertEquals(30000, region.getCount());
+        assertFalse(region.releaseAfterTransfer());
+        assertEquals(ChannelBuffers.wrappedBuffer(BYTES, 60010, 30000), input.nextChunk());
+        assertEquals(BYTES.length - 10 - 90010, input.nextRegion().getCount());
+        assertNull(input.nextRegion());
+        assertTrue(input.isEndOfInput());
+        input.close();
+    }
+
+    @Test
+    public void testChunkReuse() throws Exception {
+        ChunkedNioFile input = new ChunkedNioFile(file, 4096);
+        ChannelBuffer first = (ChannelBuffer) input.nextChunk();
+        assertTrue(first.isDirect());
+        ChannelBuffer second = (ChannelBuffer) input.nextChunk();
+        assertNotSame(first, second);
+
+        // Once written, the buffer of a chunk is reused for the next one.
+        input.releaseChunk(first);
+        ChannelBuffer third = (ChannelBuffer) input.nextChunk();
+        assertSame(first, third);
+        assertEquals(ChannelBuffers.wrappedBuffer(BYTES, 8192, 4096), third);
+
+        // Something else is ignored.
+        input.releaseChunk(ChannelBuffers.directBuffer(4096));
+        assertNotSame(second, input.nextChunk());
+        input.close();
+    }
+
+    @Test
+    public void testFileRegionsOverSocket() throws Throwable {
+        final ChunkedNioFile input = new ChunkedNioFile(file, 8192);
+        final ChannelBuffer received = ChannelBuffers.dynamicBuffer(BYTES.length);
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        ServerBootstrap sb = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool()));
+        ClientBootstrap cb = new ClientBootstrap(new NioClientSocketChannelFactory(Executors.newCachedThreadPool()));
+        sb.getPipeline().addLast("streamer", new ChunkedWriteHandler());
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                e.getChannel().write(input);
+            }
+        });
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                received.writeBytes((ChannelBuffer) e.getMessage());
+                if (received.readableBytes() == BYTES.length) {
+                    latch.countDown();
+                }
+            }
+        });
+
+        Channel sc = sb.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+        try {
+            ChannelFuture f = cb.connect(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port));
+            assertTrue(f.awaitUninterruptibly().isSuccess());
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(ChannelBuffers.wrappedBuffer(BYTES), received);
+            assertTrue(input.isEndOfInput());
+            f.getChannel().close().awaitUninterruptibly();
+        } finally {
+            sc.close().awaitUninterruptibly();
+            cb.releaseExternalResources();
+            sb.releaseExternalResources();
+        }
+    }
+
+    private static void check(ChunkedInput input) {
+        EncoderEmbedder<ChannelBuffer> embedder = new EncoderEmbedder<ChannelBuffer>(new ChunkedWriteHandler());
+        embedder.offer(input);
+        embedder.finish();
+
+        ChannelBuffer content = ChannelBuffers.dynamicBuffer(BYTES.length);
+        for (;;) {
+            ChannelBuffer chunk = embedder.poll();
+            if (chunk == null) {
+                break;
+            }
+            content.writeBytes(chunk);
+        }
+        assertEquals(ChannelBuffers.wrappedBuffer(BYTES), content);
+    }
+}
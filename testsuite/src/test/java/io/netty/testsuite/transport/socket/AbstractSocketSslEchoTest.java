@@ -55,6 +55,7 @@ import io.netty.channel.MessageEvent;
 import io.netty.channel.SimpleChannelUpstreamHandler;
 import io.netty.handler.execution.ExecutionHandler;
 import io.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+import io.netty.handler.ssl.SslDelegatedTaskExecutor;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.logging.InternalLogger;
 import io.netty.logging.InternalLoggerFactory;
@@ -98,6 +99,20 @@ public abstract class AbstractSocketSslEchoTest {
 
     @Test
     public void testSslEcho() throws Throwable {
+        testSslEcho0(false, false);
+    }
+
+    @Test
+    public void testSslEchoWithCoalescedRecords() throws Throwable {
+        testSslEcho0(true, false);
+    }
+
+    @Test
+    public void testSslEchoWithDelegatedTaskExecutor() throws Throwable {
+        testSslEcho0(false, true);
+    }
+
+    private void testSslEcho0(boolean coalesceRecords, boolean offloadDelegatedTasks) throws Throwable {
         ServerBootstrap sb = new ServerBootstrap(newServerSocketChannelFactory(executor));
         ClientBootstrap cb = new ClientBootstrap(newClientSocketChannelFactory(executor));
 
@@ -109,13 +124,30 @@ public abstract class AbstractSocketSslEchoTest {
         sse.setUseClientMode(false);
         cse.setUseClientMode(true);
 
+        // The bogus key is too small to sign a TLSv1.3 CertificateVerify message.
+        sse.setEnabledProtocols(new String[] { "TLSv1.2" });
+        cse.setEnabledProtocols(new String[] { "TLSv1.2" });
+
         // Workaround for blocking I/O transport write-write dead lock.
         sb.setOption("receiveBufferSize", 1048576);
         sb.setOption("receiveBufferSize", 1048576);
 
-        sb.getPipeline().addFirst("ssl", new SslHandler(sse));
+        SslHandler ssh;
+        SslHandler csh;
+        if (offloadDelegatedTasks) {
+            Executor delegatedTaskExecutor = new SslDelegatedTaskExecutor(executor, 1);
+            ssh = new SslHandler(sse, delegatedTaskExecutor);
+            csh = new SslHandler(cse, delegatedTaskExecutor);
+        } else {
+            ssh = new SslHandler(sse);
+            csh = new SslHandler(cse);
+        }
+        ssh.setCoalesceRecords(coalesceRecords);
+        csh.setCoalesceRecords(coalesceRecords);
+
+        sb.getPipeline().addFirst("ssl", ssh);
         sb.getPipeline().addLast("handler", sh);
-        cb.getPipeline().addFirst("ssl", new SslHandler(cse));
+        cb.getPipeline().addFirst("ssl", csh);
         cb.getPipeline().addLast("handler", ch);
 
         if (isExecutorRequired()) {
@@ -138,6 +170,11 @@ public abstract class AbstractSocketSslEchoTest {
 
         Channel cc = ccf.getChannel();
         ChannelFuture hf = cc.getPipeline().get(SslHandler.class).handshake();
+        if (offloadDelegatedTasks) {
+            // Request the writes while the handshake is in progress so that
+            // they are still pending when the delegated tasks complete.
+            writeData(cc);
+        }
         hf.awaitUninterruptibly();
         if (!hf.isSuccess()) {
             logger.error("Handshake failed", hf.getCause());
@@ -148,10 +185,8 @@ public abstract class AbstractSocketSslEchoTest {
 
         assertTrue(hf.isSuccess());
 
-        for (int i = 0; i < data.length;) {
-            int length = Math.min(random.nextInt(1024 * 64), data.length - i);
-            cc.write(ChannelBuffers.wrappedBuffer(data, i, length));
-            i += length;
+        if (!offloadDelegatedTasks) {
+            writeData(cc);
         }
 
         while (ch.counter < data.length) {
@@ -202,6 +237,14 @@ public abstract class AbstractSocketSslEchoTest {
         }
     }
 
+    private static void writeData(Channel cc) {
+        for (int i = 0; i < data.length;) {
+            int length = Math.min(random.nextInt(1024 * 64), data.length - i);
+            cc.write(ChannelBuffers.wrappedBuffer(data, i, length));
+            i += length;
+        }
+    }
+
     private static class EchoHandler extends SimpleChannelUpstreamHandler {
         volatile Channel channel;
         final AtomicReference<Throwable> exception = new AtomicReference<Throwable>();
@@ -15,12 +15,16 @@
  */
 package io.netty.channel.group;
 
+import static io.netty.channel.Channels.*;
+
 import java.net.SocketAddress;
 import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -29,11 +33,31 @@ import io.netty.buffer.ChannelBuffer;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.DownstreamMessageEvent;
 import io.netty.channel.ServerChannel;
+import io.netty.channel.socket.Worker;
+import io.netty.channel.socket.WorkerChannel;
 import io.netty.util.internal.ConcurrentHashMap;
 
 /**
  * The default {@link ChannelGroup} implementation.
+ *
+ * <h3>Broadcasting a message</h3>
+ *
+ * {@link #write(Object)} shares the content of a {@link ChannelBuffer} between
+ * all channels instead of copying it.  When many channels receive the same
+ * message, encode it once into a {@link ChannelBuffer} and write the buffer,
+ * because the encoders usually pass a {@link ChannelBuffer} through as it is.
+ * The returned {@link ChannelGroupFuture} keeps only an array of the futures
+ * of the individual writes.
+ * <p>
+ * If the group has been created with {@code batchWrites} enabled, the writes
+ * to the channels which implement {@link WorkerChannel}, such as the channels
+ * of the NIO transport, are performed by one task per I/O worker instead of
+ * being scheduled separately for every channel.  Please
+ * note that the writes of such a task are not ordered with the writes which
+ * were requested from other threads in the meantime.
+ *
  * @apiviz.landmark
  */
 public class DefaultChannelGroup extends AbstractSet<Channel> implements ChannelGroup {
@@ -41,6 +65,7 @@ public class DefaultChannelGroup extends AbstractSet<Channel> implements Channel
     private static final AtomicInteger nextId = new AtomicInteger();
 
     private final String name;
+    private final boolean batchWrites;
     private final ConcurrentMap<Integer, Channel> serverChannels = new ConcurrentHashMap<Integer, Channel>();
     private final ConcurrentMap<Integer, Channel> nonServerChannels = new ConcurrentHashMap<Integer, Channel>();
     private final ChannelFutureListener remover = new ChannelFutureListener() {
@@ -63,10 +88,21 @@ public class DefaultChannelGroup extends AbstractSet<Channel> implements Channel
      * is done against group names.
      */
     public DefaultChannelGroup(String name) {
+        this(name, false);
+    }
+
+    /**
+     * Creates a new group with the specified {@code name}.
+     *
+     * @param batchWrites {@code true} if {@link #write(Object)} should write
+     *                    to all channels of an I/O worker in one task
+     */
+    public DefaultChannelGroup(String name, boolean batchWrites) {
         if (name == null) {
             throw new NullPointerException("name");
         }
         this.name = name;
+        this.batchWrites = batchWrites;
     }
 
     @Override
@@ -74,6 +110,14 @@ public class DefaultChannelGroup extends AbstractSet<Channel> implements Channel
         return name;
     }
 
+    /**
+     * Returns {@code true} if {@link #write(Object)} writes to all channels of
+     * an I/O worker in one task.
+     */
+    public boolean isBatchWrites() {
+        return batchWrites;
+    }
+
     @Override
     public boolean isEmpty() {
         return nonServerChannels.isEmpty() && serverChannels.isEmpty();
@@ -178,111 +222,126 @@ public class DefaultChannelGroup extends AbstractSet<Channel> implements Channel
 
     @Override
     public ChannelGroupFuture close() {
-        Map<Integer, ChannelFuture> futures =
-            new LinkedHashMap<Integer, ChannelFuture>(size());
+        List<ChannelFuture> futures = new ArrayList<ChannelFuture>(size());
 
         for (Channel c: serverChannels.values()) {
-            futures.put(c.getId(), c.close().awaitUninterruptibly());
+            futures.add(c.close().awaitUninterruptibly());
         }
         for (Channel c: nonServerChannels.values()) {
-            futures.put(c.getId(), c.close());
+            futures.add(c.close());
         }
 
-        return new DefaultChannelGroupFuture(this, futures);
+        return newFuture(futures);
     }
 
     @Override
     public ChannelGroupFuture disconnect() {
-        Map<Integer, ChannelFuture> futures =
-            new LinkedHashMap<Integer, ChannelFuture>(size());
+        List<ChannelFuture> futures = new ArrayList<ChannelFuture>(size());
 
         for (Channel c: serverChannels.values()) {
-            futures.put(c.getId(), c.disconnect().awaitUninterruptibly());
+            futures.add(c.disconnect().awaitUninterruptibly());
         }
         for (Channel c: nonServerChannels.values()) {
-            futures.put(c.getId(), c.disconnect());
+            futures.add(c.disconnect());
         }
 
-        return new DefaultChannelGroupFuture(this, futures);
+        return newFuture(futures);
     }
 
     @Override
     public ChannelGroupFuture setInterestOps(int interestOps) {
-        Map<Integer, ChannelFuture> futures =
-            new LinkedHashMap<Integer, ChannelFuture>(size());
+        List<ChannelFuture> futures = new ArrayList<ChannelFuture>(size());
 
         for (Channel c: serverChannels.values()) {
-            futures.put(c.getId(), c.setInterestOps(interestOps).awaitUninterruptibly());
+            futures.add(c.setInterestOps(interestOps).awaitUninterruptibly());
         }
         for (Channel c: nonServerChannels.values()) {
-            futures.put(c.getId(), c.setInterestOps(interestOps));
+            futures.add(c.setInterestOps(interestOps));
         }
 
-        return new DefaultChannelGroupFuture(this, futures);
+        return newFuture(futures);
     }
 
     @Override
     public ChannelGroupFuture setReadable(boolean readable) {
-        Map<Integer, ChannelFuture> futures =
-            new LinkedHashMap<Integer, ChannelFuture>(size());
+        List<ChannelFuture> futures = new ArrayList<ChannelFuture>(size());
 
         for (Channel c: serverChannels.values()) {
-            futures.put(c.getId(), c.setReadable(readable).awaitUninterruptibly());
+            futures.add(c.setReadable(readable).awaitUninterruptibly());
         }
         for (Channel c: nonServerChannels.values()) {
-            futures.put(c.getId(), c.setReadable(readable));
+            futures.add(c.setReadable(readable));
         }
 
-        return new DefaultChannelGroupFuture(this, futures);
+        return newFuture(futures);
     }
 
     @Override
     public ChannelGroupFuture unbind() {
-        Map<Integer, ChannelFuture> futures =
-            new LinkedHashMap<Integer, ChannelFuture>(size());
+        List<ChannelFuture> futures = new ArrayList<ChannelFuture>(size());
 
         for (Channel c: serverChannels.values()) {
-            futures.put(c.getId(), c.unbind().awaitUninterruptibly());
+            futures.add(c.unbind().awaitUninterruptibly());
         }
         for (Channel c: nonServerChannels.values()) {
-            futures.put(c.getId(), c.unbind());
+            futures.add(c.unbind());
         }
 
-        return new DefaultChannelGroupFuture(this, futures);
+        return newFuture(futures);
     }
 
     @Override
     public ChannelGroupFuture write(Object message) {
-        Map<Integer, ChannelFuture> futures =
-            new LinkedHashMap<Integer, ChannelFuture>(size());
-        if (message instanceof ChannelBuffer) {
-            ChannelBuffer buf = (ChannelBuffer) message;
-            for (Channel c: nonServerChannels.values()) {
-                futures.put(c.getId(), c.write(buf.duplicate()));
-            }
-        } else {
-            for (Channel c: nonServerChannels.values()) {
-                futures.put(c.getId(), c.write(message));
-            }
-        }
-        return new DefaultChannelGroupFuture(this, futures);
+        return write(message, null);
     }
 
     @Override
     public ChannelGroupFuture write(Object message, SocketAddress remoteAddress) {
-        Map<Integer, ChannelFuture> futures =
-            new LinkedHashMap<Integer, ChannelFuture>(size());
-        if (message instanceof ChannelBuffer) {
-            ChannelBuffer buf = (ChannelBuffer) message;
-            for (Channel c: nonServerChannels.values()) {
-                futures.put(c.getId(), c.write(buf.duplicate(), remoteAddress));
+        if (message == null) {
+            throw new NullPointerException("message");
+        }
+
+        List<ChannelFuture> futures = new ArrayList<ChannelFuture>(nonServerChannels.size());
+        Map<Worker, WriteBatch> batches = null;
+        for (Channel c: nonServerChannels.values()) {
+            if (batchWrites && c instanceof WorkerChannel) {
+                Worker worker = ((WorkerChannel) c).getWorker();
+                if (batches == null) {
+                    batches = new IdentityHashMap<Worker, WriteBatch>();
+                }
+                WriteBatch batch = batches.get(worker);
+                if (batch == null) {
+                    batch = new WriteBatch(message, remoteAddress);
+                    batches.put(worker, batch);
+                }
+                futures.add(batch.add(c));
+            } else {
+                futures.add(c.write(share(message), remoteAddress));
             }
-        } else {
-            for (Channel c: nonServerChannels.values()) {
-                futures.put(c.getId(), c.write(message, remoteAddress));
+        }
+
+        if (batches != null) {
+            for (Map.Entry<Worker, WriteBatch> e: batches.entrySet()) {
+                e.getKey().executeInIoThread(e.getValue());
             }
         }
-        return new DefaultChannelGroupFuture(this, futures);
+        return newFuture(futures);
+    }
+
+    /**
+     * Returns the message to be written to one of the channels.  A
+     * {@link ChannelBuffer} is shared by all channels without copying its
+     * content, but each channel gets its own reader index.
+     */
+    static Object share(Object message) {
+        if (message instanceof ChannelBuffer) {
+            return ((ChannelBuffer) message).duplicate();
+        }
+        return message;
+    }
+
+    private ChannelGroupFuture newFuture(List<ChannelFuture> futures) {
+        return new DefaultChannelGroupFuture(this, futures.toArray(new ChannelFuture[futures.size()]));
     }
 
     @Override
@@ -310,4 +369,46 @@ public class DefaultChannelGroup extends AbstractSet<Channel> implements Channel
         return getClass().getSimpleName() +
                "(name: " + getName() + ", size: " + size() + ')';
     }
+
+    /**
+     * Writes a message to all channels of the same I/O worker in one task.
+     */
+    private static final class WriteBatch implements Runnable {
+        private final Object message;
+        private final SocketAddress remoteAddress;
+        private Channel[] channels = new Channel[16];
+        private ChannelFuture[] futures = new ChannelFuture[16];
+        private int size;
+
+        WriteBatch(Object message, SocketAddress remoteAddress) {
+            this.message = message;
+            this.remoteAddress = remoteAddress;
+        }
+
+        ChannelFuture add(Channel channel) {
+            if (size == channels.length) {
+                channels = Arrays.copyOf(channels, size << 1);
+                futures = Arrays.copyOf(futures, size << 1);
+            }
+            ChannelFuture future = future(channel);
+            channels[size] = channel;
+            futures[size] = future;
+            size ++;
+            return future;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < size; i ++) {
+                Channel c = channels[i];
+                ChannelFuture f = futures[i];
+                try {
+                    c.getPipeline().sendDownstream(
+                            new DownstreamMessageEvent(c, f, share(message), remoteAddress));
+                } catch (Throwable t) {
+                    f.setFailure(t);
+                }
+            }
+        }
+    }
 }
@@ -18,8 +18,10 @@ package io.netty.channel.group;
 import static java.util.concurrent.TimeUnit.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -42,7 +44,12 @@ public class DefaultChannelGroupFuture implements ChannelGroupFuture {
         InternalLoggerFactory.getInstance(DefaultChannelGroupFuture.class);
 
     private final ChannelGroup group;
-    final Map<Integer, ChannelFuture> futures;
+    final ChannelFuture[] futures;
+    /**
+     * The index of {@link #futures} by channel ID, which is built only when
+     * {@link #find(Integer)} is called.  Guarded by {@code this}.
+     */
+    private Map<Integer, ChannelFuture> futureMap;
     private ChannelGroupFutureListener firstListener;
     private List<ChannelGroupFutureListener> otherListeners;
     private boolean done;
@@ -62,8 +69,8 @@ public class DefaultChannelGroupFuture implements ChannelGroupFuture {
                     failureCount ++;
                 }
 
-                callSetDone = successCount + failureCount == futures.size();
-                assert successCount + failureCount <= futures.size();
+                callSetDone = successCount + failureCount == futures.length;
+                assert successCount + failureCount <= futures.length;
             }
 
             if (callSetDone) {
@@ -90,27 +97,28 @@ public class DefaultChannelGroupFuture implements ChannelGroupFuture {
             futureMap.put(f.getChannel().getId(), f);
         }
 
-        this.futures = Collections.unmodifiableMap(futureMap);
-
-        for (ChannelFuture f: this.futures.values()) {
-            f.addListener(childListener);
-        }
-
-        // Done on arrival?
-        if (this.futures.isEmpty()) {
-            setDone();
-        }
+        this.futureMap = futureMap;
+        this.futures = futureMap.values().toArray(new ChannelFuture[futureMap.size()]);
+        addChildListeners();
     }
 
-    DefaultChannelGroupFuture(ChannelGroup group, Map<Integer, ChannelFuture> futures) {
+    /**
+     * Creates a new instance for the futures of the distinct channels of a
+     * group, without building a {@link Map} of them unless asked for.
+     */
+    DefaultChannelGroupFuture(ChannelGroup group, ChannelFuture[] futures) {
         this.group = group;
-        this.futures = Collections.unmodifiableMap(futures);
-        for (ChannelFuture f: this.futures.values()) {
+        this.futures = futures;
+        addChildListeners();
+    }
+
+    private void addChildListeners() {
+        for (ChannelFuture f: futures) {
             f.addListener(childListener);
         }
 
         // Done on arrival?
-        if (this.futures.isEmpty()) {
+        if (futures.length == 0) {
             setDone();
         }
     }
@@ -122,17 +130,28 @@ public class DefaultChannelGroupFuture implements ChannelGroupFuture {
 
     @Override
     public ChannelFuture find(Integer channelId) {
-        return futures.get(channelId);
+        Map<Integer, ChannelFuture> futureMap;
+        synchronized (this) {
+            futureMap = this.futureMap;
+            if (futureMap == null) {
+                futureMap = new HashMap<Integer, ChannelFuture>(futures.length * 4 / 3 + 1);
+                for (ChannelFuture f: futures) {
+                    futureMap.put(f.getChannel().getId(), f);
+                }
+                this.futureMap = futureMap;
+            }
+        }
+        return futureMap.get(channelId);
     }
 
     @Override
     public ChannelFuture find(Channel channel) {
-        return futures.get(channel.getId());
+        return find(channel.getId());
     }
 
     @Override
     public Iterator<ChannelFuture> iterator() {
-        return futures.values().iterator();
+        return Collections.unmodifiableList(Arrays.asList(futures)).iterator();
     }
 
     @Override
@@ -142,22 +161,22 @@ public class DefaultChannelGroupFuture implements ChannelGroupFuture {
 
     @Override
     public synchronized boolean isCompleteSuccess() {
-        return successCount == futures.size();
+        return successCount == futures.length;
     }
 
     @Override
     public synchronized boolean isPartialSuccess() {
-        return successCount != 0 && successCount != futures.size();
+        return successCount != 0 && successCount != futures.length;
     }
 
     @Override
     public synchronized boolean isPartialFailure() {
-        return failureCount != 0 && failureCount != futures.size();
+        return failureCount != 0 && failureCount != futures.length;
     }
 
     @Override
     public synchronized boolean isCompleteFailure() {
-        int futureCnt = futures.size();
+        int futureCnt = futures.length;
         return futureCnt != 0 && failureCount == futureCnt;
     }
 
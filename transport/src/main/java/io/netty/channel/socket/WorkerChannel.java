@@ -0,0 +1,32 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.socket;
+
+import io.netty.channel.Channel;
+
+/**
+ * A {@link Channel} whose I/O is handled by a {@link Worker} that serves
+ * many channels.  The tasks which affect several channels of the same
+ * {@link Worker}, such as writing a message to a group of channels, can be
+ * executed in its I/O thread at once.
+ */
+public interface WorkerChannel extends Channel {
+
+    /**
+     * Returns the {@link Worker} which handles the I/O of this channel.
+     */
+    Worker getWorker();
+}
@@ -16,8 +16,9 @@
 package io.netty.channel.socket.nio;
 
 import io.netty.channel.Channel;
+import io.netty.channel.socket.WorkerChannel;
 
-public interface NioChannel extends Channel {
+public interface NioChannel extends WorkerChannel {
 
     /**
      * Returns the {@link AbstractNioWorker} which handles the IO of the {@link Channel}
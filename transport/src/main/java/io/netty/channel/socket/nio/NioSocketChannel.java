@@ -32,6 +32,11 @@ public abstract class NioSocketChannel extends AbstractNioChannel implements io.
     private static final int ST_CLOSED = -1;
     volatile int state = ST_OPEN;
 
+    /**
+     * The {@link NioSocketChannelRelay} this channel is linked by, if any.
+     */
+    volatile NioSocketChannelRelay relay;
+
     private final NioSocketChannelConfig config;
 
     public NioSocketChannel(
@@ -82,7 +87,15 @@ public abstract class NioSocketChannel extends AbstractNioChannel implements io.
     @Override
     protected boolean setClosed() {
         state = ST_CLOSED;
-        return super.setClosed();
+        if (!super.setClosed()) {
+            return false;
+        }
+
+        NioSocketChannelRelay relay = this.relay;
+        if (relay != null) {
+            relay.closed(this);
+        }
+        return true;
     }
     
 
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.socket.nio;
+
+import static io.netty.channel.Channels.*;
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.DownstreamMessageEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Links two {@link NioSocketChannel}s served by the same {@link NioWorker} so that the bytes read from one of
+ * them are written to the other one by the I/O thread, without being copied into a {@link ChannelBuffer} and
+ * without entering either pipeline.  This is what a TCP proxy does with the two connections of a session once it
+ * has nothing more to look at:
+ * <pre>
+ * // The outbound channel was created by a factory whose {@link WorkerPool} hands out the worker of the
+ * // inbound channel.
+ * NioSocketChannelRelay relay = new NioSocketChannelRelay(inboundChannel, outboundChannel);
+ * ...
+ * long uploaded = relay.getFirstToSecondBytes();
+ * </pre>
+ *
+ * <h3>How the bytes are relayed</h3>
+ *
+ * The I/O thread reads a linked channel into a direct buffer of its worker and writes the buffer to the other
+ * channel right away.  Only the bytes the other channel cannot take immediately, or which would overtake the write
+ * requests it already has queued, are copied into a {@link ChannelBuffer} and queued as a write request.  No
+ * {@code messageReceived} event is fired for the relayed bytes, and no {@code writeComplete} event is fired for
+ * the bytes written directly.
+ *
+ * <h3>Backpressure</h3>
+ *
+ * While linked, the relay owns the readability of both channels: a channel stops being read as soon as the other
+ * one is not {@linkplain Channel#isWritable() writable} anymore, and is read again once the other one has written
+ * its queued requests down to the low water mark.  Do not change the readability of a linked channel yourself.
+ *
+ * <h3>Closing</h3>
+ *
+ * When either channel is closed, the relay is unlinked and the other channel is closed as soon as the bytes relayed
+ * to it have been written.
+ */
+public class NioSocketChannelRelay {
+
+    /**
+     * The default number of bytes read from a channel at once
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    private static final AtomicReferenceFieldUpdater<NioSocketChannel, NioSocketChannelRelay> relayUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(NioSocketChannel.class, NioSocketChannelRelay.class, "relay");
+
+    private final NioSocketChannel first;
+    private final NioSocketChannel second;
+    private final int bufferSize;
+
+    // Updated by the I/O thread only.
+    private volatile long firstToSecondBytes;
+    private volatile long secondToFirstBytes;
+
+    /**
+     * Links the specified channels, reading {@link #DEFAULT_BUFFER_SIZE} bytes at once.
+     *
+     * @throws IllegalArgumentException if the channels are not served by the same worker
+     * @throws IllegalStateException    if either channel is linked already
+     */
+    public NioSocketChannelRelay(NioSocketChannel first, NioSocketChannel second) {
+        this(first, second, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Links the specified channels.
+     *
+     * @param bufferSize the maximum number of bytes read from a channel at once
+     *
+     * @throws IllegalArgumentException if the channels are not served by the same worker
+     * @throws IllegalStateException    if either channel is linked already
+     */
+    public NioSocketChannelRelay(final NioSocketChannel first, final NioSocketChannel second, int bufferSize) {
+        if (first == null) {
+            throw new NullPointerException("first");
+        }
+        if (second == null) {
+            throw new NullPointerException("second");
+        }
+        if (first == second) {
+            throw new IllegalArgumentException("cannot link a channel to itself");
+        }
+        if (first.getWorker() != second.getWorker()) {
+            throw new IllegalArgumentException("the channels are not served by the same worker");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize: " + bufferSize + " (expected: a positive integer)");
+        }
+
+        this.first = first;
+        this.second = second;
+        this.bufferSize = bufferSize;
+
+        if (!relayUpdater.compareAndSet(first, null, this)) {
+            throw new IllegalStateException("already linked: " + first);
+        }
+        if (!relayUpdater.compareAndSet(second, null, this)) {
+            first.relay = null;
+            throw new IllegalStateException("already linked: " + second);
+        }
+
+        first.getWorker().executeInIoThread(new Runnable() {
+            @Override
+            public void run() {
+                if (isLinked()) {
+                    updateReadability(second);
+                    updateReadability(first);
+                }
+            }
+        });
+    }
+
+    public NioSocketChannel getFirst() {
+        return first;
+    }
+
+    public NioSocketChannel getSecond() {
+        return second;
+    }
+
+    /**
+     * Returns the number of bytes read from the first channel and relayed to the second one so far.
+     */
+    public long getFirstToSecondBytes() {
+        return firstToSecondBytes;
+    }
+
+    /**
+     * Returns the number of bytes read from the second channel and relayed to the first one so far.
+     */
+    public long getSecondToFirstBytes() {
+        return secondToFirstBytes;
+    }
+
+    /**
+     * Returns {@code true} until this relay is unlinked or either channel is closed.
+     */
+    public boolean isLinked() {
+        return first.relay == this;
+    }
+
+    /**
+     * Unlinks the channels.  The bytes read from them afterwards are fired as {@code messageReceived} events
+     * again, and a channel which was not read because of the backpressure is read again.
+     */
+    public void unlink() {
+        if (!unlink0()) {
+            return;
+        }
+
+        first.getWorker().executeInIoThread(new Runnable() {
+            @Override
+            public void run() {
+                setReadable(first, true);
+                setReadable(second, true);
+            }
+        });
+    }
+
+    private boolean unlink0() {
+        boolean unlinked = relayUpdater.compareAndSet(first, this, null);
+        relayUpdater.compareAndSet(second, this, null);
+        return unlinked;
+    }
+
+    private NioSocketChannel peerOf(NioSocketChannel channel) {
+        return channel == first? second : first;
+    }
+
+    /**
+     * Reads the channel of the specified key and relays what was read.  Called by the I/O thread instead of
+     * {@link NioWorker#read(SelectionKey)}.
+     *
+     * @return {@code false} if the channel has been closed
+     */
+    boolean read(SelectionKey k, NioSocketChannel source) {
+        final SocketChannel ch = (SocketChannel) k.channel();
+        final NioWorker worker = source.getWorker();
+        final NioSocketChannel target = peerOf(source);
+
+        int ret = 0;
+        int readBytes = 0;
+        boolean failure = true;
+
+        ByteBuffer bb = worker.recvBufferPool.acquire(bufferSize);
+        try {
+            while ((ret = ch.read(bb)) > 0) {
+                readBytes += ret;
+                if (!bb.hasRemaining()) {
+                    break;
+                }
+            }
+            failure = false;
+        } catch (ClosedChannelException e) {
+            // Can happen, and does not need a user attention.
+        } catch (Throwable t) {
+            fireExceptionCaught(source, t);
+        }
+
+        if (readBytes > 0) {
+            if (source == first) {
+                firstToSecondBytes += readBytes;
+            } else {
+                secondToFirstBytes += readBytes;
+            }
+
+            bb.flip();
+            write(target, bb);
+        }
+        worker.recvBufferPool.release(bb);
+
+        if (ret < 0 || failure) {
+            k.cancel(); // Some JDK implementations run into an infinite loop without this.
+            worker.close(source, succeededFuture(source));
+            return false;
+        }
+
+        updateReadability(target);
+        return true;
+    }
+
+    private static void write(NioSocketChannel target, ByteBuffer bb) {
+        if (!target.isConnected()) {
+            // Closing - the source will be closed as well.
+            return;
+        }
+
+        Throwable cause = null;
+        synchronized (target.writeLock) {
+            if (target.currentWriteEvent == null && target.writeBufferQueue.isEmpty()) {
+                try {
+                    for (int i = target.getConfig().getWriteSpinCount(); i > 0; i --) {
+                        target.getJdkChannel().write(bb);
+                        if (!bb.hasRemaining()) {
+                            return;
+                        }
+                    }
+                } catch (Throwable t) {
+                    cause = t;
+                }
+            }
+
+            if (cause == null) {
+                // Not written fully, or requested writes have to go first.
+                int length = bb.remaining();
+                ChannelBuffer buffer = target.getConfig().getBufferFactory().getBuffer(length);
+                buffer.setBytes(0, bb);
+                buffer.writerIndex(length);
+                boolean offered = target.writeBufferQueue.offer(
+                        new DownstreamMessageEvent(target, future(target), buffer, null));
+                assert offered;
+            }
+        }
+
+        if (cause == null) {
+            target.getWorker().writeFromUserCode(target);
+        } else {
+            fireExceptionCaught(target, cause);
+            if (cause instanceof IOException) {
+                target.getWorker().close(target, succeededFuture(target));
+            }
+        }
+    }
+
+    /**
+     * Reads the peer of the specified channel only while the specified channel is writable.  Called by the I/O
+     * thread whenever the specified channel may have become writable.
+     */
+    void updateReadability(NioSocketChannel target) {
+        setReadable(peerOf(target), target.isWritable());
+    }
+
+    private static void setReadable(NioSocketChannel channel, boolean readable) {
+        if (!channel.isConnected()) {
+            return;
+        }
+
+        int interestOps = channel.getRawInterestOps();
+        if (((interestOps & Channel.OP_READ) != 0) == readable) {
+            return;
+        }
+        if (readable) {
+            interestOps |= Channel.OP_READ;
+        } else {
+            interestOps &= ~Channel.OP_READ;
+        }
+        channel.getWorker().setInterestOps(channel, succeededFuture(channel), interestOps);
+    }
+
+    /**
+     * Unlinks the channels and closes the peer of the specified channel once the bytes queued for it are written.
+     */
+    void closed(NioSocketChannel channel) {
+        if (!unlink0()) {
+            return;
+        }
+
+        NioSocketChannel peer = peerOf(channel);
+        if (!peer.isConnected()) {
+            return;
+        }
+
+        ChannelFuture future = future(peer);
+        future.addListener(ChannelFutureListener.CLOSE);
+        boolean offered = peer.writeBufferQueue.offer(
+                new DownstreamMessageEvent(peer, future, ChannelBuffers.EMPTY_BUFFER, null));
+        assert offered;
+        peer.getWorker().writeFromUserCode(peer);
+    }
+}
@@ -52,6 +52,11 @@ public class NioWorker extends AbstractNioWorker {
         final SocketChannel ch = (SocketChannel) k.channel();
         final NioSocketChannel channel = (NioSocketChannel) k.attachment();
 
+        final NioSocketChannelRelay relay = channel.relay;
+        if (relay != null) {
+            return relay.read(k, channel);
+        }
+
         final ReceiveBufferSizePredictor predictor =
             channel.getConfig().getReceiveBufferSizePredictor();
         final int predictedRecvBufSize = predictor.nextReceiveBufferSize();
@@ -104,6 +109,18 @@ public class NioWorker extends AbstractNioWorker {
         return true;
     }
 
+    @Override
+    protected void write0(AbstractNioChannel channel) {
+        super.write0(channel);
+
+        if (channel instanceof NioSocketChannel) {
+            // Read the linked channel again if this one has caught up.
+            NioSocketChannelRelay relay = ((NioSocketChannel) channel).relay;
+            if (relay != null) {
+                relay.updateReadability((NioSocketChannel) channel);
+            }
+        }
+    }
 
     @Override
     protected void registerTask(AbstractNioChannel channel, ChannelFuture future) {
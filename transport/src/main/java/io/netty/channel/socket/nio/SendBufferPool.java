@@ -20,9 +20,11 @@ import java.lang.ref.SoftReference;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
 
 import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.MappedFileChannelBuffer;
 import io.netty.channel.FileRegion;
 
 public class SendBufferPool {
@@ -58,17 +60,31 @@ public class SendBufferPool {
         return new FileSendBuffer(src);
     }
 
+    /**
+     * Write the components of a composite buffer, such as the segments of a mapped file, as they are instead of
+     * merging them.
+     */
+    private SendBuffer acquire(ByteBuffer[] buffers) {
+        if (buffers.length == 1) {
+            return new UnpooledSendBuffer(buffers[0]);
+        }
+        return new GatheringSendBuffer(buffers);
+    }
+
     private SendBuffer acquire(ChannelBuffer src) {
         final int size = src.readableBytes();
         if (size == 0) {
             return EMPTY_BUFFER;
         }
 
-        if (src.isDirect()) {
-            return new UnpooledSendBuffer(src.toByteBuffer());
-        }
-        if (src.readableBytes() > DEFAULT_PREALLOCATION_SIZE) {
-            return new UnpooledSendBuffer(src.toByteBuffer());
+        if (src.isDirect() || src.readableBytes() > DEFAULT_PREALLOCATION_SIZE) {
+            if (src instanceof MappedFileChannelBuffer) {
+                // Keep the segments mapped until they are written.
+                MappedFileChannelBuffer mapped = (MappedFileChannelBuffer) src;
+                mapped.writeStarted();
+                return new MappedSendBuffer(acquire(src.toByteBuffers()), mapped);
+            }
+            return acquire(src.toByteBuffers());
         }
 
         Preallocation current = this.current;
@@ -261,6 +277,120 @@ public class SendBufferPool {
         }
     }
 
+    static final class GatheringSendBuffer implements SendBuffer {
+
+        private final ByteBuffer[] buffers;
+        private final long totalBytes;
+        private long writtenBytes;
+
+        /**
+         * The index of the first buffer which has not been written completely
+         */
+        private int first;
+
+        GatheringSendBuffer(ByteBuffer[] buffers) {
+            this.buffers = buffers;
+            long totalBytes = 0;
+            for (ByteBuffer b: buffers) {
+                totalBytes += b.remaining();
+            }
+            this.totalBytes = totalBytes;
+        }
+
+        @Override
+        public boolean finished() {
+            return writtenBytes >= totalBytes;
+        }
+
+        @Override
+        public long writtenBytes() {
+            return writtenBytes;
+        }
+
+        @Override
+        public long totalBytes() {
+            return totalBytes;
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel ch) throws IOException {
+            long localWrittenBytes;
+            if (ch instanceof GatheringByteChannel) {
+                localWrittenBytes = ((GatheringByteChannel) ch).write(buffers, first, buffers.length - first);
+            } else {
+                localWrittenBytes = ch.write(buffers[first]);
+            }
+            writtenBytes += localWrittenBytes;
+            while (first < buffers.length && !buffers[first].hasRemaining()) {
+                first ++;
+            }
+            return localWrittenBytes;
+        }
+
+        @Override
+        public long transferTo(DatagramChannel ch, SocketAddress raddr) throws IOException {
+            // A datagram has to be sent at once.
+            ByteBuffer merged = ByteBuffer.allocate((int) (totalBytes - writtenBytes));
+            for (int i = first; i < buffers.length; i ++) {
+                merged.put(buffers[i].duplicate());
+            }
+            merged.flip();
+            int localWrittenBytes = ch.send(merged, raddr);
+            if (localWrittenBytes > 0) {
+                writtenBytes = totalBytes;
+                first = buffers.length;
+            }
+            return localWrittenBytes;
+        }
+
+        @Override
+        public void release() {
+            // Unpooled.
+        }
+    }
+
+    static final class MappedSendBuffer implements SendBuffer {
+
+        private final SendBuffer buffer;
+        private final MappedFileChannelBuffer mapped;
+
+        MappedSendBuffer(SendBuffer buffer, MappedFileChannelBuffer mapped) {
+            this.buffer = buffer;
+            this.mapped = mapped;
+        }
+
+        @Override
+        public boolean finished() {
+            return buffer.finished();
+        }
+
+        @Override
+        public long writtenBytes() {
+            return buffer.writtenBytes();
+        }
+
+        @Override
+        public long totalBytes() {
+            return buffer.totalBytes();
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel ch) throws IOException {
+            return buffer.transferTo(ch);
+        }
+
+        @Override
+        public long transferTo(DatagramChannel ch, SocketAddress raddr) throws IOException {
+            return buffer.transferTo(ch, raddr);
+        }
+
+        @Override
+        public void release() {
+            buffer.release();
+            mapped.writeFinished();
+        }
+    }
+
     static final class FileSendBuffer implements SendBuffer {
 
         private final FileRegion file;
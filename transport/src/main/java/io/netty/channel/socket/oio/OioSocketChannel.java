@@ -29,7 +29,7 @@ import io.netty.channel.socket.DefaultSocketChannelConfig;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.SocketChannelConfig;
 
-abstract class OioSocketChannel extends AbstractOioChannel
+public abstract class OioSocketChannel extends AbstractOioChannel
                                 implements SocketChannel {
 
     final Socket socket;
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.group;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.bootstrap.ClientBootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelStateEvent;
+import io.netty.channel.MessageEvent;
+import io.netty.channel.SimpleChannelUpstreamHandler;
+import io.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import io.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import io.netty.util.CharsetUtil;
+
+import org.junit.Test;
+
+public class DefaultChannelGroupTest {
+
+    private static final int CLIENTS = 4;
+    private static final String MESSAGE = "broadcast";
+
+    @Test
+    public void testBroadcast() throws Throwable {
+        testBroadcast(false);
+    }
+
+    @Test
+    public void testBatchedBroadcast() throws Throwable {
+        testBroadcast(true);
+    }
+
+    private static void testBroadcast(boolean batchWrites) throws Throwable {
+        final DefaultChannelGroup group = new DefaultChannelGroup("test", batchWrites);
+        final BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+
+        ServerBootstrap sb = new ServerBootstrap(
+                new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), 2));
+        ClientBootstrap cb = new ClientBootstrap(
+                new NioClientSocketChannelFactory(Executors.newCachedThreadPool()));
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                group.add(e.getChannel());
+            }
+        });
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                // The message may arrive in more than one piece.
+                StringBuilder buf = (StringBuilder) ctx.getAttachment();
+                if (buf == null) {
+                    buf = new StringBuilder();
+                    ctx.setAttachment(buf);
+                }
+                buf.append(((ChannelBuffer) e.getMessage()).toString(CharsetUtil.US_ASCII));
+                if (buf.length() >= MESSAGE.length()) {
+                    received.add(buf.toString());
+                    buf.setLength(0);
+                }
+            }
+        });
+
+        InetAddress localhost = InetAddress.getByName("127.0.0.1");
+        Channel sc = sb.bind(new InetSocketAddress(localhost, 0));
+        int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+        Channel[] clients = new Channel[CLIENTS];
+        try {
+            for (int i = 0; i < CLIENTS; i ++) {
+                ChannelFuture f = cb.connect(new InetSocketAddress(localhost, port));
+                assertTrue(f.awaitUninterruptibly().isSuccess());
+                clients[i] = f.getChannel();
+            }
+            for (int i = 0; i < 100 && group.size() < CLIENTS; i ++) {
+                Thread.sleep(10);
+            }
+            assertEquals(CLIENTS, group.size());
+
+            ChannelBuffer message = ChannelBuffers.copiedBuffer(MESSAGE, CharsetUtil.US_ASCII);
+            ChannelGroupFuture future = group.write(message).awaitUninterruptibly();
+            assertTrue(future.isCompleteSuccess());
+            for (Channel c: group) {
+                assertSame(c, future.find(c).getChannel());
+            }
+
+            // The content is shared, not consumed.
+            assertEquals(MESSAGE.length(), message.readableBytes());
+
+            for (int i = 0; i < CLIENTS; i ++) {
+                assertEquals(MESSAGE, received.poll(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            for (Channel c: clients) {
+                if (c != null) {
+                    c.close().awaitUninterruptibly();
+                }
+            }
+            group.close().awaitUninterruptibly();
+            sc.close().awaitUninterruptibly();
+            cb.releaseExternalResources();
+            sb.releaseExternalResources();
+        }
+    }
+}
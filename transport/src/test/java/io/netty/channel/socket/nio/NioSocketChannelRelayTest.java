@@ -0,0 +1,243 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.bootstrap.ClientBootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelStateEvent;
+import io.netty.channel.MessageEvent;
+import io.netty.channel.SimpleChannelUpstreamHandler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NioSocketChannelRelayTest {
+
+    private static final int LENGTH = 8 * 1024 * 1024;
+
+    private final BlockingQueue<NioSocketChannelRelay> relays = new LinkedBlockingQueue<NioSocketChannelRelay>();
+    private final AtomicInteger unexpectedMessages = new AtomicInteger();
+    private final AtomicLong backendReceived = new AtomicLong();
+    private final AtomicLong clientReceived = new AtomicLong();
+    private final AtomicInteger clientMismatches = new AtomicInteger();
+    private volatile Channel backendChannel;
+    private volatile boolean echo;
+    private volatile boolean backendReadable;
+
+    private ShareableWorkerPool<NioWorker> proxyWorkers;
+    private ServerBootstrap backend;
+    private ServerBootstrap proxy;
+    private ClientBootstrap client;
+    private Channel backendServer;
+    private Channel proxyServer;
+    private Channel clientChannel;
+
+    @Before
+    public void setUp() throws Exception {
+        InetAddress localhost = InetAddress.getByName("127.0.0.1");
+
+        backend = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool()));
+        backend.setOption("child.receiveBufferSize", 65536);
+        backend.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                e.getChannel().setReadable(backendReadable);
+                backendChannel = e.getChannel();
+            }
+
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
+                backendReceived.addAndGet(buffer.readableBytes());
+                if (echo) {
+                    e.getChannel().write(buffer);
+                }
+            }
+        });
+        backendServer = backend.bind(new InetSocketAddress(localhost, 0));
+        final InetSocketAddress backendAddress = (InetSocketAddress) backendServer.getLocalAddress();
+
+        // A single worker serves both sides of the proxy.
+        proxyWorkers = new ShareableWorkerPool<NioWorker>(
+                new NioWorkerPool(Executors.newCachedThreadPool(), 1, true));
+        final NioClientSocketChannelFactory outboundFactory = new NioClientSocketChannelFactory(proxyWorkers);
+        proxy = new ServerBootstrap(new NioServerSocketChannelFactory(proxyWorkers));
+        proxy.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                final Channel inbound = e.getChannel();
+                inbound.setReadable(false);
+
+                ClientBootstrap cb = new ClientBootstrap(outboundFactory);
+                cb.setOption("sendBufferSize", 65536);
+                cb.setOption("tcpNoDelay", true);
+                cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+                    @Override
+                    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                        unexpectedMessages.incrementAndGet();
+                    }
+                });
+                cb.connect(backendAddress).addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        if (future.isSuccess()) {
+                            relays.add(new NioSocketChannelRelay(
+                                    (NioSocketChannel) inbound, (NioSocketChannel) future.getChannel()));
+                        } else {
+                            inbound.close();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                unexpectedMessages.incrementAndGet();
+            }
+        });
+        proxyServer = proxy.bind(new InetSocketAddress(localhost, 0));
+
+        client = new ClientBootstrap(new NioClientSocketChannelFactory(Executors.newCachedThreadPool()));
+        client.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
+                long offset = clientReceived.get();
+                while (buffer.readable()) {
+                    if (buffer.readByte() != (byte) offset ++) {
+                        clientMismatches.incrementAndGet();
+                    }
+                }
+                clientReceived.set(offset);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        if (clientChannel != null) {
+            clientChannel.close().awaitUninterruptibly();
+        }
+        for (NioSocketChannelRelay relay: relays) {
+            relay.getFirst().close().awaitUninterruptibly();
+            relay.getSecond().close().awaitUninterruptibly();
+        }
+        proxyServer.close().awaitUninterruptibly();
+        backendServer.close().awaitUninterruptibly();
+        client.releaseExternalResources();
+        backend.releaseExternalResources();
+        proxyWorkers.destroy();
+    }
+
+    @Test
+    public void testRelay() throws Exception {
+        echo = true;
+        backendReadable = true;
+
+        Channel ch = connect();
+        NioSocketChannelRelay relay = relays.poll(10, TimeUnit.SECONDS);
+        assertNotNull(relay);
+        relays.add(relay);
+        assertTrue(relay.isLinked());
+        send(ch);
+
+        waitFor(clientReceived, LENGTH);
+        assertEquals(0, clientMismatches.get());
+        assertEquals(LENGTH, relay.getFirstToSecondBytes());
+        assertEquals(LENGTH, relay.getSecondToFirstBytes());
+        assertEquals(0, unexpectedMessages.get());
+
+        // Closing one side closes the other side.
+        ch.close().awaitUninterruptibly();
+        assertTrue(backendChannel.getCloseFuture().awaitUninterruptibly(10000));
+        assertFalse(relay.isLinked());
+        assertFalse(relay.getFirst().isOpen());
+        assertFalse(relay.getSecond().isOpen());
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        echo = false;
+        backendReadable = false;
+
+        Channel ch = connect();
+        NioSocketChannelRelay relay = relays.poll(10, TimeUnit.SECONDS);
+        assertNotNull(relay);
+        relays.add(relay);
+        send(ch);
+
+        // The inbound channel is not read anymore once the stalled outbound channel is not writable.
+        for (int i = 0; i < 1000 && relay.getFirst().isReadable(); i ++) {
+            Thread.sleep(10);
+        }
+        assertFalse(relay.getFirst().isReadable());
+        assertFalse(relay.getSecond().isWritable());
+        assertTrue(relay.getFirstToSecondBytes() < LENGTH);
+        assertTrue(relay.getSecond().writeBufferSize.get() <=
+                relay.getSecond().getConfig().getWriteBufferHighWaterMark() + NioSocketChannelRelay.DEFAULT_BUFFER_SIZE);
+
+        backendChannel.setReadable(true);
+        waitFor(backendReceived, LENGTH);
+        assertEquals(LENGTH, relay.getFirstToSecondBytes());
+        assertTrue(relay.getFirst().isReadable());
+        assertEquals(0, unexpectedMessages.get());
+
+        relay.unlink();
+        assertFalse(relay.isLinked());
+        ch.close().awaitUninterruptibly();
+    }
+
+    private Channel connect() {
+        ChannelFuture f = client.connect(proxyServer.getLocalAddress());
+        assertTrue(f.awaitUninterruptibly().isSuccess());
+        return clientChannel = f.getChannel();
+    }
+
+    private static void send(Channel ch) {
+        byte[] data = new byte[LENGTH];
+        for (int i = 0; i < data.length; i ++) {
+            data[i] = (byte) i;
+        }
+        for (int i = 0; i < data.length; i += 65536) {
+            ch.write(ChannelBuffers.wrappedBuffer(data, i, 65536));
+        }
+    }
+
+    private static void waitFor(AtomicLong counter, long expected) throws InterruptedException {
+        for (int i = 0; i < 3000 && counter.get() < expected; i ++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, counter.get());
+    }
+}
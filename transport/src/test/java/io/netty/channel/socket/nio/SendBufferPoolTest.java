@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import io.netty.buffer.ChannelBuffer;
+import io.netty.buffer.ChannelBuffers;
+import io.netty.buffer.MappedFileChannelBuffer;
+import io.netty.channel.socket.nio.SendBufferPool.SendBuffer;
+
+import org.junit.Test;
+
+public class SendBufferPoolTest {
+
+    @Test
+    public void testSmallBufferIsCopied() throws Exception {
+        SendBuffer buf = new SendBufferPool().acquire(ChannelBuffers.wrappedBuffer(new byte[] { 1, 2, 3 }));
+        assertTrue(buf instanceof SendBufferPool.PooledSendBuffer);
+        assertEquals(3, buf.totalBytes());
+    }
+
+    @Test
+    public void testMappedBufferIsNotCopied() throws Exception {
+        File path = File.createTempFile("netty-", ".tmp");
+        path.deleteOnExit();
+        RandomAccessFile in = new RandomAccessFile(path, "rw");
+        File outPath = File.createTempFile("netty-", ".tmp");
+        outPath.deleteOnExit();
+        RandomAccessFile out = new RandomAccessFile(outPath, "rw");
+        try {
+            byte[] content = new byte[100000];
+            for (int i = 0; i < content.length; i ++) {
+                content[i] = (byte) i;
+            }
+            in.write(content);
+
+            MappedFileChannelBuffer mapped = new MappedFileChannelBuffer(
+                    in.getChannel(), FileChannel.MapMode.READ_ONLY, 0, content.length, 4096);
+            mapped.skipBytes(10);
+            SendBuffer buf = new SendBufferPool().acquire(mapped);
+            assertTrue(buf instanceof SendBufferPool.MappedSendBuffer);
+            assertEquals(content.length - 10, buf.totalBytes());
+
+            FileChannel ch = out.getChannel();
+            while (!buf.finished()) {
+                assertTrue(buf.transferTo(ch) > 0);
+            }
+            assertEquals(content.length - 10, buf.writtenBytes());
+            assertEquals(content.length - 10, ch.size());
+            ByteBuffer written = ByteBuffer.allocate(content.length - 10);
+            ch.read(written, 0);
+            written.flip();
+            assertEquals(ChannelBuffers.wrappedBuffer(content, 10, content.length - 10),
+                    ChannelBuffers.wrappedBuffer(written));
+            // The buffer itself has not been consumed.
+            assertEquals(10, mapped.readerIndex());
+
+            // The segments stay mapped until the send buffer is released.
+            try {
+                mapped.release();
+                fail();
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            buf.release();
+            mapped.release();
+
+            // A large composite buffer is written as it is, too.
+            ChannelBuffer composite = ChannelBuffers.wrappedBuffer(content, content);
+            assertTrue(new SendBufferPool().acquire(composite) instanceof SendBufferPool.GatheringSendBuffer);
+        } finally {
+            in.close();
+            out.close();
+            path.delete();
+            outPath.delete();
+        }
+    }
+}